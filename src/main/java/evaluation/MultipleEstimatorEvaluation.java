@@ -203,6 +203,25 @@ public class MultipleEstimatorEvaluation implements DebugPrinting {
         resultsCollection.setIgnoreMissingDistributions(ignoreMissingDistributions);
         return this;
     }
+
+    /**
+     * the number of threads used to read results files concurrently. reading is mostly I/O bound, so this
+     * may usefully be larger than the number of cores. defaults to 1
+     */
+    public MultipleEstimatorEvaluation setNumLoadingThreads(int numLoadingThreads) {
+        resultsCollection.setNumLoadingThreads(numLoadingThreads);
+        return this;
+    }
+
+    /**
+     * if true, up to date binary copies of the results files are read instead of the text files, and binary
+     * copies are written next to any text files that have to be read, so repeated comparisons over the same
+     * results are faster. defaults to false
+     */
+    public MultipleEstimatorEvaluation setUseBinaryResults(boolean useBinaryResults) {
+        resultsCollection.setUseBinaryResults(useBinaryResults);
+        return this;
+    }
     
     /**
      * if true, will perform xmeans clustering on the estimatorXdataset results, to find data-driven datasetgroupings, as well
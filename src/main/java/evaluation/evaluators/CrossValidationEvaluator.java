@@ -569,6 +569,7 @@ public class CrossValidationEvaluator extends MultiSamplingEvaluator {
     @Override
     public Evaluator cloneEvaluator() {
         CrossValidationEvaluator ev = new CrossValidationEvaluator(this.seed, this.cloneData, this.setClassMissing, this.cloneClassifiers, this.maintainClassifiers);
+        ev.setNumFolds(this.numFolds);
         //INTENTIONALLY NOT COPYING ACROSS FOLDS. That is a utility to help speed things up
         
         //If people try to clone evaluators with folds already built, safer to force
@@ -17,10 +17,13 @@
 package evaluation.evaluators;
 
 import evaluation.storage.ClassifierResults;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 import static utilities.GenericTools.indexOfMax;
 
 import tsml.classifiers.Interpretable;
+import tsml.classifiers.TSClassifier;
+import utilities.ThreadingUtilities;
 import weka.classifiers.Classifier;
 import weka.core.Instance;
 import weka.core.Instances;
@@ -52,6 +55,18 @@ public class SingleTestSetEvaluator extends Evaluator {
         super(seed,cloneData,setClassMissing);
         this.vis = vis;
     }
+    
+    //if set, classifiers that can predict concurrently (see TSClassifier.canPredictConcurrently()) predict 
+    //the test instances in parallel over this pool
+    private ForkJoinPool predictionPool = null;
+
+    public ForkJoinPool getPredictionPool() {
+        return predictionPool;
+    }
+
+    public void setPredictionPool(ForkJoinPool predictionPool) {
+        this.predictionPool = predictionPool;
+    }
 
     @Override
     public synchronized ClassifierResults evaluate(Classifier classifier, Instances dataset) throws Exception {
@@ -66,18 +81,39 @@ public class SingleTestSetEvaluator extends Evaluator {
         res.setSplit("train"); //todo revisit, or leave with the assumption that calling method will set this to test when needed
 
         res.turnOffZeroTimingsErrors();
-        for (Instance testinst : insts) {
-            double trueClassVal = testinst.classValue();
-            if (setClassMissing)
-                testinst.setClassMissing();
+        if (predictionPool != null && !vis && TSClassifier.canPredictConcurrently(classifier)) {
+            //predict in parallel, then add the predictions in order. The prediction times are still per instance
+            final double[] trueClassVals = new double[insts.numInstances()];
+            final double[][] dists = new double[insts.numInstances()][];
+            final long[] predTimes = new long[insts.numInstances()];
+            ThreadingUtilities.parallelFor(predictionPool, insts.numInstances(), i -> {
+                Instance testinst = insts.instance(i);
+                trueClassVals[i] = testinst.classValue();
+                if (setClassMissing)
+                    testinst.setClassMissing();
+
+                long startTime = System.nanoTime();
+                dists[i] = classifier.distributionForInstance(testinst);
+                predTimes[i] = System.nanoTime() - startTime;
+            });
+            
+            for (int i = 0; i < dists.length; i++)
+                res.addPrediction(trueClassVals[i], dists[i], indexOfMax(dists[i]), predTimes[i], ""); //todo indexOfMax does not break ties randomly.
+        }
+        else {
+            for (Instance testinst : insts) {
+                double trueClassVal = testinst.classValue();
+                if (setClassMissing)
+                    testinst.setClassMissing();
 
-            long startTime = System.nanoTime();
-            double[] dist = classifier.distributionForInstance(testinst);
-            long predTime = System.nanoTime() - startTime;
+                long startTime = System.nanoTime();
+                double[] dist = classifier.distributionForInstance(testinst);
+                long predTime = System.nanoTime() - startTime;
 
-            if (vis) ((Interpretable)classifier).lastClassifiedInterpretability();
+                if (vis) ((Interpretable)classifier).lastClassifiedInterpretability();
 
-            res.addPrediction(trueClassVal, dist, indexOfMax(dist), predTime, ""); //todo indexOfMax does not break ties randomly.
+                res.addPrediction(trueClassVal, dist, indexOfMax(dist), predTime, ""); //todo indexOfMax does not break ties randomly.
+            }
         }
 
         res.turnOnZeroTimingsErrors();
@@ -107,7 +143,9 @@ public class SingleTestSetEvaluator extends Evaluator {
 
     @Override
     public Evaluator cloneEvaluator() {
-        return new SingleTestSetEvaluator(this.seed, this.cloneData, this.setClassMissing);
+        SingleTestSetEvaluator eval = new SingleTestSetEvaluator(this.seed, this.cloneData, this.setClassMissing);
+        eval.setPredictionPool(this.predictionPool);
+        return eval;
     }
     
 }
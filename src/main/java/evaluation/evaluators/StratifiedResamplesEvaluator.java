@@ -74,6 +74,7 @@ public class StratifiedResamplesEvaluator extends MultiSamplingEvaluator {
     @Override
     public Evaluator cloneEvaluator() {
         StratifiedResamplesEvaluator ev = new StratifiedResamplesEvaluator(this.seed, this.cloneData, this.setClassMissing, this.cloneClassifiers, this.maintainClassifiers);
+        ev.setNumFolds(this.numFolds);
         ev.setPropInstancesInTrain(this.propInstancesInTrain);
         ev.setUseEachResampleIdAsSeed(this.useEachResampleIdAsSeed);
         return ev;
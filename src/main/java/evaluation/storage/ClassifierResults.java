@@ -17,10 +17,23 @@
 package evaluation.storage;
 
 import fileIO.OutFile;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -69,10 +82,20 @@ import utilities.*;
  *  [REMAINING LINES: PREDICTIONS]
  *    - trueClassVal, predClassVal,[empty], dist[0], dist[1] ... dist[c],[empty], predTime, [empty], predDescription
  *
+ * Predictions are stored internally as parallel primitive columns, with the probability distributions
+ * stored flat in a single array. The list-returning getters (getTrueClassVals() etc) build a copy
+ * on each call, prefer the ...AsArray() or single element getters where performance matters.
+ *
  * Supports reading/writing of results from/to file, in the 'classifierResults file-format'
  *    - loadResultsFromFile(String path)
+ *    - loadResultsFromFile(String path, false) reads only the three meta info lines, for when only
+ *          accuracy and timings are needed
  *    - writeFullResultsToFile(String path)  (other writing formats also supported, write...ToFile(...)
  *
+ * Also supports a binary, column-oriented version of the full results for faster reading of
+ * large numbers of files. Paths ending in BINARY_FILE_EXTENSION are read as binary by loadResultsFromFile
+ *    - writeBinaryResultsToFile(String path)
+ *
  * Supports recording of timings in different time units. Nanoseconds is the default.
  * Older files that are read in and do not have a time unit specified are assumed to be in milliseconds.
  *
@@ -142,6 +165,14 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
      */
     public static boolean printOnFailureToLoad = true;
 
+    /**
+     * Extension of results files written by writeBinaryResultsToFile(...), loadResultsFromFile(...)
+     * reads any path ending with this as a binary results file
+     */
+    public static final String BINARY_FILE_EXTENSION = ".bin";
+    private static final int BINARY_MAGIC = 0x54534352; //"TSCR"
+    private static final int BINARY_VERSION = 1;
+
 
 //LINE 1: meta info, set by user
 
@@ -241,12 +272,21 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
     private long buildPlusEstimateTime = -1;
 
 //REMAINDER OF THE FILE - 1 prediction per line
-    //raw performance data. currently just give parallel arrays
-    private ArrayList<Double> trueClassValues;
-    private ArrayList<Double> predClassValues;
-    private ArrayList<double[]> predDistributions;
-    private ArrayList<Long> predTimes;
+    //raw performance data, parallel primitive columns grown as predictions are added.
+    //true class values may be supplied separately to the predictions, so are counted separately
+    private double[] trueClassValues;
+    private int numTrueClassValues;
+    private double[] predClassValues;
+    private long[] predTimes;
     private ArrayList<String> predDescriptions;
+    private int numPredictions;
+
+    //probability distributions stored flat, distLength values per prediction. distLength is set
+    //by the first distribution stored, -1 until then. predictions stored without a distribution
+    //(e.g. read from very old files) are marked in missingDists
+    private double[] predDistributions;
+    private int distLength = -1;
+    private BitSet missingDists;
 
     //inferred/supplied dataset meta info
     private int numClasses;
@@ -364,11 +404,7 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
      * to infer the number of classes, some may be missing.
      */
     public ClassifierResults() {
-        trueClassValues= new ArrayList<>();
-        predClassValues = new ArrayList<>();
-        predDistributions = new ArrayList<>();
-        predTimes = new ArrayList<>();
-        predDescriptions = new ArrayList<>();
+        initPredictionStorage();
 
         finalised = false;
     }
@@ -384,11 +420,7 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
      * to infer the number of classes, some may be missing.
      */
     public ClassifierResults(int numClasses) {
-        trueClassValues= new ArrayList<>();
-        predClassValues = new ArrayList<>();
-        predDistributions = new ArrayList<>();
-        predTimes = new ArrayList<>();
-        predDescriptions = new ArrayList<>();
+        initPredictionStorage();
 
         this.numClasses = numClasses;
         finalised = false;
@@ -401,6 +433,14 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
         loadResultsFromFile(filePathAndName);
     }
 
+    /**
+     * Load a classifierresults object from the file at the specified path. If loadPredictions is false,
+     * only the three meta info lines are read, see loadResultsFromFile(String, boolean)
+     */
+    public ClassifierResults(String filePathAndName, boolean loadPredictions) throws FileNotFoundException, Exception {
+        loadResultsFromFile(filePathAndName, loadPredictions);
+    }
+
     /**
      * Create a classifier results object with complete predictions (equivalent to addAllPredictions()). The results are
      * FINALISED after initialisation. Meta info such as classifier name, datasetname... can still be set after construction.
@@ -410,11 +450,7 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
      * All other arguments are required in full, however
      */
     public ClassifierResults(double[] trueClassVals, double[] predictions, double[][] distributions, long[] predTimes, String[] descriptions) throws Exception {
-        trueClassValues= new ArrayList<>();
-        predClassValues = new ArrayList<>();
-        predDistributions = new ArrayList<>();
-        this.predTimes = new ArrayList<>();
-        predDescriptions = new ArrayList<>();
+        initPredictionStorage(predictions.length);
 
         addAllPredictions(trueClassVals, predictions, distributions, predTimes, descriptions);
         finaliseResults();
@@ -493,10 +529,10 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
         this.numClasses = numClasses;
     }
     private void inferNumClasses() {
-        if (predDistributions.isEmpty())
+        if (distLength < 0)
             this.numClasses = 0;
         else
-            this.numClasses = predDistributions.get(0).length;
+            this.numClasses = distLength;
     }
 
     public int numInstances() {
@@ -506,7 +542,7 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
     }
 
     private void inferNumInstances() {
-        this.numInstances = predClassValues.size();
+        this.numInstances = numPredictions;
     }
 
 
@@ -586,15 +622,15 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
         return acc<0 ? false: true;
     }
     private void calculateAcc() {
-        if (trueClassValues == null || trueClassValues.isEmpty() || trueClassValues.get(0) == -1) {
+        if (trueClassValues == null || numTrueClassValues == 0 || trueClassValues[0] == -1) {
             System.out.println("**getAcc():calculateAcc() no true class values supplied yet, cannot calculate accuracy");
             return;
         }
 
-        int size = predClassValues.size();
+        int size = numPredictions;
         double correct = .0;
         for (int i = 0; i < size; i++) {
-            if (predClassValues.get(i).equals(trueClassValues.get(i)))
+            if (predClassValues[i] == trueClassValues[i])
                 correct++;
         }
 
@@ -776,8 +812,10 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
      * method finaliseResults(double[] trueClassVals)
      */
     public void addPrediction(double[] dist, double predictedClass, long predictionTime, String description) throws RuntimeException {
-        predDistributions.add(dist);
-        predClassValues.add(predictedClass);
+        ensurePredictionCapacity(numPredictions + 1);
+
+        addDistribution(dist);
+        predClassValues[numPredictions] = predictedClass;
 
         if (description == null)
             predDescriptions.add("");
@@ -791,7 +829,7 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
                     + "If you are using nanoseconds but STILL getting this error, read the javadoc for and use turnOffZeroTimingsErrors() "
                     + "for this call");
         else {
-            predTimes.add(predictionTime);
+            predTimes[numPredictions] = predictionTime;
 
             if (testTime == -1)
                 testTime = predictionTime;
@@ -799,6 +837,7 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
                 testTime += predictionTime;
         }
 
+        numPredictions++;
         numInstances++;
     }
 
@@ -813,7 +852,10 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
      */
     public void addPrediction(double trueClassVal, double[] dist, double predictedClass, long predictionTime, String description) throws RuntimeException {
         addPrediction(dist,predictedClass,predictionTime,description);
-        trueClassValues.add(trueClassVal);
+
+        if (numTrueClassValues == trueClassValues.length)
+            trueClassValues = Arrays.copyOf(trueClassValues, grownCapacity(trueClassValues.length, numTrueClassValues + 1));
+        trueClassValues[numTrueClassValues++] = trueClassVal;
     }
 
 
@@ -880,13 +922,12 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
             return;
         }
 
-        if (testClassVals.length != predClassValues.size())
+        if (testClassVals.length != numPredictions)
             throw new Exception("finaliseTestResults(double[] testClassVals): Number of predictions "
                     + "made and number of true class values passed do not match");
 
-        trueClassValues = new ArrayList<>();
-        for(double d:testClassVals)
-            trueClassValues.add(d);
+        trueClassValues = testClassVals.clone();
+        numTrueClassValues = testClassVals.length;
 
         finaliseResults();
     }
@@ -913,25 +954,24 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
 
         //todo extra verification
 
-        if (predDistributions == null || predClassValues == null ||
-                predDistributions.isEmpty() || predClassValues.isEmpty())
+        if (predClassValues == null || numPredictions == 0)
             throw new Exception("finaliseTestResults(): no predictions stored for this module");
 
         double correct = .0;
-        for (int inst = 0; inst < predClassValues.size(); inst++)
-            if (trueClassValues.get(inst).equals(predClassValues.get(inst)))
+        for (int inst = 0; inst < numPredictions; inst++)
+            if (trueClassValues[inst] == predClassValues[inst])
                 ++correct;
 
-        acc = correct/trueClassValues.size();
+        acc = correct/numTrueClassValues;
 
         finalised = true;
     }
 
     public boolean hasProbabilityDistributionInformation() {
         return predDistributions != null &&
-                !predDistributions.isEmpty() &&
-                predDistributions.size() == predClassValues.size() &&
-                predDistributions.get(0) != null;
+                numPredictions > 0 &&
+                distLength >= 0 &&
+                !isDistributionMissing(0);
     }
 
     /**
@@ -968,14 +1008,13 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
 
         if (this.numClasses <= 0)
             //ayyyy java8 being used for something
-            numClasses = (int) trueClassValues.stream().distinct().count();
+            numClasses = (int) Arrays.stream(trueClassValues, 0, numTrueClassValues).distinct().count();
 
-        predDistributions = new ArrayList<>(predClassValues.size());
-        for (double d : predClassValues) {
-            double[] dist = new double[numClasses];
-            dist[(int)d] = 1;
-            predDistributions.add(dist);
-        }
+        distLength = numClasses;
+        missingDists = null;
+        predDistributions = new double[predClassValues.length * distLength];
+        for (int i = 0; i < numPredictions; i++)
+            predDistributions[i * distLength + (int) predClassValues[i]] = 1;
 
         return true;
     }
@@ -989,70 +1028,113 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
     */
 
     /**
-     *
+     * Returns a copy of the true class values, or null if the prediction info has been cleaned
      */
     public ArrayList<Double> getTrueClassVals() {
-        return trueClassValues;
+        if (trueClassValues == null)
+            return null;
+
+        ArrayList<Double> list = new ArrayList<>(numTrueClassValues);
+        for (int i = 0; i < numTrueClassValues; i++)
+            list.add(trueClassValues[i]);
+        return list;
     }
 
     public double[] getTrueClassValsAsArray(){
-        double[] d=new double[trueClassValues.size()];
-        int i=0;
-        for(double x:trueClassValues)
-            d[i++]=x;
-        return d;
+        return Arrays.copyOf(trueClassValues, numTrueClassValues);
     }
 
     public double getTrueClassValue(int index){
-        return trueClassValues.get(index);
+        checkIndex(index, numTrueClassValues);
+        return trueClassValues[index];
     }
 
+    /**
+     * Returns a copy of the predicted class values, or null if the prediction info has been cleaned
+     */
     public ArrayList<Double> getPredClassVals(){
-        return predClassValues;
+        if (predClassValues == null)
+            return null;
+
+        ArrayList<Double> list = new ArrayList<>(numPredictions);
+        for (int i = 0; i < numPredictions; i++)
+            list.add(predClassValues[i]);
+        return list;
     }
 
     public double[] getPredClassValsAsArray(){
-        double[] d=new double[predClassValues.size()];
-        int i=0;
-        for(double x:predClassValues)
-            d[i++]=x;
-        return d;
+        return Arrays.copyOf(predClassValues, numPredictions);
     }
 
     public double getPredClassValue(int index){
-        return predClassValues.get(index);
+        checkIndex(index, numPredictions);
+        return predClassValues[index];
     }
 
 
+    /**
+     * Returns a copy of the probability distributions, or null if the prediction info has been cleaned.
+     * Predictions stored without a distribution have a null entry
+     */
     public ArrayList<double[]> getProbabilityDistributions() {
-        return predDistributions;
+        if (predDistributions == null)
+            return null;
+
+        ArrayList<double[]> list = new ArrayList<>(numPredictions);
+        for (int i = 0; i < numPredictions; i++)
+            list.add(getProbabilityDistribution(i));
+        return list;
     }
 
     public double[][] getProbabilityDistributionsAsArray() {
-        return predDistributions.toArray(new double[][] {});
+        double[][] dists = new double[numPredictions][];
+        for (int i = 0; i < numPredictions; i++)
+            dists[i] = getProbabilityDistribution(i);
+        return dists;
     }
 
+    /**
+     * Returns a copy of the probability distribution of the i'th prediction, or null if there is no
+     * such prediction or it was stored without a distribution
+     */
     public double[] getProbabilityDistribution(int i){
-       if(i<predDistributions.size())
-            return predDistributions.get(i);
+       if(i<numPredictions && !isDistributionMissing(i))
+            return Arrays.copyOfRange(predDistributions, i * distLength, (i + 1) * distLength);
        return null;
     }
 
+    /**
+     * Returns the probability of the given class for the i'th prediction, without copying the distribution
+     */
+    public double getProbability(int i, int classIndex) {
+        checkIndex(i, numPredictions);
+        if (isDistributionMissing(i))
+            throw new IllegalStateException("No probability distribution stored for prediction " + i);
+        checkIndex(classIndex, distLength);
+        return predDistributions[i * distLength + classIndex];
+    }
 
+
+    /**
+     * Returns a copy of the prediction times, or null if the prediction info has been cleaned
+     */
     public ArrayList<Long> getPredictionTimes() {
-        return predTimes;
+        if (predTimes == null)
+            return null;
+
+        ArrayList<Long> list = new ArrayList<>(numPredictions);
+        for (int i = 0; i < numPredictions; i++)
+            list.add(predTimes[i]);
+        return list;
     }
 
     public long[] getPredictionTimesAsArray() {
-        long[] l=new long[predTimes.size()];
-        int i=0;
-        for(long x:predTimes)
-            l[i++]=x;
-        return l;
+        return Arrays.copyOf(predTimes, numPredictions);
     }
 
     public long getPredictionTime(int index) {
-        return predTimes.get(index);
+        checkIndex(index, numPredictions);
+        return predTimes[index];
     }
 
     public long getPredictionTimeInNanos(int index) {
@@ -1082,6 +1164,86 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
         trueClassValues = null;
         predTimes = null;
         predDescriptions = null;
+        missingDists = null;
+        distLength = -1;
+        numPredictions = 0;
+        numTrueClassValues = 0;
+    }
+
+    private void initPredictionStorage() {
+        initPredictionStorage(16);
+    }
+
+    private void initPredictionStorage(int capacity) {
+        trueClassValues = new double[capacity];
+        numTrueClassValues = 0;
+        predClassValues = new double[capacity];
+        predTimes = new long[capacity];
+        predDescriptions = new ArrayList<>(capacity);
+        numPredictions = 0;
+
+        predDistributions = new double[0];
+        distLength = -1;
+        missingDists = null;
+    }
+
+    /**
+     * Drops the spare capacity left over from growing the columns, once no more predictions are expected
+     */
+    private void trimPredictionStorage() {
+        trueClassValues = Arrays.copyOf(trueClassValues, numTrueClassValues);
+        predClassValues = Arrays.copyOf(predClassValues, numPredictions);
+        predTimes = Arrays.copyOf(predTimes, numPredictions);
+        predDescriptions.trimToSize();
+        if (distLength > 0)
+            predDistributions = Arrays.copyOf(predDistributions, numPredictions * distLength);
+    }
+
+    private static int grownCapacity(int capacity, int minCapacity) {
+        return Math.max(minCapacity, capacity + (capacity >> 1) + 1);
+    }
+
+    private void ensurePredictionCapacity(int minCapacity) {
+        if (minCapacity <= predClassValues.length)
+            return;
+
+        int capacity = grownCapacity(predClassValues.length, minCapacity);
+        predClassValues = Arrays.copyOf(predClassValues, capacity);
+        predTimes = Arrays.copyOf(predTimes, capacity);
+        if (distLength > 0)
+            predDistributions = Arrays.copyOf(predDistributions, capacity * distLength);
+    }
+
+    /**
+     * Stores the distribution of the prediction about to be added at index numPredictions. The
+     * first distribution stored fixes the length of every distribution
+     */
+    private void addDistribution(double[] dist) {
+        if (dist == null) {
+            if (missingDists == null)
+                missingDists = new BitSet();
+            missingDists.set(numPredictions);
+            return;
+        }
+
+        if (distLength < 0) {
+            distLength = dist.length;
+            predDistributions = new double[predClassValues.length * distLength];
+        }
+        else if (dist.length != distLength)
+            throw new RuntimeException("Probability distribution passed has " + dist.length + " values, however "
+                    + "distributions already stored have " + distLength + " values");
+
+        System.arraycopy(dist, 0, predDistributions, numPredictions * distLength, distLength);
+    }
+
+    private boolean isDistributionMissing(int i) {
+        return distLength < 0 || (missingDists != null && missingDists.get(i));
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
     }
 
 
@@ -1113,14 +1275,12 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
      *
      * [true],[pred], ,[dist[0]],...,[dist[c]], ,[predTime], ,[description until end of line, may have commas in it]
      */
-    private boolean instancePredictionFromString(String predLine) throws Exception {
-        String[] split=predLine.split(",");
-
+    private boolean instancePredictionFromString(ResultsLineParser predLine) throws Exception {
         //collect actual/predicted class
-        double trueClassVal=Double.valueOf(split[0].trim());
-        double predClassVal=Double.valueOf(split[1].trim());
+        double trueClassVal=predLine.nextDouble();
+        double predClassVal=predLine.nextDouble();
 
-        if(split.length<3) { //no probabilities, no timing. VERY old files will not have them
+        if(!predLine.hasNonEmptyField()) { //no probabilities, no timing. VERY old files will not have them
             if (printDistMissingWarning && firstTimeDistMissing) {
                 System.out.println("*********");
                 System.out.println("");
@@ -1138,51 +1298,57 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
         }
         //else
         //collect probabilities
-        final int distStartInd = 3; //actual, predicted, space, distStart
+        predLine.skipField(); //actual, predicted, space, distStart
         double[] dist = null;
         if (numClasses < 2) {
-            List<Double> distL = new ArrayList<>();
-            for(int i = distStartInd; i < split.length; i++) {
-                if (split[i].equals(""))
-                    break; //we're at the empty-space-separator between probs and timing
-                else
-                    distL.add(Double.valueOf(split[i].trim()));
+            //read until the empty-space-separator between probs and timing, consuming it
+            dist = new double[4];
+            int numProbs = 0;
+            while (predLine.hasNextField()) {
+                if (predLine.isNextFieldEmpty()) {
+                    predLine.skipField();
+                    break;
+                }
+                if (numProbs == dist.length)
+                    dist = Arrays.copyOf(dist, numProbs * 2);
+                dist[numProbs++] = predLine.nextDouble();
             }
 
-            numClasses = distL.size();
+            numClasses = numProbs;
             assert(numClasses >= 2);
 
-            dist = new double[numClasses];
-            for (int i = 0; i < numClasses; i++)
-                dist[i] = distL.get(i);
+            dist = Arrays.copyOf(dist, numClasses);
         }
         else {
             //we know how many classes there should be, use this as implicit
             //file verification
             dist = new double[numClasses];
             for (int i = 0; i < numClasses; i++) {
-                //now need to offset by 3.
-                dist[i] = Double.valueOf(split[i+distStartInd].trim());
+                if (!predLine.hasNextField())
+                    throw new Exception("Expected " + numClasses + " probabilities in prediction line, found " + i);
+                dist[i] = predLine.nextDouble();
             }
+            if (predLine.hasNextField())
+                predLine.skipField(); //<empty space>
         }
 
         //collect timings
         long predTime = -1;
-        final int timingInd = distStartInd + (numClasses-1) + 1 + 1; //actual, predicted, space, dist, space, timing
-        if (split.length > timingInd)
-            predTime = Long.parseLong(split[timingInd].trim());
+        if (predLine.hasNonEmptyField()) {
+            if (predLine.isNextFieldEmpty())
+                predLine.skipField();
+            else
+                predTime = predLine.nextLong();
+        }
 
         //collect description
+        //no reason currently why the description passed cannot have commas in it,
+        //might be a natural way to separate it in to different parts.
+        //description reall just fills up the remainder of the line.
         String description = "";
-        final int descriptionInd = timingInd + 1 + 1; //actual, predicted, space, dist, space, timing, space, description
-        if (split.length > descriptionInd) {
-            description = split[descriptionInd];
-
-            //no reason currently why the description passed cannot have commas in it,
-            //might be a natural way to separate it in to different parts.
-            //description reall just fills up the remainder of the line.
-            for (int i = descriptionInd+1; i < split.length; i++)
-                description += "," + split[i];
+        if (predLine.hasNextField()) {
+            predLine.skipField(); //<empty space>
+            description = predLine.remainder();
         }
 
 
@@ -1190,18 +1356,21 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
         return trueClassVal==predClassVal;
     }
 
-    private void instancePredictionsFromScanner(Scanner in) throws Exception {
+    private void instancePredictionsFromReader(BufferedReader in) throws Exception {
+        ResultsLineParser parser = new ResultsLineParser();
         double correct = 0;
-        while (in.hasNext()) {
-            String line = in.nextLine();
+        String line;
+        while ((line = in.readLine()) != null) {
             //may be trailing empty lines at the end of the file
-            if (line == null || line.equals(""))
+            if (line.trim().isEmpty())
                 break;
 
-            if (instancePredictionFromString(line))
+            parser.reset(line);
+            if (instancePredictionFromString(parser))
                 correct++;
         }
 
+        trimPredictionStorage();
         acc = correct / numInstances;
     }
 
@@ -1211,17 +1380,17 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
     private String instancePredictionToString(int i) {
         StringBuilder sb = new StringBuilder();
 
-        sb.append(trueClassValues.get(i).intValue()).append(",");
-        sb.append(predClassValues.get(i).intValue());
+        sb.append((int) trueClassValues[i]).append(",");
+        sb.append((int) predClassValues[i]);
 
         //probs
         sb.append(","); //<empty space>
-        double[] probs=predDistributions.get(i);
-        for(double d:probs)
-            sb.append(",").append(GenericTools.RESULTS_DECIMAL_FORMAT.format(d));
+        if (!isDistributionMissing(i))
+            for (int c = i * distLength; c < (i + 1) * distLength; c++)
+                sb.append(",").append(GenericTools.RESULTS_DECIMAL_FORMAT.format(predDistributions[c]));
 
         //timing
-        sb.append(",,").append(predTimes.get(i)); //<empty space>, timing
+        sb.append(",,").append(predTimes[i]); //<empty space>, timing
 
         //description
         sb.append(",,").append(predDescriptions.get(i)); //<empty space>, description
@@ -1233,10 +1402,10 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
 
         //todo extra verification
 
-        if (trueClassValues == null || trueClassValues.size() == 0 || trueClassValues.get(0) == -1)
+        if (trueClassValues == null || numTrueClassValues == 0 || trueClassValues[0] == -1)
             throw new Exception("No true class value stored, call finaliseResults(double[] trueClassVal)");
 
-        if(numInstances()>0 &&(predDistributions.size()==trueClassValues.size()&& predDistributions.size()==predClassValues.size())){
+        if(numInstances()>0 && numTrueClassValues==numPredictions){
             StringBuilder sb=new StringBuilder("");
 
             for(int i=0;i<numInstances();i++){
@@ -1356,6 +1525,159 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
         }
     }
 
+    /**
+     * Writes the full results (as writeFullResultsToFile(...) would) in a binary, column-oriented format.
+     * These are several times faster to read back than the text format and lose no precision in the
+     * probabilities, but are not human readable. Read back in via loadResultsFromFile(path), the path
+     * should end with BINARY_FILE_EXTENSION.
+     *
+     * Layout, big endian, strings written as an int number of bytes followed by the UTF-8 bytes:
+     *      int magic, int version
+     *      the three meta info lines, as strings exactly as written in the text format
+     *      int numPredictions, int distLength (-1 if no distributions are stored)
+     *      double[numPredictions] true class values
+     *      double[numPredictions] predicted class values
+     *      long[numPredictions] prediction times
+     *      double[numPredictions*distLength] probability distributions, row major, if distLength > 0
+     *      int numWords, long[numWords] bitset of the predictions stored without a distribution
+     *      numPredictions strings, the prediction descriptions
+     *
+     * The file is written to a temporary file first and then moved into place, so concurrent
+     * readers never see a partially written file.
+     */
+    public void writeBinaryResultsToFile(String path) throws Exception {
+        finaliseResults();
+        if (predClassValues == null || numPredictions == 0)
+            throw new Exception("No predictions stored, cannot write binary results file " + path);
+        if (numTrueClassValues != numPredictions)
+            throw new Exception("No true class value stored for every prediction, call finaliseResults(double[] trueClassVal)");
+        fileType = FileType.PREDICTIONS;
+
+        byte[][] metaLines = {
+            generateFirstLine().getBytes(StandardCharsets.UTF_8),
+            generateSecondLine().getBytes(StandardCharsets.UTF_8),
+            generateThirdLine().getBytes(StandardCharsets.UTF_8)
+        };
+        byte[][] descriptions = new byte[numPredictions][];
+        for (int i = 0; i < numPredictions; i++)
+            descriptions[i] = predDescriptions.get(i).getBytes(StandardCharsets.UTF_8);
+        long[] missingWords = missingDists == null ? new long[0] : missingDists.toLongArray();
+        int numProbs = distLength > 0 ? numPredictions * distLength : 0;
+
+        long size = 4 + 4 + 4 + 4 + 4 + 8L * (3L * numPredictions + numProbs) + 8L * missingWords.length;
+        for (byte[] line : metaLines)
+            size += 4 + line.length;
+        for (byte[] description : descriptions)
+            size += 4 + description.length;
+        if (size > Integer.MAX_VALUE)
+            throw new Exception("Results too large to write as a single binary results file: " + size + " bytes");
+
+        ByteBuffer buf = ByteBuffer.allocate((int) size);
+        buf.putInt(BINARY_MAGIC).putInt(BINARY_VERSION);
+        for (byte[] line : metaLines)
+            buf.putInt(line.length).put(line);
+        buf.putInt(numPredictions).putInt(distLength);
+
+        buf.asDoubleBuffer().put(trueClassValues, 0, numPredictions);
+        buf.position(buf.position() + 8 * numPredictions);
+        buf.asDoubleBuffer().put(predClassValues, 0, numPredictions);
+        buf.position(buf.position() + 8 * numPredictions);
+        buf.asLongBuffer().put(predTimes, 0, numPredictions);
+        buf.position(buf.position() + 8 * numPredictions);
+        buf.asDoubleBuffer().put(predDistributions, 0, numProbs);
+        buf.position(buf.position() + 8 * numProbs);
+
+        buf.putInt(missingWords.length);
+        buf.asLongBuffer().put(missingWords);
+        buf.position(buf.position() + 8 * missingWords.length);
+
+        for (byte[] description : descriptions)
+            buf.putInt(description.length).put(description);
+        buf.flip();
+
+        Path target = new File(path).getAbsoluteFile().toPath();
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buf.hasRemaining())
+                    channel.write(buf);
+            }
+
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void loadResultsFromBinaryFile(File f, boolean loadPredictions) throws Exception {
+        ByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            buf = ByteBuffer.allocate((int) channel.size());
+            while (buf.hasRemaining() && channel.read(buf) >= 0) { }
+        }
+        buf.flip();
+
+        if (buf.remaining() < 8 || buf.getInt() != BINARY_MAGIC)
+            throw new Exception("File " + f + " is not a binary results file");
+        int version = buf.getInt();
+        if (version != BINARY_VERSION)
+            throw new Exception("Binary results file " + f + " has unsupported version " + version);
+
+        parseFirstLine(getBinaryString(buf));
+        parseSecondLine(getBinaryString(buf));
+        parseThirdLine(getBinaryString(buf));
+
+        if (!loadPredictions)
+            return;
+
+        int n = buf.getInt();
+        int storedDistLength = buf.getInt();
+        initPredictionStorage(n);
+
+        buf.asDoubleBuffer().get(trueClassValues, 0, n);
+        buf.position(buf.position() + 8 * n);
+        buf.asDoubleBuffer().get(predClassValues, 0, n);
+        buf.position(buf.position() + 8 * n);
+        buf.asLongBuffer().get(predTimes, 0, n);
+        buf.position(buf.position() + 8 * n);
+        if (storedDistLength >= 0) {
+            distLength = storedDistLength;
+            predDistributions = new double[n * distLength];
+            buf.asDoubleBuffer().get(predDistributions);
+            buf.position(buf.position() + 8 * predDistributions.length);
+        }
+
+        long[] missingWords = new long[buf.getInt()];
+        buf.asLongBuffer().get(missingWords);
+        buf.position(buf.position() + 8 * missingWords.length);
+        if (missingWords.length > 0)
+            missingDists = BitSet.valueOf(missingWords);
+
+        for (int i = 0; i < n; i++)
+            predDescriptions.add(getBinaryString(buf));
+
+        numPredictions = n;
+        numTrueClassValues = n;
+        numInstances = n;
+
+        double correct = 0;
+        for (int i = 0; i < n; i++)
+            if (trueClassValues[i] == predClassValues[i])
+                correct++;
+        acc = correct / n;
+    }
+
+    private static String getBinaryString(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
     private void parseFirstLine(String line) {
         String[] parts = line.split(",");
         if (parts.length == 0)
@@ -1442,7 +1764,7 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
             buildTime = (long)x;
         }
         if (parts.length > 2) {
-            double x = Double.parseDouble(parts[1]);
+            double x = Double.parseDouble(parts[2]);
             testTime  = (long)x;
         }
         if (parts.length > 3)
@@ -1482,14 +1804,21 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
     }
 
     public void loadResultsFromFile(String path) throws FileNotFoundException, Exception {
+        loadResultsFromFile(path, true);
+    }
+
+    /**
+     * Loads the results file at the given path into this object. If loadPredictions is false, only the
+     * three meta info lines are read and the rest of the file is never touched. The accuracy, timings,
+     * parameters etc. are available as normal, however no predictions are stored and so metrics that are
+     * calculated from them (findAllStats() etc.) cannot be found. Intended for e.g. picking the best of
+     * many parameter sets by accuracy, where reading every prediction of every file is wasted effort.
+     */
+    public void loadResultsFromFile(String path, boolean loadPredictions) throws FileNotFoundException, Exception {
 
         try {
             //init
-            trueClassValues = new ArrayList<>();
-            predClassValues = new ArrayList<>();
-            predDistributions = new ArrayList<>();
-            predTimes = new ArrayList<>();
-            predDescriptions = new ArrayList<>();
+            initPredictionStorage();
             numInstances = 0;
             acc = -1;
             buildTime = -1;
@@ -1501,43 +1830,56 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
             if (!(f.exists() && f.length() > 0))
                 throw new FileNotFoundException("File " + path + " NOT FOUND");
 
-            Scanner inf = new Scanner(f);
-
-            //parse meta infos
-            parseFirstLine(inf.nextLine());
-            parseSecondLine(inf.nextLine());
-            double reportedTestAcc = parseThirdLine(inf.nextLine());
-
-            //fileType was read in from first line.
-            switch (fileType) {
-                case PREDICTIONS: {
-                    //have all meta info, start reading predictions or metrics
-                    instancePredictionsFromScanner(inf);
-
-                    //acts as a basic form of verification, does the acc reported on line 3 align with
-                    //the acc calculated while reading predictions
-                    double eps = 1.e-8;
-                    if (Math.abs(reportedTestAcc - acc) > eps) {
-                        throw new ArithmeticException("Calculated accuracy (" + acc + ") differs from written accuracy (" + reportedTestAcc + ") "
-                                + "by more than eps (" + eps + "). File = " + path + ". numinstances = " + numInstances + ". numClasses = " + numClasses);
-                    }
+            if (path.endsWith(BINARY_FILE_EXTENSION)) {
+                loadResultsFromBinaryFile(f, loadPredictions);
+                finalised = true;
+                return;
+            }
 
-                    if (predDistributions == null || predDistributions.isEmpty() || predDistributions.get(0) == null) {
-                        if (printDistMissingWarning)
-                            System.out.println("Probability distributions missing from file: " + path);
+            try (BufferedReader inf = new BufferedReader(new FileReader(f), 1 << 16)) {
+                //parse meta infos
+                parseFirstLine(readMetaInfoLine(inf, path));
+                parseSecondLine(readMetaInfoLine(inf, path));
+                double reportedTestAcc = parseThirdLine(readMetaInfoLine(inf, path));
+
+                //fileType was read in from first line.
+                switch (fileType) {
+                    case PREDICTIONS: {
+                        if (!loadPredictions)
+                            break;
+
+                        //have all meta info, start reading predictions or metrics.
+                        //adding the predictions accumulates the test time, keep the one written on line 3
+                        long reportedTestTime = testTime;
+                        testTime = -1;
+                        instancePredictionsFromReader(inf);
+                        if (reportedTestTime != -1)
+                            testTime = reportedTestTime;
+
+                        //acts as a basic form of verification, does the acc reported on line 3 align with
+                        //the acc calculated while reading predictions
+                        double eps = 1.e-8;
+                        if (Math.abs(reportedTestAcc - acc) > eps) {
+                            throw new ArithmeticException("Calculated accuracy (" + acc + ") differs from written accuracy (" + reportedTestAcc + ") "
+                                    + "by more than eps (" + eps + "). File = " + path + ". numinstances = " + numInstances + ". numClasses = " + numClasses);
+                        }
+
+                        if (!hasProbabilityDistributionInformation()) {
+                            if (printDistMissingWarning)
+                                System.out.println("Probability distributions missing from file: " + path);
+                        }
+
+                        break;
                     }
-
-                    break;
+                    case METRICS:
+                        allPerformanceMetricsFromScanner(new Scanner(inf));
+                        break;
+                    case COMPACT:
+                        throw new UnsupportedOperationException("COMPACT file reading not yet supported");
                 }
-                case METRICS:
-                    allPerformanceMetricsFromScanner(inf);
-                    break;
-                case COMPACT:
-                    throw new UnsupportedOperationException("COMPACT file reading not yet supported");
             }
 
             finalised = true;
-            inf.close();
         }
         catch (FileNotFoundException fnf) {
             if (printOnFailureToLoad)
@@ -1551,6 +1893,13 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
         }
     }
 
+    private static String readMetaInfoLine(BufferedReader in, String path) throws IOException {
+        String line = in.readLine();
+        if (line == null)
+            throw new NoSuchElementException("File " + path + " ended before all three meta info lines were read");
+        return line;
+    }
+
 
 
 
@@ -1589,8 +1938,8 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
         confusionMatrix=buildConfusionMatrix();
 
         countPerClass=new double[confusionMatrix.length];
-        for(int i=0;i<trueClassValues.size();i++)
-            countPerClass[trueClassValues.get(i).intValue()]++;
+        for(int i=0;i<numTrueClassValues;i++)
+            countPerClass[(int) trueClassValues[i]]++;
 
         if (acc < 0)
             calculateAcc();
@@ -1600,13 +1949,13 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
         f1=findF1(confusionMatrix); //also handles spec/sens/prec/recall in the process of finding f1
 
         //need probabilities. very old files that have been read in may not have them.
-        if (predDistributions != null && !predDistributions.isEmpty() && predDistributions.get(0) != null ) {
+        if (hasProbabilityDistributionInformation()) {
             nll=findNLL();
             meanAUROC=findMeanAUROC();
         }
 
         //timing
-        medianPredTime=findMedianPredTime(predTimes);
+        medianPredTime=findMedianPredTime(predTimes, numPredictions);
 
         //early classification
         //earliness=findEarliness();
@@ -1641,9 +1990,9 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
     */
     private double[][] buildConfusionMatrix() {
         double[][] matrix = new double[numClasses][numClasses];
-        for (int i = 0; i < predClassValues.size(); ++i){
-            double actual=trueClassValues.get(i);
-            double predicted=predClassValues.get(i);
+        for (int i = 0; i < numPredictions; ++i){
+            double actual=trueClassValues[i];
+            double predicted=predClassValues[i];
             ++matrix[(int)actual][(int)predicted];
         }
         return matrix;
@@ -1655,16 +2004,15 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
      */
     public double findNLL(){
         double nll=0;
-        for(int i=0;i<trueClassValues.size();i++){
-            double[] dist=getProbabilityDistribution(i);
-            int trueClass = trueClassValues.get(i).intValue();
+        for(int i=0;i<numTrueClassValues;i++){
+            double prob=getProbability(i, (int) trueClassValues[i]);
 
-            if(dist[trueClass]==0)
+            if(prob==0)
                 nll+=NLL_PENALTY;
             else
-                nll+=Math.log(dist[trueClass])/Math.log(2);//Log 2
+                nll+=Math.log(prob)/Math.log(2);//Log 2
         }
-        return -nll/trueClassValues.size();
+        return -nll/numTrueClassValues;
     }
 
     public double findMeanAUROC(){
@@ -1676,7 +2024,11 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
                 a=findAUROC(1);
  */       }
         else{
-            double[] classDist = InstanceTools.findClassDistributions(trueClassValues, numClasses);
+            double[] classDist = new double[numClasses];
+            for (int i = 0; i < numTrueClassValues; i++)
+                classDist[(int) trueClassValues[i]]++;
+            for (int i = 0; i < numClasses; i++)
+                classDist[i] /= numTrueClassValues;
             for(int i=0;i<numClasses;i++){
                 a+=findAUROC(i) * classDist[i];
             }
@@ -1828,12 +2180,12 @@ public class ClassifierResults extends EstimatorResults implements DebugPrinting
         ArrayList<Pair> p=new ArrayList<>();
         double nosPositive=0,nosNegative;
         for(int i=0;i<numInstances;i++){
-            Pair temp=new Pair(predDistributions.get(i)[c],trueClassValues.get(i));
-            if(c==trueClassValues.get(i))
+            Pair temp=new Pair(getProbability(i, c),trueClassValues[i]);
+            if(c==trueClassValues[i])
                 nosPositive++;
             p.add(temp);
         }
-        nosNegative=trueClassValues.size()-nosPositive;
+        nosNegative=numTrueClassValues-nosPositive;
         Collections.sort(p);
 
         /* http://www.cs.waikato.ac.nz/~remco/roc.pdf
@@ -1,6 +1,7 @@
 package evaluation.storage;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -231,6 +232,17 @@ public abstract class EstimatorResults {
             return copy.get(mid);
     }
 
+    protected long findMedianPredTime(long[] predTimes, int numPredTimes) {
+        long[] copy = Arrays.copyOf(predTimes, numPredTimes);
+        Arrays.sort(copy);
+
+        int mid = copy.length/2;
+        if (copy.length % 2 == 0)
+            return (copy[mid] + copy[mid-1]) / 2;
+        else
+            return copy[mid];
+    }
+
     public abstract double getAcc();
 
     public abstract void cleanPredictionInfo();
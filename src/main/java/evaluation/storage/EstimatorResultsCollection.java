@@ -20,10 +20,14 @@ import experiments.data.DatasetLists;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import utilities.DebugPrinting;
 import utilities.ErrorReport;
+import utilities.ThreadingUtilities;
 
 /**
  * Essentially a loader for many results over a given set of estimators, datasets, folds, and splits
@@ -131,6 +135,25 @@ public class EstimatorResultsCollection implements DebugPrinting {
      * Defaults to false
      */
     private boolean ignoreMissingDistributions = false;
+
+    /**
+     * The number of threads used to read results files concurrently in load(). Reading is mostly
+     * I/O bound, so this bounds the number of files being read at once rather than needing to match
+     * the number of cores. Results, missing file reports etc. are identical to reading sequentially
+     * 
+     * Defaults to 1, i.e. files are read one at a time on the calling thread
+     */
+    private int numLoadingThreads = 1;
+
+    /**
+     * If true (and the results type is classification), a binary copy of each results file is read
+     * instead of the text file where one exists that is at least as new as the text file. Where there is
+     * no up to date binary copy, the text file is read and a binary copy written next to it, such that
+     * subsequent loads of the same results are faster. See ClassifierResults.writeBinaryResultsToFile(...)
+     * 
+     * Defaults to false
+     */
+    private boolean useBinaryResults = false;
     
     public EstimatorResultsCollection() {
         
@@ -163,6 +186,8 @@ public class EstimatorResultsCollection implements DebugPrinting {
         this.cleanResults = other.cleanResults;
         this.allowMissingResults = other.allowMissingResults;
         this.ignoreMissingDistributions = other.ignoreMissingDistributions;
+        this.numLoadingThreads = other.numLoadingThreads;
+        this.useBinaryResults = other.useBinaryResults;
     }
 
     /**
@@ -372,6 +397,28 @@ public class EstimatorResultsCollection implements DebugPrinting {
     public void setIgnoreMissingDistributions(boolean ignoreMissingDistributions) {
         this.ignoreMissingDistributions = ignoreMissingDistributions;
     }
+
+    /**
+     * the number of threads used to read results files concurrently in load(). reading is mostly
+     * I/O bound, so this bounds the number of files being read at once
+     * 
+     * defaults to 1
+     */
+    public void setNumLoadingThreads(int numLoadingThreads) {
+        if (numLoadingThreads < 1)
+            throw new IllegalArgumentException("numLoadingThreads must be at least 1: " + numLoadingThreads);
+        this.numLoadingThreads = numLoadingThreads;
+    }
+
+    /**
+     * if true, up to date binary copies of classification results files are read instead of the
+     * text files, and binary copies are written for any text files that have to be read
+     * 
+     * defaults to false
+     */
+    public void setUseBinaryResults(boolean useBinaryResults) {
+        this.useBinaryResults = useBinaryResults;
+    }
     
     public int getNumDatasets() {
         return numDatasets;
@@ -451,6 +498,14 @@ public class EstimatorResultsCollection implements DebugPrinting {
     public boolean getIgnoreMissingDistributions() {
         return ignoreMissingDistributions;
     }
+
+    public int getNumLoadingThreads() {
+        return numLoadingThreads;
+    }
+
+    public boolean getUseBinaryResults() {
+        return useBinaryResults;
+    }
     
     
     public int getTotalNumResultsIgnoreMissing() { 
@@ -561,10 +616,112 @@ public class EstimatorResultsCollection implements DebugPrinting {
         }
     }
     
+    /**
+     * Loads the results file at {pathWithoutExtension}.csv, or its binary copy if using binary results
+     */
+    private EstimatorResults loadEstimatorFile(String pathWithoutExtension) throws FileNotFoundException, Exception {
+        String textPath = pathWithoutExtension + ".csv";
+        if (!useBinaryResults || resultsType != ResultsType.CLASSIFICATION)
+            return loadEstimator(textPath);
+
+        File textFile = new File(textPath);
+        File binaryFile = new File(pathWithoutExtension + ClassifierResults.BINARY_FILE_EXTENSION);
+        if (ClassifierResults.exists(binaryFile) && (!textFile.exists() || binaryFile.lastModified() >= textFile.lastModified()))
+            return loadEstimator(binaryFile.getPath());
+
+        ClassifierResults results = (ClassifierResults) loadEstimator(textPath);
+        if (results.numInstances() > 0) {
+            try {
+                results.writeBinaryResultsToFile(binaryFile.getPath());
+            } catch (Exception e) {
+                //e.g. no write permission on the results directory, the text file can still be read next time
+                printlnDebug("Could not write binary copy of " + textPath + ": " + e);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * A single results file read in and processed, ready to be stored. Kept separate from the storing
+     * of it so that files can be read concurrently while reporting happens in a fixed order
+     */
+    private static class LoadedResults {
+        EstimatorResults results;
+        boolean missingDistsPopulated;
+    }
+
+    private LoadedResults loadResults(String readPath, String estimatorStorage, String datasetStorage, String split, int fold) throws FileNotFoundException, Exception {
+        LoadedResults loaded = new LoadedResults();
+        String pathPrefix = readPath + estimatorStorage + "/Predictions/" + datasetStorage + "/" + split;
+
+        //Look for a Resample first (new name), else look for a Fold (old name).
+        try {
+            loaded.results = loadEstimatorFile(pathPrefix + "Resample" + fold);
+        }
+        catch (FileNotFoundException ex) {
+            loaded.results = loadEstimatorFile(pathPrefix + "Fold" + fold);
+        }
+
+        //This is only an issue for old ClassifierResults files, we should probably stop
+        //accepting those and just alter the results files if there are any left.
+        if (ignoreMissingDistributions && loaded.results instanceof ClassifierResults)
+            loaded.missingDistsPopulated = ((ClassifierResults)loaded.results).populateMissingDists();
+
+        loaded.results.findAllStatsOnce();
+        if (cleanResults)
+            loaded.results.cleanPredictionInfo();
+
+        return loaded;
+    }
+
+    private String readPathFor(int estimatorIndex) {
+        return resultsFilesDirectories.length == 1 ? resultsFilesDirectories[0] : resultsFilesDirectories[estimatorIndex];
+    }
+
+    /**
+     * Submits the reading of every results file to the executor, in the same order that load() visits them,
+     * such that the file for [split][estimator][dataset][fold] is at index loadIndex(c, d, f, s)
+     */
+    private List<Future<LoadedResults>> submitLoads(ExecutorService executor) {
+        List<Future<LoadedResults>> futures = new ArrayList<>(getTotalNumResultsIgnoreMissing());
+        for (int c = 0; c < numEstimators; c++) {
+            final String readPath = readPathFor(c);
+            final String estimatorStorage = estimatorNamesInStorage[c];
+            for (int d = 0; d < numDatasets; d++) {
+                final String datasetStorage = datasetNamesInStorage[d];
+                for (int f = 0; f < numFolds; f++) {
+                    final int fold = folds[f];
+                    for (int s = 0; s < numSplits; s++) {
+                        final String split = splits[s];
+                        futures.add(executor.submit(() -> loadResults(readPath, estimatorStorage, datasetStorage, split, fold)));
+                    }
+                }
+            }
+        }
+        return futures;
+    }
+
+    private int loadIndex(int estimatorIndex, int datasetIndex, int foldIndex, int splitIndex) {
+        return ((estimatorIndex * numDatasets + datasetIndex) * numFolds + foldIndex) * numSplits + splitIndex;
+    }
+
+    private static LoadedResults getLoaded(Future<LoadedResults> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception)
+                throw (Exception) e.getCause();
+            throw e;
+        }
+    }
+
     /**
      * Loads the splits, estimators, datasets, and folds specified from disk into memory
      * subject to the options set. 
      * 
+     * If numLoadingThreads is greater than one, files are read concurrently, however the results
+     * and any reporting of missing files are the same as when reading them one at a time
+     * 
      * @return the EstimatorResults[splits][estimators][datasets][folds] loaded in, also accessible after the call with retrieveResults()
      * @throws Exception on any number of missing file if allowMissingResults is false
      */
@@ -585,6 +742,11 @@ public class EstimatorResultsCollection implements DebugPrinting {
         estimatorsWithMissingResults = new HashSet<>(estimatorNamesInOutput.length);
         datasetsWithMissingResults = new HashSet<>(datasetNamesInOutput.length);
         foldsWithMissingResults = new HashSet<>(folds.length);
+
+        //when reading concurrently, every file is submitted up front and the results are
+        //collected below in the same order they would otherwise have been read in
+        ExecutorService executor = numLoadingThreads > 1 ? ThreadingUtilities.buildExecutorService(numLoadingThreads) : null;
+        List<Future<LoadedResults>> pendingLoads = executor == null ? null : submitLoads(executor);
         
         for (int c = 0; c < numEstimators; c++) {
             String estimatorStorage = estimatorNamesInStorage[c];
@@ -608,27 +770,17 @@ public class EstimatorResultsCollection implements DebugPrinting {
                             String split = splits[s];     
                             printlnDebug("\t\t\t" + split + " reading");
 
-                            String readPath = resultsFilesDirectories.length == 1 ? resultsFilesDirectories[0] : resultsFilesDirectories[c];
+                            String readPath = readPathFor(c);
                             try {
-                                //Look for a Resample first (new name), else look for a Fold (old name).
-                                try {
-                                    allResults[s][c][d][f] = loadEstimator(readPath + estimatorStorage +
-                                            "/Predictions/" + datasetStorage + "/" + split + "Resample" + fold + ".csv");
-                                }
-                                catch (FileNotFoundException ex) {
-                                    allResults[s][c][d][f] = loadEstimator(readPath + estimatorStorage +
-                                            "/Predictions/" + datasetStorage + "/" + split + "Fold" + fold + ".csv");
-                                }
+                                LoadedResults loaded = pendingLoads == null
+                                        ? loadResults(readPath, estimatorStorage, datasetStorage, split, fold)
+                                        : getLoaded(pendingLoads.get(loadIndex(c, d, f, s)));
+                                allResults[s][c][d][f] = loaded.results;
 
-                                //This is only an issue for old ClassifierResults files, we should probably stop
-                                //accepting those and just alter the results files if there are any left.
-                                if (ignoreMissingDistributions && allResults[s][c][d][f] instanceof ClassifierResults) {
-                                    boolean wasMissing = ((ClassifierResults)allResults[s][c][d][f]).populateMissingDists();
-                                    if (wasMissing && ignoringDistsFirstTime) {
-                                        System.out.println("---------Probability distributions missing, but ignored: " 
-                                                + estimatorStorage + " - " + datasetStorage + " - " + f + " - train");
-                                        ignoringDistsFirstTime = false;
-                                    }
+                                if (loaded.missingDistsPopulated && ignoringDistsFirstTime) {
+                                    System.out.println("---------Probability distributions missing, but ignored: " 
+                                            + estimatorStorage + " - " + datasetStorage + " - " + f + " - train");
+                                    ignoringDistsFirstTime = false;
                                 }
 
                                 if (printOnEstimatorNameMismatch && !allResults[s][c][d][f].estimatorName.equalsIgnoreCase(estimatorNamesInStorage[c])){
@@ -636,10 +788,6 @@ public class EstimatorResultsCollection implements DebugPrinting {
                                             + "\" is different from input name \"" + estimatorNamesInStorage[c] +
                                             "\" on dataset \"" + datasetStorage + "\".");
                                 }
-
-                                allResults[s][c][d][f].findAllStatsOnce();
-                                if (cleanResults)
-                                    allResults[s][c][d][f].cleanPredictionInfo();
                             } catch (FileNotFoundException ex) {
                                 String fileName = readPath + estimatorStorage + "/Predictions/" + datasetStorage + "/"
                                         + split + "(Resample/Fold)" + fold + ".csv";
@@ -678,6 +826,9 @@ public class EstimatorResultsCollection implements DebugPrinting {
             
             numMissingResults += estimatorFnfs;
         }
+
+        if (executor != null)
+            ThreadingUtilities.shutdownExecutor(executor);
         
         masterError.throwIfErrors();
         
@@ -0,0 +1,184 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package evaluation.storage;
+
+/**
+ * Reads the comma separated fields of a single line of a results file in place, without splitting the line
+ * into an array of substrings. Numeric fields are parsed straight from the characters of the line.
+ *
+ * Plain decimals with at most 15 significant digits (as written by GenericTools.RESULTS_DECIMAL_FORMAT) are
+ * converted with a single exact division, which is correctly rounded and so gives the same value as
+ * Double.parseDouble. Anything else (exponents, NaN, very long mantissas) falls back to Double.parseDouble.
+ *
+ * Fields are trimmed of surrounding whitespace before parsing, as String.trim() would.
+ */
+class ResultsLineParser {
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private String line;
+
+    /**
+     * Start of the next field. Once the last field has been consumed this is line.length()+1
+     */
+    private int pos;
+
+    void reset(String line) {
+        this.line = line;
+        this.pos = 0;
+    }
+
+    /**
+     * Whether there is another field on the line, which may be empty
+     */
+    boolean hasNextField() {
+        return pos <= line.length();
+    }
+
+    /**
+     * Whether any of the remaining fields are non-empty. String.split(",") drops trailing empty
+     * fields, so this is equivalent to asking whether split would have returned any more values
+     */
+    boolean hasNonEmptyField() {
+        for (int i = pos; i < line.length(); i++)
+            if (line.charAt(i) != ',')
+                return true;
+        return false;
+    }
+
+    /**
+     * Whether the next field is empty. Must only be called if there is a next field.
+     */
+    boolean isNextFieldEmpty() {
+        return fieldEnd() == pos;
+    }
+
+    void skipField() {
+        pos = fieldEnd() + 1;
+    }
+
+    String nextField() {
+        final int end = fieldEnd();
+        final String field = line.substring(pos, end);
+        pos = end + 1;
+        return field;
+    }
+
+    double nextDouble() {
+        final int end = fieldEnd();
+        final double value = parseDouble(line, pos, end);
+        pos = end + 1;
+        return value;
+    }
+
+    long nextLong() {
+        final int end = fieldEnd();
+        final long value = parseLong(line, pos, end);
+        pos = end + 1;
+        return value;
+    }
+
+    /**
+     * The rest of the line from the next field onwards, commas included, with any trailing commas
+     * removed as String.split(",") would. Returns the empty string if there are no fields left.
+     */
+    String remainder() {
+        if (!hasNextField())
+            return "";
+
+        int end = line.length();
+        while (end > pos && line.charAt(end - 1) == ',')
+            end--;
+
+        final String rest = line.substring(pos, end);
+        pos = line.length() + 1;
+        return rest;
+    }
+
+    private int fieldEnd() {
+        final int end = line.indexOf(',', pos);
+        return end < 0 ? line.length() : end;
+    }
+
+    static double parseDouble(String str, int start, int end) {
+        while (start < end && str.charAt(start) <= ' ')
+            start++;
+        while (end > start && str.charAt(end - 1) <= ' ')
+            end--;
+
+        int i = start;
+        final boolean negative = i < end && str.charAt(i) == '-';
+        if (negative)
+            i++;
+
+        long mantissa = 0;
+        int numSignificantDigits = 0;
+        int numFractionDigits = 0;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+        for (; i < end; i++) {
+            final char c = str.charAt(i);
+            if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa > 0 && ++numSignificantDigits > 15)
+                    return Double.parseDouble(str.substring(start, end));
+                if (seenPoint)
+                    numFractionDigits++;
+            }
+            else if (c == '.' && !seenPoint)
+                seenPoint = true;
+            else
+                return Double.parseDouble(str.substring(start, end));
+        }
+
+        if (!seenDigit || numFractionDigits >= POWERS_OF_TEN.length)
+            return Double.parseDouble(str.substring(start, end));
+
+        //both operands are exactly representable, so the division is correctly rounded
+        final double value = mantissa / POWERS_OF_TEN[numFractionDigits];
+        return negative ? -value : value;
+    }
+
+    static long parseLong(String str, int start, int end) {
+        while (start < end && str.charAt(start) <= ' ')
+            start++;
+        while (end > start && str.charAt(end - 1) <= ' ')
+            end--;
+
+        int i = start;
+        final boolean negative = i < end && str.charAt(i) == '-';
+        if (negative)
+            i++;
+
+        //anything unusual, or long enough to possibly overflow, is left to Long.parseLong
+        if (i == end || end - i > 18)
+            return Long.parseLong(str.substring(start, end));
+
+        long value = 0;
+        for (; i < end; i++) {
+            final char c = str.charAt(i);
+            if (c < '0' || c > '9')
+                return Long.parseLong(str.substring(start, end));
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package evaluation.tuning;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import weka.core.Instances;
+
+/**
+ * Bookkeeping for asynchronous successive halving (ASHA, Li et al. 2020) of parameter sets.
+ *
+ * Parameter sets are first evaluated on a small stratified sample of the train data, the bottom rung.
+ * Whenever there is room to evaluate another parameter set, the best parameter set of any rung which is in the
+ * top 1/reductionFactor of the evaluations completed on that rung, and not yet promoted, is promoted to be evaluated
+ * on reductionFactor times as much data on the next rung up. The highest rung holding one is promoted first, and
+ * a new parameter set is only started on the bottom rung if there is nothing to promote. The top rung is the full
+ * train data. Parameter sets which never make it into the top of their rung are therefore stopped early, without
+ * waiting for the rest of their rung to complete as synchronous successive halving would.
+ *
+ * The samples of the rungs are nested, each is a prefix of the same stratified shuffle of the train data.
+ *
+ * Not thread safe, to be driven from a single thread which hands out the evaluations.
+ */
+public class SuccessiveHalving {
+
+    private final int reductionFactor;
+    private final double[] proportions;
+
+    //completed evaluations per rung
+    private final List<List<Evaluation>> rungs;
+    //parameter set ids promoted (or being promoted) out of each rung
+    private final List<Set<Integer>> promoted;
+
+    /**
+     * @param reductionFactor the proportion of the parameter sets of each rung promoted to the next is 1/reductionFactor,
+     *                        and each rung has reductionFactor times the data of the one below, must be at least 2
+     * @param minTrainProportion the (approximate) proportion of the train data used by the bottom rung, in (0,1]
+     */
+    public SuccessiveHalving(int reductionFactor, double minTrainProportion) {
+        if (reductionFactor < 2)
+            throw new IllegalArgumentException("reductionFactor must be at least 2: " + reductionFactor);
+        if (minTrainProportion <= 0 || minTrainProportion > 1)
+            throw new IllegalArgumentException("minTrainProportion must be in (0,1]: " + minTrainProportion);
+
+        this.reductionFactor = reductionFactor;
+
+        int numHalvings = (int) Math.round(Math.log(1.0 / minTrainProportion) / Math.log(reductionFactor));
+        proportions = new double[numHalvings + 1];
+        for (int rung = 0; rung <= numHalvings; rung++)
+            proportions[rung] = Math.pow(reductionFactor, rung - numHalvings);
+
+        rungs = new ArrayList<>();
+        promoted = new ArrayList<>();
+        for (int rung = 0; rung <= numHalvings; rung++) {
+            rungs.add(new ArrayList<>());
+            promoted.add(new HashSet<>());
+        }
+    }
+
+    public int getReductionFactor() {
+        return reductionFactor;
+    }
+
+    public int numRungs() {
+        return proportions.length;
+    }
+
+    /**
+     * @return the rung evaluated on the full train data
+     */
+    public int topRung() {
+        return proportions.length - 1;
+    }
+
+    /**
+     * @return proportion of the train data the rung is evaluated on
+     */
+    public double getTrainProportion(int rung) {
+        return proportions[rung];
+    }
+
+    /**
+     * Records a completed evaluation.
+     */
+    public void record(int paraID, int rung, double score) {
+        rungs.get(rung).add(new Evaluation(paraID, score));
+        //in case it was loaded from file, rather than promoted here
+        for (int lower = 0; lower < rung; lower++)
+            promoted.get(lower).add(paraID);
+    }
+
+    /**
+     * Finds the next parameter set to promote, if any, and marks it as promoted.
+     *
+     * @return {paraID, rung to evaluate it on}, or null if there is nothing to promote
+     */
+    public int[] nextPromotion() {
+        for (int rung = topRung() - 1; rung >= 0; rung--) {
+            List<Evaluation> best = ranked(rung);
+            int numPromotable = best.size() / reductionFactor;
+            for (int i = 0; i < numPromotable; i++) {
+                int paraID = best.get(i).paraID;
+                if (promoted.get(rung).add(paraID))
+                    return new int[] { paraID, rung + 1 };
+            }
+        }
+        return null;
+    }
+
+    /**
+     * For once no more parameter sets will be started: if nothing has reached the top rung (e.g. the search ended
+     * before any rung was full enough to promote from), the best parameter set of the highest rung reached is
+     * promoted straight to the top rung, so there is a parameter set evaluated on the full train data.
+     *
+     * @return {paraID, top rung}, or null if the top rung is not empty or nothing has been evaluated
+     */
+    public int[] finalPromotion() {
+        if (!rungs.get(topRung()).isEmpty())
+            return null;
+
+        for (int rung = topRung() - 1; rung >= 0; rung--) {
+            for (Evaluation eval : ranked(rung)) {
+                if (promoted.get(rung).add(eval.paraID))
+                    return new int[] { eval.paraID, topRung() };
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return number of evaluations completed on the rung
+     */
+    public int numEvaluated(int rung) {
+        return rungs.get(rung).size();
+    }
+
+    /**
+     * Builds the data for each rung, nested stratified samples of the data with at least one instance of each class
+     * present. The top rung is the data itself.
+     */
+    public Instances[] buildRungData(Instances data, int seed) {
+        Random rand = new Random(seed);
+        List<List<Integer>> classIndices = new ArrayList<>();
+        for (int c = 0; c < data.numClasses(); c++)
+            classIndices.add(new ArrayList<>());
+        for (int i = 0; i < data.numInstances(); i++)
+            classIndices.get((int) data.instance(i).classValue()).add(i);
+        for (List<Integer> indices : classIndices)
+            Collections.shuffle(indices, rand);
+
+        Instances[] rungData = new Instances[numRungs()];
+        for (int rung = 0; rung < topRung(); rung++) {
+            List<Integer> sample = new ArrayList<>();
+            for (List<Integer> indices : classIndices) {
+                if (indices.isEmpty())
+                    continue;
+                int size = Math.max(1, (int) Math.round(proportions[rung] * indices.size()));
+                sample.addAll(indices.subList(0, size));
+            }
+            //keep the original order of the data
+            Collections.sort(sample);
+
+            Instances subsample = new Instances(data, sample.size());
+            for (int i : sample)
+                subsample.add(data.instance(i));
+            rungData[rung] = subsample;
+        }
+        rungData[topRung()] = data;
+
+        return rungData;
+    }
+
+    /**
+     * @return the evaluations of the rung, best first, ties by paraID
+     */
+    private List<Evaluation> ranked(int rung) {
+        List<Evaluation> ranked = new ArrayList<>(rungs.get(rung));
+        ranked.sort((a, b) -> a.score != b.score ? Double.compare(b.score, a.score) : Integer.compare(a.paraID, b.paraID));
+        return ranked;
+    }
+
+    private static class Evaluation {
+        final int paraID;
+        final double score;
+
+        Evaluation(int paraID, double score) {
+            this.paraID = paraID;
+            this.score = score;
+        }
+    }
+}
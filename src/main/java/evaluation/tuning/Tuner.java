@@ -25,9 +25,17 @@ import evaluation.tuning.searchers.ParameterSearcher;
 import experiments.data.DatasetLoading;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Function;
 
 import utilities.FileHandlingTools;
@@ -38,14 +46,20 @@ import weka.classifiers.functions.SMO;
 import weka.classifiers.functions.supportVector.PolyKernel;
 import weka.core.Instances;
 import tsml.classifiers.Checkpointable;
+import tsml.classifiers.MultiThreadable;
 import tsml.classifiers.TrainTimeContractable;
 
 /**
+ * 
+ * With multithreading enabled, parameter sets are evaluated concurrently, each with its own copy of the classifier 
+ * and evaluator. With successive halving enabled, parameter sets are first evaluated on samples of the train data 
+ * and only the best are carried on to the full train data, see SuccessiveHalving. Both keep the saving of each 
+ * parameter set's results, and resuming from them. 
  *
  * @author James Large (james.large@uea.ac.uk)
  */
 public class Tuner 
-        implements SaveEachParameter,Checkpointable, TrainTimeContractable {
+        implements SaveEachParameter,Checkpointable, TrainTimeContractable, MultiThreadable {
     
     //Main 3 design choices.
     private ParameterSearcher searcher;                      //default = new GridSearcher();
@@ -54,6 +68,16 @@ public class Tuner
     
     private ParameterResults bestParaSetAndResults = null;
     
+    /**
+     * the scores of the parameter sets evaluated on the full train data by the last tune(), by parameter set id
+     */
+    private TreeMap<Integer, Double> paraScores = new TreeMap<>();
+    
+    /**
+     * ties for the best parameter set are resolved to the greatest by this, null to resolve them randomly
+     */
+    private Comparator<ParameterSet> tieBreaker = null;
+    
     
     private int seed;
     private String classifierName; //interpreted from simpleClassName(), maybe have getter setter later
@@ -71,8 +95,23 @@ public class Tuner
     long trainContractTimeNanos; //TrainTimeContractClassifier  //note, leaving in nanos for max fidelity, max val of long = 2^64-1 = 586 years in nanoseconds
     boolean trainTimeContract = false; //TrainTimeContractClassifier
     
+    private int numThreads = 1; //MultiThreadable
+    
     ////////// end interface variables
     
+    /**
+     * the most parameter sets being evaluated at once when multithreading, to bound the memory used by the 
+     * classifiers being built. <= 0 for numThreads
+     */
+    private int maxParameterSetsInFlight = 0;
+    
+    /**
+     * successive halving reduction factor and proportion of the train data first evaluated on, 
+     * reduction factor < 2 for no successive halving
+     */
+    private int halvingReductionFactor = 0;
+    private double halvingMinTrainProportion = 0.1;
+    
     private boolean includeMarkersInParaLine = true;
     
     /**
@@ -182,6 +221,51 @@ public class Tuner
         this.includeMarkersInParaLine = includeMarkersInParaLine;
     }
     
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * When multithreading, the most parameter sets being evaluated at once. Each needs its own copy of the classifier
+     * and its results held, so this bounds the memory used. Defaults to the number of threads, and is capped by it.
+     */
+    public int getMaxParameterSetsInFlight() {
+        return maxParameterSetsInFlight > 0 ? Math.min(maxParameterSetsInFlight, numThreads) : numThreads;
+    }
+
+    public void setMaxParameterSetsInFlight(int maxParameterSetsInFlight) {
+        this.maxParameterSetsInFlight = maxParameterSetsInFlight;
+    }
+
+    /**
+     * Evaluate parameter sets by asynchronous successive halving, see SuccessiveHalving. Parameter sets are first 
+     * evaluated on a sample of minTrainProportion of the train data, and the best 1/reductionFactor of those on each 
+     * sample size are carried on to reductionFactor times as much data, up to the full train data. The best parameter
+     * set is chosen from those evaluated on the full train data. 
+     * 
+     * @param reductionFactor at least 2, or less than 2 to turn successive halving off
+     * @param minTrainProportion in (0,1]
+     */
+    public void setSuccessiveHalving(int reductionFactor, double minTrainProportion) {
+        if (reductionFactor >= 2 && (minTrainProportion <= 0 || minTrainProportion > 1))
+            throw new IllegalArgumentException("minTrainProportion must be in (0,1]: " + minTrainProportion);
+        
+        this.halvingReductionFactor = reductionFactor;
+        this.halvingMinTrainProportion = minTrainProportion;
+    }
+
+    public boolean getSuccessiveHalving() {
+        return halvingReductionFactor >= 2;
+    }
+
+    public int getHalvingReductionFactor() {
+        return halvingReductionFactor;
+    }
+
+    public double getHalvingMinTrainProportion() {
+        return halvingMinTrainProportion;
+    }
+    
     public ParameterSearcher getSearcher() {
         return searcher;
     }
@@ -198,6 +282,26 @@ public class Tuner
         this.evaluator = evaluator;
     }
 
+    public Comparator<ParameterSet> getTieBreaker() {
+        return tieBreaker;
+    }
+
+    /**
+     * @param tieBreaker ties for the best parameter set go to the greatest by this, the first in id order if equal.
+     * null (the default) to resolve ties randomly
+     */
+    public void setTieBreaker(Comparator<ParameterSet> tieBreaker) {
+        this.tieBreaker = tieBreaker;
+    }
+    
+    /**
+     * @return the scores by evalMetric of the parameter sets evaluated on the full train data by the last call to 
+     * tune(), including those loaded back in from saved parameter files, by parameter set id
+     */
+    public SortedMap<Integer, Double> getParameterSetScores() {
+        return Collections.unmodifiableSortedMap(paraScores);
+    }
+
     public Function<EstimatorResults, Double> getEvalMetric() {
         return evalMetric;
     }
@@ -230,7 +334,11 @@ public class Tuner
     public ClassifierResults evaluateParameterSet(AbstractClassifier baseClassifier, Instances trainSet, ParameterSet parameterSet) throws Exception { 
         Instances data = cloneDataIfNeeded(trainSet);
         AbstractClassifier classifier = cloneClassifierIfNeeded(baseClassifier); 
-            
+        
+        return evaluateParameterSet(classifier, data, parameterSet, evaluator);
+    }
+    
+    private ClassifierResults evaluateParameterSet(AbstractClassifier classifier, Instances data, ParameterSet parameterSet, Evaluator evaluator) throws Exception { 
         String[] options = parameterSet.toOptionsList();
         classifier.setOptions(options);
 
@@ -246,6 +354,10 @@ public class Tuner
     
     public ParameterResults tune(AbstractClassifier baseClassifier, Instances trainSet, ParameterSpace parameterSpace) throws Exception {
         //System.out.println("Evaluating para space: " + parameterSpace);
+        paraScores = new TreeMap<>();
+        
+        if (numThreads > 1 || getSuccessiveHalving())
+            return tuneConcurrently(baseClassifier, trainSet, parameterSpace);
         
         //for contracting
         long startTime = System.nanoTime();
@@ -273,6 +385,7 @@ public class Tuner
             
             // THE WORK
             ClassifierResults results = evaluateParameterSet(baseClassifier, trainSet, pset);
+            paraScores.put(parameterSetID, evalMetric.apply(results));
             
             if (saveParameters)
                 saveParaResults(parameterSetID, results);
@@ -289,7 +402,7 @@ public class Tuner
 //                int numParasEvald = parameterSetID + 1; 
 //                long avgTimePerPara = totalTimeSoFar / numParasEvald;
                 
-                if (withinTrainContract(totalTimeSoFar+maxParaEvalTime))
+                if (!withinTrainContract(totalTimeSoFar+maxParaEvalTime))
                     break;
             }
             
@@ -317,6 +430,240 @@ public class Tuner
         return bestParaSetAndResults;
     }
     
+    /**
+     * tune() for when evaluating parameter sets on multiple threads and/or by successive halving. 
+     * 
+     * This thread takes parameter sets from the searcher (and promotions from the successive halving) and hands 
+     * them out to a pool of numThreads threads, keeping at most getMaxParameterSetsInFlight() being evaluated at once. 
+     * Each evaluation has its own copy of the classifier and the evaluator. The results are saved/stored on this 
+     * thread as the evaluations complete, in whatever order that is. Ties for the best parameter set are 
+     * still resolved as if the parameter sets were evaluated in order. 
+     * 
+     * When saving parameters, the results of parameter sets evaluated on the full train data are saved to the usual 
+     * per parameter set files. Successive halving also saves the results of evaluations on samples of the train data 
+     * in a rungs directory alongside, so parameter sets stopped early are not started again on resuming. 
+     */
+    private ParameterResults tuneConcurrently(AbstractClassifier baseClassifier, Instances trainSet, ParameterSpace parameterSpace) throws Exception {
+        //for contracting
+        long startTime = System.nanoTime();
+        long maxParaEvalTime = 0;
+        
+        //meta info in case we're saving para files
+        classifierName = baseClassifier.getClass().getSimpleName();
+        datasetName = trainSet.relationName();
+
+        //init the space searcher
+        searcher.setParameterSpace(parameterSpace);
+        Iterator<ParameterSet> iter = searcher.iterator();
+        
+        SuccessiveHalving halving = null;
+        Instances[] rungData = { trainSet };
+        if (getSuccessiveHalving()) {
+            halving = new SuccessiveHalving(halvingReductionFactor, halvingMinTrainProportion);
+            rungData = halving.buildRungData(trainSet, seed);
+            if (saveParameters)
+                new File(buildRungsPath()).mkdirs();
+        }
+        int topRung = rungData.length - 1;
+        
+        //the parameter sets taken from the searcher so far, index = parameterSetID
+        List<ParameterSet> psets = new ArrayList<>();
+        
+        //for resolving ties for the best paraset, in id order
+        TreeMap<Integer, ParameterResults> tiesBestSoFar = new TreeMap<>();
+        
+        int maxInFlight = getMaxParameterSetsInFlight();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(numThreads, maxInFlight));
+        ExecutorCompletionService<ParaEval> completionService = new ExecutorCompletionService<>(executor);
+        int inFlight = 0;
+        
+        try {
+            while (true) {
+                //keep the pool busy
+                while (inFlight < maxInFlight) {
+                    boolean outOfTime = trainTimeContract 
+                            && !withinTrainContract(System.nanoTime() - startTime + maxParaEvalTime);
+                    ParaEval next = nextParaEval(iter, psets, halving, topRung, tiesBestSoFar, outOfTime, inFlight == 0);
+                    if (next == null)
+                        break;
+                    
+                    final Instances data = rungData[next.rung];
+                    completionService.submit(() -> {
+                        long evalStartTime = System.nanoTime();
+                        
+                        AbstractClassifier classifier = numThreads > 1 
+                                ? (AbstractClassifier)AbstractClassifier.makeCopy(baseClassifier) 
+                                : cloneClassifierIfNeeded(baseClassifier);
+                        
+                        // THE WORK
+                        next.results = evaluateParameterSet(classifier, cloneDataIfNeeded(data), next.pset, evaluator.cloneEvaluator());
+                        next.time = System.nanoTime() - evalStartTime;
+                        return next;
+                    });
+                    inFlight++;
+                }
+                
+                if (inFlight == 0) 
+                    break;
+                
+                ParaEval done;
+                try {
+                    done = completionService.take().get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception)
+                        throw (Exception) e.getCause();
+                    throw e;
+                }
+                inFlight--;
+                
+                if (done.time > maxParaEvalTime) 
+                    maxParaEvalTime = done.time;
+                
+                double score = evalMetric.apply(done.results);
+                if (done.rung == topRung) {
+                    paraScores.put(done.paraID, score);
+                    if (saveParameters)
+                        saveParaResults(done.paraID, done.results);
+                    if (!saveParameters || halving != null)
+                        storeParaResult(done.paraID, new ParameterResults(done.pset, done.results, score), tiesBestSoFar);
+                }
+                else if (saveParameters)
+                    done.results.writeFullResultsToFile(buildRungsPath() + buildRungFilename(done.paraID, done.rung));
+                
+                if (halving != null)
+                    halving.record(done.paraID, done.rung, score);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        
+        List<ParameterResults> ties;
+        if (saveParameters && halving == null) {
+            //as in tune(), the best parameter set is found from the files, which may also have been 
+            //written by other processes
+            if (trainTimeContract)
+                ties = loadBestOfSavedParas_SoFar();
+            else
+                ties = loadBestOfSavedParas_All(parameterSpace.numUniqueParameterSets());
+        }
+        else 
+            ties = new ArrayList<>(tiesBestSoFar.values());
+        
+        bestParaSetAndResults = resolveTies(ties);
+        
+        return bestParaSetAndResults;
+    }
+    
+    /**
+     * Finds the next evaluation to hand out: a promotion if successive halving has one, else the next parameter set 
+     * from the searcher on the bottom rung. Parameter sets already saved by a previous run are skipped, or with 
+     * successive halving loaded back in, so that promotions carry on as before. 
+     * 
+     * Once out of time, nothing more is started, except that when idle with successive halving the best parameter
+     * set found so far is evaluated on the full train data if none has been yet.
+     * 
+     * @return the evaluation to do, or null if there is nothing to hand out (now)
+     */
+    private ParaEval nextParaEval(Iterator<ParameterSet> iter, List<ParameterSet> psets, SuccessiveHalving halving, 
+            int topRung, TreeMap<Integer, ParameterResults> tiesBestSoFar, boolean outOfTime, boolean idle) throws Exception {
+        if (!outOfTime) {
+            while (true) {
+                if (halving != null) {
+                    int[] promotion = halving.nextPromotion();
+                    if (promotion != null) 
+                        return new ParaEval(promotion[0], promotion[1], psets.get(promotion[0]));
+                }
+                
+                if (!iter.hasNext())
+                    break;
+                
+                int parameterSetID = psets.size();
+                ParameterSet pset = iter.next();
+                psets.add(pset);
+                
+                if (saveParameters && loadSavedParaResults(parameterSetID, pset, halving, topRung, tiesBestSoFar))
+                    continue;
+                
+                return new ParaEval(parameterSetID, 0, pset);
+            }
+        }
+        
+        if (idle && halving != null) {
+            int[] promotion = halving.finalPromotion();
+            if (promotion != null) 
+                return new ParaEval(promotion[0], promotion[1], psets.get(promotion[0]));
+        }
+        
+        return null;
+    }
+    
+    /**
+     * @return true if the parameter set was (at least partially) evaluated by a previous run
+     */
+    private boolean loadSavedParaResults(int parameterSetID, ParameterSet pset, SuccessiveHalving halving, 
+            int topRung, TreeMap<Integer, ParameterResults> tiesBestSoFar) throws Exception {
+        if (halving == null) 
+            return parametersAlreadyEvaluated(parameterSetID);
+        
+        boolean loaded = false;
+        if (parametersAlreadyEvaluated(parameterSetID)) {
+            ClassifierResults results = new ClassifierResults(parameterSavingPath + buildParaFilename(parameterSetID));
+            double score = evalMetric.apply(results);
+            paraScores.put(parameterSetID, score);
+            storeParaResult(parameterSetID, new ParameterResults(pset, results, score), tiesBestSoFar);
+            halving.record(parameterSetID, topRung, score);
+            loaded = true;
+        }
+        for (int rung = 0; rung < topRung; rung++) {
+            String path = buildRungsPath() + buildRungFilename(parameterSetID, rung);
+            if (ClassifierResults.exists(path)) {
+                halving.record(parameterSetID, rung, evalMetric.apply(new ClassifierResults(path)));
+                loaded = true;
+            }
+        }
+        return loaded;
+    }
+    
+    private void storeParaResult(int parameterSetID, ParameterResults paraScore, TreeMap<Integer, ParameterResults> tiesBestSoFar) {
+        if (tiesBestSoFar.isEmpty() || paraScore.score == tiesBestSoFar.firstEntry().getValue().score) 
+            tiesBestSoFar.put(parameterSetID, paraScore);
+        else if (paraScore.score > tiesBestSoFar.firstEntry().getValue().score) {
+            //new best so far
+            tiesBestSoFar.clear();
+            tiesBestSoFar.put(parameterSetID, paraScore);
+        }
+    }
+    
+    /**
+     * successive halving evaluations on samples of the train data are saved to this directory, which
+     * is kept apart from the per parameter set files as the best parameter set is only chosen from those
+     */
+    private String buildRungsPath() {
+        return parameterSavingPath + "rungs" + File.separator;
+    }
+    
+    private String buildRungFilename(int paraID, int rung) {
+        return paraID + "_rung" + rung + ".csv";
+    }
+    
+    /**
+     * An evaluation of a parameter set on the data of a successive halving rung, 
+     * the full train data when not successive halving
+     */
+    private static class ParaEval {
+        final int paraID;
+        final int rung;
+        final ParameterSet pset;
+        ClassifierResults results;
+        long time;
+
+        ParaEval(int paraID, int rung, ParameterSet pset) {
+            this.paraID = paraID;
+            this.rung = rung;
+            this.pset = pset;
+        }
+    }
+    
     private boolean canWeEvaluateAnotherParaSet(long maxParaEvalTime, long totalTimeSoFar) {
         return trainContractTimeNanos - totalTimeSoFar > maxParaEvalTime;
     }
@@ -379,6 +726,7 @@ public class Tuner
                 ClassifierResults tempResults = new ClassifierResults(path);
                 ParameterSet pset = new ParameterSet();
                 pset.readClassifierResultsParaLine(tempResults.getParas(), includeMarkersInParaLine);
+                paraScores.put(paraID, evalMetric.apply(tempResults));
                 storeParaResult(pset, tempResults, tiesBestSoFar);
             } else {
                 throw new Exception("Trying to load paras back in, but missing expected parameter set ID: " + paraID + ", numParasExpected: " + numParasExpected);
@@ -419,6 +767,10 @@ public class Tuner
             //clear winner
             return tiesBestSoFar.get(0);
         }
+        else if (tieBreaker != null) {
+            //max() keeps the first of equals, which is the first in id order unless loaded from the files so far
+            return Collections.max(tiesBestSoFar, (a, b) -> tieBreaker.compare(a.paras, b.paras));
+        }
         else { 
             //resolve ties randomly: todo future, maybe allow for some other method of resolving ties, 
             //e.g choose 'least complex' parameter set of the ties
@@ -494,6 +846,15 @@ public class Tuner
         throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
     }
 
+    /**
+     * NOTE: multithreading (numThreads > 1) forces the classifier to be cloned for each parameter set, and the 
+     * evaluator is always cloned for each parameter set
+     */
+    @Override //MultiThreadable
+    public void enableMultiThreading(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
     public void setTrainTimeLimit(long amount) {
         trainTimeContract = true;
         trainContractTimeNanos =amount;
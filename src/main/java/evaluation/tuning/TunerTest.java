@@ -0,0 +1,159 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package evaluation.tuning;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import weka.classifiers.lazy.IBk;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+/**
+ * Purpose: test concurrent and successive halving tuning against the sequential tuner, resuming from saved
+ * parameter results, and the tie breaker and scores of every parameter set.
+ */
+public class TunerTest {
+
+    private static Instances randomData(int seed) {
+        return randomData(seed, 1);
+    }
+
+    private static Instances randomData(int seed, double separation) {
+        ArrayList<Attribute> atts = new ArrayList<>();
+        atts.add(new Attribute("a"));
+        atts.add(new Attribute("b"));
+        atts.add(new Attribute("class", Arrays.asList("0", "1", "2")));
+        Instances data = new Instances("TunerTest", atts, 150);
+        data.setClassIndex(2);
+
+        Random rand = new Random(seed);
+        for (int i = 0; i < 150; i++) {
+            int c = i % 3;
+            double[] vals = { c * separation + rand.nextGaussian(), -c * separation + rand.nextGaussian(), c };
+            data.add(new DenseInstance(1.0, vals));
+        }
+        return data;
+    }
+
+    private static ParameterSpace space() {
+        ParameterSpace space = new ParameterSpace();
+        space.addParameter("K", new int[] { 1, 2, 3, 5, 7, 9, 11, 15, 21, 31, 41, 51 });
+        return space;
+    }
+
+    private static void delete(File f) {
+        File[] files = f.listFiles();
+        if (files != null)
+            for (File file : files)
+                delete(file);
+        f.delete();
+    }
+
+    @Test
+    public void testMultiThreadedSameAsSequential() throws Exception {
+        Instances data = randomData(0);
+
+        Tuner sequential = new Tuner();
+        sequential.setSeed(1);
+        ParameterResults expected = sequential.tune(new IBk(), data, space());
+
+        Tuner concurrent = new Tuner();
+        concurrent.setSeed(1);
+        concurrent.enableMultiThreading(4);
+        concurrent.setMaxParameterSetsInFlight(3);
+        ParameterResults actual = concurrent.tune(new IBk(), data, space());
+
+        Assert.assertEquals(expected.paras.toString(), actual.paras.toString());
+        Assert.assertEquals(expected.score, actual.score, 0);
+        Assert.assertArrayEquals(expected.results.getPredClassValsAsArray(), actual.results.getPredClassValsAsArray(), 0);
+    }
+
+    @Test
+    public void testSuccessiveHalvingResume() throws Exception {
+        Instances data = randomData(1);
+        File dir = Files.createTempDirectory("TunerTest").toFile();
+        try {
+            String path = dir.getAbsolutePath() + File.separator + "fold0_";
+
+            Tuner tuner = new Tuner();
+            tuner.setSeed(0);
+            tuner.setSuccessiveHalving(3, 0.1);
+            tuner.setPathToSaveParameters(path);
+            ParameterResults first = tuner.tune(new IBk(), data, space());
+
+            //only the parameter sets carried on to the full train data have the usual results files
+            int numFull = dir.listFiles(File::isFile).length;
+            Assert.assertTrue(numFull > 0 && numFull < space().numUniqueParameterSets());
+            Assert.assertEquals(data.numInstances(), first.results.numInstances());
+
+            //everything was saved, so resuming evaluates nothing and finds the same best parameter set
+            Tuner resumed = new Tuner();
+            resumed.setSeed(0);
+            resumed.setSuccessiveHalving(3, 0.1);
+            resumed.setPathToSaveParameters(path);
+            ParameterResults second = resumed.tune(new UnbuildableIBk(), data, space());
+
+            Assert.assertEquals(first.paras.toString(), second.paras.toString());
+            Assert.assertEquals(first.score, second.score, 0);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testTieBreakerAndScores() throws Exception {
+        //separable, so every parameter set scores the same
+        Instances data = randomData(2, 100);
+        File dir = Files.createTempDirectory("TunerTest").toFile();
+        try {
+            for (int numThreads : new int[] { 1, 4 }) {
+                for (String path : new String[] { null, dir.getAbsolutePath() + File.separator + "fold0_" }) {
+                    Tuner tuner = new Tuner();
+                    tuner.setSeed(0);
+                    tuner.enableMultiThreading(numThreads);
+                    if (path != null)
+                        tuner.setPathToSaveParameters(path);
+                    tuner.setTieBreaker(Comparator.comparingInt(p -> Integer.parseInt(p.getParameterValue("K"))));
+                    ParameterResults best = tuner.tune(new IBk(), data, space());
+
+                    String msg = "threads " + numThreads + " path " + path;
+                    Assert.assertEquals(msg, "51", best.paras.getParameterValue("K"));
+                    Assert.assertEquals(msg, space().numUniqueParameterSets(), tuner.getParameterSetScores().size());
+                    Assert.assertEquals(msg, 0, (int) tuner.getParameterSetScores().firstKey());
+                    for (double score : tuner.getParameterSetScores().values())
+                        Assert.assertEquals(msg, 1, score, 0);
+                }
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private static class UnbuildableIBk extends IBk {
+        @Override
+        public void buildClassifier(Instances instances) throws Exception {
+            throw new IllegalStateException("all parameter sets should have been loaded");
+        }
+    }
+}
@@ -37,8 +37,7 @@ import weka.core.Randomizable;
 import java.io.*;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import java.util.logging.Level;
@@ -71,9 +70,6 @@ public class ClassifierExperiments {
 
     public static boolean debug = false;
 
-    private static boolean testFoldExists;
-    private static boolean trainFoldExists;
-
     /**
      * If true, experiments will not print or log to stdout/err anything other that exceptions (SEVERE)
      */
@@ -216,6 +212,7 @@ public class ClassifierExperiments {
         if (quitEarlyDueToResultsExistence(expSettings))
             return null;
 
+        DatasetLoading.setUseBinaryCache(expSettings.useDatasetCache);
         Instances[] data = DatasetLoading.sampleDataset(expSettings.dataReadLocation, expSettings.datasetName, expSettings.foldId);
 
         // replace missing values with 0 if enabled
@@ -301,7 +298,7 @@ public class ClassifierExperiments {
         MemoryMonitor memoryMonitor = new MemoryMonitor();
         memoryMonitor.installMonitor();
 
-        if (expSettings.generateErrorEstimateOnTrainSet && (!trainFoldExists || expSettings.forceEvaluation || expSettings.forceEvaluationTrainFold)) {
+        if (expSettings.generateErrorEstimateOnTrainSet && (!expSettings.trainFoldExists || expSettings.forceEvaluation || expSettings.forceEvaluationTrainFold)) {
             //Tell the classifier to generate train results if it can do it internally,
             //otherwise perform the evaluation externally here (e.g. cross validation on the
             //train data
@@ -331,7 +328,7 @@ public class ClassifierExperiments {
         //    a) timings, if expSettings.generateErrorEstimateOnTrainSet == false
         //    b) full predictions, if expSettings.generateErrorEstimateOnTrainSet == true
 
-        if (expSettings.generateErrorEstimateOnTrainSet && (!trainFoldExists || expSettings.forceEvaluation || expSettings.forceEvaluationTrainFold)) {
+        if (expSettings.generateErrorEstimateOnTrainSet && (!expSettings.trainFoldExists || expSettings.forceEvaluation || expSettings.forceEvaluationTrainFold)) {
             writeResults(expSettings, trainResults, expSettings.trainFoldFileName, "train");
             LOGGER.log(Level.FINE, "Train estimate written");
         }
@@ -432,11 +429,19 @@ public class ClassifierExperiments {
      * rest of the experiment
      */
     public static void buildExperimentDirectoriesAndFilenames(ExperimentalArguments expSettings, Classifier classifier) {
+        buildExperimentDirectoriesAndFilenames(expSettings, classifier, true);
+    }
+
+    /**
+     * As above, optionally only defining the locations without creating the directories, e.g. to check for
+     * existing results
+     */
+    public static void buildExperimentDirectoriesAndFilenames(ExperimentalArguments expSettings, Classifier classifier, boolean makeDirectories) {
         //Build/make the directory to write the train and/or testFold files to
         // [writeLoc]/[classifier]/Predictions/[dataset]/
         String fullWriteLocation = expSettings.resultsWriteLocation + expSettings.estimatorName + "/"+PREDICTIONS_DIR+"/" + expSettings.datasetName + "/";
         File f = new File(fullWriteLocation);
-        if (!f.exists())
+        if (makeDirectories && !f.exists())
             f.mkdirs();
 
         expSettings.testFoldFileName = fullWriteLocation + "testFold" + expSettings.foldId + ".csv";
@@ -445,8 +450,8 @@ public class ClassifierExperiments {
         if (expSettings.singleParameterID != null && classifier instanceof ParameterSplittable)
             expSettings.testFoldFileName = expSettings.trainFoldFileName = fullWriteLocation + "fold" + expSettings.foldId + "_" + expSettings.singleParameterID + ".csv";
 
-        testFoldExists = CollateResults.validateSingleFoldFile(expSettings.testFoldFileName);
-        trainFoldExists = CollateResults.validateSingleFoldFile(expSettings.trainFoldFileName);
+        expSettings.testFoldExists = CollateResults.validateSingleFoldFile(expSettings.testFoldFileName);
+        expSettings.trainFoldExists = CollateResults.validateSingleFoldFile(expSettings.trainFoldFileName);
 
         // If needed, build/make the directory to write any supporting files to, e.g. checkpointing files
         // [writeLoc]/[classifier]/Workspace/[dataset]/[fold]/
@@ -458,7 +463,7 @@ public class ClassifierExperiments {
             expSettings.supportingFilePath = expSettings.resultsWriteLocation + expSettings.estimatorName + "/"+WORKSPACE_DIR+"/" + expSettings.datasetName + "/";
 
         f = new File(expSettings.supportingFilePath);
-        if (!f.exists())
+        if (makeDirectories && !f.exists())
             f.mkdirs();
     }
 
@@ -471,8 +476,8 @@ public class ClassifierExperiments {
         boolean quit = false;
 
         if (!expSettings.forceEvaluation && !expSettings.forceEvaluationTestFold && !expSettings.forceEvaluationTrainFold &&
-                ((!expSettings.generateErrorEstimateOnTrainSet && testFoldExists) ||
-                        (expSettings.generateErrorEstimateOnTrainSet && trainFoldExists  && testFoldExists))) {
+                ((!expSettings.generateErrorEstimateOnTrainSet && expSettings.testFoldExists) ||
+                        (expSettings.generateErrorEstimateOnTrainSet && expSettings.trainFoldExists  && expSettings.testFoldExists))) {
             LOGGER.log(Level.INFO, expSettings.toShortString() + " already exists at " + expSettings.testFoldFileName + ", exiting.");
             quit = true;
         }
@@ -642,6 +647,8 @@ public class ClassifierExperiments {
             ((TrainTimeContractable) classifier).setTrainTimeLimit(TimeUnit.NANOSECONDS,expSettings.contractTrainTimeNanos);
         if(classifier instanceof TestTimeContractable && expSettings.contractTestTimeNanos >0)
             ((TestTimeContractable) classifier).setTestTimeLimit(TimeUnit.NANOSECONDS,expSettings.contractTestTimeNanos);
+        if(classifier instanceof MemoryContractable && expSettings.contractMemoryBytes >0)
+            ((MemoryContractable) classifier).setMemoryLimit(expSettings.contractMemoryBytes);
 
         return parameterFileName;
     }
@@ -741,7 +748,21 @@ public class ClassifierExperiments {
     public static ClassifierResults evaluateClassifier(ExperimentalArguments exp, Classifier classifier, Instances testSet) throws Exception {
         SingleTestSetEvaluator eval = new SingleTestSetEvaluator(exp.foldId, false, true, exp.interpret); //DONT clone data, DO set the class to be missing for each inst
 
-        return eval.evaluate(classifier, testSet);
+        //classifiers that can predict concurrently predict the test set in parallel over a pool with the
+        //requested number of threads, if more than one was asked for. Otherwise the test set is predicted
+        //sequentially, so an experiment never uses more threads than it was given. The predictions are the
+        //same either way, only the prediction times are affected
+        if (exp.numberOfThreads <= 1 || !TSClassifier.canPredictConcurrently(classifier))
+            return eval.evaluate(classifier, testSet);
+        
+        ForkJoinPool pool = new ForkJoinPool(exp.numberOfThreads);
+        try {
+            eval.setPredictionPool(pool);
+            return eval.evaluate(classifier, testSet);
+        }
+        finally {
+            pool.shutdown();
+        }
     }
 
     /**
@@ -963,6 +984,9 @@ public class ClassifierExperiments {
      * standardArgs. If numThreads > 0, will spawn that many threads. If numThreads == 0, will use as many threads as there are cores,
      * else if numThreads == -1, will spawn as many threads as there are cores minus 1, to aid usability of the machine.
      *
+     * Experiments are run through an ExperimentScheduler, which runs the longest first, keeps the experiments running at once
+     * within the heap, gives spare threads to MultiThreadable classifiers and skips experiments whose results already exist.
+     *
      * If using bespoke classifiers (not found in setClassifier), e.g. different parameterisations, bespoke ensembles etc,
      * provide a generator function for each classifier, in a list that is parallel with classifierNames. Assuming the
      * classifier is Randomizable, the seed shall be set equal to the expSettings foldId
@@ -984,15 +1008,9 @@ public class ClassifierExperiments {
 
         System.out.println("# cores ="+numCores);
         System.out.println("# threads ="+numThreads);
-        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
 
         List<ExperimentalArguments> exps = standardArgs.generateExperiments(classifierNames, classifierGenerators, datasetNames, minFolds, maxFolds);
-        for (ExperimentalArguments exp : exps)
-            executor.execute(exp);
-
-        executor.shutdown();
-        while (!executor.isTerminated()) {
-        }
+        new ExperimentScheduler(numThreads).runExperiments(exps);
         System.out.println("Finished all threads");
     }
 
@@ -161,6 +161,7 @@ public class ClusteringExperiments {
         if (quitEarlyDueToResultsExistence(expSettings))
             return null;
 
+        DatasetLoading.setUseBinaryCache(expSettings.useDatasetCache);
         Instances[] data = DatasetLoading.sampleDataset(expSettings.dataReadLocation, expSettings.datasetName, expSettings.foldId);
         expSettings.numClassValues = data[0].numClasses();
 
@@ -0,0 +1,487 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package experiments;
+
+import evaluation.storage.ClassifierResults;
+import tsml.classifiers.MultiThreadable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs a set of classifier experiments concurrently, sharing the available threads and heap between them.
+ *
+ * Each experiment is given an estimated cost (build plus test time) and peak memory. Where results of the same
+ * classifier on the same dataset already exist in the results directory, e.g. other folds, their recorded times and
+ * memory are used. Otherwise the estimate is scaled from the classifier's results on other datasets in the set by
+ * the size of the data, and failing that from the size of the data alone, where the size of a dataset is read from
+ * the start of its train/test files rather than by loading them.
+ *
+ * Experiments are started longest first. An experiment is only started when its memory estimate fits within what
+ * remains of the heap budget, smaller experiments further down the queue being started in its place while it waits.
+ * Classifiers which are MultiThreadable are given a share of the threads proportional to their share of the
+ * remaining cost, so long experiments get several threads and the tail of the queue doesn't leave cores idle.
+ *
+ * Experiments whose results already exist are skipped, as per ClassifierExperiments.quitEarlyDueToResultsExistence,
+ * so an interrupted run can be restarted with the same arguments. Experiments which run out of memory are
+ * requeued to be run alone.
+ *
+ * ExperimentScheduler scheduler = new ExperimentScheduler(numThreads);
+ * scheduler.runExperiments(standardArgs.generateExperiments(classifierNames, null, datasetNames, 0, 30));
+ */
+public class ExperimentScheduler {
+
+    private final static Logger LOGGER = Logger.getLogger(ExperimentScheduler.class.getName());
+
+    // memory of an experiment with no past results, as a multiple of the size of its data as doubles
+    private static final double DEFAULT_MEMORY_PER_DATA_BYTE = 20;
+    private static final long BASE_MEMORY = 64L * 1024 * 1024;
+
+    private int numThreads;
+    private long memoryBudget;
+    private int maxThreadsPerExperiment;
+    private int maxRetries = 1;
+
+    // cached per dataset and per classifier and dataset respectively
+    private final HashMap<String, DatasetShape> shapes = new HashMap<>();
+    private final HashMap<String, History> histories = new HashMap<>();
+
+    /**
+     * Uses all available processors, and 80% of the max heap.
+     */
+    public ExperimentScheduler() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Uses 80% of the max heap.
+     *
+     * @param numThreads the total number of threads the experiments can use between them
+     */
+    public ExperimentScheduler(int numThreads) {
+        this(numThreads, (long) (Runtime.getRuntime().maxMemory() * 0.8));
+    }
+
+    /**
+     * @param numThreads the total number of threads the experiments can use between them
+     * @param memoryBudget the total heap in bytes the experiments can use between them
+     */
+    public ExperimentScheduler(int numThreads, long memoryBudget) {
+        this.numThreads = Math.max(1, numThreads);
+        this.memoryBudget = memoryBudget;
+        this.maxThreadsPerExperiment = this.numThreads;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public int getMaxThreadsPerExperiment() {
+        return maxThreadsPerExperiment;
+    }
+
+    /**
+     * The most threads a single MultiThreadable classifier will be given, defaults to all of them.
+     */
+    public void setMaxThreadsPerExperiment(int maxThreadsPerExperiment) {
+        this.maxThreadsPerExperiment = Math.max(1, maxThreadsPerExperiment);
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * The number of times an experiment which runs out of memory is rerun, alone, defaults to 1.
+     */
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Runs the experiments, returning once all have finished.
+     *
+     * @param exps the experiments, e.g. from ExperimentalArguments.generateExperiments(...)
+     */
+    public void runExperiments(List<ExperimentalArguments> exps) throws InterruptedException {
+        LinkedList<Job> queue = new LinkedList<>();
+        int numSkipped = 0;
+        for (ExperimentalArguments exp : exps) {
+            if (resultsExist(exp)) {
+                numSkipped++;
+                continue;
+            }
+
+            queue.add(new Job(exp));
+        }
+
+        estimate(queue);
+        queue.sort((a, b) -> Double.compare(b.cost, a.cost));
+
+        LOGGER.log(Level.INFO, "Scheduling " + queue.size() + " experiments (" + numSkipped + " already complete) on "
+                + numThreads + " threads with a memory budget of " + (memoryBudget >> 20) + "MB");
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+        CompletionService<Job> completionService = new ExecutorCompletionService<>(executor);
+        int freeThreads = numThreads;
+        long freeMemory = memoryBudget;
+        int numRunning = 0;
+
+        try {
+            while (!queue.isEmpty() || numRunning > 0) {
+                for (Job job : startJobs(queue, freeThreads, freeMemory, numRunning)) {
+                    freeThreads -= job.threads;
+                    freeMemory -= Math.min(job.memory, memoryBudget);
+                    numRunning++;
+
+                    LOGGER.log(Level.FINE, "Starting " + job.exp.toShortString() + " with " + job.threads
+                            + " threads, estimated memory " + (job.memory >> 20) + "MB");
+                    completionService.submit(job, job);
+                }
+
+                if (numRunning == 0)
+                    break;
+
+                Job finished;
+                try {
+                    finished = completionService.take().get();
+                } catch (ExecutionException e) {
+                    // jobs catch everything themselves
+                    throw new IllegalStateException(e.getCause());
+                }
+
+                freeThreads += finished.threads;
+                freeMemory += Math.min(finished.memory, memoryBudget);
+                numRunning--;
+
+                if (finished.outOfMemory) {
+                    if (finished.attempts <= maxRetries) {
+                        LOGGER.log(Level.WARNING, finished.exp.toShortString() + " ran out of memory, requeued to "
+                                + "run alone");
+                        finished.memory = memoryBudget;
+                        finished.outOfMemory = false;
+                        finished.exp.classifier = null;
+                        queue.addFirst(finished);
+                    } else {
+                        LOGGER.log(Level.SEVERE, finished.exp.toShortString() + " ran out of memory "
+                                + finished.attempts + " times, skipped");
+                    }
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        LOGGER.log(Level.INFO, "Finished all experiments");
+    }
+
+    /**
+     * Takes everything that fits in the free threads and memory off the queue, longest first, and allocates its
+     * threads. A job bigger than the whole memory budget is only started when nothing else is running.
+     */
+    List<Job> startJobs(LinkedList<Job> queue, int freeThreads, long freeMemory, int numRunning) {
+        double remainingCost = 0;
+        for (Job job : queue) {
+            remainingCost += job.cost;
+        }
+
+        List<Job> started = new ArrayList<>();
+        ListIterator<Job> it = queue.listIterator();
+        while (it.hasNext() && freeThreads > 0) {
+            Job job = it.next();
+
+            // a job bigger than the whole budget can only be run alone
+            if (job.memory > freeMemory && !(numRunning == 0 && job.memory >= memoryBudget))
+                continue;
+
+            it.remove();
+            job.threads = allocateThreads(job, freeThreads, remainingCost, queue.size());
+            remainingCost -= job.cost;
+
+            freeThreads -= job.threads;
+            freeMemory -= Math.min(job.memory, memoryBudget);
+            numRunning++;
+            started.add(job);
+        }
+        return started;
+    }
+
+    /**
+     * Threads for a job about to start, in proportion to its share of the remaining cost. Near the end of the queue
+     * the free threads are split between the jobs left. The allocation is set as the experiment's numberOfThreads.
+     */
+    private int allocateThreads(Job job, int freeThreads, double remainingCost, int numQueued) {
+        if (job.exp.classifier == null) {
+            try {
+                job.exp.classifier = job.exp.classifierGenerator != null ? job.exp.classifierGenerator.get()
+                        : ClassifierLists.setClassifier(job.exp);
+            } catch (Exception e) {
+                // leave it to the experiment to fail and report
+                return 1;
+            }
+        }
+
+        if (!(job.exp.classifier instanceof MultiThreadable))
+            return 1;
+
+        int threads;
+        if (job.requestedThreads > 1) {
+            // respect an explicit setting
+            threads = Math.min(job.requestedThreads, freeThreads);
+        } else {
+            threads = remainingCost > 0 ? (int) Math.round(numThreads * job.cost / remainingCost) : 1;
+            if (numQueued < freeThreads)
+                threads = Math.max(threads, freeThreads / (numQueued + 1));
+            threads = Math.max(1, Math.min(threads, Math.min(freeThreads, maxThreadsPerExperiment)));
+        }
+
+        job.exp.numberOfThreads = threads;
+        return threads;
+    }
+
+    /**
+     * Checks for existing results the same way setupAndRunExperiment does, without creating any directories, and
+     * leaving the experiment's paths as they were, as the classifier may yet change its name when created.
+     */
+    static boolean resultsExist(ExperimentalArguments exp) {
+        String supportingFilePath = exp.supportingFilePath;
+        String testFoldFileName = exp.testFoldFileName;
+        String trainFoldFileName = exp.trainFoldFileName;
+
+        ClassifierExperiments.buildExperimentDirectoriesAndFilenames(exp, exp.classifier, false);
+        boolean exists = ClassifierExperiments.quitEarlyDueToResultsExistence(exp);
+
+        exp.supportingFilePath = supportingFilePath;
+        exp.testFoldFileName = testFoldFileName;
+        exp.trainFoldFileName = trainFoldFileName;
+        return exists;
+    }
+
+    private void estimate(List<Job> jobs) {
+        // seconds and bytes per unit of data size, learned from the past results of each classifier on any dataset
+        HashMap<String, double[]> classifierRates = new HashMap<>();
+        for (Job job : jobs) {
+            DatasetShape shape = shape(job.exp);
+            History history = history(job.exp);
+            if (shape == null || history == null)
+                continue;
+
+            double[] rates = classifierRates.computeIfAbsent(job.exp.estimatorName, k -> new double[3]);
+            rates[0] += history.seconds / shape.complexity();
+            rates[1] = Math.max(rates[1], history.memory / shape.bytes());
+            rates[2]++;
+        }
+
+        for (Job job : jobs) {
+            DatasetShape shape = shape(job.exp);
+            History history = history(job.exp);
+            double[] rates = classifierRates.get(job.exp.estimatorName);
+
+            if (history != null) {
+                job.cost = history.seconds;
+                job.memory = (long) history.memory;
+            } else if (shape != null && rates != null) {
+                job.cost = rates[0] / rates[2] * shape.complexity();
+                job.memory = (long) (rates[1] * shape.bytes());
+            } else if (shape != null) {
+                job.cost = shape.complexity();
+                job.memory = (long) (DEFAULT_MEMORY_PER_DATA_BYTE * shape.bytes());
+            } else {
+                job.cost = 0;
+                job.memory = 0;
+            }
+
+            job.memory += BASE_MEMORY;
+        }
+    }
+
+    private History history(ExperimentalArguments exp) {
+        String key = exp.estimatorName + "/" + exp.datasetName;
+        if (histories.containsKey(key))
+            return histories.get(key);
+
+        History history = null;
+        File dir = new File(exp.resultsWriteLocation + exp.estimatorName + "/Predictions/" + exp.datasetName + "/");
+        File[] files = dir.listFiles((d, name) -> name.startsWith("testFold"));
+        if (files != null) {
+            double seconds = 0;
+            long memory = 0;
+            int count = 0;
+            for (File file : files) {
+                try {
+                    ClassifierResults res = new ClassifierResults(file.getPath(), false);
+                    long nanos = Math.max(res.getBuildTimeInNanos(), res.getBuildPlusEstimateTimeInNanos())
+                            + Math.max(0, res.getTestTimeInNanos());
+                    seconds += Math.max(0, nanos) / 1e9;
+                    memory = Math.max(memory, res.getMemory());
+                    count++;
+                } catch (Exception e) {
+                    LOGGER.log(Level.FINE, "Could not read past results " + file, e);
+                }
+            }
+
+            if (count > 0)
+                history = new History(seconds / count, memory);
+        }
+
+        histories.put(key, history);
+        return history;
+    }
+
+    private DatasetShape shape(ExperimentalArguments exp) {
+        String key = exp.dataReadLocation + exp.datasetName;
+        if (shapes.containsKey(key))
+            return shapes.get(key);
+
+        DatasetShape shape = null;
+        String base = exp.dataReadLocation + exp.datasetName + "/" + exp.datasetName;
+        for (String ext : new String[] { ".arff", ".ts" }) {
+            File train = new File(base + "_TRAIN" + ext);
+            File test = new File(base + "_TEST" + ext);
+            if (!train.exists())
+                continue;
+
+            try {
+                shape = readShape(train);
+                if (test.exists()) {
+                    DatasetShape testShape = readShape(test);
+                    shape.numTest = testShape.numTrain;
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Could not read the shape of " + train, e);
+            }
+            break;
+        }
+
+        shapes.put(key, shape);
+        return shape;
+    }
+
+    /**
+     * Estimates the number of cases and values per case of an arff or ts file from its first data line, without
+     * reading the rest of it.
+     */
+    private static DatasetShape readShape(File file) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            long headerBytes = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                headerBytes += line.length() + 1;
+                if (line.trim().toLowerCase().startsWith("@data"))
+                    break;
+            }
+
+            while ((line = reader.readLine()) != null) {
+                String trimmed = line.trim();
+                if (!trimmed.isEmpty() && trimmed.charAt(0) != '%' && trimmed.charAt(0) != '#')
+                    break;
+                headerBytes += line.length() + 1;
+            }
+
+            if (line == null)
+                throw new IOException("no data found in " + file);
+
+            // values are separated by ',' or ':', or escaped newlines in relational arff values
+            int numValues = 1;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (c == ',' || c == ':' || (c == '\\' && i + 1 < line.length() && line.charAt(i + 1) == 'n'))
+                    numValues++;
+            }
+
+            DatasetShape shape = new DatasetShape();
+            shape.numTrain = Math.max(1, (file.length() - headerBytes) / (line.length() + 1));
+            shape.numValues = numValues;
+            return shape;
+        }
+    }
+
+    private static class DatasetShape {
+        long numTrain;
+        long numTest;
+        long numValues;
+
+        // most of the classifiers in the toolbox are quadratic or worse in the number of train cases
+        double complexity() {
+            return (double) numTrain * numTrain * numValues + (double) numTest * numValues;
+        }
+
+        double bytes() {
+            return (numTrain + numTest) * numValues * 8.0;
+        }
+    }
+
+    private static class History {
+        final double seconds;
+        final double memory;
+
+        History(double seconds, double memory) {
+            this.seconds = seconds;
+            this.memory = memory;
+        }
+    }
+
+    static class Job implements Runnable {
+        final ExperimentalArguments exp;
+        // as set before scheduling, numberOfThreads being overwritten by the allocation
+        final int requestedThreads;
+        double cost;
+        long memory;
+        int threads = 1;
+        int attempts = 0;
+        boolean outOfMemory = false;
+
+        Job(ExperimentalArguments exp) {
+            this.exp = exp;
+            this.requestedThreads = exp.numberOfThreads;
+        }
+
+        @Override
+        public void run() {
+            attempts++;
+            try {
+                ClassifierExperiments.setupAndRunExperiment(exp);
+            } catch (OutOfMemoryError e) {
+                outOfMemory = true;
+            } catch (Throwable e) {
+                LOGGER.log(Level.SEVERE, "Experiment failed " + exp.toShortString(), e);
+            }
+        }
+    }
+}
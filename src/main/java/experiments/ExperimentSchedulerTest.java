@@ -0,0 +1,195 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package experiments;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import tsml.classifiers.MultiThreadable;
+import weka.classifiers.rules.ZeroR;
+
+/**
+ * Purpose: test the ExperimentScheduler packs experiments into the free threads and memory budget, shares threads
+ * by cost, runs experiments bigger than the budget alone, and checks for existing results without creating
+ * directories.
+ */
+public class ExperimentSchedulerTest {
+
+    private static class ThreadedZeroR extends ZeroR implements MultiThreadable {
+        @Override
+        public void enableMultiThreading(int numThreads) { }
+    }
+
+    private static ExperimentScheduler.Job job(String name, boolean threaded, double cost, long memory) {
+        return job(name, threaded, cost, memory, 1);
+    }
+
+    private static ExperimentScheduler.Job job(String name, boolean threaded, double cost, long memory,
+            int numberOfThreads) {
+        ExperimentalArguments exp = new ExperimentalArguments();
+        exp.estimatorName = name;
+        exp.numberOfThreads = numberOfThreads;
+        exp.datasetName = "Data";
+        exp.classifier = threaded ? new ThreadedZeroR() : new ZeroR();
+
+        ExperimentScheduler.Job job = new ExperimentScheduler.Job(exp);
+        job.cost = cost;
+        job.memory = memory;
+        return job;
+    }
+
+    private static LinkedList<ExperimentScheduler.Job> queue(ExperimentScheduler.Job... jobs) {
+        LinkedList<ExperimentScheduler.Job> queue = new LinkedList<>();
+        for (ExperimentScheduler.Job job : jobs)
+            queue.add(job);
+        return queue;
+    }
+
+    @Test
+    public void testThreadsSharedByCost() {
+        ExperimentScheduler scheduler = new ExperimentScheduler(8, 1000);
+        ExperimentScheduler.Job a = job("A", true, 3, 10);
+        ExperimentScheduler.Job b = job("B", true, 1, 10);
+        LinkedList<ExperimentScheduler.Job> queue = queue(a, b);
+
+        List<ExperimentScheduler.Job> started = scheduler.startJobs(queue, 8, 1000, 0);
+        Assert.assertEquals(2, started.size());
+        Assert.assertTrue(queue.isEmpty());
+
+        // three quarters of the cost, then what's left
+        Assert.assertEquals(6, a.threads);
+        Assert.assertEquals(2, b.threads);
+        Assert.assertEquals(6, a.exp.numberOfThreads);
+        Assert.assertEquals(2, b.exp.numberOfThreads);
+    }
+
+    @Test
+    public void testExplicitThreadsCappedAndSet() {
+        ExperimentScheduler scheduler = new ExperimentScheduler(8, 1000);
+        ExperimentScheduler.Job a = job("A", true, 1, 10, 3);
+        ExperimentScheduler.Job b = job("B", true, 1, 10, 3);
+        ExperimentScheduler.Job c = job("C", false, 1, 10);
+
+        List<ExperimentScheduler.Job> started = scheduler.startJobs(queue(a, b, c), 4, 1000, 0);
+        Assert.assertEquals(2, started.size());
+        Assert.assertEquals(3, a.threads);
+        Assert.assertEquals(3, a.exp.numberOfThreads);
+
+        // only one thread left
+        Assert.assertEquals(1, b.threads);
+        Assert.assertEquals(1, b.exp.numberOfThreads);
+
+        // rescheduling starts from the explicit setting rather than the last allocation
+        LinkedList<ExperimentScheduler.Job> queue = queue(b);
+        scheduler.startJobs(queue, 8, 1000, 0);
+        Assert.assertEquals(3, b.threads);
+        Assert.assertEquals(3, b.exp.numberOfThreads);
+    }
+
+    @Test
+    public void testSingleThreaded() {
+        ExperimentScheduler scheduler = new ExperimentScheduler(8, 1000);
+        ExperimentScheduler.Job a = job("A", false, 3, 10);
+        ExperimentScheduler.Job b = job("B", false, 2, 10);
+        ExperimentScheduler.Job c = job("C", false, 1, 10);
+        LinkedList<ExperimentScheduler.Job> queue = queue(a, b, c);
+
+        List<ExperimentScheduler.Job> started = scheduler.startJobs(queue, 2, 1000, 0);
+        Assert.assertEquals(2, started.size());
+        Assert.assertSame(a, started.get(0));
+        Assert.assertSame(b, started.get(1));
+        Assert.assertEquals(1, a.threads);
+        Assert.assertEquals(1, b.threads);
+        Assert.assertSame(c, queue.getFirst());
+    }
+
+    @Test
+    public void testMemoryBudget() {
+        ExperimentScheduler scheduler = new ExperimentScheduler(8, 100);
+        ExperimentScheduler.Job a = job("A", false, 3, 60);
+        ExperimentScheduler.Job b = job("B", false, 2, 50);
+        ExperimentScheduler.Job c = job("C", false, 1, 30);
+        LinkedList<ExperimentScheduler.Job> queue = queue(a, b, c);
+
+        // the longest fits, the next doesn't and waits while the smaller one behind it starts
+        List<ExperimentScheduler.Job> started = scheduler.startJobs(queue, 8, 100, 0);
+        Assert.assertEquals(2, started.size());
+        Assert.assertSame(a, started.get(0));
+        Assert.assertSame(c, started.get(1));
+        Assert.assertEquals(1, queue.size());
+        Assert.assertSame(b, queue.getFirst());
+
+        // still doesn't fit with only the longest running
+        Assert.assertTrue(scheduler.startJobs(queue, 7, 40, 1).isEmpty());
+        Assert.assertEquals(1, scheduler.startJobs(queue, 8, 100, 0).size());
+    }
+
+    @Test
+    public void testOverBudgetJobRunsAlone() {
+        ExperimentScheduler scheduler = new ExperimentScheduler(8, 100);
+        ExperimentScheduler.Job big = job("Big", true, 5, 150);
+        ExperimentScheduler.Job small = job("Small", false, 1, 10);
+        LinkedList<ExperimentScheduler.Job> queue = queue(big, small);
+
+        // waits while anything else is running
+        List<ExperimentScheduler.Job> started = scheduler.startJobs(queue, 7, 90, 1);
+        Assert.assertEquals(1, started.size());
+        Assert.assertSame(small, started.get(0));
+        Assert.assertSame(big, queue.getFirst());
+
+        // then runs with nothing else started beside it
+        queue.add(job("Other", false, 1, 10));
+        started = scheduler.startJobs(queue, 8, 100, 0);
+        Assert.assertEquals(1, started.size());
+        Assert.assertSame(big, started.get(0));
+        Assert.assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void testResultsExistCreatesNoDirectories() throws IOException {
+        File dir = Files.createTempDirectory("scheduler").toFile();
+        ExperimentalArguments exp = new ExperimentalArguments();
+        exp.resultsWriteLocation = dir.getPath() + "/";
+        exp.estimatorName = "A";
+        exp.datasetName = "Data";
+
+        Assert.assertFalse(ExperimentScheduler.resultsExist(exp));
+        Assert.assertFalse(new File(dir, "A").exists());
+        Assert.assertNull(exp.testFoldFileName);
+        Assert.assertNull(exp.supportingFilePath);
+
+        File predictions = new File(dir, "A/Predictions/Data");
+        Assert.assertTrue(predictions.mkdirs());
+        File testFold = new File(predictions, "testFold0.csv");
+        try (FileWriter writer = new FileWriter(testFold)) {
+            writer.write("results");
+        }
+        Assert.assertTrue(ExperimentScheduler.resultsExist(exp));
+        Assert.assertFalse(new File(dir, "A/Workspace").exists());
+
+        testFold.delete();
+        predictions.delete();
+        predictions.getParentFile().delete();
+        new File(dir, "A").delete();
+        dir.delete();
+    }
+}
@@ -105,6 +105,10 @@ public class ExperimentalArguments implements Runnable {
             "(clustering only currently)")
     public boolean replaceMissingValues = false;
 
+    @Parameter(names = {"-dc", "--datasetCache"}, arity = 1, description = "(boolean) Whether to load the dataset through a binary cache written next to the .arff/.ts files, "
+            + "skipping text parsing when the same files are loaded repeatedly. The first job to load a file creates the cache. Defaults to false.")
+    public boolean useDatasetCache = false;
+
     @Parameter(names = {"-co", "--classifierOptions"}, arity = 1, description = "(String) Classifier specific comma delimited options string to be split and passed to a"
             + " classifiers setOptions() method. Each option should have the parameter name/tag, a comma and then the parameter value for each options i.e. T,500,I,0.5")
     private String classifierOptionsStr = null;
@@ -122,6 +126,12 @@ public class ExperimentalArguments implements Runnable {
     private String contractTestTimeString = null;
     public long contractTestTimeNanos = 0;
 
+    @Parameter(names = {"-cmem", "--contractMemory"}, description = "(String) Defines a limit on the memory retained by the classifier if it implements the MemoryContractable interface. Defaults to "
+            + "no memory contract. If an integral value is given, it is assumed to be in MEGABYTES. Otherwise, a string of the form [int][char] can be supplied, with the [char] defining the unit. "
+            + "e.g.1 512m = 512 megabytes,   e.g.2 4g = 4096m. Possible units: b (bytes), k, m, g (gigabytes).")
+    private String contractMemoryString = null;
+    public long contractMemoryBytes = 0;
+
     @Parameter(names = {"-sc", "--serialiseClassifier"}, arity = 1, description = "(boolean) If true, and the classifier is serialisable, the classifier will be serialised to the --supportingFilesPath after training, but before testing.")
     public boolean serialiseTrainedClassifier = false;
 
@@ -161,6 +171,11 @@ public class ExperimentalArguments implements Runnable {
     public String trainFoldFileName = null;
     public String testFoldFileName = null;
 
+    // whether valid results files already existed when the file names were set. kept per experiment rather than
+    // statically, so that experiments can be set up concurrently
+    boolean trainFoldExists = false;
+    boolean testFoldExists = false;
+
     // a function that returns a classifier instance, mainly for generating multiple instances for different
     // threaded exps. If not supplied (default), the classifier is instantiated via setClassifier(classifierName)
     public Supplier<Classifier> classifierGenerator = null;
@@ -303,6 +318,8 @@ public class ExperimentalArguments implements Runnable {
             contractTrainTimeNanos = parseTiming(contractTrainTimeString);
         if (contractTestTimeString != null)
             contractTestTimeNanos = parseTiming(contractTestTimeString);
+        if (contractMemoryString != null)
+            contractMemoryBytes = parseMemory(contractMemoryString);
 
         if (contractTrainTimeNanos > 0) {
             trainContracts.add(String.valueOf(contractTrainTimeNanos));
@@ -332,6 +349,33 @@ public class ExperimentalArguments implements Runnable {
         }
     }
 
+    /**
+     * Helper func to parse a memory size string, e.g. 512m or 4g. An integral value is assumed to be in megabytes.
+     */
+    private long parseMemory(String memStr) throws IllegalArgumentException {
+        try {
+            return Long.parseLong(memStr) << 20;
+        } catch (Exception e) {
+            //pass
+        }
+
+        char unit = Character.toLowerCase(memStr.charAt(memStr.length() - 1));
+        long amount = Long.parseLong(memStr.substring(0, memStr.length() - 1));
+
+        switch (unit) {
+            case 'b':
+                return amount;
+            case 'k':
+                return amount << 10;
+            case 'm':
+                return amount << 20;
+            case 'g':
+                return amount << 30;
+            default:
+                throw new IllegalArgumentException("Unrecognised memory unit string conversion requested, was given " + unit);
+        }
+    }
+
     /**
      * Helper func to parse a timing string of the form [int][char], e.g. 10s = 10 seconds = 10,000,000,000 nanosecs.
      * 1h = 60M = 3600s = 3600,000,000,000n
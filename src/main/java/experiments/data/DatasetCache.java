@@ -0,0 +1,462 @@
+/* 
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as published 
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package experiments.data;
+
+import tsml.data_containers.TimeSeries;
+import tsml.data_containers.TimeSeriesInstance;
+import tsml.data_containers.TimeSeriesInstances;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Binary cache of datasets loaded from .arff or .ts files, so that repeated loads of the same file (e.g. thousands
+ * of experiment jobs over the same problem) skip text parsing entirely.
+ *
+ * The cache is written next to the source file, as the source file name plus CACHE_EXTENSION for weka Instances or
+ * TS_CACHE_EXTENSION for TimeSeriesInstances. It is little-endian and laid out as
+ *
+ *   a fixed header: magic, version, kind, the source file's length, last modified time and a hash of its first and
+ *   last 64KB, and the length of the metadata block
+ *   a metadata block: attribute/class information and the per instance shape information
+ *   a slab of all the values as contiguous doubles, starting on an 8 byte boundary
+ *
+ * The value slab is memory mapped and copied straight into the instance arrays. A cache is only used if the length,
+ * modification time and hash all still match the source file, otherwise it is rebuilt.
+ *
+ * Only data that round trips exactly is cached: Instances with numeric and nominal attributes and dense instances,
+ * and TimeSeriesInstances without timestamps. Anything else is simply not cached.
+ */
+public class DatasetCache {
+
+    private final static Logger LOGGER = Logger.getLogger(DatasetCache.class.getName());
+
+    public static final String CACHE_EXTENSION = ".cache";
+    public static final String TS_CACHE_EXTENSION = ".tscache";
+
+    private static final int MAGIC = 0x43445354; //TSDC
+    private static final int VERSION = 1;
+    private static final int KIND_INSTANCES = 0;
+    private static final int KIND_TIME_SERIES_INSTANCES = 1;
+
+    private static final int HEADER_BYTES = 48;
+    private static final int HASH_SAMPLE_BYTES = 1 << 16;
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+    private static final long MAP_WINDOW_BYTES = 1L << 28;
+
+    private static final byte NUMERIC = 0;
+    private static final byte NOMINAL = 1;
+
+    private DatasetCache() {}
+
+    /**
+     * Returns the cached Instances for the source file, or null if there is no valid cache for it.
+     */
+    public static Instances loadInstances(File source) {
+        File cache = new File(source.getPath() + CACHE_EXTENSION);
+        if (!cache.exists())
+            return null;
+
+        try (FileChannel channel = FileChannel.open(cache.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer meta = readMeta(channel, source, KIND_INSTANCES);
+            if (meta == null)
+                return null;
+
+            String relationName = getString(meta);
+            int classIndex = meta.getInt();
+            int numAttributes = meta.getInt();
+            ArrayList<Attribute> attributes = new ArrayList<>(numAttributes);
+            for (int i = 0; i < numAttributes; i++) {
+                String name = getString(meta);
+                if (meta.get() == NOMINAL) {
+                    int numValues = meta.getInt();
+                    List<String> values = new ArrayList<>(numValues);
+                    for (int j = 0; j < numValues; j++)
+                        values.add(getString(meta));
+                    attributes.add(new Attribute(name, values));
+                }
+                else {
+                    attributes.add(new Attribute(name));
+                }
+            }
+            int numInstances = meta.getInt();
+            boolean hasWeights = meta.get() != 0;
+
+            SlabReader slab = new SlabReader(channel, valuesOffset(meta.capacity()));
+            double[] weights = new double[numInstances];
+            if (hasWeights)
+                slab.read(weights);
+            else
+                Arrays.fill(weights, 1);
+
+            Instances data = new Instances(relationName, attributes, numInstances);
+            for (int i = 0; i < numInstances; i++) {
+                double[] values = new double[numAttributes];
+                slab.read(values);
+                data.add(new DenseInstance(weights[i], values));
+            }
+            data.setClassIndex(classIndex);
+            return data;
+        }
+        catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.FINE, "Could not read dataset cache " + cache + ", reloading from source", e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes a cache of the data loaded from the source file. Failures are logged and otherwise ignored, the cache is
+     * only an optimisation.
+     */
+    public static void saveInstances(File source, Instances data) {
+        //only plain numeric and nominal attributes are stored, isNumeric() is also true for date attributes
+        for (int i = 0; i < data.numAttributes(); i++) {
+            int type = data.attribute(i).type();
+            if (type != Attribute.NUMERIC && type != Attribute.NOMINAL)
+                return;
+        }
+        boolean hasWeights = false;
+        for (Instance inst : data) {
+            if (inst.getClass() != DenseInstance.class)
+                return;
+            hasWeights |= inst.weight() != 1;
+        }
+
+        MetaWriter meta = new MetaWriter();
+        meta.putString(data.relationName());
+        meta.putInt(data.classIndex());
+        meta.putInt(data.numAttributes());
+        for (int i = 0; i < data.numAttributes(); i++) {
+            Attribute att = data.attribute(i);
+            meta.putString(att.name());
+            if (att.isNominal()) {
+                meta.put(NOMINAL);
+                meta.putInt(att.numValues());
+                for (int j = 0; j < att.numValues(); j++)
+                    meta.putString(att.value(j));
+            }
+            else {
+                meta.put(NUMERIC);
+            }
+        }
+        meta.putInt(data.numInstances());
+        meta.put((byte) (hasWeights ? 1 : 0));
+
+        final boolean writeWeights = hasWeights;
+        write(source, new File(source.getPath() + CACHE_EXTENSION), KIND_INSTANCES, meta, slab -> {
+            if (writeWeights)
+                for (Instance inst : data)
+                    slab.putDouble(inst.weight());
+            for (Instance inst : data)
+                for (int i = 0; i < inst.numAttributes(); i++)
+                    slab.putDouble(inst.value(i));
+        });
+    }
+
+    /**
+     * Returns the cached TimeSeriesInstances for the source file, or null if there is no valid cache for it.
+     */
+    public static TimeSeriesInstances loadTimeSeriesInstances(File source) {
+        File cache = new File(source.getPath() + TS_CACHE_EXTENSION);
+        if (!cache.exists())
+            return null;
+
+        try (FileChannel channel = FileChannel.open(cache.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer meta = readMeta(channel, source, KIND_TIME_SERIES_INSTANCES);
+            if (meta == null)
+                return null;
+
+            String problemName = getString(meta);
+            String description = getString(meta);
+            String[] classLabels = new String[meta.getInt()];
+            for (int i = 0; i < classLabels.length; i++)
+                classLabels[i] = getString(meta);
+            int numInstances = meta.getInt();
+
+            SlabReader slab = new SlabReader(channel, valuesOffset(meta.capacity()));
+            List<TimeSeriesInstance> instances = new ArrayList<>(numInstances);
+            for (int i = 0; i < numInstances; i++) {
+                int labelIndex = meta.getInt();
+                double targetValue = meta.getDouble();
+                double[][] series = new double[meta.getInt()][];
+                for (int j = 0; j < series.length; j++) {
+                    series[j] = new double[meta.getInt()];
+                    slab.read(series[j]);
+                }
+                instances.add(labelIndex == -1 ? new TimeSeriesInstance(series, targetValue)
+                        : new TimeSeriesInstance(series, labelIndex, classLabels));
+            }
+
+            TimeSeriesInstances data = new TimeSeriesInstances(instances, classLabels);
+            data.setProblemName(problemName);
+            data.setDescription(description);
+            return data;
+        }
+        catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.FINE, "Could not read dataset cache " + cache + ", reloading from source", e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes a cache of the data loaded from the source file. Failures are logged and otherwise ignored, the cache is
+     * only an optimisation.
+     */
+    public static void saveTimeSeriesInstances(File source, TimeSeriesInstances data) {
+        MetaWriter meta = new MetaWriter();
+        meta.putString(data.getProblemName());
+        meta.putString(data.getDescription());
+        String[] classLabels = data.getClassLabels();
+        meta.putInt(classLabels.length);
+        for (String label : classLabels)
+            meta.putString(label);
+        meta.putInt(data.numInstances());
+        for (TimeSeriesInstance inst : data) {
+            //classification instances have the label index as their target, regression ones have no label index
+            if (inst.getLabelIndex() != -1 && inst.getLabelIndex() != inst.getTargetValue())
+                return;
+            meta.putInt(inst.getLabelIndex());
+            meta.putDouble(inst.getTargetValue());
+            meta.putInt(inst.getNumDimensions());
+            for (TimeSeries series : inst) {
+                if (!series.getIndices().isEmpty())
+                    return;
+                meta.putInt(series.getSeriesLength());
+            }
+        }
+
+        write(source, new File(source.getPath() + TS_CACHE_EXTENSION), KIND_TIME_SERIES_INSTANCES, meta, slab -> {
+            for (TimeSeriesInstance inst : data)
+                for (TimeSeries series : inst)
+                    for (int i = 0; i < series.getSeriesLength(); i++)
+                        slab.putDouble(series.getValue(i));
+        });
+    }
+
+    private static ByteBuffer readMeta(FileChannel channel, File source, int kind) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, header, 0);
+        header.flip();
+
+        if (header.getInt() != MAGIC || header.getInt() != VERSION || header.getInt() != kind)
+            return null;
+        header.getInt();
+        if (header.getLong() != source.length() || header.getLong() != source.lastModified()
+                || header.getLong() != hashSource(source))
+            return null;
+
+        ByteBuffer meta = ByteBuffer.allocate((int) header.getLong()).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, meta, HEADER_BYTES);
+        meta.flip();
+        return meta;
+    }
+
+    private static void write(File source, File cache, int kind, MetaWriter meta, SlabWriter values) {
+        File tmp = null;
+        try {
+            //written to a uniquely named file and moved into place, as many jobs may cache the same file at once
+            tmp = File.createTempFile(cache.getName(), ".tmp", cache.getAbsoluteFile().getParentFile());
+            try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(MAGIC).putInt(VERSION).putInt(kind).putInt(0);
+                buffer.putLong(source.length()).putLong(source.lastModified()).putLong(hashSource(source));
+                buffer.putLong(meta.size());
+
+                Slab slab = new Slab(channel, buffer);
+                slab.put(meta.toByteArray());
+                while (buffer.position() % Double.BYTES != 0)
+                    buffer.put((byte) 0);
+                values.write(slab);
+                slab.flush();
+            }
+
+            try {
+                Files.move(tmp.toPath(), cache.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.FINE, "Could not write dataset cache " + cache, e);
+            if (tmp != null)
+                tmp.delete();
+        }
+    }
+
+    /**
+     * Cheap content check on top of length and modification time: a CRC of the first and last 64KB of the file.
+     */
+    private static long hashSource(File source) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] bytes = new byte[HASH_SAMPLE_BYTES];
+        try (RandomAccessFile file = new RandomAccessFile(source, "r")) {
+            long length = file.length();
+            int read = (int) Math.min(length, HASH_SAMPLE_BYTES);
+            file.readFully(bytes, 0, read);
+            crc.update(bytes, 0, read);
+
+            if (length > HASH_SAMPLE_BYTES) {
+                read = (int) Math.min(length - HASH_SAMPLE_BYTES, HASH_SAMPLE_BYTES);
+                file.seek(length - read);
+                file.readFully(bytes, 0, read);
+                crc.update(bytes, 0, read);
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static long valuesOffset(int metaLength) {
+        long end = HEADER_BYTES + metaLength;
+        return (end + Double.BYTES - 1) / Double.BYTES * Double.BYTES;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new EOFException();
+            position += read;
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the value slab through memory mapped windows, so files larger than a single mapping can be read.
+     */
+    private static class SlabReader {
+
+        private final FileChannel channel;
+        private final long end;
+        private long windowStart;
+        private DoubleBuffer window = DoubleBuffer.allocate(0);
+
+        SlabReader(FileChannel channel, long start) throws IOException {
+            this.channel = channel;
+            this.end = channel.size();
+            this.windowStart = start;
+        }
+
+        void read(double[] values) throws IOException {
+            if (window.remaining() < values.length) {
+                windowStart += (long) window.position() * Double.BYTES;
+                long size = Math.min(end - windowStart, Math.max(MAP_WINDOW_BYTES, (long) values.length * Double.BYTES));
+                if (size < (long) values.length * Double.BYTES)
+                    throw new EOFException("Dataset cache is truncated");
+                window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, size)
+                        .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            }
+            window.get(values);
+        }
+    }
+
+    private interface SlabWriter {
+        void write(Slab slab) throws IOException;
+    }
+
+    private static class Slab {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+
+        Slab(FileChannel channel, ByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        void putDouble(double value) throws IOException {
+            if (buffer.remaining() < Double.BYTES)
+                flush();
+            buffer.putDouble(value);
+        }
+
+        void put(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (!buffer.hasRemaining())
+                    flush();
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        }
+    }
+
+    private static class MetaWriter extends ByteArrayOutputStream {
+
+        private final ByteBuffer scratch = ByteBuffer.allocate(Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+        void put(byte b) {
+            write(b);
+        }
+
+        void putInt(int i) {
+            scratch.clear();
+            write(scratch.putInt(i).array(), 0, Integer.BYTES);
+        }
+
+        void putDouble(double d) {
+            scratch.clear();
+            write(scratch.putDouble(d).array(), 0, Double.BYTES);
+        }
+
+        void putString(String s) {
+            if (s == null) {
+                putInt(-1);
+                return;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+    }
+}
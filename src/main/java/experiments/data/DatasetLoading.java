@@ -72,6 +72,8 @@ public class DatasetLoading {
 
     private static boolean debug = false;
 
+    private static boolean useBinaryCache = false;
+
     public static String getLeaveOneXOutAttributeID() {
         return LOXO_ATT_ID;
     }
@@ -101,6 +103,19 @@ public class DatasetLoading {
         return debug;
     }
 
+    /**
+     * Whether loading a dataset from an .arff or .ts file should go through a binary cache written next to the
+     * file, see DatasetCache. The first load of a file parses it as normal and writes the cache, later loads read
+     * the cache instead, so long as the file has not changed. Defaults to false.
+     */
+    public static void setUseBinaryCache(boolean b) {
+        useBinaryCache = b;
+    }
+
+    public static boolean getUseBinaryCache() {
+        return useBinaryCache;
+    }
+
     /*
      * Instances functions
      */
@@ -438,6 +453,19 @@ public class DatasetLoading {
      * @throws java.io.IOException if cannot find the file, or file is malformed
      */
     public static Instances loadDataThrowable(File targetFile) throws IOException {
+        return loadDataThrowable(targetFile, useBinaryCache);
+    }
+
+    /**
+     * Loads the arff file at the target location and sets the last attribute to be the class value,
+     * or throws IOException on any error.
+     *
+     * @param targetFile the file to try and load
+     * @param useBinaryCache whether to load from, or create, a binary cache of the file
+     * @return Instances from file.
+     * @throws java.io.IOException if cannot find the file, or file is malformed
+     */
+    public static Instances loadDataThrowable(File targetFile, boolean useBinaryCache) throws IOException {
         String[] parts = targetFile.getName().split(Pattern.quote("."));
         String extension = "";
         final String ARFF = ".arff", TS = ".ts";
@@ -466,6 +494,12 @@ public class DatasetLoading {
             }
         }
 
+        if (useBinaryCache) {
+            Instances cached = DatasetCache.loadInstances(targetFile);
+            if (cached != null)
+                return cached;
+        }
+
         Instances inst = null;
         FileReader reader = new FileReader(targetFile);
 
@@ -480,6 +514,9 @@ public class DatasetLoading {
         inst.setClassIndex(inst.numAttributes() - 1);
         reader.close();
 
+        if (useBinaryCache)
+            DatasetCache.saveInstances(targetFile, inst);
+
         return inst;
     }
 
@@ -494,6 +531,18 @@ public class DatasetLoading {
         return loadDataThrowable(new File(fullPath));
     }
 
+    /**
+     * Loads the arff file at the target location and sets the last attribute to be the class value, going through
+     * a binary cache of the file if useBinaryCache is true.
+     *
+     * @param fullPath path to the file to try and load
+     * @param useBinaryCache whether to load from, or create, a binary cache of the file
+     * @return Instances from file.
+     */
+    public static Instances loadData(String fullPath, boolean useBinaryCache) throws IOException {
+        return loadDataThrowable(new File(fullPath), useBinaryCache);
+    }
+
     public static Instances loadDataFromWeb(String fileName, Boolean isTrain) throws IOException {
 
         String webLink = "https://timeseriesclassification.com/Downloads";
@@ -754,6 +803,18 @@ public class DatasetLoading {
      * @throws java.io.IOException if cannot find the file, or file is malformed
      */
     public static TimeSeriesInstances loadTSData(File targetFile) throws IOException {
+        return loadTSData(targetFile, useBinaryCache);
+    }
+
+    /**
+     * Loads the ts file at the target location or throws IOException on any error.
+     *
+     * @param targetFile the file to try and load
+     * @param useBinaryCache whether to load from, or create, a binary cache of the file
+     * @return Instances from file.
+     * @throws java.io.IOException if cannot find the file, or file is malformed
+     */
+    public static TimeSeriesInstances loadTSData(File targetFile, boolean useBinaryCache) throws IOException {
         String[] parts = targetFile.getName().split(Pattern.quote("."));
         String extension;
         final String ARFF = ".arff", TS = ".ts";
@@ -781,6 +842,12 @@ public class DatasetLoading {
             }
         }
 
+        if (useBinaryCache) {
+            TimeSeriesInstances cached = DatasetCache.loadTimeSeriesInstances(targetFile);
+            if (cached != null)
+                return cached;
+        }
+
         TimeSeriesInstances inst = null;
         FileReader reader = new FileReader(targetFile);
 
@@ -794,6 +861,9 @@ public class DatasetLoading {
 
         reader.close();
 
+        if (useBinaryCache)
+            DatasetCache.saveTimeSeriesInstances(targetFile, inst);
+
         return inst;
     }
 
@@ -807,6 +877,17 @@ public class DatasetLoading {
         return loadTSData(new File(fullPath));
     }
 
+    /**
+     * Loads the ts file at the target location, going through a binary cache of the file if useBinaryCache is true.
+     *
+     * @param fullPath path to the file to try and load
+     * @param useBinaryCache whether to load from, or create, a binary cache of the file
+     * @return Instances from file.
+     */
+    public static TimeSeriesInstances loadTSData(String fullPath, boolean useBinaryCache) throws IOException {
+        return loadTSData(new File(fullPath), useBinaryCache);
+    }
+
     /**
      * Simple utility to save a TimeSeriesInstances object to a file.
      *
@@ -24,6 +24,7 @@ import weka.core.Randomizable;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
@@ -47,6 +48,9 @@ public class ContinuousIntervalTree extends AbstractClassifier implements Random
     private int k = 20;
     //Max tree depth
     private int maxDepth = Integer.MAX_VALUE;
+    //Build from a column-major copy of the data, partitioning an index array at each node rather than copying
+    //Instances. Gives the same tree as building from the Instances
+    private boolean columnMajorBuild = true;
 
     private int seed = 0;
     private Random rand;
@@ -94,6 +98,10 @@ public class ContinuousIntervalTree extends AbstractClassifier implements Random
         this.maxDepth = i;
     }
 
+    public void setColumnMajorBuild(boolean b) {
+        this.columnMajorBuild = b;
+    }
+
     @Override
     public int getSeed() {
         return seed;
@@ -106,22 +114,40 @@ public class ContinuousIntervalTree extends AbstractClassifier implements Random
 
         rand = new Random(seed);
 
-        //thresholds for each attribute
-        double[][] thresholds = findThresholds(data);
+        if (columnMajorBuild) {
+            ColumnMajorData columns = new ColumnMajorData(data, numAttributes, k);
+
+            //Initial tree node setup
+            double[] dist = new double[data.numClasses()];
+            for (int c : columns.classes) {
+                dist[c]++;
+            }
+
+            root = new TreeNode();
+            root.buildTree(columns, 0, columns.indices.length, rootEntropy(dist, data.numInstances()), dist, -1,
+                    false);
+        } else {
+            //thresholds for each attribute
+            double[][] thresholds = findThresholds(data);
 
-        //Initial tree node setup
-        double[] dist = new double[data.numClasses()];
-        for (Instance inst : data) {
-            dist[(int) inst.classValue()]++;
+            //Initial tree node setup
+            double[] dist = new double[data.numClasses()];
+            for (Instance inst : data) {
+                dist[(int) inst.classValue()]++;
+            }
+
+            root = new TreeNode();
+            root.buildTree(data, thresholds, rootEntropy(dist, data.numInstances()), dist, -1, false);
         }
+    }
+
+    private static double rootEntropy(double[] dist, int numInstances) {
         double rootEntropy = 0;
-        for (int i = 0; i < data.numClasses(); i++) {
-            double p = dist[i] / data.numInstances();
+        for (int i = 0; i < dist.length; i++) {
+            double p = dist[i] / numInstances;
             rootEntropy += p > 0 ? -(p * Math.log(p) / log2) : 0;
         }
-
-        root = new TreeNode();
-        root.buildTree(data, thresholds, rootEntropy, dist, -1, false);
+        return rootEntropy;
     }
 
     @Override
@@ -217,14 +243,46 @@ public class ContinuousIntervalTree extends AbstractClassifier implements Random
                 }
             }
 
-            double step = (max - min) / (k - 1);
-            for (int n = 0; n < k; n++) {
-                thresholds[i][n] = min + step * n;
-            }
+            thresholds[i] = findThresholds(min, max, k);
         }
         return thresholds;
     }
 
+    private static double[] findThresholds(double min, double max, int k) {
+        double[] thresholds = new double[k];
+        double step = (max - min) / (k - 1);
+        for (int n = 0; n < k; n++) {
+            thresholds[n] = min + step * n;
+        }
+        return thresholds;
+    }
+
+    //Entropy for each split and information gain, from the class distributions of the splits
+    private static double[][] entropyGain(double[][] dists, double parentEntropy, int numInstances) {
+        double sumLeft = sum(dists[1]);
+        double sumRight = sum(dists[2]);
+        double sumMissing = sum(dists[3]);
+
+        double[] entropies = new double[4];
+        for (int i = 0; i < dists[1].length; i++) {
+            double p1 = sumLeft > 0 ? dists[1][i] / sumLeft : 0;
+            entropies[1] += p1 > 0 ? -(p1 * Math.log(p1) / log2) : 0;
+            double p2 = sumRight > 0 ? dists[2][i] / sumRight : 0;
+            entropies[2] += p2 > 0 ? -(p2 * Math.log(p2) / log2) : 0;
+            double p3 = sumMissing > 0 ? dists[3][i] / sumMissing : 0;
+            entropies[3] += p3 > 0 ? -(p3 * Math.log(p3) / log2) : 0;
+        }
+
+        entropies[0] = parentEntropy
+                - sumLeft / numInstances * entropies[1]
+                - sumRight / numInstances * entropies[2]
+                - sumMissing / numInstances * entropies[3];
+
+        dists[0] = entropies;
+
+        return dists;
+    }
+
     //Returns the attribute used for each node and its information gain
     public ArrayList<Double>[] getTreeSplitsGain() {
         ArrayList<Double> splits = new ArrayList<>();
@@ -356,6 +414,88 @@ public class ContinuousIntervalTree extends AbstractClassifier implements Random
             }
         }
 
+        //Same as above, for the instances indices[from, to) of the column-major data
+        void buildTree(ColumnMajorData data, int from, int to, double entropy, double[] distribution, int lastDepth,
+                       boolean leaf) {
+            double[][] bestEntropies = new double[0][0];
+            depth = lastDepth + 1;
+
+            int remainingClasses = 0;
+            for (double d : distribution) {
+                if (d > 0) remainingClasses++;
+            }
+
+            if (!leaf && remainingClasses > 1 && depth < maxDepth) {
+                //Loop through all attributes, finding the class counts for all k thresholds in one pass, looking the
+                //best split for this node
+                for (int i = 0; i < numAttributes; i++) {
+                    data.countSplits(i, from, to);
+
+                    for (int n = 0; n < k; n++) {
+                        //gain stored in [0][0]
+                        double[][] entropies = data.entropyGain(n, entropy, to - from);
+
+                        if (entropies[0][0] > bestGain || (!useMargin && entropies[0][0] == bestGain && entropies[0][0]
+                                > 0 && rand.nextBoolean())) {
+                            bestSplit = i;
+                            bestThreshold = data.thresholds[i][n];
+                            bestGain = entropies[0][0];
+                            bestMargin = -1;
+                            bestEntropies = entropies;
+                        }
+                        //Use margin gain if there is a tie
+                        else if (useMargin && entropies[0][0] == bestGain && entropies[0][0] > 0) {
+                            double margin = data.findMargin(i, data.thresholds[i][n], from, to);
+                            if (bestMargin == -1) bestMargin = data.findMargin(bestSplit, bestThreshold, from, to);
+
+                            //Select randomly if there is a tie again
+                            if (margin > bestMargin || (margin == bestMargin && rand.nextBoolean())) {
+                                bestSplit = i;
+                                bestThreshold = data.thresholds[i][n];
+                                bestMargin = margin;
+                                bestEntropies = entropies;
+                            }
+                        }
+                    }
+                }
+            }
+
+            if (bestSplit > -1) {
+                //left in [from, leftEnd), right in [leftEnd, rightEnd) and missing in [rightEnd, to)
+                int leftEnd = data.partition(bestSplit, bestThreshold, from, to);
+                int rightEnd = data.partitionEnd;
+                children = new TreeNode[3];
+
+                //Left node
+                children[0] = new TreeNode();
+                if (leftEnd == from) {
+                    children[0].buildTree(data, from, leftEnd, entropy, distribution, depth, true);
+                } else {
+                    children[0].buildTree(data, from, leftEnd, bestEntropies[0][1], bestEntropies[1], depth,
+                            false);
+                }
+
+                //Right node
+                children[1] = new TreeNode();
+                if (rightEnd == leftEnd) {
+                    children[1].buildTree(data, leftEnd, rightEnd, entropy, distribution, depth, true);
+                } else {
+                    children[1].buildTree(data, leftEnd, rightEnd, bestEntropies[0][2], bestEntropies[2], depth,
+                            false);
+                }
+
+                //Missing value node
+                children[2] = new TreeNode();
+                if (to == rightEnd) {
+                    children[2].buildTree(data, rightEnd, to, entropy, distribution, depth, true);
+                } else {
+                    children[2].buildTree(data, rightEnd, to, bestEntropies[0][3], bestEntropies[3], depth, false);
+                }
+            } else {
+                leafDistribution = normalise(distribution);
+            }
+        }
+
         //Distribution, entropy for each split and information gain
         double[][] entropyGain(Instances data, int att, double threshold, double parentEntropy) {
             double[][] dists = new double[4][data.numClasses()];
@@ -369,28 +509,7 @@ public class ContinuousIntervalTree extends AbstractClassifier implements Random
                 }
             }
 
-            double sumLeft = sum(dists[1]);
-            double sumRight = sum(dists[2]);
-            double sumMissing = sum(dists[3]);
-
-            double[] entropies = new double[4];
-            for (int i = 0; i < data.numClasses(); i++) {
-                double p1 = sumLeft > 0 ? dists[1][i] / sumLeft : 0;
-                entropies[1] += p1 > 0 ? -(p1 * Math.log(p1) / log2) : 0;
-                double p2 = sumRight > 0 ? dists[2][i] / sumRight : 0;
-                entropies[2] += p2 > 0 ? -(p2 * Math.log(p2) / log2) : 0;
-                double p3 = sumMissing > 0 ? dists[3][i] / sumMissing : 0;
-                entropies[3] += p3 > 0 ? -(p3 * Math.log(p3) / log2) : 0;
-            }
-
-            entropies[0] = parentEntropy
-                    - sumLeft / data.numInstances() * entropies[1]
-                    - sumRight / data.numInstances() * entropies[2]
-                    - sumMissing / data.numInstances() * entropies[3];
-
-            dists[0] = entropies;
-
-            return dists;
+            return ContinuousIntervalTree.entropyGain(dists, parentEntropy, data.numInstances());
         }
 
         //Margin gain for tie breaks
@@ -570,6 +689,199 @@ public class ContinuousIntervalTree extends AbstractClassifier implements Random
         }
     }
 
+    /**
+     * The train data as one array of values per attribute, with an index array which is partitioned in place as
+     * the tree is built, so the instances at each node are a contiguous range of it. Holds the working space used to
+     * find the class counts for every threshold of an attribute in one pass over a node's instances.
+     */
+    private static class ColumnMajorData {
+        final double[][] atts;
+        final int[] classes;
+        final int[] indices;
+        final int numClasses;
+
+        final double[][] thresholds;
+        //whether the thresholds of an attribute are non-decreasing, in which case the first threshold each value is
+        //less than or equal to can be found by binary search
+        final boolean[] sortedThresholds;
+
+        //for the attribute last counted, class counts of instances less than or equal to each threshold, of all
+        //non-missing instances and of all missing instances
+        final double[][] leftCounts;
+        final double[] nonMissingCounts;
+        final double[] missingCounts;
+
+        //end of the right split after the last partition
+        int partitionEnd;
+        final int[] rightBuffer;
+        final int[] missingBuffer;
+
+        ColumnMajorData(Instances data, int numAttributes, int k) {
+            int numInstances = data.numInstances();
+            atts = new double[numAttributes][numInstances];
+            classes = new int[numInstances];
+            indices = new int[numInstances];
+            numClasses = data.numClasses();
+
+            for (int i = 0; i < numInstances; i++) {
+                Instance inst = data.instance(i);
+                for (int a = 0; a < numAttributes; a++) {
+                    atts[a][i] = inst.value(a);
+                }
+                classes[i] = (int) inst.classValue();
+                indices[i] = i;
+            }
+
+            thresholds = new double[numAttributes][];
+            sortedThresholds = new boolean[numAttributes];
+            for (int a = 0; a < numAttributes; a++) {
+                double min = Double.MAX_VALUE;
+                double max = -99999999;
+                for (double v : atts[a]) {
+                    if (v < min) {
+                        min = v;
+                    }
+                    if (v > max) {
+                        max = v;
+                    }
+                }
+
+                thresholds[a] = findThresholds(min, max, k);
+
+                //NaN thresholds or a negative step fail this, and are counted one threshold at a time
+                boolean sorted = true;
+                for (int n = 1; n < k; n++) {
+                    if (!(thresholds[a][n - 1] <= thresholds[a][n])) {
+                        sorted = false;
+                        break;
+                    }
+                }
+                sortedThresholds[a] = sorted;
+            }
+
+            leftCounts = new double[k + 1][numClasses];
+            nonMissingCounts = new double[numClasses];
+            missingCounts = new double[numClasses];
+            rightBuffer = new int[numInstances];
+            missingBuffer = new int[numInstances];
+        }
+
+        void countSplits(int att, int from, int to) {
+            double[] column = atts[att];
+            double[] t = thresholds[att];
+            int k = t.length;
+
+            for (double[] counts : leftCounts) {
+                Arrays.fill(counts, 0);
+            }
+            Arrays.fill(nonMissingCounts, 0);
+            Arrays.fill(missingCounts, 0);
+
+            if (sortedThresholds[att]) {
+                //count each value against the first threshold it is less than or equal to, then accumulate
+                for (int j = from; j < to; j++) {
+                    int idx = indices[j];
+                    double v = column[idx];
+                    if (Double.isNaN(v)) {
+                        missingCounts[classes[idx]]++;
+                    } else {
+                        leftCounts[firstThresholdAtLeast(t, v)][classes[idx]]++;
+                        nonMissingCounts[classes[idx]]++;
+                    }
+                }
+
+                for (int n = 1; n < k; n++) {
+                    for (int c = 0; c < numClasses; c++) {
+                        leftCounts[n][c] += leftCounts[n - 1][c];
+                    }
+                }
+            } else {
+                for (int j = from; j < to; j++) {
+                    int idx = indices[j];
+                    double v = column[idx];
+                    if (Double.isNaN(v)) {
+                        missingCounts[classes[idx]]++;
+                    } else {
+                        for (int n = 0; n < k; n++) {
+                            if (v <= t[n]) {
+                                leftCounts[n][classes[idx]]++;
+                            }
+                        }
+                        nonMissingCounts[classes[idx]]++;
+                    }
+                }
+            }
+        }
+
+        //first index n of the non-decreasing thresholds with v <= t[n], or t.length if there is none
+        private static int firstThresholdAtLeast(double[] t, double v) {
+            int lo = 0;
+            int hi = t.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (v <= t[mid]) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+            return lo;
+        }
+
+        //Distribution, entropy for each split and information gain for a threshold of the attribute last counted
+        double[][] entropyGain(int threshold, double parentEntropy, int numInstances) {
+            double[][] dists = new double[4][numClasses];
+            for (int c = 0; c < numClasses; c++) {
+                dists[1][c] = leftCounts[threshold][c];
+                dists[2][c] = nonMissingCounts[c] - leftCounts[threshold][c];
+                dists[3][c] = missingCounts[c];
+            }
+
+            return ContinuousIntervalTree.entropyGain(dists, parentEntropy, numInstances);
+        }
+
+        //Margin gain for tie breaks
+        double findMargin(int att, double threshold, int from, int to) {
+            double[] column = atts[att];
+            double min = Double.MAX_VALUE;
+
+            for (int j = from; j < to; j++) {
+                double n = Math.abs(column[indices[j]] - threshold);
+                if (n < min) {
+                    min = n;
+                }
+            }
+
+            return min;
+        }
+
+        //Stable partition of indices[from, to) into left, right and missing, returning the end of the left split.
+        //The end of the right split is left in partitionEnd
+        int partition(int att, double threshold, int from, int to) {
+            double[] column = atts[att];
+            int left = from;
+            int right = 0;
+            int missing = 0;
+
+            for (int j = from; j < to; j++) {
+                int idx = indices[j];
+                double v = column[idx];
+                if (Double.isNaN(v)) {
+                    missingBuffer[missing++] = idx;
+                } else if (v <= threshold) {
+                    indices[left++] = idx;
+                } else {
+                    rightBuffer[right++] = idx;
+                }
+            }
+
+            System.arraycopy(rightBuffer, 0, indices, left, right);
+            System.arraycopy(missingBuffer, 0, indices, left + right, missing);
+            partitionEnd = left + right;
+            return left;
+        }
+    }
+
     public static class Interval {
         public double[] series;
         public int start;
@@ -0,0 +1,123 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package machine_learning.classifiers;
+
+import experiments.data.DatasetLoading;
+import java.util.ArrayList;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+/**
+ * Purpose: test ContinuousIntervalTree builds the same tree from the column-major copy of the data as from the
+ * Instances, with missing values, constant and all missing attributes, and ties in the gain.
+ */
+public class ContinuousIntervalTreeTest {
+
+    private static Instances randomData(int seed, int numInstances) {
+        int numAttributes = 12;
+        ArrayList<Attribute> atts = new ArrayList<>();
+        for (int i = 0; i < numAttributes; i++)
+            atts.add(new Attribute("att" + i));
+        ArrayList<String> classValues = new ArrayList<>();
+        for (int c = 0; c < 3; c++)
+            classValues.add("c" + c);
+        atts.add(new Attribute("class", classValues));
+        Instances data = new Instances("ContinuousIntervalTreeTest", atts, numInstances);
+        data.setClassIndex(numAttributes);
+
+        Random rand = new Random(seed);
+        for (int n = 0; n < numInstances; n++) {
+            int c = rand.nextInt(3);
+            double[] values = new double[numAttributes + 1];
+            for (int i = 0; i < numAttributes; i++) {
+                if (i == 0) {
+                    //constant
+                    values[i] = 1;
+                } else if (i == 1) {
+                    //all missing
+                    values[i] = Double.NaN;
+                } else if (i % 3 == 0) {
+                    //few distinct values, so many thresholds and attributes tie on gain
+                    values[i] = rand.nextInt(3) + (i == 3 ? c : 0);
+                } else {
+                    values[i] = rand.nextGaussian() + c * 0.5;
+                }
+
+                if (rand.nextDouble() < 0.1)
+                    values[i] = Double.NaN;
+            }
+            values[numAttributes] = c;
+            data.add(new DenseInstance(1.0, values));
+        }
+        return data;
+    }
+
+    private static ContinuousIntervalTree build(Instances train, int seed, int k, boolean useMargin,
+            boolean columnMajor) throws Exception {
+        ContinuousIntervalTree tree = new ContinuousIntervalTree();
+        tree.setSeed(seed);
+        tree.setK(k);
+        tree.setUseMargin(useMargin);
+        tree.setColumnMajorBuild(columnMajor);
+        tree.buildClassifier(train);
+        return tree;
+    }
+
+    private static void assertSameTrees(Instances train, Instances test, int seed, int k, boolean useMargin)
+            throws Exception {
+        ContinuousIntervalTree expected = build(train, seed, k, useMargin, false);
+        ContinuousIntervalTree actual = build(train, seed, k, useMargin, true);
+        String msg = "seed " + seed + " k " + k + " margin " + useMargin;
+
+        ArrayList<Double>[] expectedSplits = expected.getTreeSplitsGain();
+        ArrayList<Double>[] actualSplits = actual.getTreeSplitsGain();
+        //with a single threshold, at the NaN step from the min, no attribute splits
+        Assert.assertTrue(msg, k == 1 || expectedSplits[0].size() > 1);
+        Assert.assertEquals(msg, expectedSplits[0], actualSplits[0]);
+        Assert.assertEquals(msg, expectedSplits[1], actualSplits[1]);
+
+        for (int i = 0; i < test.numInstances(); i++) {
+            Assert.assertArrayEquals(msg + " inst " + i, expected.distributionForInstance(test.get(i)),
+                    actual.distributionForInstance(test.get(i)), 0);
+        }
+    }
+
+    @Test
+    public void testSameAsInstancesBuild() throws Exception {
+        for (int seed = 0; seed < 5; seed++) {
+            Instances train = randomData(seed, 100);
+            Instances test = randomData(seed + 100, 50);
+            for (int k : new int[] { 1, 5, 20 }) {
+                assertSameTrees(train, test, seed, k, false);
+                assertSameTrees(train, test, seed, k, true);
+            }
+        }
+    }
+
+    @Test
+    public void testSameAsInstancesBuildItalyPowerDemand() throws Exception {
+        Instances[] data = DatasetLoading.sampleItalyPowerDemand(0);
+        for (int seed = 0; seed < 3; seed++) {
+            assertSameTrees(data[0], data[1], seed, 20, false);
+            assertSameTrees(data[0], data[1], seed, 20, true);
+        }
+    }
+}
@@ -33,6 +33,8 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import tsml.classifiers.*;
+import tsml.data_containers.TimeSeriesInstances;
+import tsml.data_containers.utilities.Converter;
 import tsml.transformers.Transformer;
 import utilities.DebugPrinting;
 import utilities.ErrorReport;
@@ -101,6 +103,10 @@ public abstract class AbstractEnsemble extends EnhancedAbstractClassifier implem
     //MultiThreadable
     protected int numThreads = 1;
     protected boolean multiThread = false;
+    
+    //whether distributionForInstances(...) adds its predictions to the ensemble and module test results,
+    //off by default so that batches can be predicted concurrently without touching the ensemble's state
+    protected boolean recordBatchTestResults = false;
         
     /**
      * An annoying compromise to deal with base classfiers that dont produce dists 
@@ -504,7 +510,7 @@ public abstract class AbstractEnsemble extends EnhancedAbstractClassifier implem
 
             if (!trainResultsLoaded)
                 errors.log("\nTRAIN results files for '" + modules[m].getModuleName() + "' on '" + datasetName + "' fold '" + seed + "' not found. ");
-            else if (needIndividualTrainPreds() && modules[m].trainResults.getProbabilityDistributions().isEmpty())
+            else if (needIndividualTrainPreds() && modules[m].trainResults.numInstances()==0)
                 errors.log("\nNo pred/distribution for instance data found in TRAIN results file for '" + modules[m].getModuleName() + "' on '" + datasetName + "' fold '" + seed + "'. ");
 
             if (!testResultsLoaded)
@@ -1017,6 +1023,137 @@ public abstract class AbstractEnsemble extends EnhancedAbstractClassifier implem
         double[] dist = distributionForInstance(instance);
         return findIndexOfMax(dist, rand);
     }
+    
+    /**
+     * Batch version of distributionForInstance. Unlike distributionForInstance, this does not alter the state of 
+     * the ensemble (unless recordBatchTestResults is set), so a built ensemble can predict several batches at once, 
+     * e.g. when serving concurrent requests, provided its base classifiers can also predict concurrently.
+     * 
+     * If multithreading, each module predicts the whole batch in its own thread, as base classifiers are not 
+     * generally safe to predict with concurrently. The module outputs are then combined by the voting scheme in 
+     * blocks of instances spread over the threads. Modules the voting scheme does not use (see 
+     * ModuleVotingScheme.usesModule) do not predict at all.
+     * 
+     * If the individuals' results were read from file, the test instances are instead classified one at a time 
+     * through distributionForInstance, as the votes are looked up by the test instance counter.
+     * 
+     * @return the distribution for each instance, i.e. [0] = first instance's dist, [1] = second...
+     */
+    public double[][] distributionForInstances(Instances data) throws Exception {
+        double[][] dists = new double[data.numInstances()][];
+        if (readIndividualsResults) {
+            for (int i = 0; i < dists.length; i++)
+                dists[i] = distributionForInstance(data.instance(i));
+            return dists;
+        }
+        
+        final Instances insts = transform == null ? data : transform.transform(data);
+        
+        //moduleDists[m][i] = module m's dist for instance i, and likewise for the prediction times. Left null/0 
+        //for modules the voting scheme does not use
+        final double[][][] moduleDists = new double[modules.length][insts.numInstances()][];
+        final long[][] modulePredTimes = new long[modules.length][insts.numInstances()];
+        List<Callable<Void>> modulePredictions = new ArrayList<>(modules.length);
+        for (int m = 0; m < modules.length; m++) {
+            if (!votingScheme.usesModule(m))
+                continue;
+            
+            final Classifier classifier = modules[m].getClassifier();
+            final double[][] mDists = moduleDists[m];
+            final long[] mPredTimes = modulePredTimes[m];
+            modulePredictions.add(() -> {
+                for (int i = 0; i < mDists.length; i++) {
+                    long startTime = System.nanoTime();
+                    mDists[i] = classifier.distributionForInstance(insts.instance(i));
+                    mPredTimes[i] = System.nanoTime() - startTime;
+                }
+                return null;
+            });
+        }
+        
+        //combine the modules' dists for each block of instances
+        final long[] predTimes = new long[dists.length];
+        int numBlocks = multiThread ? Math.min(numThreads, dists.length) : 1;
+        List<Callable<Void>> votes = new ArrayList<>(numBlocks);
+        for (int b = 0; b < numBlocks; b++) {
+            final int start = (int) ((long) dists.length * b / numBlocks);
+            final int end = (int) ((long) dists.length * (b + 1) / numBlocks);
+            votes.add(() -> {
+                double[][] instDists = new double[modules.length][];
+                for (int i = start; i < end; i++) {
+                    long startTime = System.nanoTime();
+                    long predTime = 0;
+                    for (int m = 0; m < modules.length; m++) {
+                        instDists[m] = moduleDists[m][i];
+                        predTime += modulePredTimes[m][i];
+                    }
+                    dists[i] = votingScheme.distributionForInstance(modules, instDists);
+                    predTimes[i] = predTime + System.nanoTime() - startTime;
+                }
+                return null;
+            });
+        }
+        
+        if (multiThread) {
+            ExecutorService executor = ThreadingUtilities.buildExecutorService(numThreads);
+            try {
+                ThreadingUtilities.computeAll(executor, modulePredictions, false);
+                ThreadingUtilities.computeAll(executor, votes, false);
+            }
+            finally {
+                executor.shutdown();
+            }
+        }
+        else {
+            for (Callable<Void> modulePrediction : modulePredictions)
+                modulePrediction.call();
+            for (Callable<Void> vote : votes)
+                vote.call();
+        }
+        
+        if (recordBatchTestResults)
+            recordTestResults(dists, predTimes, moduleDists, modulePredTimes);
+        
+        return dists;
+    }
+    
+    @Override
+    public double[][] distributionForInstances(TimeSeriesInstances data) throws Exception {
+        return distributionForInstances(Converter.toArff(data));
+    }
+    
+    /**
+     * Adds the predictions of a batch to the ensemble's and modules' test results, in the same way as 
+     * distributionForInstance would have
+     */
+    protected synchronized void recordTestResults(double[][] dists, long[] predTimes, double[][][] moduleDists, long[][] modulePredTimes) throws Exception {
+        if (testResults == null) {
+            testResults = new ClassifierResults(numClasses);
+            testResults.setTimeUnit(TimeUnit.NANOSECONDS);
+            testResults.setBuildTime(buildTime);
+        }
+        
+        testResults.turnOffZeroTimingsErrors();
+        for (int i = 0; i < dists.length; i++) {
+            testResults.addPrediction(dists[i], findIndexOfMax(dists[i], rand), predTimes[i], "");
+            for (int m = 0; m < modules.length; m++)
+                if (votingScheme.usesModule(m))
+                    votingScheme.storeModuleTestResult(modules[m], moduleDists[m][i], modulePredTimes[m][i]);
+        }
+        testResults.turnOnZeroTimingsErrors();
+    }
+    
+    public boolean getRecordBatchTestResults() {
+        return recordBatchTestResults;
+    }
+    
+    /**
+     * If true, distributionForInstances(...) adds its predictions to the ensemble's and modules' test results, 
+     * for writing test files as when predicting one instance at a time. Off by default.
+     */
+    public void setRecordBatchTestResults(boolean recordBatchTestResults) {
+        this.recordBatchTestResults = recordBatchTestResults;
+    }
 
     /**
      * @return the predictions of each individual module, i.e [0] = first module's vote, [1] = second...
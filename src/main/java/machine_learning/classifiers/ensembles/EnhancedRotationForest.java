@@ -32,7 +32,14 @@ package machine_learning.classifiers.ensembles;
 import evaluation.evaluators.CrossValidationEvaluator;
 import tsml.classifiers.Checkpointable;
 import tsml.classifiers.EnhancedAbstractClassifier;
+import tsml.classifiers.MemoryContract;
+import tsml.classifiers.MemoryContractable;
 import tsml.classifiers.TrainTimeContractable;
+import utilities.ObjectSizes;
+import utilities.serialisation.AsyncCheckpointWriter;
+import utilities.serialisation.CheckpointCompression;
+import utilities.serialisation.CheckpointFiles;
+import utilities.serialisation.CheckpointSerializer;
 import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Classifier;
 import weka.core.*;
@@ -50,7 +57,7 @@ import java.util.concurrent.TimeUnit;
 
 
 public class EnhancedRotationForest extends EnhancedAbstractClassifier
-        implements TrainTimeContractable, Checkpointable, Serializable{
+        implements TrainTimeContractable, MemoryContractable, Checkpointable, Serializable{
 
     Classifier baseClassifier;
     ArrayList<Classifier> classifiers;
@@ -80,6 +87,8 @@ public class EnhancedRotationForest extends EnhancedAbstractClassifier
 
 
     private boolean trainTimeContract = false;
+    /** Stops adding trees when there is no room for another, each tree is accounted with its projections */
+    private MemoryContract memoryContract = new MemoryContract();
     transient private long trainContractTimeNanos =0;
     transient private long trainEstimateContractTimeNanos =0;
     //Added features
@@ -91,6 +100,10 @@ public class EnhancedRotationForest extends EnhancedAbstractClassifier
     int maxNumAttributes;
     String checkpointPath=null;
     boolean checkpoint=false;
+    transient private AsyncCheckpointWriter checkpointWriter;
+    transient private CheckpointSerializer checkpointSerializer;
+    private CheckpointCompression checkpointCompression;
+    private int numCheckpointedTrees=0;
     double timeUsed;
     Instances trainData;
     /** Flags and data required if Bagging **/
@@ -281,7 +294,8 @@ public class EnhancedRotationForest extends EnhancedAbstractClassifier
         trainData = data;
         File file = new File(checkpointPath + "RotF" + seed + ".ser");
         //if checkpointing and serialised files exist load said files
-        if (checkpoint && file.exists()){ //Configure from file
+        boolean loaded = checkpoint && file.exists();
+        if (loaded){ //Configure from file
             printLineDebug("Loading from checkpoint file");
             loadFromFile(checkpointPath + "RotF" + seed + ".ser");
             //               checkpointTimeElapsed -= System.nanoTime()-t1;
@@ -299,9 +313,13 @@ public class EnhancedRotationForest extends EnhancedAbstractClassifier
             reducedHeaders = new ArrayList<>();
             classifiers=new ArrayList<>();
             numTrees = 0;
+            numCheckpointedTrees = 0;
+            rand = new Random(seed);
         }
 
-        rand = new Random(seed);
+        memoryContract.reset();
+        for(int i=0;i<classifiers.size();i++)
+            memoryContract.addMember(treeMember(i), -1);
 //This is from the RotationForest: remove zero variance and normalise attributes.
 //Do this before loading from file, so we can perform checks of dataset?
         removeUseless = new RemoveUseless();
@@ -313,8 +331,8 @@ public class EnhancedRotationForest extends EnhancedAbstractClassifier
         seriesLength = data.numAttributes()-1;
         numInstances = data.numInstances();
         numClasses = data.numClasses();
-        //Set up for Bagging if required
-        if(bagging && getEstimateOwnPerformance()) {
+        //Set up for Bagging if required, the OOB counts so far are loaded with a checkpoint
+        if(bagging && getEstimateOwnPerformance() && !loaded) {
             trainDistributions = new double[numInstances][numClasses];
             oobCounts = new int[numInstances];
         }
@@ -350,7 +368,8 @@ public class EnhancedRotationForest extends EnhancedAbstractClassifier
         }
         long singleTreeTime;
         long currentTime=System.nanoTime()-startTime;
-        do{//Always build at least one tree
+        while(classifiers.isEmpty() || ((!trainTimeContract || withinTrainContract(currentTime))
+                && classifiers.size() < minNumTrees && memoryContract.hasRoomForMembers(1))){//Always build at least one tree
 //Formed bag data set if bagging
             singleTreeTime=System.nanoTime();
             Instances trainD=data;
@@ -372,8 +391,10 @@ public class EnhancedRotationForest extends EnhancedAbstractClassifier
 //TO DO: Alter the num attributes or cases for very big data
             int numAtts=trainD.numAttributes()-1;
             printLineDebug(" Building tree "+(numTrees+1)+" with "+numAtts+" attributes current total build time = "+currentTime/1000000000+" seconds contract time = "+trainContractTimeNanos/1000000000);
+            long allocationStart=ObjectSizes.threadAllocatedBytes();
             Classifier c= buildTree(trainD,instancesOfClass,numTrees, numAtts);
             classifiers.add(c);
+            memoryContract.addMember(treeMember(numTrees), ObjectSizes.threadAllocatedBytesSince(allocationStart));
             if(bagging) { // Get bagged distributions
                 for(int i=0;i<data.numInstances();i++){
                     if(!inBag[i]){
@@ -396,12 +417,18 @@ public class EnhancedRotationForest extends EnhancedAbstractClassifier
                 }
             }
             numTrees++;
+            if(checkpoint && numTrees % 10 == 0)
+                saveCheckpoint();
             //If the first one takes too long, adjust length parameter
             //Not used yet
             long endTreeTime=System.nanoTime();
             singleTreeTime=endTreeTime-singleTreeTime;
             currentTime=System.nanoTime()-startTime;
-        }while((!trainTimeContract || withinTrainContract(currentTime)) && classifiers.size() < minNumTrees);
+        }
+        if(checkpoint){
+            saveCheckpoint();
+            checkpointWriter.flush();
+        }
         //Build the classifier
         trainResults.setBuildTime(System.nanoTime()-startTime);
         trainResults.setParas(getParameters());
@@ -422,6 +449,9 @@ public class EnhancedRotationForest extends EnhancedAbstractClassifier
 
         trainResults.setTimeUnit(TimeUnit.NANOSECONDS);
         trainResults.setParas(getParameters());
+        //The copy of the train data is only needed to estimate performance
+        if(memoryContract.isContracted())
+            trainData=null;
 //        printLineDebug("*************** Finished Enhanced RotF Build with " + numTrees + " Trees built in " + (System.nanoTime() - startTime) / 1000000000 + " Seconds  ***************");
 
     }
@@ -913,6 +943,71 @@ public class EnhancedRotationForest extends EnhancedAbstractClassifier
         return validPath;
     }
 
+    @Override //Checkpointable
+    public boolean setCheckpointSerializer(CheckpointSerializer s) {
+        checkpointSerializer = s;
+        return true;
+    }
+
+    @Override //Checkpointable
+    public boolean setCheckpointCompression(CheckpointCompression c) {
+        checkpointCompression = c;
+        return true;
+    }
+
+    @Override //Checkpointable
+    public CheckpointSerializer getCheckpointSerializer() {
+        //the serialiser is transient, so is also null after this has been deserialised
+        return checkpointSerializer != null ? checkpointSerializer : Checkpointable.super.getCheckpointSerializer();
+    }
+
+    @Override //Checkpointable
+    public CheckpointCompression getCheckpointCompression() {
+        return checkpointCompression != null ? checkpointCompression : Checkpointable.super.getCheckpointCompression();
+    }
+
+    /**
+     * Writes each tree built since the last checkpoint to its own file in the background, followed by the rest of
+     * the current state, which records how many trees have been written. Built trees are not modified again, so
+     * are handed to the writer as they are.
+     */
+    private void saveCheckpoint() throws Exception {
+        if(checkpointWriter == null) checkpointWriter = new AsyncCheckpointWriter();
+        for(int i = numCheckpointedTrees; i < classifiers.size(); i++)
+            checkpointWriter.write(treeCheckpointFile(i), treeMember(i), getCheckpointSerializer(),
+                    getCheckpointCompression());
+        numCheckpointedTrees = classifiers.size();
+
+        //the snapshot leaves out the trees and the copy of the train data
+        ArrayList<Classifier> builtClassifiers = classifiers;
+        ArrayList<Filter[]> builtProjectionFilters = projectionFilters;
+        ArrayList<int[][]> builtGroups = groups;
+        ArrayList<Instances> builtHeaders = headers;
+        ArrayList<Instances[]> builtReducedHeaders = reducedHeaders;
+        Instances data = trainData;
+        classifiers = null;
+        projectionFilters = null;
+        groups = null;
+        headers = null;
+        reducedHeaders = null;
+        trainData = null;
+        try {
+            checkpointWriter.writeSnapshot(new File(checkpointPath + "RotF" + seed + ".ser"), this,
+                    getCheckpointSerializer(), getCheckpointCompression());
+        } finally {
+            classifiers = builtClassifiers;
+            projectionFilters = builtProjectionFilters;
+            groups = builtGroups;
+            headers = builtHeaders;
+            reducedHeaders = builtReducedHeaders;
+            trainData = data;
+        }
+    }
+
+    private File treeCheckpointFile(int i) {
+        return new File(checkpointPath + "RotF" + seed + "-" + i + ".ser");
+    }
+
     @Override
     public void copyFromSerObject(Object obj) throws Exception {
         if(!(obj instanceof EnhancedRotationForest))
@@ -939,10 +1034,30 @@ public class EnhancedRotationForest extends EnhancedAbstractClassifier
         minNumTrees=saved.minNumTrees;
         maxNumTrees=saved.maxNumTrees;
         maxNumAttributes=saved.maxNumAttributes;
-        checkpointPath=saved.checkpointPath;
         debug=saved.debug;
         timeUsed=saved.timeUsed;
         numTrees=saved.numTrees;
+        numCheckpointedTrees=saved.numCheckpointedTrees;
+        rand=saved.rand;
+        trainDistributions=saved.trainDistributions;
+        oobCounts=saved.oobCounts;
+
+        //the trees are checkpointed to their own files, in the order of treeMember
+        if(classifiers == null){
+            classifiers=new ArrayList<>(numCheckpointedTrees);
+            projectionFilters=new ArrayList<>(numCheckpointedTrees);
+            groups=new ArrayList<>(numCheckpointedTrees);
+            headers=new ArrayList<>(numCheckpointedTrees);
+            reducedHeaders=new ArrayList<>(numCheckpointedTrees);
+            for(int i=0;i<numCheckpointedTrees;i++){
+                Object[] tree=(Object[])CheckpointFiles.load(treeCheckpointFile(i), getCheckpointSerializer());
+                classifiers.add((Classifier)tree[0]);
+                projectionFilters.add((Filter[])tree[1]);
+                groups.add((int[][])tree[2]);
+                headers.add((Instances)tree[3]);
+                reducedHeaders.add((Instances[])tree[4]);
+            }
+        }
 
     }
 
@@ -967,5 +1082,20 @@ public class EnhancedRotationForest extends EnhancedAbstractClassifier
     public long getTrainContractTimeNanos() { return trainContractTimeNanos; }
 
     public void setBagging(boolean b){ bagging =b;}
+
+    /**
+     * abstract method from MemoryContractable interface. Trees are added until there is no room for another the size
+     * of the largest so far
+     */
+    @Override
+    public void setMemoryLimit(DataUnit unit, long amount) {
+        memoryContract.setLimit(unit, amount);
+    }
+
+    /** A tree and its projections, as accounted against the memory contract */
+    private Object treeMember(int i){
+        return new Object[]{classifiers.get(i), projectionFilters.get(i), groups.get(i), headers.get(i),
+                reducedHeaders.get(i)};
+    }
 }
 
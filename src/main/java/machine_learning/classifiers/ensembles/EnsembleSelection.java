@@ -339,7 +339,7 @@ public class EnsembleSelection extends CAWPE {
         assert(ensembleSoFarResults.getTimeUnit().equals(newModelResults.getTimeUnit()));
         newResults.setTimeUnit(ensembleSoFarResults.getTimeUnit());
         
-        for (int inst = 0; inst < ensembleSoFarResults.getProbabilityDistributions().size(); inst++) {
+        for (int inst = 0; inst < ensembleSoFarResults.numInstances(); inst++) {
             double[] ensDist = ensembleSoFarResults.getProbabilityDistribution(inst);
             double[] indDist = newModelResults.getProbabilityDistribution(inst);
             
@@ -19,7 +19,6 @@ package machine_learning.classifiers.ensembles.voting;
 
 import machine_learning.classifiers.ensembles.AbstractEnsemble.EnsembleModule;
 import static utilities.GenericTools.indexOfMax;
-import weka.core.Instance;
 
 /**
  * Each class' probability is defined as the average of each classifier that predicts this class' weighted 
@@ -84,14 +83,14 @@ public class AverageVoteByConfidence extends ModuleVotingScheme {
     }
 
     @Override
-    public double[] distributionForInstance(EnsembleModule[] modules, Instance testInstance) throws Exception {
+    public double[] distributionForInstance(EnsembleModule[] modules, double[][] moduleDists) {
         double[] preds = new double[numClasses];
         int[] numPredsForClass = new int[numClasses];
         
         double[] dist;
         int pred; 
         for(int m = 0; m < modules.length; m++){
-            dist = distributionForNewInstance(modules[m], testInstance);
+            dist = moduleDists[m];
             
             pred = (int)indexOfMax(dist);
             ++numPredsForClass[pred];
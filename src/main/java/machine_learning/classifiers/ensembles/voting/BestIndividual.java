@@ -110,4 +110,14 @@ public abstract class BestIndividual extends ModuleVotingScheme {
         return modules[bestModule].getClassifier().distributionForInstance(testInstance);
     }
     
+    @Override
+    public double[] distributionForInstance(EnsembleModule[] modules, double[][] moduleDists) {
+        return moduleDists[bestModule];
+    }
+    
+    @Override
+    public boolean usesModule(int moduleIndex) {
+        return moduleIndex == bestModule;
+    }
+    
 }
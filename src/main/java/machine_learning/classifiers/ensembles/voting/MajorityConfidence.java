@@ -18,7 +18,6 @@
 package machine_learning.classifiers.ensembles.voting;
 
 import machine_learning.classifiers.ensembles.AbstractEnsemble.EnsembleModule;
-import weka.core.Instance;
 
 /**
  * Uses the weighted confidences of each module that the instance is in EACH class (not just the most likely)
@@ -74,12 +73,12 @@ public class MajorityConfidence extends ModuleVotingScheme {
     }
 
     @Override
-    public double[] distributionForInstance(EnsembleModule[] modules, Instance testInstance) throws Exception {
+    public double[] distributionForInstance(EnsembleModule[] modules, double[][] moduleDists) {
         double[] preds = new double[numClasses];
         
         double[] dist;
         for(int m = 0; m < modules.length; m++){
-            dist = distributionForNewInstance(modules[m], testInstance);
+            dist = moduleDists[m];
             
             for (int c = 0; c < numClasses; c++) {
                 preds[c] += modules[m].priorWeight * 
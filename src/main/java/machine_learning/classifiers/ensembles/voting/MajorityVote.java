@@ -19,7 +19,6 @@ package machine_learning.classifiers.ensembles.voting;
 
 import machine_learning.classifiers.ensembles.AbstractEnsemble.EnsembleModule;
 import static utilities.GenericTools.indexOfMax;
-import weka.core.Instance;
 
 /**
  * Simple majority vote, gets the prediction of each module and adds it's weight
@@ -71,13 +70,13 @@ public class MajorityVote extends ModuleVotingScheme {
     }
 
     @Override
-    public double[] distributionForInstance(EnsembleModule[] modules, Instance testInstance) throws Exception {
+    public double[] distributionForInstance(EnsembleModule[] modules, double[][] moduleDists) {
         double[] preds = new double[numClasses];
         
         int pred;
         double[] dist;
         for(int m = 0; m < modules.length; m++){
-            dist = distributionForNewInstance(modules[m], testInstance);
+            dist = moduleDists[m];
             
             pred = (int)indexOfMax(dist);
             preds[pred] += modules[m].priorWeight * 
@@ -20,7 +20,6 @@ package machine_learning.classifiers.ensembles.voting;
 import java.util.Arrays;
 import machine_learning.classifiers.ensembles.AbstractEnsemble.EnsembleModule;
 import static utilities.GenericTools.indexOfMax;
-import weka.core.Instance;
 
 /**
  * Majority vote, however classifiers' vote is weighted by the confidence in their prediction,
@@ -52,7 +51,7 @@ public class MajorityVoteByConfidence extends ModuleVotingScheme {
             
             preds[pred] += modules[m].priorWeight * 
                             modules[m].posteriorWeights[pred] * 
-                            modules[m].trainResults.getProbabilityDistribution(trainInstanceIndex)[pred];
+                            modules[m].trainResults.getProbability(trainInstanceIndex, pred);
         }
         
         
@@ -92,20 +91,20 @@ public class MajorityVoteByConfidence extends ModuleVotingScheme {
             
             preds[pred] += modules[m].priorWeight * 
                             modules[m].posteriorWeights[pred] * 
-                            modules[m].testResults.getProbabilityDistribution(testInstanceIndex)[pred];
+                            modules[m].testResults.getProbability(testInstanceIndex, pred);
         }
         
         return normalise(preds);
     }
 
     @Override
-    public double[] distributionForInstance(EnsembleModule[] modules, Instance testInstance) throws Exception {
+    public double[] distributionForInstance(EnsembleModule[] modules, double[][] moduleDists) {
         double[] preds = new double[numClasses];
         
         int pred;
         double[] dist;
         for(int m = 0; m < modules.length; m++){
-            dist = distributionForNewInstance(modules[m], testInstance);
+            dist = moduleDists[m];
             
             pred = (int)indexOfMax(dist);
             preds[pred] += modules[m].priorWeight * 
@@ -19,7 +19,6 @@ package machine_learning.classifiers.ensembles.voting;
 
 import machine_learning.classifiers.ensembles.AbstractEnsemble.EnsembleModule;
 import static utilities.GenericTools.indexOfMax;
-import weka.core.Instance;
 
 /**
  * Individuals vote based on their weight * (confidence in prediction - 1/C), where
@@ -62,7 +61,7 @@ public class MajorityVoteByCorrectedConfidence extends ModuleVotingScheme {
             
             preds[pred] += modules[m].priorWeight * 
                             modules[m].posteriorWeights[pred] * 
-                            (modules[m].trainResults.getProbabilityDistribution(trainInstanceIndex)[pred] - normValue);
+                            (modules[m].trainResults.getProbability(trainInstanceIndex, pred) - normValue);
         }
         
         
@@ -104,14 +103,14 @@ public class MajorityVoteByCorrectedConfidence extends ModuleVotingScheme {
             
             preds[pred] += modules[m].priorWeight * 
                             modules[m].posteriorWeights[pred] * 
-                            (modules[m].testResults.getProbabilityDistribution(testInstanceIndex)[pred] - normValue);
+                            (modules[m].testResults.getProbability(testInstanceIndex, pred) - normValue);
         }
         
         return normalise(preds);
     }
 
     @Override
-    public double[] distributionForInstance(EnsembleModule[] modules, Instance testInstance) throws Exception {
+    public double[] distributionForInstance(EnsembleModule[] modules, double[][] moduleDists) {
         double[] preds = new double[numClasses];
         
         double normValue = 1.0/numClasses; 
@@ -119,7 +118,7 @@ public class MajorityVoteByCorrectedConfidence extends ModuleVotingScheme {
         int pred;
         double[] dist;
         for(int m = 0; m < modules.length; m++){
-            dist = distributionForNewInstance(modules[m], testInstance);
+            dist = moduleDists[m];
             
             pred = (int)indexOfMax(dist);
             preds[pred] += modules[m].priorWeight * 
@@ -19,7 +19,6 @@ package machine_learning.classifiers.ensembles.voting;
 
 import machine_learning.classifiers.ensembles.AbstractEnsemble.EnsembleModule;
 import static utilities.GenericTools.indexOfMax;
-import weka.core.Instance;
 
 /**
  * Individuals vote based on their weight * (confidence^power). The power scales the 
@@ -73,7 +72,7 @@ public class MajorityVoteByPoweredConfidence extends ModuleVotingScheme {
             
             preds[pred] += modules[m].priorWeight * 
                             modules[m].posteriorWeights[pred] * 
-                            Math.pow((modules[m].trainResults.getProbabilityDistribution(trainInstanceIndex)[pred]), power);
+                            Math.pow((modules[m].trainResults.getProbability(trainInstanceIndex, pred)), power);
         }
         
         return normalise(preds);
@@ -89,20 +88,20 @@ public class MajorityVoteByPoweredConfidence extends ModuleVotingScheme {
             
             preds[pred] += modules[m].priorWeight * 
                             modules[m].posteriorWeights[pred] * 
-                            Math.pow((modules[m].testResults.getProbabilityDistribution(testInstanceIndex)[pred]), power);
+                            Math.pow((modules[m].testResults.getProbability(testInstanceIndex, pred)), power);
         }
         
         return normalise(preds);
     }
 
     @Override
-    public double[] distributionForInstance(EnsembleModule[] modules, Instance testInstance) throws Exception {
+    public double[] distributionForInstance(EnsembleModule[] modules, double[][] moduleDists) {
         double[] preds = new double[numClasses];
         
         int pred;
         double[] dist;
         for(int m = 0; m < modules.length; m++){
-            dist = distributionForNewInstance(modules[m], testInstance);
+            dist = moduleDists[m];
             
             pred = (int)indexOfMax(dist);
             preds[pred] += modules[m].priorWeight * 
@@ -54,7 +54,29 @@ public abstract class ModuleVotingScheme implements DebugPrinting, Serializable
         return indexOfMax(dist);
     }
     
-    public abstract double[] distributionForInstance(EnsembleModule[] modules, Instance testInstance) throws Exception;
+    public double[] distributionForInstance(EnsembleModule[] modules, Instance testInstance) throws Exception {
+        double[][] moduleDists = new double[modules.length][];
+        for (int m = 0; m < modules.length; m++)
+            moduleDists[m] = distributionForNewInstance(modules[m], testInstance);
+        
+        return distributionForInstance(modules, moduleDists);
+    }
+    
+    /**
+     * Combines the distributions the modules have already produced for a single test instance, moduleDists[m] 
+     * being the distribution from modules[m]. Nothing is stored in the modules, so once the voting scheme is 
+     * trained this may be called from several threads at once.
+     */
+    public abstract double[] distributionForInstance(EnsembleModule[] modules, double[][] moduleDists) throws Exception;
+    
+    /**
+     * Whether distributionForInstance(modules, moduleDists) uses the distribution of modules[moduleIndex]. Modules 
+     * that are not used need not predict at all, their entries in moduleDists may be null. True for every module 
+     * unless a voting scheme declares otherwise.
+     */
+    public boolean usesModule(int moduleIndex) {
+        return true;
+    }
     
     public double classifyInstance(EnsembleModule[] modules, Instance testInstance) throws Exception {
         double[] dist = distributionForInstance(modules, testInstance);
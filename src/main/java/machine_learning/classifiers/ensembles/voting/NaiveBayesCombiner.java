@@ -19,7 +19,6 @@ package machine_learning.classifiers.ensembles.voting;
 
 import machine_learning.classifiers.ensembles.AbstractEnsemble.EnsembleModule;
 import static utilities.GenericTools.indexOfMax;
-import weka.core.Instance;
 
 /**
  *
@@ -131,7 +130,7 @@ public class NaiveBayesCombiner extends ModuleVotingScheme {
     }
 
     @Override
-    public double[] distributionForInstance(EnsembleModule[] modules, Instance testInstance) throws Exception {
+    public double[] distributionForInstance(EnsembleModule[] modules, double[][] moduleDists) {
         double[] ensDist = new double[numClasses];
         for (int ac = 0; ac < numClasses; ac++)
             ensDist[ac] = 1;
@@ -139,7 +138,7 @@ public class NaiveBayesCombiner extends ModuleVotingScheme {
         int pred;
         double[] mdist;
         for (int m = 0; m < modules.length; m++) {
-            mdist = distributionForNewInstance(modules[m], testInstance);
+            mdist = moduleDists[m];
             
             pred = (int)indexOfMax(mdist);
             for (int ac = 0; ac < numClasses; ac++) {
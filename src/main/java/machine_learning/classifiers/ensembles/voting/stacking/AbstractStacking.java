@@ -133,6 +133,25 @@ public abstract class AbstractStacking extends ModuleVotingScheme {
         Instance inst = buildInst(dists, null);
         return classifier.distributionForInstance(inst);
     }
+
+    @Override
+    public double[] distributionForInstance(EnsembleModule[] modules, double[][] moduleDists) throws Exception {
+        double[][] dists = new double[modules.length][];
+        
+        for(int m = 0; m < modules.length; m++){
+            dists[m] = moduleDists[m].clone();
+            
+            for (int c = 0; c < numClasses; c++) 
+                dists[m][c] *= modules[m].priorWeight * modules[m].posteriorWeights[c];
+        }
+        
+        //buildInst goes through the shared header, and weka classifiers are not guaranteed to be thread safe 
+        //when predicting
+        synchronized (this) {
+            Instance inst = buildInst(dists, null);
+            return classifier.distributionForInstance(inst);
+        }
+    }
     
     public String toString() { 
         return super.toString() + "(" + classifier.getClass().getSimpleName() + ")";
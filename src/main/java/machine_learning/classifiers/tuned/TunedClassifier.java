@@ -36,6 +36,7 @@ import java.util.Arrays;
 
 import tsml.classifiers.EnhancedAbstractClassifier;
 import tsml.classifiers.Checkpointable;
+import tsml.classifiers.MultiThreadable;
 import tsml.classifiers.TrainTimeContractable;
 import machine_learning.classifiers.SaveEachParameter;
 import tsml.classifiers.Tuneable;
@@ -64,7 +65,7 @@ import tsml.classifiers.Tuneable;
  * @author James Large (james.large@uea.ac.uk)
  */
 public class TunedClassifier extends EnhancedAbstractClassifier 
-        implements SaveEachParameter,ParameterSplittable,Checkpointable, TrainTimeContractable {
+        implements SaveEachParameter,ParameterSplittable,Checkpointable, TrainTimeContractable, MultiThreadable {
 
     ParameterSpace space = null;
     Tuner tuner = null;
@@ -86,6 +87,9 @@ public class TunedClassifier extends EnhancedAbstractClassifier
     
     boolean PS_parameterSplitting = false; //ParameterSplittable
     int PS_paraSetID = -1; //ParameterSplittable
+    
+    int MT_numThreads = 1; //MultiThreadable
+    boolean MT_multiThread = false; //MultiThreadable
     ////////// end interface variables
 
     /**
@@ -397,6 +401,15 @@ public class TunedClassifier extends EnhancedAbstractClassifier
         return tuner.withinTrainContract(start);
     }
 
+    /**
+     * Parameter sets are evaluated concurrently by the tuner, the final classifier is built on a single thread
+     */
+    @Override //MultiThreadable
+    public void enableMultiThreading(int numThreads) {
+        this.MT_numThreads = numThreads;
+        this.MT_multiThread = true;
+    }
+
     
     /**
      * To be called at start of buildClassifier
@@ -411,5 +424,8 @@ public class TunedClassifier extends EnhancedAbstractClassifier
         
         if (trainTimeContract)
             tuner.setTrainTimeLimit(this.trainContractTimeNanos);
+        
+        if (MT_multiThread)
+            tuner.enableMultiThreading(this.MT_numThreads);
     }
 }
@@ -18,9 +18,6 @@
 package machine_learning.classifiers.tuned;
 
 
-import experiments.CollateResults;
-import fileIO.OutFile;
-import java.io.File;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -28,6 +25,10 @@ import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import evaluation.tuning.ParameterResults;
+import evaluation.tuning.ParameterSpace;
+import evaluation.tuning.Tuner;
+import tsml.classifiers.MultiThreadable;
 import tsml.classifiers.ParameterSplittable;
 import utilities.ClassifierTools;
 import evaluation.evaluators.CrossValidationEvaluator;
@@ -80,7 +81,7 @@ import machine_learning.classifiers.SaveEachParameter;
     * 
     * Simple usage with ClassifierExperiments may not be guaranteed to work, especially in trainfile writing
  */
-public class TunedRandomForest extends RandomForest implements SaveParameterInfo,SaveEachParameter,ParameterSplittable{
+public class TunedRandomForest extends RandomForest implements SaveParameterInfo,SaveEachParameter,ParameterSplittable,MultiThreadable{
     boolean tuneParameters=true;
     int[] paraSpace1;//Maximum tree depth, m_MaxDepth
     int[] paraSpace2;//Number of features per tree,m_numFeatures
@@ -93,7 +94,7 @@ public class TunedRandomForest extends RandomForest implements SaveParameterInfo
     ArrayList<Double> accuracy;
     boolean crossValidate=true;
     boolean estimateAcc=true;  //If there is no tuning, this will find the estimate with the fixed values
-    private long combinedBuildTime;
+    private int numThreads=1;
     protected String resultsPath;
     protected boolean saveEachParaAcc=false;
 //Need to know this before build if the parameters are going to be set by index
@@ -134,6 +135,10 @@ public class TunedRandomForest extends RandomForest implements SaveParameterInfo
         saveEachParaAcc=b;
     }
     @Override
+    public void enableMultiThreading(int numThreads){
+        this.numThreads=numThreads;
+    }
+    @Override
     public void setParametersFromIndex(int x) {
         tuneParameters=false;
 //Three paras, evenly distributed, 1 to maxPerPara.
@@ -264,153 +269,61 @@ public class TunedRandomForest extends RandomForest implements SaveParameterInfo
                 System.out.print(i+", ");
         }
   }
+/**
+ * Cross validates each parameter set on a Tuner, which saves them to resultsPath if saveEachParaAcc and evaluates 
+ * them on numThreads threads. Ties are resolved randomly.
+ */
     public void tuneRandomForest(Instances train) throws Exception {
-         paras=new int[3];
         int folds=MAX_FOLDS;
         if(folds>train.numInstances())
             folds=train.numInstances();
-        double minErr=1;
         this.setSeed(rng.nextInt());
-        Instances trainCopy=new Instances(train);
+
+        ParameterSpace space=new ParameterSpace();
+        space.addParameter("depth",paraSpace1);
+        space.addParameter("K",paraSpace2);
+        space.addParameter("I",paraSpace3);
+
         CrossValidationEvaluator cv = new CrossValidationEvaluator();
-        cv.setSeed(seed);
         cv.setNumFolds(folds);
-        cv.buildFolds(trainCopy);
-        ArrayList<TunedSVM.ResultsHolder> ties=new ArrayList<>();
-        ClassifierResults tempResults;
-        int count=0;
-        OutFile temp=null;
-        for(int p1:paraSpace1){//Maximum tree depth, m_MaxDepth
-            for(int p2:paraSpace2){//Num features
-                for(int p3:paraSpace3){//Num trees
-                    count++;
-                    if(saveEachParaAcc){// check if para value already done
-                        File f=new File(resultsPath+count+".csv");
-                        if(f.exists()){
-                            if(CollateResults.validateSingleFoldFile(resultsPath+count+".csv")==false){
-                                System.out.println("Deleting file "+resultsPath+count+".csv because size ="+f.length());
-                            }
-                            else
-                                continue;//If done, ignore skip this iteration                        
-                        }
-                    }
-                    TunedRandomForest model = new TunedRandomForest();
-                    model.setMaxDepth(p1);
-                    model.setNumFeatures(p2);
-                    model.setNumTrees(p3);
-                    model.tuneParameters=false;
-                    model.estimateAcc=false;
-                    model.setSeed(count);
-                    tempResults=cv.crossValidateWithStats(model,trainCopy);
-                    
-                    tempResults.setEstimatorName("RandFPara"+count);
-                    tempResults.setDatasetName(train.relationName());
-                    tempResults.setFoldID(seed);
-                    tempResults.setSplit("train");
-                    
-                    tempResults.setParas("maxDepth,"+p1+",numFeatures,"+p2+",numTrees,"+p3);
-                    
-                    double e=1-tempResults.getAcc();
-                    if(m_Debug)
-                        System.out.println("Depth="+p1+",Features"+p2+",Trees="+p3+" Acc = "+(1-e));
-                    accuracy.add(tempResults.getAcc());
-                    if(saveEachParaAcc){// Save to file and close
-                        tempResults.writeFullResultsToFile(resultsPath+count+".csv");
-                        File f=new File(resultsPath+count+".csv");
-                        if(f.exists())
-                            f.setWritable(true, false);
-                        
-                    }                
-                    else{
-                        if(e<minErr){
-                        minErr=e;
-                        ties=new ArrayList<>();//Remove previous ties
-                        ties.add(new TunedSVM.ResultsHolder(p1,p2,p3,tempResults));
-                        }
-                        else if(e==minErr){//Sort out ties
-                            ties.add(new TunedSVM.ResultsHolder(p1,p2,p3,tempResults));
-                        }
-                    }
-                }
-            }
+        Tuner tuner=new Tuner(cv);
+        tuner.setSeed(seed);
+        if(saveEachParaAcc)
+            tuner.setPathToSaveParameters(resultsPath);
+        if(numThreads>1)
+            tuner.enableMultiThreading(numThreads);
+        ParameterResults best=tuner.tune(new ParameterSetRandomForest(seed),new Instances(train),space);
+
+        accuracy=new ArrayList<>(tuner.getParameterSetScores().values());
+        paras=new int[3];
+        paras[0]=Integer.parseInt(best.paras.getParameterValue("depth"));
+        paras[1]=Integer.parseInt(best.paras.getParameterValue("K"));
+        paras[2]=Integer.parseInt(best.paras.getParameterValue("I"));
+        this.setMaxDepth(paras[0]);
+        this.setNumFeatures(paras[1]);
+        this.setNumTrees(paras[2]);
+        res=best.results;
+        if(m_Debug)
+            System.out.println("Bestnum levels ="+paras[0]+" best num features = "+paras[1]+" best num trees ="+paras[2]+" best train acc = "+res.getAcc());
+    }
+
+/**
+ * The forest cross validated for each parameter set by the Tuner, taking the max depth -depth, num features -K and
+ * num trees -I as its options
+ */
+    private static class ParameterSetRandomForest extends TunedRandomForest {
+        ParameterSetRandomForest(int seed){
+            tuneParameters=false;
+            estimateAcc=false;
+            setSeed(seed);
         }
-        int bestNumLevels;
-        int bestNumFeatures;
-        int bestNumTrees;
-        
-        minErr=1;
-        if(saveEachParaAcc){
-// Check they are all there first. 
-            int missing=0;
-            for(int p1:paraSpace1){
-                for(int p2:paraSpace2){
-                    for(int p3:paraSpace3){
-                        File f=new File(resultsPath+count+".csv");
-                        if(!(f.exists() && f.length()>0))
-                            missing++;
-                    }
-                }
-              }
-            
-            if(missing==0)//All present
-            {
-                combinedBuildTime=0;
-    //            If so, read them all from file, pick the best
-                count=0;
-                for(int p1:paraSpace1){//C
-                    for(int p2:paraSpace2){//Exponent
-                        for(int p3:paraSpace3){//B
-                            count++;
-                            tempResults = new ClassifierResults();
-                            tempResults.loadResultsFromFile(resultsPath+count+".csv");
-                            combinedBuildTime+=tempResults.getBuildTime();
-                            double e=1-tempResults.getAcc();
-                            if(e<minErr){
-                                minErr=e;
-                                ties=new ArrayList<>();//Remove previous ties
-                                ties.add(new TunedSVM.ResultsHolder(p1,p2,p3,tempResults));
-                            }
-                            else if(e==minErr){//Sort out ties
-                                    ties.add(new TunedSVM.ResultsHolder(p1,p2,p3,tempResults));
-                            }
-        //Delete the files here to clean up.
 
-                            File f= new File(resultsPath+count+".csv");
-                            if(!f.delete())
-                                System.out.println("DELETE FAILED "+resultsPath+count+".csv");
-                        }
-                    }            
-                }
-                TunedSVM.ResultsHolder best=ties.get(rng.nextInt(ties.size()));
-                bestNumLevels=(int)best.x;
-                bestNumFeatures=(int)best.y;
-                bestNumTrees=(int)best.z;
-                paras[0]=bestNumLevels;
-                paras[1]=bestNumFeatures;
-                paras[2]=bestNumTrees;
-                this.setMaxDepth(bestNumLevels);
-                this.setNumFeatures(bestNumFeatures);
-                this.setNumTrees(bestNumTrees);
-               
-                res=best.res;
-                if(m_Debug)
-                    System.out.println("Bestnum levels ="+bestNumLevels+" best num features = "+bestNumFeatures+" best num trees ="+bestNumTrees+" best train acc = "+res.getAcc());
-            }else//Not all present, just ditch
-                System.out.println(resultsPath+" error: missing  ="+missing+" parameter values");
+        @Override
+        public void setOptions(String[] options) throws Exception {
+            setMaxDepth(Integer.parseInt(Utils.getOption("depth",options)));
+            setNumFeatures(Integer.parseInt(Utils.getOption('K',options)));
+            setNumTrees(Integer.parseInt(Utils.getOption('I',options)));
         }
-        else{
-            TunedSVM.ResultsHolder best=ties.get(rng.nextInt(ties.size()));
-            bestNumLevels=(int)best.x;
-            bestNumFeatures=(int)best.y;
-            bestNumTrees=(int)best.z;
-            paras[0]=bestNumLevels;
-            paras[1]=bestNumFeatures;
-            paras[2]=bestNumTrees;
-            this.setMaxDepth(bestNumLevels);
-            this.setNumFeatures(bestNumFeatures);
-            this.setNumTrees(bestNumTrees);
-            res=best.res;
-         }     
     }
     
     @Override
@@ -17,8 +17,6 @@
  
 package machine_learning.classifiers.tuned;
 
-import experiments.CollateResults;
-import fileIO.OutFile;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.text.DecimalFormat;
@@ -27,6 +25,11 @@ import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import evaluation.tuning.ParameterResults;
+import evaluation.tuning.ParameterSet;
+import evaluation.tuning.ParameterSpace;
+import evaluation.tuning.Tuner;
+import tsml.classifiers.MultiThreadable;
 import tsml.classifiers.ParameterSplittable;
 import utilities.ClassifierTools;
 import evaluation.evaluators.CrossValidationEvaluator;
@@ -74,7 +77,7 @@ m_C
  2. Could use libSVM instead
  * 
  */
-public class TunedSVM extends SMO implements SaveParameterInfo,SaveEachParameter,ParameterSplittable{
+public class TunedSVM extends SMO implements SaveParameterInfo,SaveEachParameter,ParameterSplittable,MultiThreadable{
     boolean setSeed=false;
     int seed;
     int minC=-16;//These search values are used for all kernels with C. It is also used for Gamma in RBF, but not for the Polynomial exponent search
@@ -103,6 +106,7 @@ public class TunedSVM extends SMO implements SaveParameterInfo,SaveEachParameter
     protected boolean saveEachParaAcc=false;
 //HARD CODED FLAG that allows a build from partials    
     private boolean buildFromPartial=false;
+    private int numThreads=1;
     
     @Override
     public void setPathToSaveParameters(String r){
@@ -113,6 +117,10 @@ public class TunedSVM extends SMO implements SaveParameterInfo,SaveEachParameter
     public void setSaveEachParaAcc(boolean b){
         saveEachParaAcc=b;
     }
+    @Override
+    public void enableMultiThreading(int numThreads){
+        this.numThreads=numThreads;
+    }
     public TunedSVM(){
         super();
         kernelOptimise=false;
@@ -311,145 +319,18 @@ public class TunedSVM extends SMO implements SaveParameterInfo,SaveEachParameter
     }
 
     public void tuneRBF(Instances train) throws Exception {
-        paras=new double[2];
-        int folds=MAX_FOLDS;
-        if(folds>train.numInstances())
-            folds=train.numInstances();
-
-        double minErr=1;
-        this.setSeed(rng.nextInt());
-        
-        Instances trainCopy=new Instances(train);
-        CrossValidationEvaluator cv = new CrossValidationEvaluator();
-        if (setSeed)
-            cv.setSeed(seed);
-        cv.setNumFolds(folds);
-        cv.buildFolds(trainCopy);
-        
-        
-        ArrayList<ResultsHolder> ties=new ArrayList<>();
-        ClassifierResults tempResults;
-        int count=0;
-        OutFile temp=null;
-        for(double p1:paraSpace1){
-            for(double p2:paraSpace2){
-                count++;
-                if(saveEachParaAcc){// check if para value already done
-                    File f=new File(resultsPath+count+".csv");
-                    if(f.exists()){
-                        if(f.length()==0){//Empty, delete
-                            f.delete();
-                        }
-                        else
-                            continue;//If done, ignore skip this iteration                        
-                    }
-                }
-                SMO model = new SMO();
-                RBFKernel kern = new RBFKernel();
-                kern.setGamma(p2);
-                model.setKernel(kern);
-                model.setC(p1);
-                model.setBuildLogisticModels(true);
-                tempResults=cv.crossValidateWithStats(model,trainCopy);
-                
-                tempResults.setEstimatorName("TunedSVM"+kernel);
-                tempResults.setDatasetName(train.relationName());
-                tempResults.setFoldID(seed);
-                tempResults.setSplit("train");
-                
-                tempResults.setParas("C,"+p1+",Gamma,"+p2);
+        ParameterSpace space=new ParameterSpace();
+        space.addParameter("C",paraSpace1);
+        space.addParameter("G",paraSpace2);
+        ParameterSet best=tune(train,space,new RBFKernel());
 
-//                Evaluation eval=new Evaluation(temp);
-//                eval.crossValidateModel(model, temp, folds, rng);
-                double e=1-tempResults.getAcc();
-                accuracy.add(tempResults.getAcc());
-                if(debug)
-                    System.out.println(" C= "+p1+" Gamma = "+p2+" Acc = "+(1-e));
-                if(saveEachParaAcc){// Save to file and close
-                    res.writeFullResultsToFile(resultsPath+count+".csv");
-                    File f=new File(resultsPath+count+".csv");
-                    if(f.exists())
-                        f.setWritable(true, false);
-                    
-                    
-                }                
-                else{
-                    if(e<minErr){
-                    minErr=e;
-                    ties=new ArrayList<>();//Remove previous ties
-                    ties.add(new ResultsHolder(p1,p2,tempResults));
-                    }
-                    else if(e==minErr){//Sort out ties
-                        ties.add(new ResultsHolder(p1,p2,tempResults));
-                    }
-                }
-            }
-        }
-        double bestC;
-        double bestSigma;
-        minErr=1;
-        if(saveEachParaAcc){
-// Check they are all there first. 
-            int missing=0;
-            for(double p1:paraSpace1){
-                for(double p2:paraSpace1){
-                    File f=new File(resultsPath+count+".csv");
-                    if(!(f.exists() && f.length()>0))
-                        missing++;
-                }
-              }
-            
-            if(missing==0)//All present
-            {
-                combinedBuildTime=0;
-    //            If so, read them all from file, pick the best
-                count=0;
-                for(double p1:paraSpace1){
-                    for(double p2:paraSpace1){
-                        count++;
-                        tempResults = new ClassifierResults();
-                        tempResults.loadResultsFromFile(resultsPath+count+".csv");
-                        combinedBuildTime+=tempResults.getBuildTimeInNanos();
-                        double e=1-tempResults.getAcc();
-                        if(e<minErr){
-                            minErr=e;
-                            ties=new ArrayList<>();//Remove previous ties
-                            ties.add(new ResultsHolder(p1,p2,tempResults));
-                        }
-                        else if(e==minErr){//Sort out ties
-                                ties.add(new ResultsHolder(p1,p2,tempResults));
-                        }
-    //Delete the files here to clean up.
-
-                        File f= new File(resultsPath+count+".csv");
-                        if(!f.delete())
-                            System.out.println("DELETE FAILED "+resultsPath+count+".csv");
-                    }            
-                }
-                ResultsHolder best=ties.get(rng.nextInt(ties.size()));
-                bestC=best.x;
-                bestSigma=best.y;
-                paras[0]=bestC;
-                setC(bestC);
-                ((RBFKernel)m_kernel).setGamma(bestSigma);
-                paras[1]=bestSigma;
-                res=best.res;
-                if(debug)
-                    System.out.println("Best C ="+bestC+" best Gamma = "+bestSigma+" best train acc = "+res.getAcc());
-            }else//Not all present, just ditch
-                System.out.println(resultsPath+" error: missing  ="+missing+" parameter values");
-        }
-        else{
-            ResultsHolder best=ties.get(rng.nextInt(ties.size()));
-            bestC=best.x;
-            bestSigma=best.y;
-            paras[0]=bestC;
-            setC(bestC);
-            ((RBFKernel)m_kernel).setGamma(bestSigma);
-            paras[1]=bestSigma;
-            res=best.res;
-         }
-        
+        paras=new double[2];
+        paras[0]=Double.parseDouble(best.getParameterValue("C"));
+        paras[1]=Double.parseDouble(best.getParameterValue("G"));
+        setC(paras[0]);
+        ((RBFKernel)m_kernel).setGamma(paras[1]);
+        if(debug)
+            System.out.println("Best C ="+paras[0]+" best Gamma = "+paras[1]+" best train acc = "+res.getAcc());
     }
 /**
  * Searches the polynomial exponent and the C value
@@ -457,154 +338,23 @@ public class TunedSVM extends SMO implements SaveParameterInfo,SaveEachParameter
  * @throws Exception 
  */    
     public void tunePolynomial(Instances train) throws Exception {
+        ParameterSpace space=new ParameterSpace();
+        space.addParameter("C",paraSpace1);
+        space.addParameter("E",paraSpace2);
+        space.addParameter("B",paraSpace3);
+        ParameterSet best=tune(train,space,new PolynomialKernel());
 
         paras=new double[3];
-        int folds=MAX_FOLDS;
-        if(folds>train.numInstances())
-            folds=train.numInstances();
-
-        double minErr=1;
-        this.setSeed(rng.nextInt());
-        
-        Instances trainCopy=new Instances(train);
-        CrossValidationEvaluator cv = new CrossValidationEvaluator();
-        if (setSeed)
-            cv.setSeed(seed);
-        cv.setNumFolds(folds);
-        cv.buildFolds(trainCopy);
-        
-        
-        ArrayList<ResultsHolder> ties=new ArrayList<>();
-        ClassifierResults tempResults;
-        int count=0;
-        OutFile temp=null;
-        for(double p1:paraSpace1){//C
-            for(double p2:paraSpace2){//Exponent
-                for(double p3:paraSpace3){//B
-                
-                    count++;
-                    if(saveEachParaAcc){// check if para value already done
-                        File f=new File(resultsPath+count+".csv");
-                        if(f.exists()){
-                            if(CollateResults.validateSingleFoldFile(resultsPath+count+".csv")==false){
-                                System.out.println("Deleting file "+resultsPath+count+".csv because incomplete, size ="+f.length());
-                            }
-                            else
-                                continue;//If done, ignore skip this iteration                        
-                        }
-                    }
-                    SMO model = new SMO();
-                    PolynomialKernel kern = new PolynomialKernel();
-                    kern.setExponent(p2);
-                    kern.setB(p3);
-                    model.setKernel(kern);
-                    model.setC(p1);
-                    model.setBuildLogisticModels(true);
-                    tempResults=cv.crossValidateWithStats(model,trainCopy);
-
-    //                Evaluation eval=new Evaluation(temp);
-    //                eval.crossValidateModel(model, temp, folds, rng);
-                    double e=1-tempResults.getAcc();
-                    accuracy.add(tempResults.getAcc());
-                    if(debug)
-                        System.out.println("C="+p1+",Exp="+p2+",B="+p3+", Acc = "+(1-e));
-                    if(saveEachParaAcc){// Save to file and close
-                        res.writeFullResultsToFile(resultsPath+count+".csv");
-                    }                
-                    else{
-                        if(e<minErr){
-                        minErr=e;
-                        ties=new ArrayList<>();//Remove previous ties
-                        ties.add(new ResultsHolder(p1,p2,p3,tempResults));
-                        }
-                        else if(e==minErr){//Sort out ties
-                            ties.add(new ResultsHolder(p1,p2,p3,tempResults));
-                        }
-                    }
-                }
-            }
-        }
-        double bestC;
-        double bestExponent;
-        double bestB;
-        
-        minErr=1;
-        if(saveEachParaAcc){
-// Check they are all there first. 
-            int missing=0;
-            for(double p1:paraSpace1){
-                for(double p2:paraSpace2){
-                    for(double p3:paraSpace3){
-                        File f=new File(resultsPath+count+".csv");
-                        if(!(f.exists() && f.length()>0))
-                            missing++;
-                    }
-                }
-              }
-            
-            if(missing==0)//All present
-            {
-                combinedBuildTime=0;
-    //            If so, read them all from file, pick the best
-                count=0;
-                for(double p1:paraSpace1){//C
-                    for(double p2:paraSpace2){//Exponent
-                        for(double p3:paraSpace3){//B
-                            count++;
-                            tempResults = new ClassifierResults();
-                            tempResults.loadResultsFromFile(resultsPath+count+".csv");
-                            combinedBuildTime+=tempResults.getBuildTimeInNanos();
-                            double e=1-tempResults.getAcc();
-                            if(e<minErr){
-                                minErr=e;
-                                ties=new ArrayList<>();//Remove previous ties
-                                ties.add(new ResultsHolder(p1,p2,p3,tempResults));
-                            }
-                            else if(e==minErr){//Sort out ties
-                                    ties.add(new ResultsHolder(p1,p2,p3,tempResults));
-                            }
-        //Delete the files here to clean up.
-
-                            File f= new File(resultsPath+count+".csv");
-                            if(!f.delete())
-                                System.out.println("DELETE FAILED "+resultsPath+count+".csv");
-                        }
-                    }            
-                }
-                ResultsHolder best=ties.get(rng.nextInt(ties.size()));
-                bestC=best.x;
-                bestExponent=best.y;
-                bestB=best.z;
-                paras[0]=bestC;
-                paras[1]=bestExponent;
-                paras[2]=bestB;
-                PolynomialKernel kern = new PolynomialKernel();
-                kern.setExponent(bestExponent);
-                kern.setB(bestB);
-                setKernel(kern);
-                setC(bestC);
-                
-                res=best.res;
-                if(debug)
-                    System.out.println("Best C ="+bestC+" best Gamma = "+bestExponent+" best train acc = "+res.getAcc());
-            }else//Not all present, just ditch
-                System.out.println(resultsPath+" error: missing  ="+missing+" parameter values");
-        }
-        else{
-            ResultsHolder best=ties.get(rng.nextInt(ties.size()));
-            bestC=best.x;
-            bestExponent=best.y;
-            bestB=best.z;
-            paras[0]=bestC;
-            paras[1]=bestExponent;
-            paras[2]=bestB;
-            PolynomialKernel kern = new PolynomialKernel();
-            kern.setExponent(bestExponent);
-            kern.setB(bestB);
-            setKernel(kern);
-            setC(bestC);
-            res=best.res;
-         }
+        paras[0]=Double.parseDouble(best.getParameterValue("C"));
+        paras[1]=Double.parseDouble(best.getParameterValue("E"));
+        paras[2]=Double.parseDouble(best.getParameterValue("B"));
+        PolynomialKernel kern = new PolynomialKernel();
+        kern.setExponent(paras[1]);
+        kern.setB(paras[2]);
+        setKernel(kern);
+        setC(paras[0]);
+        if(debug)
+            System.out.println("Best C ="+paras[0]+" best exponent = "+paras[1]+" best b = "+paras[2]+" best train acc = "+res.getAcc());
     }    
     
 /**
@@ -615,103 +365,41 @@ public class TunedSVM extends SMO implements SaveParameterInfo,SaveEachParameter
  * @throws Exception 
  */    
    public void tuneCForFixedPolynomial(Instances train) throws Exception {
+        ParameterSpace space=new ParameterSpace();
+        space.addParameter("C",paraSpace1);
+        ParameterSet best=tune(train,space,m_kernel);
+
         paras=new double[1];
+        paras[0]=Double.parseDouble(best.getParameterValue("C"));
+        setC(paras[0]);
+    }
+
+/**
+ * Cross validates the SMO with the given kernel over the parameter space on a Tuner, which saves each parameter set 
+ * to resultsPath if saveEachParaAcc, and evaluates the parameter sets on numThreads threads. Ties are resolved 
+ * randomly.
+ * @param space C, and G for the RBF gamma or E and B for the polynomial exponent and constant term
+ * @return the best parameter set, with res set to its cross validation results
+ */
+    private ParameterSet tune(Instances train, ParameterSpace space, Kernel kernel) throws Exception {
         int folds=MAX_FOLDS;
         if(folds>train.numInstances())
             folds=train.numInstances();
-        double minErr=1;
         this.setSeed(rng.nextInt());
-        
-        Instances trainCopy=new Instances(train);
+
         CrossValidationEvaluator cv = new CrossValidationEvaluator();
-        if (setSeed)
-            cv.setSeed(seed);
         cv.setNumFolds(folds);
-        cv.buildFolds(trainCopy);
-        
-        
-        ArrayList<ResultsHolder> ties=new ArrayList<>();
-        ClassifierResults tempResults;            
-        int count=0;
-        OutFile temp=null;
-        
-        for(double d: paraSpace1){
-            count++;
-            if(saveEachParaAcc){// check if para value already done
-                File f=new File(resultsPath+count+".csv");
-                if(f.exists() && f.length()>0)
-                    continue;//If done, ignore skip this iteration
-               if(debug)
-                   System.out.println("PARA COUNT ="+count);
-            }
-            
-            SMO model = new SMO();
-            model.setKernel(m_kernel);
-            model.setC(d);
-            model.setBuildLogisticModels(true);
-            
-            tempResults=cv.crossValidateWithStats(model,trainCopy);
-//                Evaluation eval=new Evaluation(temp);
-//                eval.crossValidateModel(model, temp, folds, rng);
-            double e=1-tempResults.getAcc();
-            accuracy.add(tempResults.getAcc());
-            if(saveEachParaAcc){// Save to file and close
-                res.writeFullResultsToFile(resultsPath+count+".csv");
-            }                
-            if(e<minErr){
-                minErr=e;
-               ties=new ArrayList<>();//Remove previous ties
-                ties.add(new ResultsHolder(d,0.0,tempResults));
-            }
-            else if(e==minErr){//Sort out ties
-                ties.add(new ResultsHolder(d,0.0,tempResults));
-            }
-        }
-        if(saveEachParaAcc){// Read them all from file, if all donepick the best
-            int missing=0;
-            for(double p1:paraSpace1){
-                File f=new File(resultsPath+count+".csv");
-                if(!(f.exists() && f.length()>0))
-                    missing++;
-            }
-            if(missing==0)//All present
-            {
-                combinedBuildTime=0;
-                count=0;
-                for(double p1:paraSpace1){
-                    count++;
-                    tempResults = new ClassifierResults();
-                    tempResults.loadResultsFromFile(resultsPath+count+".csv");
-                    combinedBuildTime+=tempResults.getBuildTimeInNanos();
-                    double e=1-tempResults.getAcc();
-                    if(e<minErr){
-                        minErr=e;
-                        ties=new ArrayList<>();//Remove previous ties
-                        ties.add(new ResultsHolder(p1,0.0,tempResults));
-                    }
-                    else if(e==minErr){//Sort out ties
-                            ties.add(new ResultsHolder(p1,0.0,tempResults));
-                    }
-    //Delete the files here to clean up.
-                    File f= new File(resultsPath+count+".csv");
-                    if(!f.delete())
-                        System.out.println("DELETE FAILED "+resultsPath+count+".csv");
-                }  
-                ResultsHolder best=ties.get(rng.nextInt(ties.size()));
-                setC(best.x);
-                res=best.res;
-                paras[0]=best.x;
-            }
-            else{
-                 System.out.println(resultsPath+" error: missing  ="+missing+" parameter values");
-            }
-        }
-        else{
-            ResultsHolder best=ties.get(rng.nextInt(ties.size()));
-            setC(best.x);
-            res=best.res;
-            paras[0]=best.x;
-        }
+        Tuner tuner=new Tuner(cv);
+        tuner.setSeed(seed);
+        if(saveEachParaAcc)
+            tuner.setPathToSaveParameters(resultsPath);
+        if(numThreads>1)
+            tuner.enableMultiThreading(numThreads);
+        ParameterResults best=tuner.tune(new ParameterSetSMO(kernel),new Instances(train),space);
+
+        accuracy=new ArrayList<>(tuner.getParameterSetScores().values());
+        res=best.results;
+        return best.paras;
     }
      
     public void selectKernel(Instances train) throws Exception {
@@ -1019,7 +707,7 @@ this gives the option of finding one using 10xCV
         super.buildClassifier(train);
 
         res.setTimeUnit(TimeUnit.NANOSECONDS);
-        if(saveEachParaAcc)
+        if(buildFromPartial)
             res.setBuildTime(combinedBuildTime);
         else
             res.setBuildTime(System.nanoTime()-t);
@@ -1195,6 +883,31 @@ this gives the option of finding one using 10xCV
     }
 
     
+/**
+ * The SMO cross validated for each parameter set by the Tuner, taking -C and the kernel parameters -G (RBF gamma),
+ * -E and -B (polynomial exponent and constant term) as its options
+ */
+    private static class ParameterSetSMO extends SMO {
+        ParameterSetSMO(Kernel kernel) throws Exception {
+            setKernel(Kernel.makeCopy(kernel));
+            setBuildLogisticModels(true);
+        }
+
+        @Override
+        public void setOptions(String[] options) throws Exception {
+            setC(Double.parseDouble(Utils.getOption('C',options)));
+            String gamma=Utils.getOption('G',options);
+            if(gamma.length()>0)
+                ((RBFKernel)getKernel()).setGamma(Double.parseDouble(gamma));
+            String exponent=Utils.getOption('E',options);
+            if(exponent.length()>0)
+                ((PolyKernel)getKernel()).setExponent(Double.parseDouble(exponent));
+            String b=Utils.getOption('B',options);
+            if(b.length()>0)
+                ((PolynomialKernel)getKernel()).setB(Double.parseDouble(b));
+        }
+    }
+
     protected static class PolynomialKernel extends PolyKernel {
 //Constant parameter to allow for (x.x+b)^m_exponent. The reason this wraps the 
 //Weka kernel is I dont think it possible to include this parameter in Weka        
@@ -0,0 +1,89 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package machine_learning.classifiers.tuned;
+
+import experiments.data.DatasetLoading;
+import java.io.File;
+import java.nio.file.Files;
+import org.junit.Assert;
+import org.junit.Test;
+import utilities.FileUtils;
+import weka.core.Instances;
+
+/**
+ * Purpose: test the search of TunedSVM on the Tuner finds the same parameters on 1 and several threads, saves each
+ * parameter set and resumes from them.
+ */
+public class TunedSVMTest {
+
+    private static final double[] C = { 0.01, 0.1, 1, 10, 100 };
+
+    private static TunedSVM svm(int numThreads) {
+        TunedSVM svm = new TunedSVM();
+        svm.setSeed(0);
+        svm.setKernelType(TunedSVM.KernelType.LINEAR);
+        svm.setParaSpace(C);
+        svm.enableMultiThreading(numThreads);
+        return svm;
+    }
+
+    private static void assertSameSearch(TunedSVM expected, TunedSVM actual, Instances test) throws Exception {
+        Assert.assertEquals(expected.getC(), actual.getC(), 0);
+        Assert.assertEquals(expected.getParameters().replaceFirst("BuildTime,\\d+", ""),
+                actual.getParameters().replaceFirst("BuildTime,\\d+", ""));
+        for (int i = 0; i < test.numInstances(); i++) {
+            Assert.assertArrayEquals("inst " + i, expected.distributionForInstance(test.get(i)),
+                    actual.distributionForInstance(test.get(i)), 0);
+        }
+    }
+
+    @Test
+    public void testSameForThreads() throws Exception {
+        Instances[] data = DatasetLoading.sampleItalyPowerDemand(0);
+        TunedSVM single = svm(1);
+        single.buildClassifier(data[0]);
+        TunedSVM multi = svm(4);
+        multi.buildClassifier(data[0]);
+
+        assertSameSearch(single, multi, data[1]);
+    }
+
+    @Test
+    public void testSaveEachParameterResume() throws Exception {
+        Instances[] data = DatasetLoading.sampleItalyPowerDemand(0);
+        File dir = Files.createTempDirectory("TunedSVMTest").toFile();
+        try {
+            String path = dir.getPath() + File.separator + "fold0_";
+            TunedSVM saved = svm(4);
+            saved.setPathToSaveParameters(path);
+            saved.buildClassifier(data[0]);
+            for (int i = 0; i < C.length; i++)
+                Assert.assertTrue(new File(path + i + ".csv").exists());
+
+            //a parameter set left out by a previous run is evaluated on resuming, the rest are loaded
+            Assert.assertTrue(new File(path + "2.csv").delete());
+            TunedSVM resumed = svm(1);
+            resumed.setPathToSaveParameters(path);
+            resumed.buildClassifier(data[0]);
+            Assert.assertTrue(new File(path + "2.csv").exists());
+
+            assertSameSearch(saved, resumed, data[1]);
+        } finally {
+            FileUtils.delete(dir.toPath());
+        }
+    }
+}
@@ -15,7 +15,6 @@ package machine_learning.classifiers.tuned;
 
 import evaluation.evaluators.CrossValidationEvaluator;
 import evaluation.storage.ClassifierResults;
-import fileIO.OutFile;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -24,16 +23,21 @@ import ml.dmlc.xgboost4j.java.Booster;
 import ml.dmlc.xgboost4j.java.DMatrix;
 import ml.dmlc.xgboost4j.java.XGBoost;
 import ml.dmlc.xgboost4j.java.XGBoostError;
+import evaluation.tuning.ParameterResults;
+import evaluation.tuning.ParameterSet;
+import evaluation.tuning.ParameterSpace;
+import evaluation.tuning.Tuner;
+import tsml.classifiers.MultiThreadable;
 import tsml.classifiers.ParameterSplittable;
 import utilities.DebugPrinting;
 import weka.classifiers.AbstractClassifier;
 import weka.core.Instance;
 import weka.core.Instances;
-import experiments.CollateResults;
+import weka.core.Utils;
 import experiments.data.DatasetLists;
 import experiments.ClassifierExperiments;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.concurrent.TimeUnit;
 import tsml.classifiers.EnhancedAbstractClassifier;
 import tsml.classifiers.SaveParameterInfo;
@@ -63,7 +67,7 @@ import machine_learning.classifiers.SaveEachParameter;
  * 
  * @author James Large (james.large@uea.ac.uk)
  */
-public class TunedXGBoost extends EnhancedAbstractClassifier implements SaveParameterInfo, DebugPrinting, SaveEachParameter, ParameterSplittable {
+public class TunedXGBoost extends EnhancedAbstractClassifier implements SaveParameterInfo, DebugPrinting, SaveEachParameter, ParameterSplittable, MultiThreadable {
 
     //data info
     int numTrainInsts = -1;
@@ -116,8 +120,8 @@ public class TunedXGBoost extends EnhancedAbstractClassifier implements SavePara
     protected String resultsPath;
     protected boolean saveEachParaAcc=false;
     ArrayList<Double> paramAccuracies;
-    private long combinedBuildTime;
     boolean runSingleThreaded = false;
+    int numThreads = 1;
 
     public TunedXGBoost() {
         super(CAN_ESTIMATE_OWN_PERFORMANCE);
@@ -178,6 +182,15 @@ public class TunedXGBoost extends EnhancedAbstractClassifier implements SavePara
         this.runSingleThreaded = runSingleThreaded;
     }
 
+    /**
+     * Parameter sets are cross validated on numThreads threads when tuning, each xgboost model still uses the threads
+     * given by runSingleThreaded
+     */
+    @Override //MultiThreadable
+    public void enableMultiThreading(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
 
     //copied over/refactored from tunedsvm/randf/rotf
     public static class XGBoostParamResultsHolder implements Comparable<XGBoostParamResultsHolder> {
@@ -205,6 +218,10 @@ public class TunedXGBoost extends EnhancedAbstractClassifier implements SavePara
          * This values wants to be minimised, higher values = potentially more prone to overfitting
          */
         public int computeConservedness() {
+            return computeConservedness(learningRate, maxTreeDepth, numIterations);
+        }
+
+        static int computeConservedness(float learningRate, int maxTreeDepth, int numIterations) {
             return (1 + Arrays.binarySearch(TunedXGBoost.learningRateParaRange, learningRate))
                 * (1 + Arrays.binarySearch(TunedXGBoost.maxTreeDepthParaRange, maxTreeDepth))
                 * (1 + Arrays.binarySearch(TunedXGBoost.numIterationsParaRange, numIterations));
@@ -225,161 +242,39 @@ public class TunedXGBoost extends EnhancedAbstractClassifier implements SavePara
         }
     }
 
-    //copied over/refactored from vector_classifiers.tunedsvm/randf/rotf
+    /**
+     * Cross validates each parameter set on a Tuner, which saves them to resultsPath if saveEachParaAcc and 
+     * evaluates them on numThreads threads. Ties go to the most conservative parameter set, see 
+     * XGBoostParamResultsHolder.computeConservedness()
+     */
     public void tuneHyperparameters() throws Exception {
         printlnDebug("tuneHyperparameters()");
 
-        double minErr=1;
-        paramAccuracies=new ArrayList<>();
+        ParameterSpace space = new ParameterSpace();
+        space.addParameter("L", learningRateParaRange);
+        space.addParameter("D", maxTreeDepthParaRange);
+        space.addParameter("I", numIterationsParaRange);
 
-        Instances trainCopy=new Instances(trainInsts);
         CrossValidationEvaluator cv = new CrossValidationEvaluator();
-        cv.setSeed(seed);
         cv.setNumFolds(cvFolds);
-        cv.buildFolds(trainCopy);
-        ArrayList<XGBoostParamResultsHolder> ties=new ArrayList<>();
-        ClassifierResults tempResults;
-        int count=0;
-        OutFile temp=null;
-        for(float p1:learningRateParaRange){
-            for(int p2:maxTreeDepthParaRange){
-//                TuningXGBoostCrossValidationWrapper cvmodels = new TuningXGBoostCrossValidationWrapper(p1, p2);
-//                cvmodels.setSeed(seed);
-
-                for(int p4:numIterationsParaRange){
-                    count++;
-                    if(saveEachParaAcc){// check if para value already done
-                        File f=new File(resultsPath+count+".csv");
-                        if(f.exists()){
-                            if(CollateResults.validateSingleFoldFile(resultsPath+count+".csv")==false){
-                                System.out.println("Deleting file "+resultsPath+count+".csv because size ="+f.length());
-                            }
-                            else
-                                continue;//If done, ignore skip this iteration                        
-                        }
-                    }
-                    TunedXGBoost model = new TunedXGBoost();
-                    model.setLearningRate(p1);
-                    model.setMaxTreeDepth(p2);
-                    model.setMinChildWeight(minChildWeight);
-                    model.setNumIterations(p4);
-                    model.tuneParameters=false;
-                    model.setEstimateOwnPerformance(false);
-                    model.setSeed(seed);
-                    tempResults=cv.crossValidateWithStats(model,trainCopy);
-
-//                    cvmodels.setNextNumIterations(p4);
-//                    tempResults=cv.crossValidateWithStats(cvmodels,trainCopy);
-
-                    tempResults.setEstimatorName("XGBoostPara"+count);
-                    tempResults.setParas("learningRate,"+p1+",maxTreeDepth,"+p2+",numIterations="+p4);
-
-                    double e=1-tempResults.getAcc();
-                    printlnDebug("learningRate="+p1+",maxTreeDepth"+p2+",numIterations="+p4+" Acc = "+(1-e));
-                    paramAccuracies.add(tempResults.getAcc());
-                    if(saveEachParaAcc){// Save to file and close
-                        tempResults.writeFullResultsToFile(resultsPath+count+".csv");
-                        
-                        File f=new File(resultsPath+count+".csv");
-                        if(f.exists())
-                            f.setWritable(true, false);
-                    }                
-                    else{
-                        if(e<minErr){
-                            minErr=e;
-                            ties=new ArrayList<>();//Remove previous ties
-                            ties.add(new XGBoostParamResultsHolder(p1,p2,p4,tempResults));
-                        }
-                        else if(e==minErr)//Sort out ties
-                            ties.add(new XGBoostParamResultsHolder(p1,p2,p4,tempResults));
-                    }
-                }
-            }
-        }
-
-        minErr=1;
-        if(saveEachParaAcc){
-// Check they are all there first. 
-            int missing=0;
-            count=1;
-            for(float p1:learningRateParaRange){
-                for(int p2:maxTreeDepthParaRange){
-                    for(int p4:numIterationsParaRange){
-                        File f=new File(resultsPath+count+".csv");
-                        if(!(f.exists() && f.length()>0))
-                            missing++;
-                        count++;
-                    }
-                }
-            }
-
-            if(missing==0)//All present
-            {
-                //rebuild the accuracies list
-                //if we had checkpointing on, but managed to perform the tuning in a single execution,
-                //this will be a waste of time (but functinoally makes no difference), however if we had 
-                //to rerun multiple times or got here via para splitting, the list will be empty/incomplete,
-                //so start from scratch and repopulate it
-                paramAccuracies=new ArrayList<>();
-
-                combinedBuildTime=0;
-    //            If so, read them all from file, pick the best
-                count=0;
-                for(float p1:learningRateParaRange){
-                    for(int p2:maxTreeDepthParaRange){
-                        for(int p4:numIterationsParaRange){
-                            count++;
-
-                            tempResults = new ClassifierResults();
-                            tempResults.loadResultsFromFile(resultsPath+count+".csv");
-
-                            combinedBuildTime+=tempResults.getBuildTime();
-                            paramAccuracies.add(tempResults.getAcc());
-
-                            double e=1-tempResults.getAcc();
-                            if(e<minErr){
-                                minErr=e;
-                                ties=new ArrayList<>();//Remove previous ties
-                                ties.add(new XGBoostParamResultsHolder(p1,p2,p4,tempResults));
-                            }
-                            else if(e==minErr){//Sort out ties
-                                ties.add(new XGBoostParamResultsHolder(p1,p2,p4,tempResults));
-                            }
-        //Delete the files here to clean up.
-
-                            File f= new File(resultsPath+count+".csv");
-                            if(!f.delete())
-                                System.out.println("DELETE FAILED "+resultsPath+count+".csv");
-                        }
-                    }            
-                }
-//                XGBoostParamResultsHolder best=ties.get(rng.nextInt(ties.size()));
-                XGBoostParamResultsHolder best=Collections.max(ties); //get the most conservative (see XGBoostParamResultsHolder.computeconservedness())
-                printlnDebug("Best learning rate ="+best.learningRate+" best max depth = "+best.maxTreeDepth+" best num iterations ="+best.numIterations+ " acc = " + trainResults.getAcc() + " (num ties = " + ties.size() + ")");
-
-                this.setLearningRate(best.learningRate);
-                this.setMaxTreeDepth(best.maxTreeDepth);
-                this.setNumIterations(best.numIterations);
-                trainResults=best.results;
-            }else//Not all present, just ditch
-                System.out.println(resultsPath+" error: missing  ="+missing+" parameter values");
-        }
-        else{
-            printlnDebug("\nTies Handling: ");
-            for (XGBoostParamResultsHolder tie : ties) {
-                printlnDebug(tie.toString());
-            }
-            printlnDebug("\n");
-
-//            XGBoostParamResultsHolder best=ties.get(rng.nextInt(ties.size()));
-            XGBoostParamResultsHolder best=Collections.max(ties); //get the most conservative (see XGBoostParamResultsHolder.computeconservedness())
-            printlnDebug("Best learning rate ="+best.learningRate+" best max depth = "+best.maxTreeDepth+" best num iterations ="+best.numIterations+" acc = " + trainResults.getAcc() + " (num ties = " + ties.size() + ")");
-
-            this.setLearningRate(best.learningRate);
-            this.setMaxTreeDepth(best.maxTreeDepth);
-            this.setNumIterations(best.numIterations);
-            trainResults=best.results;
-         }     
+        Tuner tuner = new Tuner(cv);
+        tuner.setSeed(seed);
+        //most conservative is least conserved
+        tuner.setTieBreaker(Comparator.comparingInt((ParameterSet p) -> -XGBoostParamResultsHolder.computeConservedness(
+                Float.parseFloat(p.getParameterValue("L")), Integer.parseInt(p.getParameterValue("D")), 
+                Integer.parseInt(p.getParameterValue("I")))));
+        if(saveEachParaAcc)
+            tuner.setPathToSaveParameters(resultsPath);
+        if(numThreads>1)
+            tuner.enableMultiThreading(numThreads);
+        ParameterResults best = tuner.tune(new ParameterSetXGBoost(this), new Instances(trainInsts), space);
+
+        paramAccuracies = new ArrayList<>(tuner.getParameterSetScores().values());
+        this.setLearningRate(Float.parseFloat(best.paras.getParameterValue("L")));
+        this.setMaxTreeDepth(Integer.parseInt(best.paras.getParameterValue("D")));
+        this.setNumIterations(Integer.parseInt(best.paras.getParameterValue("I")));
+        trainResults=best.results;
+        printlnDebug("Best learning rate ="+learningRate+" best max depth = "+maxTreeDepth+" best num iterations ="+numIterations+ " acc = " + trainResults.getAcc());
     }
 
     /**
@@ -471,10 +366,7 @@ public class TunedXGBoost extends EnhancedAbstractClassifier implements SavePara
         if(getEstimateOwnPerformance()&& !tuneParameters) //if tuneparas, will take the cv results of the best para set
             trainResults = estimateTrainAcc(trainInsts);
 
-        if(saveEachParaAcc)
-            trainResults.setBuildTime(combinedBuildTime);
-        else
-            trainResults.setBuildTime(System.nanoTime()-startTime);
+        trainResults.setBuildTime(System.nanoTime()-startTime);
 //            trainResults.buildTime=System.nanoTime()-startTime;
 
         trainResults.setTimeUnit(TimeUnit.NANOSECONDS);
@@ -594,6 +486,28 @@ public class TunedXGBoost extends EnhancedAbstractClassifier implements SavePara
     }
 
 
+    /**
+     * The model cross validated for each parameter set by the Tuner, taking the learning rate -L, max tree depth -D 
+     * and num iterations -I as its options
+     */
+    private static class ParameterSetXGBoost extends TunedXGBoost {
+
+        ParameterSetXGBoost(TunedXGBoost tuned) {
+            setMinChildWeight(tuned.minChildWeight);
+            setRunSingleThreaded(tuned.runSingleThreaded);
+            setTuneParameters(false);
+            setEstimateOwnPerformance(false);
+            setSeed(tuned.seed);
+        }
+
+        @Override
+        public void setOptions(String[] options) throws Exception {
+            setLearningRate(Float.parseFloat(Utils.getOption('L', options)));
+            setMaxTreeDepth(Integer.parseInt(Utils.getOption('D', options)));
+            setNumIterations(Integer.parseInt(Utils.getOption('I', options)));
+        }
+    }
+
     /**
      * Provides a smallish speedup when crossvalidating to tune hyperparameters. 
      * At current, will just speed up the search for the num iterations for a given set
@@ -18,11 +18,13 @@
 package tsml.classifiers;
 
 import utilities.FileUtils;
+import utilities.serialisation.CheckpointCompression;
+import utilities.serialisation.CheckpointFiles;
+import utilities.serialisation.CheckpointSerializer;
+import utilities.serialisation.JavaCheckpointSerializer;
 
 import java.io.*;
 import java.util.concurrent.TimeUnit;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 /**
  * Interface that allows the user to allow a classifier to checkpoint, i.e. 
@@ -54,22 +56,41 @@ public interface Checkpointable extends Serializable {
      */
     default boolean setCheckpointTimeHours(int t){ return false;};
 
-    //Override both if not using Java serialisation
+    /**
+     * Serialiser used to write checkpoint files, Java serialisation by default. Files record the format they were
+     * written in, so loading works whichever serialiser saved them.
+     */
+    default CheckpointSerializer getCheckpointSerializer() { return JavaCheckpointSerializer.INSTANCE; }
+
+    /**
+     * Compression applied to checkpoint files, GZIP by default.
+     */
+    default CheckpointCompression getCheckpointCompression() { return CheckpointCompression.GZIP; }
+
+    /**
+     *
+     * @param s serialiser to write checkpoint files with, i.e. JavaCheckpointSerializer or KryoCheckpointSerializer
+     * @return true if set, false if the classifier only writes the default
+     */
+    default boolean setCheckpointSerializer(CheckpointSerializer s){ return false; }
+
+    /**
+     *
+     * @param c compression to apply to checkpoint files
+     * @return true if set, false if the classifier only writes the default
+     */
+    default boolean setCheckpointCompression(CheckpointCompression c){ return false; }
+
+    //Override both if not using the checkpoint serialiser
     default void saveToFile(String filename) throws Exception {
-        try (FileUtils.FileLock fileLocker = new FileUtils.FileLock(filename);
-             FileOutputStream fos = new FileOutputStream(fileLocker.getFile());
-             GZIPOutputStream gos = new GZIPOutputStream(fos);
-             ObjectOutputStream out = new ObjectOutputStream(gos)) {
-            out.writeObject(this);
+        try (FileUtils.FileLock fileLocker = new FileUtils.FileLock(filename)) {
+            CheckpointFiles.save(this, fileLocker.getFile(), getCheckpointSerializer(), getCheckpointCompression());
         }
     }
     default void loadFromFile(String filename) throws Exception{
         Object obj = null;
-        try (FileUtils.FileLock fileLocker = new FileUtils.FileLock(filename);
-             FileInputStream fis = new FileInputStream(fileLocker.getFile());
-             GZIPInputStream gis = new GZIPInputStream(fis);
-             ObjectInputStream in = new ObjectInputStream(gis)) {
-            obj = in.readObject();
+        try (FileUtils.FileLock fileLocker = new FileUtils.FileLock(filename)) {
+            obj = CheckpointFiles.load(fileLocker.getFile(), getCheckpointSerializer());
         }
         if(obj != null) {
             copyFromSerObject(obj);
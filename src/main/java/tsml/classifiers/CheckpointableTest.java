@@ -0,0 +1,201 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.classifiers;
+
+import experiments.data.DatasetLoading;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import machine_learning.classifiers.ensembles.EnhancedRotationForest;
+import org.junit.Assert;
+import org.junit.Test;
+import tsml.classifiers.dictionary_based.TDE;
+import tsml.classifiers.interval_based.CIF;
+import tsml.classifiers.interval_based.DrCIF;
+import tsml.classifiers.shapelet_based.ShapeletTransformClassifier;
+import utilities.FileUtils;
+import utilities.serialisation.CheckpointCompression;
+import utilities.serialisation.CheckpointSerializer;
+import utilities.serialisation.KryoCheckpointSerializer;
+import weka.classifiers.Classifier;
+import weka.core.Instances;
+
+/**
+ * Purpose: test checkpointed forests write each tree to its own file next to a small header, and that a classifier
+ * resumed from the checkpoint files, written with Java serialisation or Kryo, makes the same predictions as the one
+ * which wrote them.
+ */
+public class CheckpointableTest {
+
+    private static final int NUM_TREES = 150;
+
+    private static DrCIF drcif() {
+        DrCIF drcif = new DrCIF();
+        drcif.setSeed(0);
+        drcif.setNumTrees(NUM_TREES);
+        return drcif;
+    }
+
+    private static CIF cif() {
+        CIF cif = new CIF();
+        cif.setSeed(0);
+        cif.setNumTrees(NUM_TREES);
+        return cif;
+    }
+
+    private static <T extends Checkpointable> T kryo(T classifier) {
+        Assert.assertTrue(classifier.setCheckpointSerializer(new KryoCheckpointSerializer()));
+        Assert.assertTrue(classifier.setCheckpointCompression(CheckpointCompression.NONE));
+        return classifier;
+    }
+
+    private static ShapeletTransformClassifier stc() {
+        ShapeletTransformClassifier stc = new ShapeletTransformClassifier();
+        stc.setSeed(0);
+        stc.setNumberOfShapeletsToEvaluate(500);
+        EnhancedRotationForest rotf = new EnhancedRotationForest();
+        rotf.setMinNumTrees(NUM_TREES / 10);
+        stc.setClassifier(rotf);
+        return stc;
+    }
+
+    private static TDE tde() {
+        TDE tde = new TDE();
+        tde.setSeed(0);
+        tde.setParametersConsidered(50);
+        tde.setMaxEnsembleSize(50);
+        return tde;
+    }
+
+    private static <T extends Classifier & Checkpointable> T build(Supplier<T> classifier, String path,
+            Instances train) throws Exception {
+        T built = classifier.get();
+        Assert.assertTrue(built.setCheckpointPath(path));
+        built.buildClassifier(train);
+        return built;
+    }
+
+    private static void assertFormat(File file, CheckpointSerializer serializer) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            //the header magic, then the format and compression ids
+            Assert.assertEquals(0x54534350, in.readInt());
+            Assert.assertEquals(serializer.getFormatId(), in.readByte());
+            Assert.assertEquals(CheckpointCompression.NONE.getId(), in.readByte());
+        }
+    }
+
+    private static void assertSamePredictions(Classifier expected, Classifier actual, Instances test)
+            throws Exception {
+        for (int i = 0; i < test.numInstances(); i++) {
+            Assert.assertArrayEquals("inst " + i, expected.distributionForInstance(test.get(i)),
+                    actual.distributionForInstance(test.get(i)), 0);
+        }
+    }
+
+    /**
+     * @param name prefix of the forest checkpoint files
+     * @param numTrees trees in the forest
+     * @param numOtherFiles checkpoint files other than the forest header and trees
+     */
+    private static <T extends Classifier & Checkpointable> void assertForestResumes(Supplier<T> forest, String name,
+            int numTrees, int numOtherFiles) throws Exception {
+        Instances[] data = DatasetLoading.sampleItalyPowerDemand(0);
+        File dir = Files.createTempDirectory("CheckpointableTest").toFile();
+        try {
+            String path = dir.getPath() + File.separator;
+            T built = build(forest, path, data[0]);
+
+            //a header and a file per tree
+            File header = new File(path + name + "0.ser");
+            Assert.assertTrue(header.exists());
+            long treeBytes = 0;
+            for (int i = 0; i < numTrees; i++)
+                treeBytes += new File(path + name + "0-" + i + ".ser").length();
+            Assert.assertEquals(numTrees + 1 + numOtherFiles, dir.list().length);
+            Assert.assertTrue(header.length() + " >= " + treeBytes, header.length() < treeBytes / 5);
+            if (built.getCheckpointCompression() == CheckpointCompression.NONE) {
+                assertFormat(header, built.getCheckpointSerializer());
+                assertFormat(new File(path + name + "0-0.ser"), built.getCheckpointSerializer());
+            }
+
+            T resumed = build(forest, path, data[0]);
+            assertSamePredictions(built, resumed, data[1]);
+
+            //the trees are loaded from their own files
+            Assert.assertTrue(new File(path + name + "0-" + (numTrees - 1) + ".ser").delete());
+            try {
+                build(forest, path, data[0]);
+                Assert.fail("resuming without all the trees should fail");
+            } catch (IOException e) {
+                //expected
+            }
+        } finally {
+            FileUtils.delete(dir.toPath());
+        }
+    }
+
+    @Test
+    public void testDrCIFResumes() throws Exception {
+        assertForestResumes(CheckpointableTest::drcif, "DrCIF", NUM_TREES, 0);
+    }
+
+    @Test
+    public void testCIFResumes() throws Exception {
+        assertForestResumes(CheckpointableTest::cif, "CIF", NUM_TREES, 0);
+    }
+
+    @Test
+    public void testDrCIFResumesWithKryo() throws Exception {
+        assertForestResumes(() -> kryo(drcif()), "DrCIF", NUM_TREES, 0);
+    }
+
+    @Test
+    public void testCIFResumesWithKryo() throws Exception {
+        assertForestResumes(() -> kryo(cif()), "CIF", NUM_TREES, 0);
+    }
+
+    @Test
+    public void testSTCResumesWithKryo() throws Exception {
+        //the transform is checkpointed next to the rotation forest
+        assertForestResumes(() -> kryo(stc()), "RotF", NUM_TREES / 10, 1);
+    }
+
+    @Test
+    public void testTDEResumesWithKryo() throws Exception {
+        Instances[] data = DatasetLoading.sampleItalyPowerDemand(0);
+        File dir = Files.createTempDirectory("CheckpointableTest").toFile();
+        try {
+            String path = dir.getPath() + File.separator;
+            TDE built = build(() -> kryo(tde()), path, data[0]);
+            //TDE checkpoints under a directory named by the data and its parameters
+            try (Stream<Path> files = Files.walk(dir.toPath())) {
+                File checkpoint = files.filter(f -> f.endsWith("TDE.ser")).findFirst().get().toFile();
+                assertFormat(checkpoint, built.getCheckpointSerializer());
+            }
+
+            TDE resumed = build(() -> kryo(tde()), path, data[0]);
+            assertSamePredictions(built, resumed, data[1]);
+        } finally {
+            FileUtils.delete(dir.toPath());
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tsml.classifiers;
+
+import utilities.ObjectSizes;
+
+import java.io.Serializable;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Memory accounting for a MemoryContractable classifier, estimating the memory retained by the model itself rather
+ * than sampling the whole JVM, so several models built at once each keep to their own share.
+ *
+ * The model is accounted as base bytes (anything it keeps other than its members, e.g. a transformed copy of the
+ * train data or a cache), set by the classifier, plus the size of each ensemble member. A new member is first
+ * accounted at the bytes its building thread allocated, an upper bound on what it retains which costs nothing to
+ * find. Only once the upper bounds no longer fit the limit are the members measured by walking their object graphs
+ * (ObjectSizes.deepSizeOf), so the walks are only paid for near the limit.
+ *
+ * Nothing is measured when no limit is set. The accounting is not serialised, classifiers re-add their members
+ * after loading a checkpoint.
+ */
+public class MemoryContract implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // bytes, <= 0 for no contract
+    private long limit = 0;
+    // proportion of the limit the model can fill, leaving room for the working memory of building it
+    private double headroom = 0.9;
+    // types members reference but don't own, e.g. the train data
+    private Class<?>[] sharedTypes = new Class<?>[0];
+
+    private transient long baseBytes;
+    private transient IdentityHashMap<Object, Size> members;
+    private transient long memberBytes;
+    private transient long allocatedBytes;
+
+    public void setLimit(long bytes) {
+        limit = bytes;
+    }
+
+    public void setLimit(MemoryContractable.DataUnit unit, long amount) {
+        limit = MemoryContractable.toBytes(unit, amount);
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public boolean isContracted() {
+        return limit > 0;
+    }
+
+    /**
+     * @param headroom proportion of the limit the model can fill, the rest is left for working memory while building
+     */
+    public void setHeadroom(double headroom) {
+        if (headroom <= 0 || headroom > 1)
+            throw new IllegalArgumentException("headroom must be in (0, 1]: " + headroom);
+        this.headroom = headroom;
+    }
+
+    /**
+     * @param types types members reference but which are owned elsewhere, such as the train data, not counted
+     *              towards a member's size
+     */
+    public void setSharedTypes(Class<?>... types) {
+        sharedTypes = types;
+    }
+
+    /**
+     * Clears the accounting, to be called at the start of a build.
+     */
+    public synchronized void reset() {
+        baseBytes = 0;
+        members = null;
+        memberBytes = 0;
+        allocatedBytes = 0;
+    }
+
+    public synchronized void setBaseBytes(long bytes) {
+        baseBytes = bytes;
+    }
+
+    public synchronized long getBaseBytes() {
+        return baseBytes;
+    }
+
+    /**
+     * Adds a member to the accounting.
+     *
+     * @param member the member
+     * @param allocatedBytes bytes allocated building the member, all on one thread, or -1 if unknown in which case
+     *                       the member is measured
+     * @return bytes the member is accounted at
+     */
+    public synchronized long addMember(Object member, long allocatedBytes) {
+        Size size = new Size();
+        if (allocatedBytes >= 0) {
+            size.bytes = allocatedBytes;
+            this.allocatedBytes += allocatedBytes;
+        } else if (isContracted()) {
+            size.bytes = ObjectSizes.deepSizeOf(member, sharedTypes);
+            size.measured = true;
+        }
+
+        Size old = members().put(member, size);
+        if (old != null)
+            memberBytes -= old.bytes;
+        memberBytes += size.bytes;
+        return size.bytes;
+    }
+
+    /**
+     * @return bytes the member was accounted at, 0 if it was not a member
+     */
+    public synchronized long removeMember(Object member) {
+        Size size = members().remove(member);
+        if (size == null)
+            return 0;
+        memberBytes -= size.bytes;
+        return size.bytes;
+    }
+
+    public synchronized int getNumMembers() {
+        return members().size();
+    }
+
+    public synchronized long getMemberBytes() {
+        return memberBytes;
+    }
+
+    public synchronized long getUsedBytes() {
+        return baseBytes + memberBytes;
+    }
+
+    /**
+     * @return bytes allocated building the members added with a known allocation
+     */
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return whether the model fits within the limit, or true if not contracted
+     */
+    public synchronized boolean isWithinLimit() {
+        return hasRoomFor(0);
+    }
+
+    /**
+     * @param bytes bytes to be added to the model
+     * @return whether the model would still fit within the limit, or true if not contracted
+     */
+    public synchronized boolean hasRoomFor(long bytes) {
+        if (!isContracted() || getUsedBytes() + bytes <= capacity())
+            return true;
+        return measureMembers() && getUsedBytes() + bytes <= capacity();
+    }
+
+    /**
+     * @param member a member
+     * @return whether the model would fit within the limit without the member, e.g. if a new member replaced it, or
+     * true if not contracted
+     */
+    public synchronized boolean isWithinLimitWithout(Object member) {
+        if (!isContracted() || getUsedBytes() - memberSize(member) <= capacity())
+            return true;
+        return measureMembers() && getUsedBytes() - memberSize(member) <= capacity();
+    }
+
+    /**
+     * @param numMembers number of members to be added
+     * @return whether there is room for this many more members the size of the largest so far, or true if not
+     * contracted
+     */
+    public synchronized boolean hasRoomForMembers(int numMembers) {
+        if (!isContracted() || getUsedBytes() + numMembers * largestMember() <= capacity())
+            return true;
+        return measureMembers() && getUsedBytes() + numMembers * largestMember() <= capacity();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "memoryLimit," + limit + ",memoryUsed," + getUsedBytes() + ",numMembers," + getNumMembers();
+    }
+
+    private long capacity() {
+        return (long) (limit * headroom);
+    }
+
+    private long memberSize(Object member) {
+        Size size = members().get(member);
+        return size == null ? 0 : size.bytes;
+    }
+
+    private long largestMember() {
+        long largest = 0;
+        for (Size size : members().values()) {
+            largest = Math.max(largest, size.bytes);
+        }
+        return largest;
+    }
+
+    /**
+     * Replaces the upper bounds of any members not yet measured with their measured sizes.
+     *
+     * @return whether any member was measured
+     */
+    private boolean measureMembers() {
+        boolean changed = false;
+        for (Map.Entry<Object, Size> entry : members().entrySet()) {
+            Size size = entry.getValue();
+            if (!size.measured) {
+                long bytes = ObjectSizes.deepSizeOf(entry.getKey(), sharedTypes);
+                memberBytes += bytes - size.bytes;
+                size.bytes = bytes;
+                size.measured = true;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private IdentityHashMap<Object, Size> members() {
+        if (members == null)
+            members = new IdentityHashMap<>();
+        return members;
+    }
+
+    private static class Size {
+        long bytes;
+        boolean measured;
+    }
+}
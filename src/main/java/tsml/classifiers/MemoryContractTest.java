@@ -0,0 +1,129 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.classifiers;
+
+import experiments.data.DatasetLoading;
+import org.junit.Assert;
+import org.junit.Test;
+import tsml.classifiers.dictionary_based.TDE;
+import tsml.data_containers.TimeSeriesInstance;
+import tsml.data_containers.TimeSeriesInstances;
+import utilities.ObjectSizes;
+import weka.core.Instances;
+
+/**
+ * Purpose: test MemoryContract accounts members at their allocation until the limit is near, then at their measured
+ * size, and that a memory contracted TDE stays under its limit.
+ */
+public class MemoryContractTest {
+
+    private static final Class<?>[] SHARED = { TimeSeriesInstance.class, TimeSeriesInstances.class, Instances.class };
+
+    @Test
+    public void testNotContracted() {
+        MemoryContract contract = new MemoryContract();
+        Assert.assertFalse(contract.isContracted());
+        // unknown allocations are not measured without a limit
+        Assert.assertEquals(0, contract.addMember(new double[1000], -1));
+        Assert.assertTrue(contract.hasRoomFor(Long.MAX_VALUE / 2));
+        Assert.assertTrue(contract.hasRoomForMembers(1000));
+    }
+
+    @Test
+    public void testAccounting() {
+        MemoryContract contract = new MemoryContract();
+        contract.setLimit(10000);
+        contract.setHeadroom(1);
+        contract.setBaseBytes(1000);
+
+        double[] a = new double[100];
+        double[] b = new double[100];
+        Assert.assertEquals(816, contract.addMember(a, -1));
+        Assert.assertEquals(3000, contract.addMember(b, 3000));
+        Assert.assertEquals(2, contract.getNumMembers());
+        Assert.assertEquals(4816, contract.getUsedBytes());
+        Assert.assertEquals(3000, contract.getAllocatedBytes());
+
+        // fits on the upper bound
+        Assert.assertTrue(contract.hasRoomFor(5000));
+        Assert.assertEquals(4816, contract.getUsedBytes());
+
+        // doesn't, so b is measured
+        Assert.assertTrue(contract.hasRoomFor(7000));
+        Assert.assertEquals(1000 + 816 * 2, contract.getUsedBytes());
+        Assert.assertFalse(contract.hasRoomFor(8000));
+
+        Assert.assertTrue(contract.hasRoomForMembers(9));
+        Assert.assertFalse(contract.hasRoomForMembers(10));
+
+        Assert.assertEquals(816, contract.removeMember(a));
+        Assert.assertEquals(0, contract.removeMember(a));
+        Assert.assertEquals(1816, contract.getUsedBytes());
+
+        contract.reset();
+        Assert.assertEquals(0, contract.getUsedBytes());
+        Assert.assertEquals(0, contract.getNumMembers());
+    }
+
+    @Test
+    public void testHeadroom() {
+        MemoryContract contract = new MemoryContract();
+        contract.setLimit(10000);
+        contract.setHeadroom(0.5);
+        contract.addMember(new double[100], -1);
+        Assert.assertTrue(contract.hasRoomFor(5000 - 816));
+        Assert.assertFalse(contract.hasRoomFor(5000 - 815));
+        Assert.assertTrue(contract.isWithinLimitWithout(new Object()));
+    }
+
+    private static TDE tde() {
+        TDE tde = new TDE();
+        tde.setSeed(0);
+        tde.setParametersConsidered(50);
+        tde.setMaxEnsembleSize(50);
+        return tde;
+    }
+
+    private static int numMembers(TDE tde) {
+        String[] parameters = tde.getParameters().split(",");
+        for (int i = 0; i < parameters.length - 1; i++) {
+            if (parameters[i].equals("numMembers"))
+                return Integer.parseInt(parameters[i + 1]);
+        }
+        throw new IllegalStateException("no memory contract in " + tde.getParameters());
+    }
+
+    @Test
+    public void testContractedTDE() throws Exception {
+        Instances[] data = DatasetLoading.sampleItalyPowerDemand(0);
+        TDE full = tde();
+        full.buildClassifier(data[0]);
+        long fullBytes = ObjectSizes.deepSizeOf(full, SHARED);
+
+        long limit = fullBytes / 3;
+        TDE contracted = tde();
+        contracted.setMemoryLimit(MemoryContractable.DataUnit.BYTES, limit);
+        contracted.buildClassifier(data[0]);
+
+        long contractedBytes = ObjectSizes.deepSizeOf(contracted, SHARED);
+        Assert.assertTrue(contractedBytes + " > " + limit, contractedBytes <= limit);
+        Assert.assertTrue(numMembers(contracted) > 0);
+
+        // still a working classifier
+        Assert.assertEquals(data[1].numClasses(), contracted.distributionForInstance(data[1].get(0)).length);
+    }
+}
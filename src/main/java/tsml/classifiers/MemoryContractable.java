@@ -23,7 +23,10 @@ import tsml.classifiers.distance_based.utils.system.memory.MemoryWatchable;
  * Interface that allows the user to impose a memory contract of a classifier that
     implements this interface
 
-    known classifiers: None
+    known classifiers: TDE, ProximityForest, ShapeletTransformClassifier, HIVE_COTE, EnhancedRotationForest
+ *
+ * The contract is on the memory retained by the model itself, see MemoryContract for the accounting. Near the limit
+ * classifiers stop adding ensemble members, shrink caches or release train data rather than exceed it.
  *
  * Provide default implementation of the memory stats getters which classifiers should track. It's most easily
  * tracked through the GcMemoryWatchable interface so you don't have to track the stats yourself!
@@ -45,4 +48,15 @@ public interface MemoryContractable {
     //pass in an value from the DataUnit enum and the amount of said values.
     void setMemoryLimit(DataUnit unit, long amount);
 
+    static long toBytes(DataUnit unit, long amount) {
+        switch (unit) {
+            case GIGABYTE:
+                return amount << 30;
+            case MEGABYTE:
+                return amount << 20;
+            default:
+                return amount;
+        }
+    }
+
 }
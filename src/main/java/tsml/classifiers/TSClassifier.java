@@ -20,6 +20,7 @@ package tsml.classifiers;
 import tsml.data_containers.TimeSeriesInstance;
 import tsml.data_containers.TimeSeriesInstances;
 import tsml.data_containers.utilities.Converter;
+import utilities.ThreadingUtilities;
 import weka.classifiers.Classifier;
 import weka.core.Instance;
 import weka.core.Instances;
@@ -43,10 +44,30 @@ public interface TSClassifier{
         return getClassifier().classifyInstance(Converter.toArff(inst, getTSTrainData().getClassLabels()));
     }
 
+    /**
+     * Whether, once built, distributionForInstance and classifyInstance can be called from several threads at once, 
+     * i.e. predicting does not alter the state of the classifier. If so, batches are predicted in parallel over 
+     * ThreadingUtilities.getPredictionPool(). False unless a classifier declares otherwise.
+     */
+    public default boolean canPredictConcurrently() {
+        return false;
+    }
+
+    /**
+     * Predicts the batch, in parallel if canPredictConcurrently(). The distributions are in the same order as the 
+     * instances either way.
+     */
     public default double[][] distributionForInstances(TimeSeriesInstances data) throws Exception {
         double[][] out = new double[data.numInstances()][];
 
         Instances data_inst = Converter.toArff(data);
+        if (canPredictConcurrently()) {
+            Classifier classifier = getClassifier();
+            ThreadingUtilities.parallelFor(ThreadingUtilities.getPredictionPool(), out.length,
+                    i -> out[i] = classifier.distributionForInstance(data_inst.get(i)));
+            return out;
+        }
+        
         int i=0;
         for(Instance inst : data_inst)
             out[i++] = getClassifier().distributionForInstance(inst);
@@ -57,12 +78,26 @@ public interface TSClassifier{
     public default double[] classifyInstances(TimeSeriesInstances data) throws Exception {
         double[] out = new double[data.numInstances()];
         Instances data_inst = Converter.toArff(data);
+        if (canPredictConcurrently()) {
+            Classifier classifier = getClassifier();
+            ThreadingUtilities.parallelFor(ThreadingUtilities.getPredictionPool(), out.length,
+                    i -> out[i] = classifier.classifyInstance(data_inst.get(i)));
+            return out;
+        }
+        
         int i=0;
         for(Instance inst : data_inst)
             out[i++] = getClassifier().classifyInstance(inst);
         return out;
     }
     
+    /**
+     * @return whether the classifier declares it can predict concurrently, false for plain weka classifiers
+     */
+    static boolean canPredictConcurrently(Classifier classifier) {
+        return classifier instanceof TSClassifier && ((TSClassifier) classifier).canPredictConcurrently();
+    }
+    
     static TSClassifier wrapClassifier(Classifier classifier) {
         return new TSClassifier() {
             private TimeSeriesInstances trainData;
@@ -17,6 +17,8 @@
  
 package tsml.classifiers.dictionary_based;
 
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.carrotsearch.hppc.cursors.IntIntCursor;
 import tsml.classifiers.MultiThreadable;
 import tsml.classifiers.dictionary_based.bitword.BitWordInt;
 import weka.classifiers.AbstractClassifier;
@@ -24,6 +26,9 @@ import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.UnassignedClassException;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.*;
 import java.util.concurrent.Callable;
@@ -130,21 +135,45 @@ public class IndividualBOSS extends AbstractClassifier implements Serializable,
         this.numThreads = numThreads;
     }
 
-    public static class Bag extends HashMap<BitWordInt, Integer> {
+    //map of word => count, keyed on the bits of the word to avoid boxing
+    public static class Bag implements Serializable {
+        private transient IntIntHashMap words = new IntIntHashMap();
         double classVal;
-        protected static final long serialVersionUID = 22552L;
+        protected static final long serialVersionUID = 22553L;
 
-        public Bag() {
-            super();
-        }
+        public Bag() { }
 
         public Bag(int classValue) {
-            super();
             classVal = classValue;
         }
 
         public double getClassVal() { return classVal; }
         public void setClassVal(double classVal) { this.classVal = classVal; }
+
+        public IntIntHashMap getWords() { return words; }
+        public int size() { return words.size(); }
+
+        public void add(BitWordInt word) {
+            words.addTo(word.getWord().intValue(), 1);
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+            out.writeInt(words.size());
+            for (IntIntCursor word : words) {
+                out.writeInt(word.key);
+                out.writeInt(word.value);
+            }
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            int size = in.readInt();
+            words = new IntIntHashMap(size);
+            for (int i = 0; i < size; i++) {
+                words.put(in.readInt(), in.readInt());
+            }
+        }
     }
 
     public int getWindowSize() { return windowSize; }
@@ -406,10 +435,7 @@ public class IndividualBOSS extends AbstractClassifier implements Serializable,
             if (numerosityReduction && word.equals(lastWord))
                 continue;
 
-            Integer val = bag.get(word);
-            if (val == null)
-                val = 0;
-            bag.put(word, ++val);
+            bag.add(word);
 
             lastWord = word;
         }
@@ -500,10 +526,7 @@ public class IndividualBOSS extends AbstractClassifier implements Serializable,
             if (numerosityReduction && word.equals(lastWord))
                 continue;
 
-            Integer val = bag.get(word);
-            if (val == null)
-                val = 0;
-            bag.put(word, ++val);
+            bag.add(word);
 
             lastWord = word;
         }
@@ -573,11 +596,9 @@ public class IndividualBOSS extends AbstractClassifier implements Serializable,
         double dist = 0.0;
 
         //find dist only from values in instA
-        for (Map.Entry<BitWordInt, Integer> entry : instA.entrySet()) {
-            Integer valA = entry.getValue();
-            Integer valB = instB.get(entry.getKey());
-            if (valB == null)
-                valB = 0;
+        for (IntIntCursor entry : instA.words) {
+            int valA = entry.value;
+            int valB = instB.words.get(entry.key);
             dist += (valA-valB)*(valA-valB);
 
             if (dist > bestDist)
@@ -33,8 +33,13 @@ import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.UnassignedClassException;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Function;
 
 /**
  * Improved BOSS classifier to be used with known parameters, for ensemble use TDE.
@@ -75,7 +80,8 @@ public class IndividualTDE extends EnhancedAbstractClassifier implements Compara
     protected int seriesLength;
 
     //feature selection
-    private ObjectHashSet<SerialisableComparablePair<BitWord, Byte>> chiSquare;
+    private LongHashSet chiSquare;
+    private LongHashSet chiSquareBigrams;
     protected int chiLimit = 2;
 
     protected int ensembleID = -1;
@@ -171,21 +177,66 @@ public class IndividualTDE extends EnhancedAbstractClassifier implements Compara
         this.numThreads = numThreads;
     }
 
-    //map of <word, level> => count
-    public static class Bag extends HashMap<SerialisableComparablePair<BitWord, Byte>, Integer> {
+    //map of <word, level> => count, without boxing. unigrams are keyed on a long holding the level in the upper and
+    //the word in the lower 32 bits, bigrams fill a long by themselves so are counted separately, all on level -1
+    public static class Bag implements Serializable {
+        private transient LongIntHashMap words = new LongIntHashMap();
+        private transient LongIntHashMap bigrams = new LongIntHashMap();
         private int classVal;
 
-        public Bag() {
-            super();
-        }
+        public Bag() { }
 
         public Bag(int classValue) {
-            super();
             classVal = classValue;
         }
 
         public int getClassVal() { return classVal; }
         public void setClassVal(int classVal) { this.classVal = classVal; }
+
+        public LongIntHashMap getWords() { return words; }
+        public LongIntHashMap getBigrams() { return bigrams; }
+        public int size() { return words.size() + bigrams.size(); }
+
+        public void addWord(BitWord word, byte level) {
+            words.addTo(wordKey(word.getWord().intValue(), level), 1);
+        }
+
+        public void addBigram(BitWord bigram) {
+            bigrams.addTo(bigram.getWord().longValue(), 1);
+        }
+
+        public static long wordKey(int word, byte level) { return ((long) level << 32) | Integer.toUnsignedLong(word); }
+        public static int word(long wordKey) { return (int) wordKey; }
+        public static byte level(long wordKey) { return (byte) (wordKey >>> 32); }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+            writeHistogram(out, words);
+            writeHistogram(out, bigrams);
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            words = readHistogram(in);
+            bigrams = readHistogram(in);
+        }
+
+        private static void writeHistogram(ObjectOutputStream out, LongIntHashMap histogram) throws IOException {
+            out.writeInt(histogram.size());
+            for (LongIntCursor word : histogram) {
+                out.writeLong(word.key);
+                out.writeInt(word.value);
+            }
+        }
+
+        private static LongIntHashMap readHistogram(ObjectInputStream in) throws IOException {
+            int size = in.readInt();
+            LongIntHashMap histogram = new LongIntHashMap(size);
+            for (int i = 0; i < size; i++) {
+                histogram.put(in.readLong(), in.readInt());
+            }
+            return histogram;
+        }
     }
 
     public int getWindowSize() { return windowSize; }
@@ -560,22 +611,30 @@ public class IndividualTDE extends EnhancedAbstractClassifier implements Compara
     }
 
     private void trainChiSquared() {
+        chiSquare = chiSquared(bags, Bag::getWords);
+        chiSquareBigrams = chiSquared(bags, Bag::getBigrams);
+
+        // best elements above limit
+        for (int i = 0; i < bags.size(); i++) {
+            bags.set(i, filterChiSquared(bags.get(i), chiSquare, chiSquareBigrams));
+        }
+    }
+
+    protected LongHashSet chiSquared(List<Bag> bags, Function<Bag, LongIntHashMap> histogram) {
         // Chi2 Test
-        ObjectIntHashMap<SerialisableComparablePair<BitWord, Byte>> featureCount
-                = new ObjectIntHashMap<>(bags.get(0).size());
+        LongIntHashMap featureCount = new LongIntHashMap(histogram.apply(bags.get(0)).size());
         DoubleDoubleHashMap classProb = new DoubleDoubleHashMap(10);
-        DoubleObjectHashMap<ObjectIntHashMap<SerialisableComparablePair<BitWord, Byte>>> observed
-                = new DoubleObjectHashMap<>(bags.get(0).size());
+        DoubleObjectHashMap<LongIntHashMap> observed = new DoubleObjectHashMap<>(histogram.apply(bags.get(0)).size());
 
         // count number of samples with this word
         for (Bag bag : bags) {
             if (!observed.containsKey(bag.classVal)) {
-                observed.put(bag.classVal, new ObjectIntHashMap<>());
+                observed.put(bag.classVal, new LongIntHashMap());
             }
-            for (Map.Entry<SerialisableComparablePair<BitWord, Byte>, Integer> word : bag.entrySet()) {
-                if (word.getValue() > 0) {
-                    featureCount.putOrAdd(word.getKey(), 1, 1);
-                    observed.get(bag.classVal).putOrAdd(word.getKey(), 1, 1);
+            for (LongIntCursor word : histogram.apply(bag)) {
+                if (word.value > 0) {
+                    featureCount.putOrAdd(word.key, 1, 1);
+                    observed.get(bag.classVal).putOrAdd(word.key, 1, 1);
                 }
             }
 
@@ -583,12 +642,12 @@ public class IndividualTDE extends EnhancedAbstractClassifier implements Compara
         }
 
         // chi-squared: observed minus expected occurrence
-        chiSquare = new ObjectHashSet<>(featureCount.size());
+        LongHashSet chiSquare = new LongHashSet(featureCount.size());
         for (DoubleDoubleCursor classLabel : classProb) {
             classLabel.value /= bags.size();
             if (observed.get(classLabel.key) != null) {
-                ObjectIntHashMap<SerialisableComparablePair<BitWord, Byte>> observe = observed.get(classLabel.key);
-                for (ObjectIntCursor<SerialisableComparablePair<BitWord, Byte>> feature : featureCount) {
+                LongIntHashMap observe = observed.get(classLabel.key);
+                for (LongIntCursor feature : featureCount) {
                     double expected = classLabel.value * feature.value;
                     double chi = observe.get(feature.key) - expected;
                     double newChi = chi * chi / expected;
@@ -598,27 +657,22 @@ public class IndividualTDE extends EnhancedAbstractClassifier implements Compara
                 }
             }
         }
-
-        // best elements above limit
-        for (int i = 0; i < bags.size(); i++) {
-            Bag newBag = new Bag(bags.get(i).classVal);
-            for (Map.Entry<SerialisableComparablePair<BitWord, Byte>, Integer> cursor : bags.get(i).entrySet()) {
-                if (chiSquare.contains(cursor.getKey())) {
-                    newBag.put(cursor.getKey(), cursor.getValue());
-                }
-            }
-            bags.set(i, newBag);
-        }
+        return chiSquare;
     }
 
-    private Bag filterChiSquared(Bag bag) {
+    protected static Bag filterChiSquared(Bag bag, LongHashSet words, LongHashSet bigrams) {
         Bag newBag = new Bag(bag.classVal);
-        for (Map.Entry<SerialisableComparablePair<BitWord, Byte>, Integer> cursor : bag.entrySet()) {
-            if (chiSquare.contains(cursor.getKey())) {
-                newBag.put(cursor.getKey(), cursor.getValue());
+        filterChiSquared(bag.words, words, newBag.words);
+        filterChiSquared(bag.bigrams, bigrams, newBag.bigrams);
+        return newBag;
+    }
+
+    private static void filterChiSquared(LongIntHashMap histogram, LongHashSet selected, LongIntHashMap filtered) {
+        for (LongIntCursor cursor : histogram) {
+            if (selected.contains(cursor.key)) {
+                filtered.put(cursor.key, cursor.value);
             }
         }
-        return newBag;
     }
 
     /**
@@ -641,10 +695,7 @@ public class IndividualTDE extends EnhancedAbstractClassifier implements Compara
 
             if (useBigrams) {
                 if (wInd - windowSize >= 0) {
-                    BitWord bigram = new BitWordLong(words[wInd - windowSize], word);
-
-                    SerialisableComparablePair<BitWord, Byte> key = new SerialisableComparablePair<>(bigram, (byte) -1);
-                    bag.merge(key, 1, Integer::sum);
+                    bag.addBigram(new BitWordLong(words[wInd - windowSize], word));
                 }
             }
 
@@ -756,10 +807,7 @@ public class IndividualTDE extends EnhancedAbstractClassifier implements Compara
 
             if (useBigrams) {
                 if (wInd - windowSize >= 0) {
-                    BitWord bigram = new BitWordLong(newWords[wInd - windowSize], word);
-
-                    SerialisableComparablePair<BitWord, Byte> key = new SerialisableComparablePair<>(bigram, (byte) -1);
-                    bag.merge(key, 1, Integer::sum);
+                    bag.addBigram(new BitWordLong(newWords[wInd - windowSize], word));
                 }
             }
 
@@ -802,9 +850,10 @@ public class IndividualTDE extends EnhancedAbstractClassifier implements Compara
     }
 
     protected void applyPyramidWeights(Bag bag) {
-        for (Map.Entry<SerialisableComparablePair<BitWord, Byte>, Integer> ent : bag.entrySet()) {
+        //bigrams are all on level -1, so keep a weight of 1
+        for (LongIntCursor ent : bag.words) {
             //find level that this quadrant is on
-            int quadrant = ent.getKey().var2;
+            int quadrant = Bag.level(ent.key);
             int qEnd = 0;
             int level = 0;
             while (qEnd < quadrant) {
@@ -813,8 +862,8 @@ public class IndividualTDE extends EnhancedAbstractClassifier implements Compara
             }
 
             //double val = ent.getValue() * (Math.pow(levelWeighting, levels-level-1)); //weighting ^ (levels - level)
-            int val = ent.getValue() * (int)Math.pow(2,level);
-            bag.put(ent.getKey(), val);
+            int val = ent.value * (int)Math.pow(2,level);
+            bag.words.indexReplace(ent.index, val);
         }
     }
 
@@ -830,8 +879,7 @@ public class IndividualTDE extends EnhancedAbstractClassifier implements Compara
             int pos = wInd + (windowSize/2); //use the middle of the window as its position
             int quadrant = qStart + (pos/quadrantSize);
 
-            SerialisableComparablePair<BitWord, Byte> key = new SerialisableComparablePair<>(word, (byte)quadrant);
-            bag.merge(key, 1, Integer::sum);
+            bag.addWord(word, (byte)quadrant);
 
             qStart += numQuadrants;
         }
@@ -913,13 +961,21 @@ public class IndividualTDE extends EnhancedAbstractClassifier implements Compara
      * @return distance FROM instA TO instB, or Double.MAX_VALUE if it would be greater than bestDist
      */
     public double BOSSdistance(Bag instA, Bag instB, double bestDist) {
-        double dist = 0.0;
+        double dist = BOSSdistance(instA.words, instB.words, 0.0, bestDist);
+        if (dist > bestDist)
+            return Double.MAX_VALUE;
+
+        return BOSSdistance(instA.bigrams, instB.bigrams, dist, bestDist);
+    }
 
-        //find dist only from values in instA
-        for (Map.Entry<SerialisableComparablePair<BitWord, Byte>, Integer> entry : instA.entrySet()) {
-            Integer valA = entry.getValue();
-            Integer valB = instB.get(entry.getKey());
-            if (valB == null) valB = 1;
+    /**
+     * Adds the BOSS distance between one pair of histograms to the dist so far, quitting early as above
+     */
+    protected static double BOSSdistance(LongIntHashMap histA, LongIntHashMap histB, double dist, double bestDist) {
+        //find dist only from values in histA
+        for (LongIntCursor entry : histA) {
+            int valA = entry.value;
+            int valB = histB.getOrDefault(entry.key, 1);
             dist += (valA-valB)*(valA-valB);
 
             if (dist > bestDist)
@@ -930,6 +986,10 @@ public class IndividualTDE extends EnhancedAbstractClassifier implements Compara
     }
 
     public double histogramIntersection(Bag instA, Bag instB) {
+        return histogramIntersection(instA.words, instB.words) + histogramIntersection(instA.bigrams, instB.bigrams);
+    }
+
+    protected static double histogramIntersection(LongIntHashMap histA, LongIntHashMap histB) {
         //min vals of keys that exist in only one of the bags will always be 0
         //therefore want to only bother looking at counts of words in both bags
         //therefore will simply loop over words in a, skipping those that dont appear in b
@@ -937,13 +997,12 @@ public class IndividualTDE extends EnhancedAbstractClassifier implements Compara
 
         double sim = 0.0;
 
-        for (Map.Entry<SerialisableComparablePair<BitWord, Byte>, Integer> entry : instA.entrySet()) {
-            Integer valA = entry.getValue();
-            Integer valB = instB.get(entry.getKey());
-            if (valB == null)
+        for (LongIntCursor entry : histA) {
+            int index = histB.indexOf(entry.key);
+            if (!histB.indexExists(index))
                 continue;
 
-            sim += Math.min(valA,valB);
+            sim += Math.min(entry.value, histB.indexGet(index));
         }
 
         return sim;
@@ -953,7 +1012,7 @@ public class IndividualTDE extends EnhancedAbstractClassifier implements Compara
     public double classifyInstance(TimeSeriesInstance instance) throws Exception{
         Bag testBag = BOSSSpatialPyramidsTransform(instance);
 
-        if (useFeatureSelection) testBag = filterChiSquared(testBag);
+        if (useFeatureSelection) testBag = filterChiSquared(testBag, chiSquare, chiSquareBigrams);
 
         //1NN distance
         double bestDist = Double.MAX_VALUE;
@@ -1048,7 +1107,7 @@ public class IndividualTDE extends EnhancedAbstractClassifier implements Compara
         public Double call() {
             Bag testBag = BOSSSpatialPyramidsTransform(inst);
 
-            if (useFeatureSelection) testBag = filterChiSquared(testBag);
+            if (useFeatureSelection) testBag = filterChiSquared(testBag, chiSquare, chiSquareBigrams);
 
             //1NN distance
             double bestDist = Double.MAX_VALUE;
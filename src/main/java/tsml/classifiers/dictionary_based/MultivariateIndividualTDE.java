@@ -17,12 +17,7 @@
  
 package tsml.classifiers.dictionary_based;
 
-import com.carrotsearch.hppc.DoubleDoubleHashMap;
-import com.carrotsearch.hppc.DoubleObjectHashMap;
-import com.carrotsearch.hppc.ObjectHashSet;
-import com.carrotsearch.hppc.ObjectIntHashMap;
-import com.carrotsearch.hppc.cursors.DoubleDoubleCursor;
-import com.carrotsearch.hppc.cursors.ObjectIntCursor;
+import com.carrotsearch.hppc.LongHashSet;
 import evaluation.storage.ClassifierResults;
 import tsml.classifiers.dictionary_based.bitword.BitWord;
 import tsml.classifiers.dictionary_based.bitword.BitWordInt;
@@ -60,7 +55,8 @@ public class MultivariateIndividualTDE extends IndividualTDE {
     private double[/*dimension*/][/*letterindex*/][/*breakpointsforletter*/] breakpoints;
 
     //feature selection
-    private ObjectHashSet<Word> chiSquare;
+    private LongHashSet[/*dimension*/] chiSquare;
+    private LongHashSet[/*dimension*/] chiSquareBigrams;
 
     //dimension selection
     private double dimensionCutoffThreshold = 0.85;
@@ -91,54 +87,28 @@ public class MultivariateIndividualTDE extends IndividualTDE {
         this.breakpoints = boss.breakpoints;
     }
 
-    //map of <word, level, dimension> => count
-    public static class BagMV extends HashMap<Word, Integer> implements Serializable {
+    //map of <word, level, dimension> => count, as a map of <word, level> => count for each dimension
+    public static class BagMV implements Serializable {
+        private Bag[] dimensions;
         private int classVal;
 
-        public BagMV() {
-            super();
-        }
-
-        public BagMV(int classValue) {
-            super();
+        public BagMV(int numDimensions, int classValue) {
+            dimensions = new Bag[numDimensions];
+            for (int d = 0; d < numDimensions; d++) {
+                dimensions[d] = new Bag(classValue);
+            }
             classVal = classValue;
         }
 
-        public int getClassVal() { return classVal; }
-        public void setClassVal(int classVal) { this.classVal = classVal; }
-    }
-
-    public static class Word implements Serializable {
-        BitWord word;
-        byte level;
-        int dimension;
-
-        public Word(BitWord word, byte level, int dimension) {
-            this.word = word;
-            this.level = level;
-            this.dimension = dimension;
-        }
+        public Bag getDimension(int dimension) { return dimensions[dimension]; }
+        public int numDimensions() { return dimensions.length; }
 
-        @Override
-        public boolean equals(Object o) {
-            if (o instanceof Word) {
-                return word.equals(((Word) o).word) && dimension == ((Word) o).dimension && level == ((Word) o).level;
+        public int getClassVal() { return classVal; }
+        public void setClassVal(int classVal) {
+            this.classVal = classVal;
+            for (Bag bag : dimensions) {
+                bag.setClassVal(classVal);
             }
-            return false;
-        }
-
-        @Override
-        public int hashCode() {
-            int result = 1;
-            result = 31 * result + word.hashCode();
-            result = 31 * result + Byte.hashCode(level);
-            result = 31 * result + Integer.hashCode(dimension);
-            return result;
-        }
-
-        @Override
-        public String toString(){
-            return "[" + word + "," + level + "," + dimension + "]";
         }
     }
 
@@ -241,63 +211,29 @@ public class MultivariateIndividualTDE extends IndividualTDE {
     }
 
     private void trainChiSquared() {
-        // Chi2 Test
-        ObjectIntHashMap<Word> featureCount
-                = new ObjectIntHashMap<>(bags.get(0).size());
-        DoubleDoubleHashMap classProb = new DoubleDoubleHashMap(10);
-        DoubleObjectHashMap<ObjectIntHashMap<Word>> observed
-                = new DoubleObjectHashMap<>(bags.get(0).size());
-
-        // count number of samples with this word
-        for (BagMV bag : bags) {
-            if (!observed.containsKey(bag.classVal)) {
-                observed.put(bag.classVal, new ObjectIntHashMap<>());
-            }
-            for (Map.Entry<Word, Integer> word : bag.entrySet()) {
-                if (word.getValue() > 0) {
-                    featureCount.putOrAdd(word.getKey(), 1, 1);
-                    observed.get(bag.classVal).putOrAdd(word.getKey(), 1, 1);
-                }
-            }
-
-            classProb.putOrAdd(bag.classVal, 1, 1);
-        }
-
-        // chi-squared: observed minus expected occurrence
-        chiSquare = new ObjectHashSet<>(featureCount.size());
-        for (DoubleDoubleCursor classLabel : classProb) {
-            classLabel.value /= bags.size();
-            if (observed.get(classLabel.key) != null) {
-                ObjectIntHashMap<Word> observe = observed.get(classLabel.key);
-                for (ObjectIntCursor<Word> feature : featureCount) {
-                    double expected = classLabel.value * feature.value;
-                    double chi = observe.get(feature.key) - expected;
-                    double newChi = chi * chi / expected;
-                    if (newChi >= chiLimit && !chiSquare.contains(feature.key)) {
-                        chiSquare.add(feature.key);
-                    }
-                }
+        // features never span dimensions, so select them for each dimension in turn
+        int numDimensions = bags.get(0).numDimensions();
+        chiSquare = new LongHashSet[numDimensions];
+        chiSquareBigrams = new LongHashSet[numDimensions];
+        for (int d = 0; d < numDimensions; d++) {
+            ArrayList<Bag> dimensionBags = new ArrayList<>(bags.size());
+            for (BagMV bag : bags) {
+                dimensionBags.add(bag.dimensions[d]);
             }
+            chiSquare[d] = chiSquared(dimensionBags, Bag::getWords);
+            chiSquareBigrams[d] = chiSquared(dimensionBags, Bag::getBigrams);
         }
 
         // best elements above limit
         for (int i = 0; i < bags.size(); i++) {
-            BagMV newBag = new BagMV(bags.get(i).classVal);
-            for (Map.Entry<Word, Integer> cursor : bags.get(i).entrySet()) {
-                if (chiSquare.contains(cursor.getKey())) {
-                    newBag.put(cursor.getKey(), cursor.getValue());
-                }
-            }
-            bags.set(i, newBag);
+            bags.set(i, filterChiSquared(bags.get(i)));
         }
     }
 
     private BagMV filterChiSquared(BagMV bag) {
-        BagMV newBag = new BagMV(bag.classVal);
-        for (Map.Entry<Word, Integer> cursor : bag.entrySet()) {
-            if (chiSquare.contains(cursor.getKey())) {
-                newBag.put(cursor.getKey(), cursor.getValue());
-            }
+        BagMV newBag = new BagMV(bag.numDimensions(), bag.classVal);
+        for (int d = 0; d < bag.numDimensions(); d++) {
+            newBag.dimensions[d] = filterChiSquared(bag.dimensions[d], chiSquare[d], chiSquareBigrams[d]);
         }
         return newBag;
     }
@@ -321,10 +257,7 @@ public class MultivariateIndividualTDE extends IndividualTDE {
 
             if (useBigrams) {
                 if (wInd - windowSize >= 0) {
-                    BitWord bigram = new BitWordLong(words[wInd - windowSize], word);
-
-                    Word key = new Word(bigram, (byte) -1, dimension);
-                    bag.merge(key, 1, Integer::sum);
+                    bag.dimensions[dimension].addBigram(new BitWordLong(words[wInd - windowSize], word));
                 }
             }
 
@@ -362,7 +295,7 @@ public class MultivariateIndividualTDE extends IndividualTDE {
      * @return BOSSSpatialPyramidsTransform-ed bag, built using current parameters
      */
     private BagMV BOSSSpatialPyramidsTransform(TimeSeriesInstance inst) {
-        BagMV bag = new BagMV(inst.getLabelIndex());
+        BagMV bag = new BagMV(breakpoints.length, inst.getLabelIndex());
 
         double[][] split = inst.toValueArray();
 
@@ -396,7 +329,7 @@ public class MultivariateIndividualTDE extends IndividualTDE {
 
         //build hists with new word length from SFA words, and copy over the class values of original insts
         for (int i = 0; i < bags.size(); ++i) {
-            BagMV newSPBag = new BagMV(bags.get(i).classVal);
+            BagMV newSPBag = new BagMV(breakpoints.length, bags.get(i).classVal);
             for (int d = 0; d < SFAwords.length; d++) {
                 addWordsToSPBag(newSPBag, newWordLength, SFAwords[d][i], d);
             }
@@ -425,10 +358,7 @@ public class MultivariateIndividualTDE extends IndividualTDE {
 
             if (useBigrams) {
                 if (wInd - windowSize >= 0) {
-                    BitWord bigram = new BitWordLong(newWords[wInd - windowSize], word);
-
-                    Word key = new Word(bigram, (byte) -1, dimension);
-                    bag.merge(key, 1, Integer::sum);
+                    bag.dimensions[dimension].addBigram(new BitWordLong(newWords[wInd - windowSize], word));
                 }
             }
 
@@ -461,7 +391,7 @@ public class MultivariateIndividualTDE extends IndividualTDE {
         this.levels = newLevels;
 
         for (int inst = 0; inst < bags.size(); ++inst) {
-            BagMV bag = new BagMV(bags.get(inst).classVal); //rebuild bag
+            BagMV bag = new BagMV(breakpoints.length, bags.get(inst).classVal); //rebuild bag
             for (int d = 0; d < SFAwords.length; d++) {
                 addWordsToSPBag(bag, wordLength, SFAwords[d][inst], d); //rebuild bag
             }
@@ -471,19 +401,8 @@ public class MultivariateIndividualTDE extends IndividualTDE {
     }
 
     private void applyPyramidWeights(BagMV bag) {
-        for (Map.Entry<Word, Integer> ent : bag.entrySet()) {
-            //find level that this quadrant is on
-            int quadrant = ent.getKey().level;
-            int qEnd = 0;
-            int level = 0;
-            while (qEnd < quadrant) {
-                int numQuadrants = (int)Math.pow(2, ++level);
-                qEnd+=numQuadrants;
-            }
-
-            //double val = ent.getValue() * (Math.pow(levelWeighting, levels-level-1)); //weighting ^ (levels - level)
-            int val = ent.getValue() * (int)Math.pow(2,level);
-            bag.put(ent.getKey(), val);
+        for (Bag dimension : bag.dimensions) {
+            applyPyramidWeights(dimension);
         }
     }
 
@@ -499,8 +418,7 @@ public class MultivariateIndividualTDE extends IndividualTDE {
             int pos = wInd + (windowSize/2); //use the middle of the window as its position
             int quadrant = qStart + (pos/quadrantSize);
 
-            Word key = new Word(word, (byte)quadrant, dimension);
-            bag.merge(key, 1, Integer::sum);
+            bag.dimensions[dimension].addWord(word, (byte)quadrant);
 
             qStart += numQuadrants;
         }
@@ -535,9 +453,7 @@ public class MultivariateIndividualTDE extends IndividualTDE {
                         int pos = wInd + (windowSize/2); //use the middle of the window as its position
                         int quadrant = qStart + (pos/quadrantSize);
 
-                        SerialisableComparablePair<BitWord, Byte> key = new SerialisableComparablePair<>(word,
-                                (byte)quadrant);
-                        bag.merge(key, 1, Integer::sum);
+                        bag.addWord(word, (byte)quadrant);
 
                         qStart += numQuadrants;
                     }
@@ -634,7 +550,7 @@ public class MultivariateIndividualTDE extends IndividualTDE {
         }
         else {
             for (int inst = 0; inst < data.numInstances(); ++inst) {
-                BagMV bag = new BagMV(data.get(inst).getLabelIndex());
+                BagMV bag = new BagMV(breakpoints.length, data.get(inst).getLabelIndex());
                 for (Integer d : dimensionSubsample) {
                     SFAwords[d][inst] = createSFAwords(split[inst][d], d);
                     addWordsToSPBag(bag, wordLength, SFAwords[d][inst], d);
@@ -668,12 +584,15 @@ public class MultivariateIndividualTDE extends IndividualTDE {
         double dist = 0.0;
 
         //find dist only from values in instA
-        for (Map.Entry<Word, Integer> entry : instA.entrySet()) {
-            Integer valA = entry.getValue();
-            Integer valB = instB.get(entry.getKey());
-            if (valB == null) valB = 1;
-            dist += (valA-valB)*(valA-valB);
+        for (int d = 0; d < instA.numDimensions(); d++) {
+            Bag a = instA.dimensions[d];
+            Bag b = instB.dimensions[d];
 
+            dist = BOSSdistance(a.getWords(), b.getWords(), dist, bestDist);
+            if (dist > bestDist)
+                return Double.MAX_VALUE;
+
+            dist = BOSSdistance(a.getBigrams(), b.getBigrams(), dist, bestDist);
             if (dist > bestDist)
                 return Double.MAX_VALUE;
         }
@@ -682,20 +601,10 @@ public class MultivariateIndividualTDE extends IndividualTDE {
     }
 
     public double histogramIntersection(BagMV instA, BagMV instB) {
-        //min vals of keys that exist in only one of the bags will always be 0
-        //therefore want to only bother looking at counts of words in both bags
-        //therefore will simply loop over words in a, skipping those that dont appear in b
-        //no need to loop over b, since only words missed will be those not in a anyway
-
         double sim = 0.0;
 
-        for (Map.Entry<Word, Integer> entry : instA.entrySet()) {
-            Integer valA = entry.getValue();
-            Integer valB = instB.get(entry.getKey());
-            if (valB == null)
-                continue;
-
-            sim += Math.min(valA,valB);
+        for (int d = 0; d < instA.numDimensions(); d++) {
+            sim += histogramIntersection(instA.dimensions[d], instB.dimensions[d]);
         }
 
         return sim;
@@ -838,7 +747,7 @@ public class MultivariateIndividualTDE extends IndividualTDE {
 
         @Override
         public BagMV call() {
-            BagMV bag = new BagMV(inst.getLabelIndex());
+            BagMV bag = new BagMV(breakpoints.length, inst.getLabelIndex());
 
             double[][] split = inst.toValueArray();
 
@@ -17,11 +17,11 @@
 
 package tsml.classifiers.dictionary_based;
 
+import com.carrotsearch.hppc.cursors.LongIntCursor;
 import evaluation.storage.ClassifierResults;
 import experiments.data.DatasetLoading;
 import fileIO.OutFile;
 import tsml.classifiers.*;
-import tsml.classifiers.dictionary_based.bitword.BitWord;
 import tsml.classifiers.dictionary_based.bitword.BitWordInt;
 import tsml.classifiers.dictionary_based.bitword.BitWordLong;
 import tsml.data_containers.TSCapabilities;
@@ -29,7 +29,13 @@ import tsml.data_containers.TimeSeriesInstance;
 import tsml.data_containers.TimeSeriesInstances;
 import tsml.data_containers.utilities.Converter;
 import utilities.ClassifierTools;
+import utilities.ObjectSizes;
 import utilities.generic_storage.SerialisableComparablePair;
+import utilities.serialisation.AsyncCheckpointWriter;
+import utilities.serialisation.CheckpointCompression;
+import utilities.serialisation.CheckpointFiles;
+import utilities.serialisation.CheckpointSerializer;
+import utilities.serialisation.JavaCheckpointSerializer;
 import weka.classifiers.functions.GaussianProcesses;
 import weka.core.*;
 
@@ -55,7 +61,7 @@ import static utilities.Utilities.argMax;
  *
  * @author Matthew Middlehurst
  */
-public class TDE extends EnhancedAbstractClassifier implements TrainTimeContractable,
+public class TDE extends EnhancedAbstractClassifier implements TrainTimeContractable, MemoryContractable,
         Checkpointable, TechnicalInformationHandler, MultiThreadable, Visualisable, Interpretable {
 
     /**
@@ -117,11 +123,19 @@ public class TDE extends EnhancedAbstractClassifier implements TrainTimeContract
     private boolean internalContractCheckpointHandling = true;
     private boolean cleanupCheckpointFiles = false;
     private boolean loadAndFinish = false;
+    //null until set, see getCheckpointSerializer and getCheckpointCompression for the defaults
+    private transient CheckpointSerializer checkpointSerializer;
+    private CheckpointCompression checkpointCompression;
+    private boolean asyncCheckpointing = true;
+    private transient AsyncCheckpointWriter checkpointWriter;
 
     private long trainContractTimeNanos = 0;
     private boolean trainTimeContract = false;
     private boolean underContractTime = true;
 
+    //once the ensemble no longer fits the memory contract new classifiers can only replace ones in the ensemble
+    private MemoryContract memoryContract = new MemoryContract();
+
     private ArrayList<Double> paramAccuracy;
     private ArrayList<Double> paramTime;
 
@@ -217,6 +231,41 @@ public class TDE extends EnhancedAbstractClassifier implements TrainTimeContract
         loadAndFinish = b;
     }
 
+    /**
+     * Serialiser used for the checkpoint files, both the TDE meta info and each IndividualTDE.
+     *
+     * @param s checkpoint serialiser, i.e. JavaCheckpointSerializer or KryoCheckpointSerializer
+     * @return true
+     */
+    @Override //Checkpointable
+    public boolean setCheckpointSerializer(CheckpointSerializer s) {
+        checkpointSerializer = s;
+        return true;
+    }
+
+    /**
+     * Compression used for the checkpoint files. If not set the IndividualTDE files are not compressed, as the
+     * original checkpoints were not, and TDE.ser uses the Checkpointable default.
+     *
+     * @param c checkpoint compression
+     * @return true
+     */
+    @Override //Checkpointable
+    public boolean setCheckpointCompression(CheckpointCompression c) {
+        checkpointCompression = c;
+        return true;
+    }
+
+    /**
+     * Whether to write checkpoint files on a background thread while building continues, or wait for each
+     * checkpoint to be written.
+     *
+     * @param b write checkpoints in the background
+     */
+    public void setAsyncCheckpointing(boolean b) {
+        asyncCheckpointing = b;
+    }
+
     /**
      * Max window length as proportion of the series length.
      *
@@ -291,6 +340,7 @@ public class TDE extends EnhancedAbstractClassifier implements TrainTimeContract
         sb.append(super.getParameters());
         sb.append(",numClassifiers,").append(classifiers.size()).append(",contractTime,")
                 .append(trainContractTimeNanos);
+        if (memoryContract.isContracted()) sb.append(",").append(memoryContract);
 
         for (int i = 0; i < classifiers.size(); ++i) {
             IndividualTDE indiv = classifiers.get(i);
@@ -405,6 +455,12 @@ public class TDE extends EnhancedAbstractClassifier implements TrainTimeContract
             ex = Executors.newFixedThreadPool(numThreads);
         }
 
+        memoryContract.reset();
+        memoryContract.setSharedTypes(TimeSeriesInstance.class, TimeSeriesInstances.class);
+        for (IndividualTDE classifier : classifiers) {
+            memoryContract.addMember(classifier, -1);
+        }
+
         //Contracting
         if (trainTimeContract) {
             parametersConsidered = Integer.MAX_VALUE;
@@ -417,6 +473,7 @@ public class TDE extends EnhancedAbstractClassifier implements TrainTimeContract
 
         if (checkpoint) {
             checkpoint(null, false);
+            finishCheckpointing();
         }
 
         //end train time in nanoseconds
@@ -470,6 +527,9 @@ public class TDE extends EnhancedAbstractClassifier implements TrainTimeContract
             double[] parameters = selectParameters();
             if (parameters == null) break;
 
+            //the classifier is built on this thread unless multithreading, when its size has to be measured instead
+            long allocationStart = multiThread ? -1 : ObjectSizes.threadAllocatedBytes();
+
             IndividualTDE indiv;
             if (series.isMultivariate()) {
                 indiv = new MultivariateIndividualTDE((int) parameters[0], (int) parameters[1], (int) parameters[2],
@@ -492,8 +552,9 @@ public class TDE extends EnhancedAbstractClassifier implements TrainTimeContract
                     : series;
             indiv.buildClassifier(data);
 
-            double accuracy = individualTrainAcc(indiv, data, classifiers.size() < maxEnsembleSize
-                    ? -99999999 : lowestAcc);
+            boolean ensembleFull = classifiers.size() >= maxEnsembleSize
+                    || !classifiers.isEmpty() && !memoryContract.hasRoomForMembers(1);
+            double accuracy = individualTrainAcc(indiv, data, ensembleFull ? lowestAcc : -99999999);
             indiv.setAccuracy(accuracy);
             if (accuracy == 0) indiv.setWeight(Double.MIN_VALUE);
             else indiv.setWeight(Math.pow(accuracy, 4));
@@ -509,6 +570,7 @@ public class TDE extends EnhancedAbstractClassifier implements TrainTimeContract
                     IndividualTDE b = it.next();
                     if (b.getAccuracy() < maxAcc * cutoffThreshold) {
                         it.remove();
+                        memoryContract.removeMember(b);
 
                         if (checkpoint) {
                             checkpointIDs.add(b.getEnsembleID());
@@ -518,7 +580,10 @@ public class TDE extends EnhancedAbstractClassifier implements TrainTimeContract
             }
 
             if (!cutoff || indiv.getAccuracy() >= maxAcc * cutoffThreshold) {
-                if (classifiers.size() < maxEnsembleSize) {
+                memoryContract.addMember(indiv, ObjectSizes.threadAllocatedBytesSince(allocationStart));
+
+                if (classifiers.size() < maxEnsembleSize && (classifiers.isEmpty()
+                        || memoryContract.isWithinLimit())) {
                     if (accuracy < lowestAcc) {
                         lowestAccIdx = classifiers.size();
                         lowestAcc = accuracy;
@@ -534,13 +599,21 @@ public class TDE extends EnhancedAbstractClassifier implements TrainTimeContract
                     lowestAccIdx = (int) newLowestAcc[0];
                     lowestAcc = newLowestAcc[1];
 
-                    IndividualTDE rm = classifiers.remove(lowestAccIdx);
-                    classifiers.add(lowestAccIdx, indiv);
+                    if (memoryContract.isWithinLimitWithout(classifiers.get(lowestAccIdx))) {
+                        IndividualTDE rm = classifiers.remove(lowestAccIdx);
+                        memoryContract.removeMember(rm);
+                        classifiers.add(lowestAccIdx, indiv);
 
-                    if (checkpoint) {
-                        indiv.setEnsembleID(rm.getEnsembleID());
-                        checkpointChange = true;
+                        if (checkpoint) {
+                            indiv.setEnsembleID(rm.getEnsembleID());
+                            checkpointChange = true;
+                        }
+                    } else {
+                        //replacing would leave the ensemble over the memory contract
+                        memoryContract.removeMember(indiv);
                     }
+                } else {
+                    memoryContract.removeMember(indiv);
                 }
             }
 
@@ -568,28 +641,23 @@ public class TDE extends EnhancedAbstractClassifier implements TrainTimeContract
                 f.mkdirs();
             //time the checkpoint occured
             checkpointTime = System.nanoTime();
+            if (checkpointWriter == null) checkpointWriter = new AsyncCheckpointWriter();
 
+            //only the newly added ensemble member is written, members already saved are unchanged. Built members
+            //are not modified again, so are handed to the background writer as they are
             if (saveIndiv) {
-                FileOutputStream fos = new FileOutputStream(checkpointPath + "IndividualTDE-" +
-                        classifier.getEnsembleID() + ".ser");
-                try (ObjectOutputStream out = new ObjectOutputStream(fos)) {
-                    out.writeObject(classifier);
-                    out.close();
-                    fos.close();
-                }
+                checkpointWriter.write(new File(checkpointPath + "IndividualTDE-" + classifier.getEnsembleID()
+                        + ".ser"), classifier, getCheckpointSerializer(), getMemberCheckpointCompression());
             }
 
             //dont take into account time spent serialising into build time
             if (internalContractCheckpointHandling) checkpointTimeDiff += System.nanoTime() - checkpointTime;
             checkpointTime = System.nanoTime();
 
-            //save this, classifiers and train data not included
-            saveToFile(checkpointPath + "TDEtemp.ser");
-
-            File file = new File(checkpointPath + "TDEtemp.ser");
-            File file2 = new File(checkpointPath + "TDE.ser");
-            file2.delete();
-            file.renameTo(file2);
+            //save a snapshot of this, classifiers and train data not included. Written after the member above
+            checkpointWriter.writeSnapshot(new File(checkpointPath + "TDE.ser"), this, getCheckpointSerializer(),
+                    getCheckpointCompression());
+            if (!asyncCheckpointing) checkpointWriter.flush();
 
             if (internalContractCheckpointHandling) checkpointTimeDiff += System.nanoTime() - checkpointTime;
         } catch (Exception e) {
@@ -598,6 +666,20 @@ public class TDE extends EnhancedAbstractClassifier implements TrainTimeContract
         }
     }
 
+    /**
+     * Wait for any checkpoint files still being written in the background.
+     */
+    private void finishCheckpointing() {
+        long time = System.nanoTime();
+        try {
+            checkpointWriter.flush();
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.out.println("Serialisation to " + checkpointPath + " FAILED");
+        }
+        if (internalContractCheckpointHandling) checkpointTimeDiff += System.nanoTime() - time;
+    }
+
     /**
      * Remove any checkpoint files used.
      */
@@ -1112,6 +1194,18 @@ public class TDE extends EnhancedAbstractClassifier implements TrainTimeContract
         trainTimeContract = true;
     }
 
+    /**
+     * Set the memory limit for the ensemble. Once no more classifiers fit, new classifiers are only kept if they
+     * replace a worse classifier without exceeding the limit.
+     *
+     * @param unit   unit of amount
+     * @param amount memory limit
+     */
+    @Override //MemoryContractable
+    public void setMemoryLimit(DataUnit unit, long amount) {
+        memoryContract.setLimit(unit, amount);
+    }
+
     /**
      * Check if a contracted classifier is within its train time limit.
      *
@@ -1143,6 +1237,21 @@ public class TDE extends EnhancedAbstractClassifier implements TrainTimeContract
         return validPath;
     }
 
+    @Override //Checkpointable
+    public CheckpointSerializer getCheckpointSerializer() {
+        //the serialiser is transient, so is also null after this has been deserialised
+        return checkpointSerializer != null ? checkpointSerializer : JavaCheckpointSerializer.INSTANCE;
+    }
+
+    @Override //Checkpointable
+    public CheckpointCompression getCheckpointCompression() {
+        return checkpointCompression != null ? checkpointCompression : Checkpointable.super.getCheckpointCompression();
+    }
+
+    private CheckpointCompression getMemberCheckpointCompression() {
+        return checkpointCompression != null ? checkpointCompression : CheckpointCompression.NONE;
+    }
+
 
     /**
      * Copies values from a loaded TDE object and IndividualTDE objects into this object.
@@ -1225,15 +1334,13 @@ public class TDE extends EnhancedAbstractClassifier implements TrainTimeContract
             if (!checkpointIDs.contains(i)) {
                 System.out.println("Loading IndividualTDE-" + i + ".ser");
 
-                FileInputStream fis = new FileInputStream(checkpointPath + "IndividualTDE-" + i + ".ser");
-                try (ObjectInputStream in = new ObjectInputStream(fis)) {
-                    Object indv = in.readObject();
+                Object indv = CheckpointFiles.load(new File(checkpointPath + "IndividualTDE-" + i + ".ser"),
+                        getCheckpointSerializer());
 
-                    if (!(indv instanceof IndividualTDE))
-                        throw new Exception("The SER file " + i + " is not an instance of IndividualTDE");
-                    IndividualTDE ser = ((IndividualTDE) indv);
-                    classifiers.add(ser);
-                }
+                if (!(indv instanceof IndividualTDE))
+                    throw new Exception("The SER file " + i + " is not an instance of IndividualTDE");
+                IndividualTDE ser = ((IndividualTDE) indv);
+                classifiers.add(ser);
             }
         }
 
@@ -1326,22 +1433,13 @@ public class TDE extends EnhancedAbstractClassifier implements TrainTimeContract
             }
         });
 
-        HashMap<SerialisableComparablePair<Byte, String>, Integer> histWords = new HashMap<>();
-        for (Map.Entry<SerialisableComparablePair<BitWord, Byte>, Integer> entry : histogram.entrySet()) {
-            String word = entry.getKey().var2 == -1 ? ((BitWordLong) entry.getKey().var1).toStringBigram()
-                    : ((BitWordInt) entry.getKey().var1).toStringUnigram();
-
-            keys.add(new SerialisableComparablePair<>(entry.getKey().var2, word));
-            histWords.put(new SerialisableComparablePair<>(entry.getKey().var2, word), entry.getValue());
-        }
+        HashMap<SerialisableComparablePair<Byte, String>, Integer> histWords = wordStrings(histogram,
+                tde.getWordLength());
+        keys.addAll(histWords.keySet());
 
-        HashMap<SerialisableComparablePair<Byte, String>, Integer> nearestWords = new HashMap<>();
-        for (Map.Entry<SerialisableComparablePair<BitWord, Byte>, Integer> entry : nearestHistogram.entrySet()) {
-            String word = entry.getKey().var2 == -1 ? ((BitWordLong) entry.getKey().var1).toStringBigram()
-                    : ((BitWordInt) entry.getKey().var1).toStringUnigram();
-            keys.add(new SerialisableComparablePair<>(entry.getKey().var2, word));
-            nearestWords.put(new SerialisableComparablePair<>(entry.getKey().var2, word), entry.getValue());
-        }
+        HashMap<SerialisableComparablePair<Byte, String>, Integer> nearestWords = wordStrings(nearestHistogram,
+                tde.getWordLength());
+        keys.addAll(nearestWords.keySet());
 
         int numLevels = 1;
         for (int i = 0; i < tde.getLevels(); i++) {
@@ -1523,16 +1621,11 @@ public class TDE extends EnhancedAbstractClassifier implements TrainTimeContract
             if (classCount[cls] >= 1) continue;
             classCount[cls]++;
 
-            for (Map.Entry<SerialisableComparablePair<BitWord, Byte>, Integer> entry : bag.entrySet()) {
-                SerialisableComparablePair<BitWord, Byte> key = entry.getKey();
-
-                String word = key.var2 == -1 ? ((BitWordLong) key.var1).toStringBigram()
-                        : ((BitWordInt) key.var1).toStringUnigram();
-
-                SerialisableComparablePair<Byte, String> newKey = new SerialisableComparablePair<>(key.var2, word);
-                Integer val = classCounts[cls].get(newKey);
+            for (Map.Entry<SerialisableComparablePair<Byte, String>, Integer> entry
+                    : wordStrings(bag, tde.getWordLength()).entrySet()) {
+                Integer val = classCounts[cls].get(entry.getKey());
                 if (val == null) val = 0;
-                classCounts[cls].put(newKey, val + entry.getValue());
+                classCounts[cls].put(entry.getKey(), val + entry.getValue());
             }
         }
 
@@ -1633,6 +1726,32 @@ public class TDE extends EnhancedAbstractClassifier implements TrainTimeContract
         return true;
     }
 
+    /**
+     * Unpacks the words in a histogram into strings for the interpretability and visualisation output.
+     *
+     * @param bag histogram of an individual TDE
+     * @param wordLength word length of the individual TDE
+     * @return map of <level, word string> => count, bigrams are on level -1
+     */
+    private static HashMap<SerialisableComparablePair<Byte, String>, Integer> wordStrings(IndividualTDE.Bag bag,
+                                                                                         int wordLength) {
+        HashMap<SerialisableComparablePair<Byte, String>, Integer> words = new HashMap<>();
+        for (LongIntCursor entry : bag.getWords()) {
+            BitWordInt word = new BitWordInt();
+            word.setWord(IndividualTDE.Bag.word(entry.key));
+            word.setLength((byte) wordLength);
+            words.put(new SerialisableComparablePair<>(IndividualTDE.Bag.level(entry.key), word.toStringUnigram()),
+                    entry.value);
+        }
+        for (LongIntCursor entry : bag.getBigrams()) {
+            BitWordLong word = new BitWordLong();
+            word.setWord(entry.key);
+            word.setLength((byte) 32);
+            words.put(new SerialisableComparablePair<>((byte) -1, word.toStringBigram()), entry.value);
+        }
+        return words;
+    }
+
     /**
      * Development tests for the TDE classifier.
      *
@@ -35,7 +35,7 @@ import weka.core.Capabilities;
 import weka.classifiers.Classifier;
 import weka.core.TechnicalInformation;
 
-import java.util.Map.Entry;
+import com.carrotsearch.hppc.cursors.IntIntCursor;
 
 import tsml.classifiers.dictionary_based.bitword.BitWordInt;
 import utilities.ClassifierTools;
@@ -642,8 +642,8 @@ public class BOSSC45 extends EnhancedAbstractClassifier implements SaveParameter
             ArrayList<Attribute> attInfo = new ArrayList<>();
             Set<String> wordsFound = new HashSet<>();
             for (Bag bag : bags) 
-                for (Entry<BitWordInt,Integer> entry : bag.entrySet())
-                    wordsFound.add(entry.getKey().toString());
+                for (IntIntCursor entry : bag.getWords())
+                    wordsFound.add(wordString(entry.key));
             for (String word : wordsFound) 
                 attInfo.add(new Attribute(word));
 
@@ -661,8 +661,8 @@ public class BOSSC45 extends EnhancedAbstractClassifier implements SaveParameter
                 init[init.length-1] = bag.getClassVal();
 
                 bagInsts.add(new DenseInstance(1, init));
-                for (Entry<BitWordInt,Integer> entry : bag.entrySet())
-                    bagInsts.get(i).setValue(bagInsts.attribute(entry.getKey().toString()), entry.getValue());
+                for (IntIntCursor entry : bag.getWords())
+                    bagInsts.get(i).setValue(bagInsts.attribute(wordString(entry.key)), entry.value);
 
                 i++;
             }
@@ -670,6 +670,13 @@ public class BOSSC45 extends EnhancedAbstractClassifier implements SaveParameter
             return bagInsts;
         }
 
+        private String wordString(int word) {
+            BitWordInt bitWord = new BitWordInt();
+            bitWord.setWord(word);
+            bitWord.setLength((byte) wordLength);
+            return bitWord.toString();
+        }
+
         @Override
         public void buildClassifier(Instances data) throws Exception {
             classAttribute = data.classAttribute();
@@ -744,10 +751,10 @@ public class BOSSC45 extends EnhancedAbstractClassifier implements SaveParameter
 
             //TEMPORARILY create it on the end of the train insts to easily copy over the attribute data.
             bagInsts.add(new DenseInstance(1, init));
-            for (Entry<BitWordInt,Integer> entry : testBag.entrySet()) {
-                Attribute att = bagInsts.attribute(entry.getKey().toString());
+            for (IntIntCursor entry : testBag.getWords()) {
+                Attribute att = bagInsts.attribute(wordString(entry.key));
                 if (att != null)
-                    bagInsts.get(bagInsts.size()-1).setValue(att, entry.getValue());
+                    bagInsts.get(bagInsts.size()-1).setValue(att, entry.value);
             }
 
             Instance testInst = bagInsts.remove(bagInsts.size()-1);
@@ -766,10 +773,10 @@ public class BOSSC45 extends EnhancedAbstractClassifier implements SaveParameter
 
             //TEMPORARILY create it on the end of the train isnts to easily copy over the attribute data.
             bagInsts.add(new DenseInstance(1, init));
-            for (Entry<BitWordInt,Integer> entry : testBag.entrySet()) {
-                Attribute att = bagInsts.attribute(entry.getKey().toString());
+            for (IntIntCursor entry : testBag.getWords()) {
+                Attribute att = bagInsts.attribute(wordString(entry.key));
                 if (att != null)
-                    bagInsts.get(bagInsts.numInstances()-1).setValue(att, entry.getValue());
+                    bagInsts.get(bagInsts.numInstances()-1).setValue(att, entry.value);
             }
             Instance testInst = bagInsts.remove(bagInsts.size()-1);
 
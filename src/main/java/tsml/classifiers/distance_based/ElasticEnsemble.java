@@ -27,6 +27,7 @@ import tsml.classifiers.legacy.elastic_ensemble.ERP1NN;
 import tsml.classifiers.legacy.elastic_ensemble.Efficient1NN;
 import tsml.classifiers.legacy.elastic_ensemble.LCSS1NN;
 import tsml.classifiers.legacy.elastic_ensemble.MSM1NN;
+import tsml.classifiers.legacy.elastic_ensemble.ParallelLoocv;
 import tsml.classifiers.legacy.elastic_ensemble.TWE1NN;
 import tsml.classifiers.legacy.elastic_ensemble.WDTW1NN;
 import tsml.transformers.Derivative;
@@ -37,6 +38,8 @@ import utilities.WritableTestResults;
 import experiments.data.DatasetLoading;
 import java.util.concurrent.TimeUnit;
 import tsml.classifiers.EnhancedAbstractClassifier;
+import tsml.classifiers.MultiThreadable;
+import tsml.classifiers.TrainTimeContractable;
 import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformationHandler;
 
@@ -54,7 +57,8 @@ import weka.core.TechnicalInformationHandler;
 
  * @author sjx07ngu
  */
-public class ElasticEnsemble extends EnhancedAbstractClassifier implements WritableTestResults,TechnicalInformationHandler{
+public class ElasticEnsemble extends EnhancedAbstractClassifier implements WritableTestResults,TechnicalInformationHandler,
+        MultiThreadable,TrainTimeContractable{
 
     
     @Override
@@ -118,6 +122,10 @@ public class ElasticEnsemble extends EnhancedAbstractClassifier implements Writa
     double ensembleCvAcc =-1;
     double[] ensembleCvPreds = null;
     
+    // the LOOCV of all constituents shares one pool of threads and the train contract
+    protected int numThreads = 1;
+    protected long trainContractTimeNanos = 0;
+    
     @Override
     public Capabilities getCapabilities() {
         throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
@@ -354,21 +362,32 @@ public class ElasticEnsemble extends EnhancedAbstractClassifier implements Writa
                 cvAccs[c] = cvAcc;
             }
         }else{
-            double[] cvAccAndPreds;
-            for(int c = 0; c < classifiers.length; c++){
-                if(writeToFile){
-                    classifiers[c].setFileWritingOn(this.resultsDir, this.datasetName, this.resampleId);
-                }
-                if(isDerivative(classifiersToUse[c])){
-                    cvAccAndPreds = classifiers[c].loocv(derTrain);
-                }else{
-                    cvAccAndPreds = classifiers[c].loocv(train);
+            // all constituents are submitted first so their params are searched together
+            ParallelLoocv loocv = new ParallelLoocv(numThreads);
+            loocv.setTrainTimeLimit(trainContractTimeNanos);
+            try{
+                ParallelLoocv.Search[] searches = new ParallelLoocv.Search[classifiers.length];
+                for(int c = 0; c < classifiers.length; c++){
+                    if(writeToFile){
+                        classifiers[c].setFileWritingOn(this.resultsDir, this.datasetName, this.resampleId);
+                    }
+                    if(isDerivative(classifiersToUse[c])){
+                        searches[c] = classifiers[c].loocv(derTrain, loocv);
+                    }else{
+                        searches[c] = classifiers[c].loocv(train, loocv);
+                    }
                 }
-                
-                cvAccs[c] = cvAccAndPreds[0];
-                for(int i = 0; i < train.numInstances(); i++){
-                    this.cvPreds[c][i] = cvAccAndPreds[i+1];
+
+                double[] cvAccAndPreds;
+                for(int c = 0; c < classifiers.length; c++){
+                    cvAccAndPreds = searches[c].get();
+                    cvAccs[c] = cvAccAndPreds[0];
+                    for(int i = 0; i < train.numInstances(); i++){
+                        this.cvPreds[c][i] = cvAccAndPreds[i+1];
+                    }
                 }
+            }finally{
+                loocv.shutdown();
             }
             
             
@@ -382,6 +401,32 @@ public class ElasticEnsemble extends EnhancedAbstractClassifier implements Writa
 
     }
     
+    /**
+     * The LOOCV of the constituents is spread over numThreads threads
+     */
+    @Override
+    public void enableMultiThreading(int numThreads){
+        this.numThreads = Math.max(1, numThreads);
+    }
+    
+    /**
+     * Limits the LOOCV of the constituents, each of which then uses the best params evaluated in time
+     */
+    @Override
+    public void setTrainTimeLimit(long time){
+        this.trainContractTimeNanos = time;
+    }
+    
+    @Override
+    public boolean withinTrainContract(long start){
+        return trainContractTimeNanos <= 0 || start < trainContractTimeNanos;
+    }
+    
+    @Override
+    public long getTrainContractTimeNanos(){
+        return trainContractTimeNanos;
+    }
+    
     /**
      * Returns an Efficient1NN object corresponding to the input enum. Output classifier includes the correct internal information for handling LOOCV/param tuning.
      * @param classifier
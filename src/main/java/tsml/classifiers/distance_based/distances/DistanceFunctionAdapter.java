@@ -2,6 +2,7 @@ package tsml.classifiers.distance_based.distances;
 
 import tsml.data_containers.TimeSeriesInstance;
 import tsml.data_containers.TimeSeriesInstances;
+import tsml.data_containers.utilities.CachedConverter;
 import weka.core.DistanceFunction;
 import weka.core.Instance;
 import weka.core.Instances;
@@ -13,26 +14,49 @@ public class DistanceFunctionAdapter implements DistanceFunction {
 
     public DistanceFunctionAdapter(final DistanceMeasure dm) {
         this.dm = dm;
+        convertsInstances = usesDefaultInstanceDistance(dm);
     }
 
     private final DistanceMeasure dm;
+    // whether dm converts weka instances with the default DistanceMeasure.distance(Instance, Instance, double), in
+    // which case the instances given to setInstances are converted once for all their distances
+    private final boolean convertsInstances;
+    // conversions of the instances given to setInstances, replaced when they are next set
+    private CachedConverter trainConverter;
+
+    private static boolean usesDefaultInstanceDistance(DistanceMeasure dm) {
+        try {
+            return dm.getClass().getMethod("distance", Instance.class, Instance.class, double.class)
+                           .getDeclaringClass() == DistanceMeasure.class;
+        } catch(NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private double adaptedDistance(final Instance a, final Instance b, final double limit) {
+        final CachedConverter converter = trainConverter;
+        if(converter == null) {
+            return dm.distance(a, b, limit);
+        }
+        return dm.distance(converter.fromArff(a), converter.fromArff(b), limit);
+    }
 
     public boolean isSymmetric() {
         return dm.isSymmetric();
     }
 
     @Override public double distance(final Instance a, final Instance b) {
-        return dm.distance(a, b);
+        return adaptedDistance(a, b, Double.POSITIVE_INFINITY);
     }
 
     @Override public double distance(final Instance a, final Instance b,
             final PerformanceStats stats) {
-        return dm.distance(a, b);
+        return adaptedDistance(a, b, Double.POSITIVE_INFINITY);
     }
 
     @Override public double distance(final Instance a, final Instance b, final double limit,
             final PerformanceStats stats) {
-        return dm.distance(a, b, limit);
+        return adaptedDistance(a, b, limit);
     }
 
     @Override public void postProcessDistances(final double[] distances) {
@@ -44,7 +68,7 @@ public class DistanceFunctionAdapter implements DistanceFunction {
     }
 
     @Override public double distance(final Instance a, final Instance b, final double limit) {
-        return dm.distance(a, b, limit);
+        return adaptedDistance(a, b, limit);
     }
 
     @Override public String toString() {
@@ -69,6 +93,8 @@ public class DistanceFunctionAdapter implements DistanceFunction {
 
     @Override public void setInstances(final Instances insts) {
         dm.buildDistanceMeasure(insts);
+        // only the train instances are cached, queries may be reused and modified in place by the caller
+        trainConverter = convertsInstances ? new CachedConverter(insts) : null;
     }
 
     @Override public Instances getInstances() {
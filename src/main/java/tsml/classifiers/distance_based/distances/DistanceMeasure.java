@@ -25,6 +25,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import tsml.classifiers.distance_based.distances.lower_bounds.LowerBound;
 import tsml.classifiers.distance_based.utils.collections.params.ParamHandler;
 import tsml.data_containers.TimeSeriesInstance;
 import tsml.data_containers.TimeSeriesInstances;
@@ -50,7 +51,8 @@ public interface DistanceMeasure extends Serializable, ParamHandler {
     }
     
     /**
-     * Override this distance func
+     * Override this distance func. By default the instances are converted to TimeSeriesInstance on every call. Callers
+     * computing many distances between the same instances can convert them once with a CachedConverter.
      * @param a
      * @param b
      * @param limit
@@ -77,6 +79,16 @@ public interface DistanceMeasure extends Serializable, ParamHandler {
         return getClass().getSimpleName();
     }
 
+    /**
+     * Lower bounds for this distance measure given the current parameters, cheapest first. These can be used to skip
+     * distances which are certain to be beyond a limit. The lower bounds do not follow later changes to the parameters,
+     * so get them again after changing parameters.
+     * @return the lower bounds, or an empty list if there are none
+     */
+    default List<LowerBound> getLowerBounds() {
+        return Collections.emptyList();
+    }
+
     default void buildDistanceMeasure(TimeSeriesInstances data) {
         
     }
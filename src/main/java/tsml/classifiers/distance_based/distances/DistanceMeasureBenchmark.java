@@ -0,0 +1,88 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tsml.classifiers.distance_based.distances;
+
+import tsml.classifiers.distance_based.distances.dtw.DTWDistance;
+import tsml.classifiers.distance_based.distances.erp.ERPDistance;
+import tsml.classifiers.distance_based.distances.lcss.LCSSDistance;
+import tsml.classifiers.distance_based.distances.msm.MSMDistance;
+import tsml.classifiers.distance_based.distances.twed.TWEDistance;
+import tsml.classifiers.distance_based.distances.wdtw.WDTWDistance;
+import tsml.data_containers.TimeSeriesInstance;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Purpose: rough throughput comparison of the matrix based distance measures. Each measure computes the distance
+ * between every pair of a set of random series, first warming up and then timing a number of repeats. Run this against
+ * two versions of the code to compare them.
+ * <p>
+ * Usage: DistanceMeasureBenchmark [numSeries] [seriesLength] [repeats] [parallel]
+ */
+public class DistanceMeasureBenchmark {
+
+    public static void main(String[] args) {
+        final int numSeries = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        final int seriesLength = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        final int repeats = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        final boolean parallel = args.length > 3 && Boolean.parseBoolean(args[3]);
+
+        final Random random = new Random(0);
+        final TimeSeriesInstance[] data = new TimeSeriesInstance[numSeries];
+        for(int i = 0; i < numSeries; i++) {
+            data[i] = new TimeSeriesInstance(random.doubles(seriesLength).toArray());
+        }
+
+        final DTWDistance dtw = new DTWDistance();
+        dtw.setWindow(0.1);
+        final List<DistanceMeasure> distanceMeasures = Arrays.asList(dtw, new ERPDistance(), new LCSSDistance(),
+                new MSMDistance(), new TWEDistance(), new WDTWDistance());
+
+        System.out.println("Series: " + numSeries + ", length: " + seriesLength + ", parallel: " + parallel);
+        for(DistanceMeasure distanceMeasure : distanceMeasures) {
+            // warm up
+            run(distanceMeasure, data, parallel);
+            final long start = System.nanoTime();
+            double checksum = 0;
+            for(int i = 0; i < repeats; i++) {
+                checksum += run(distanceMeasure, data, parallel);
+            }
+            final long time = System.nanoTime() - start;
+            final double numDistances = (double) numSeries * numSeries * repeats;
+            System.out.println(distanceMeasure.getName() + ": " + Math.round(numDistances / time * 1e9) + " distances/s (checksum " + checksum + ")");
+        }
+    }
+
+    private static double run(DistanceMeasure distanceMeasure, TimeSeriesInstance[] data, boolean parallel) {
+        IntStream indices = IntStream.range(0, data.length);
+        if(parallel) {
+            // the distance measure is shared between threads, which is supported when not recording the cost matrix
+            indices = indices.parallel();
+        }
+        return indices.mapToDouble(i -> {
+            double sum = 0;
+            for(TimeSeriesInstance other : data) {
+                sum += distanceMeasure.distance(data[i], other);
+            }
+            return sum;
+        }).sum();
+    }
+}
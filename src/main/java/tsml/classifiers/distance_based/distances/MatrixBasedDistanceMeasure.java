@@ -17,6 +17,9 @@
  
 package tsml.classifiers.distance_based.distances;
 
+import tsml.data_containers.TimeSeries;
+import tsml.data_containers.TimeSeriesInstance;
+
 import java.util.Arrays;
 
 /**
@@ -26,17 +29,33 @@ import java.util.Arrays;
  * measure. Simple distance measures need not fit at all, therefore the fit method is empty for those implementations
  * . fit() should always be called before any distance measurements.
  * <p>
+ * When the cost matrix is not being recorded, the pair of rows and the primitive copies of the time series are held in
+ * per-thread buffers which are reused across distance computations. This avoids allocating on every call and allows
+ * several threads to compute distances using the same distance measure concurrently. The buffers may be larger than
+ * required for the current computation, so implementations must index them by the series lengths rather than the
+ * buffer lengths.
+ * <p>
  * Contributors: goastler
  */
 public abstract class MatrixBasedDistanceMeasure extends BaseDistanceMeasure {
 
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    /**
+     * Per-thread working memory.
+     */
+    private static class Buffers {
+        private double[] oddRow = new double[0];
+        private double[] evenRow = new double[0];
+        private final double[][][] values = {new double[0][], new double[0][]};
+        private double[] scratch = new double[0];
+        private int numCols = -1;
+        private boolean recycleRows;
+    }
+
     private boolean recordCostMatrix = false;
     // the distance matrix produced by the distance function
     private double[][] costMatrix;
-    private double[] oddRow;
-    private double[] evenRow;
-    private int numCols;
-    private boolean recycleRows;
 
     /**
      * Indicate that a new distance is being computed and a corresponding matrix or pair or rows are required
@@ -44,17 +63,18 @@ public abstract class MatrixBasedDistanceMeasure extends BaseDistanceMeasure {
      * @param numCols
      */
     protected void setup(int numRows, int numCols, boolean recycleRows) {
-        oddRow = null;
-        evenRow = null;
-        costMatrix = null;
-        this.numCols = numCols;
-        this.recycleRows = recycleRows;
+        final Buffers buffers = BUFFERS.get();
+        buffers.numCols = numCols;
+        buffers.recycleRows = recycleRows;
         if(recordCostMatrix) {
             costMatrix = new double[numRows][numCols];
             for(double[] array : costMatrix) Arrays.fill(array, getFillerValue());
         } else {
-            oddRow = new double[numCols];
-            evenRow = new double[numCols];
+            costMatrix = null;
+            if(buffers.oddRow.length < numCols) {
+                buffers.oddRow = new double[numCols];
+                buffers.evenRow = new double[numCols];
+            }
         }
     }
     
@@ -66,10 +86,9 @@ public abstract class MatrixBasedDistanceMeasure extends BaseDistanceMeasure {
      * Indicate that distance has been computed and any resources can be discarded. This preserves the distance matrix if set to do so, and discards all other resources. This is helpful to avoid the DistanceMeasure(s) retaining various rows / matrices post computation, never to be needed again but remaining in use in memory.
      */
     protected void teardown() {
-        oddRow = null;
-        evenRow = null;
-        numCols = -1;
-        recycleRows = false;
+        final Buffers buffers = BUFFERS.get();
+        buffers.numCols = -1;
+        buffers.recycleRows = false;
         if(!recordCostMatrix) {
             costMatrix = null;
         }
@@ -83,11 +102,59 @@ public abstract class MatrixBasedDistanceMeasure extends BaseDistanceMeasure {
     protected double[] getRow(int i) {
         if(recordCostMatrix) {
             return costMatrix[i];
-        } else if(recycleRows) {
-            return i % 2 == 0 ? evenRow : oddRow;
+        }
+        final Buffers buffers = BUFFERS.get();
+        if(buffers.recycleRows) {
+            return i % 2 == 0 ? buffers.evenRow : buffers.oddRow;
         } else {
-            return new double[numCols];
+            return new double[buffers.numCols];
+        }
+    }
+
+    /**
+     * Get the values of a time series instance as a primitive array, indexed by [dimension][time point]. The array is
+     * a per-thread buffer which is overwritten by the next call with the same slot, therefore the two series in a
+     * distance computation should use different slots (0 and 1). Dimensions shorter than the longest dimension are
+     * padded with NaN.
+     * @param inst the time series instance
+     * @param slot the buffer to use, 0 or 1
+     * @return the values of the instance
+     */
+    protected static double[][] getValues(TimeSeriesInstance inst, int slot) {
+        final Buffers buffers = BUFFERS.get();
+        final int numDimensions = inst.getNumDimensions();
+        final int length = inst.getMaxLength();
+        double[][] values = buffers.values[slot];
+        if(values.length < numDimensions) {
+            values = Arrays.copyOf(values, numDimensions);
+            buffers.values[slot] = values;
+        }
+        for(int i = 0; i < numDimensions; i++) {
+            if(values[i] == null || values[i].length < length) {
+                values[i] = new double[length];
+            }
+            final TimeSeries dim = inst.get(i);
+            final int dimLength = dim.getSeriesLength();
+            for(int j = 0; j < dimLength; j++) {
+                values[i][j] = dim.getValue(j);
+            }
+            Arrays.fill(values[i], dimLength, length, Double.NaN);
+        }
+        return values;
+    }
+    
+    /**
+     * Get a per-thread working array of at least the given length, for any other per-column state a distance
+     * computation needs. The contents are left over from the previous use, so must be written before being read.
+     * @param length the minimum length
+     * @return the working array
+     */
+    protected static double[] getScratch(int length) {
+        final Buffers buffers = BUFFERS.get();
+        if(buffers.scratch.length < length) {
+            buffers.scratch = new double[length];
         }
+        return buffers.scratch;
     }
     
     public double[][] costMatrix() {
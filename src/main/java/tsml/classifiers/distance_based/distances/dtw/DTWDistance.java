@@ -18,6 +18,10 @@
 package tsml.classifiers.distance_based.distances.dtw;
 
 import tsml.classifiers.distance_based.distances.MatrixBasedDistanceMeasure;
+import tsml.classifiers.distance_based.distances.lower_bounds.LbImproved;
+import tsml.classifiers.distance_based.distances.lower_bounds.LbKeogh;
+import tsml.classifiers.distance_based.distances.lower_bounds.LbKim;
+import tsml.classifiers.distance_based.distances.lower_bounds.LowerBound;
 import tsml.classifiers.distance_based.utils.collections.checks.Checks;
 import tsml.classifiers.distance_based.utils.collections.params.ParamSet;
 import tsml.data_containers.TimeSeries;
@@ -25,6 +29,7 @@ import tsml.data_containers.TimeSeriesInstance;
 import utilities.Utilities;
 
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * DTW distance measure.
@@ -38,10 +43,19 @@ public class DTWDistance extends MatrixBasedDistanceMeasure implements DTW {
         for(int i = 0; i < a.getNumDimensions(); i++) {
             final TimeSeries aDim = a.get(i);
             final TimeSeries bDim = b.get(i);
-            final double aValue = aDim.get(aIndex);
-            final double bValue = bDim.get(bIndex);
-            final double sqDiff = StrictMath.pow(aValue - bValue, 2);
-            sum += sqDiff;
+            final double aValue = aDim.getValue(aIndex);
+            final double bValue = bDim.getValue(bIndex);
+            final double diff = aValue - bValue;
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    public static double cost(final double[][] a, final int aIndex, final double[][] b, final int bIndex, final int numDimensions) {
+        double sum = 0;
+        for(int i = 0; i < numDimensions; i++) {
+            final double diff = a[i][aIndex] - b[i][bIndex];
+            sum += diff * diff;
         }
         return sum;
     }
@@ -56,6 +70,10 @@ public class DTWDistance extends MatrixBasedDistanceMeasure implements DTW {
         return window;
     }
 
+    @Override public List<LowerBound> getLowerBounds() {
+        return Arrays.asList(new LbKim(), new LbKeogh(window), new LbImproved(window));
+    }
+
     public double distance(TimeSeriesInstance a, TimeSeriesInstance b, final double limit) {
 
         // make a the longest time series
@@ -68,6 +86,9 @@ public class DTWDistance extends MatrixBasedDistanceMeasure implements DTW {
         final int aLength = a.getMaxLength();
         final int bLength = b.getMaxLength();
         setup(aLength, bLength, true);
+        final int numDimensions = a.getNumDimensions();
+        final double[][] aValues = getValues(a, 0);
+        final double[][] bValues = getValues(b, 1);
         
         // step is the increment of the mid point for each row
         final double step = (double) (bLength - 1) / (aLength - 1);
@@ -87,10 +108,10 @@ public class DTWDistance extends MatrixBasedDistanceMeasure implements DTW {
         // col index
         int j = start;
         // process the first row (can only warp left - not top/topLeft)
-        double min = row[j++] = cost(a, 0, b, 0); // process top left sqaure of mat
+        double min = row[j++] = cost(aValues, 0, bValues, 0, numDimensions); // process top left sqaure of mat
         // compute the first row
         for(; j <= end; j++) {
-            row[j] = row[j - 1] + cost(a, i, b, j);
+            row[j] = row[j - 1] + cost(aValues, i, bValues, j, numDimensions);
             min = Math.min(min, row[j]);
         }
         if(min > limit) return Double.POSITIVE_INFINITY; // quit if beyond limit
@@ -122,13 +143,13 @@ public class DTWDistance extends MatrixBasedDistanceMeasure implements DTW {
 
             // if assessing the left most column then only mapping option is top - not left or topleft
             if(j == 0) {
-                row[j] = prevRow[j] + cost(a, i, b, j);
+                row[j] = prevRow[j] + cost(aValues, i, bValues, j, numDimensions);
                 min = Math.min(min, row[j++]);
             }
 
             // compute the distance for each cell in the row
             for(; j <= end; j++) {
-                row[j] = Math.min(prevRow[j], Math.min(row[j - 1], prevRow[j - 1])) + cost(a, i, b, j);
+                row[j] = Math.min(prevRow[j], Math.min(row[j - 1], prevRow[j - 1])) + cost(aValues, i, bValues, j, numDimensions);
                 min = Math.min(min, row[j]);
             }
             
@@ -136,7 +157,7 @@ public class DTWDistance extends MatrixBasedDistanceMeasure implements DTW {
         }
 
         // last value in the current row is the distance
-        final double distance = row[row.length - 1];
+        final double distance = row[bLength - 1];
         teardown();
         return distance;
     }
@@ -19,6 +19,9 @@ package tsml.classifiers.distance_based.distances.erp;
 
 import tsml.classifiers.distance_based.distances.MatrixBasedDistanceMeasure;
 import tsml.classifiers.distance_based.distances.dtw.DTW;
+import tsml.classifiers.distance_based.distances.dtw.DTWDistance;
+import tsml.classifiers.distance_based.distances.lower_bounds.LbErp;
+import tsml.classifiers.distance_based.distances.lower_bounds.LowerBound;
 import tsml.classifiers.distance_based.utils.collections.checks.Checks;
 import tsml.classifiers.distance_based.utils.collections.params.ParamSet;
 import tsml.data_containers.TimeSeries;
@@ -26,6 +29,8 @@ import tsml.data_containers.TimeSeriesInstance;
 import utilities.Utilities;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * ERP distance measure.
@@ -51,26 +56,30 @@ public class ERPDistance extends MatrixBasedDistanceMeasure {
         double sum = 0;
         for(int i = 0; i < a.getNumDimensions(); i++) {
             final TimeSeries aDim = a.get(i);
-            final double aValue = aDim.get(aIndex);
-            final double sqDiff = StrictMath.pow(aValue - g, 2);
-            sum += sqDiff;
+            final double diff = aDim.getValue(aIndex) - g;
+            sum += diff * diff;
         }
         return sum;
     }
     
     public double cost(TimeSeriesInstance a, int aIndex, TimeSeriesInstance b, int bIndex) {
+        return DTWDistance.cost(a, aIndex, b, bIndex);
+    }
+
+    private double cost(final double[][] a, final int aIndex, final int numDimensions) {
         double sum = 0;
-        for(int i = 0; i < a.getNumDimensions(); i++) {
-            final TimeSeries aDim = a.get(i);
-            final TimeSeries bDim = b.get(i);
-            final double aValue = aDim.get(aIndex);
-            final double bValue = bDim.get(bIndex);
-            final double sqDiff = StrictMath.pow(aValue - bValue, 2);
-            sum += sqDiff;
+        for(int i = 0; i < numDimensions; i++) {
+            final double diff = a[i][aIndex] - g;
+            sum += diff * diff;
         }
         return sum;
     }
     
+    @Override
+    public List<LowerBound> getLowerBounds() {
+        return Collections.singletonList(new LbErp(window, g));
+    }
+
     @Override
     public double distance(TimeSeriesInstance a, TimeSeriesInstance b, final double limit) {
         
@@ -84,6 +93,9 @@ public class ERPDistance extends MatrixBasedDistanceMeasure {
         final int aLength = a.getMaxLength();
         final int bLength = b.getMaxLength();
         setup(aLength, bLength, true);
+        final int numDimensions = a.getNumDimensions();
+        final double[][] aValues = getValues(a, 0);
+        final double[][] bValues = getValues(b, 1);
 
         // step is the increment of the mid point for each row
         final double step = (double) (bLength - 1) / (aLength - 1);
@@ -106,7 +118,7 @@ public class ERPDistance extends MatrixBasedDistanceMeasure {
         double min = row[j++] = 0; // top left cell is always zero
         // compute the first row
         for(; j <= end; j++) {
-            row[j] = row[j - 1] + cost(b, j);
+            row[j] = row[j - 1] + cost(bValues, j, numDimensions);
             min = Math.min(min, row[j]);
         }
         if(min > limit) return Double.POSITIVE_INFINITY; // quit if beyond limit
@@ -138,15 +150,15 @@ public class ERPDistance extends MatrixBasedDistanceMeasure {
             
             // if assessing the left most column then only mapping option is top - not left or topleft
             if(j == 0) {
-                row[j] = prevRow[j] + cost(a, i);
+                row[j] = prevRow[j] + cost(aValues, i, numDimensions);
                 min = Math.min(min, row[j++]);
             }
             
             // compute the distance for each cell in the row
             for(; j <= end; j++) {
-                final double topLeft = prevRow[j - 1] + cost(a, i, b, j);
-                final double left = row[j - 1] + cost(b, j);
-                final double top = prevRow[j] + cost(a, i);
+                final double topLeft = prevRow[j - 1] + DTWDistance.cost(aValues, i, bValues, j, numDimensions);
+                final double left = row[j - 1] + cost(bValues, j, numDimensions);
+                final double top = prevRow[j] + cost(aValues, i, numDimensions);
                 if(topLeft > left && left < top) {
                     // del
                     row[j] = left;
@@ -20,7 +20,6 @@ package tsml.classifiers.distance_based.distances.lcss;
 import tsml.classifiers.distance_based.distances.MatrixBasedDistanceMeasure;
 import tsml.classifiers.distance_based.distances.dtw.DTW;
 import tsml.classifiers.distance_based.utils.collections.params.ParamSet;
-import tsml.data_containers.TimeSeries;
 import tsml.data_containers.TimeSeriesInstance;
 
 import java.util.Arrays;
@@ -49,14 +48,9 @@ public class LCSSDistance extends MatrixBasedDistanceMeasure {
         this.epsilon = epsilon;
     }
 
-    private boolean approxEqual(TimeSeriesInstance a, int aIndex, TimeSeriesInstance b, int bIndex) {
-        double sum = 0;
-        for(int i = 0; i < a.getNumDimensions(); i++) {
-            final TimeSeries aDim = a.get(i);
-            final TimeSeries bDim = b.get(i);
-            final Double aValue = aDim.get(aIndex);
-            final Double bValue = bDim.get(bIndex);
-            if(Math.abs(aValue - bValue) > epsilon) {
+    private boolean approxEqual(double[][] a, int aIndex, double[][] b, int bIndex, int numDimensions) {
+        for(int i = 0; i < numDimensions; i++) {
+            if(Math.abs(a[i][aIndex] - b[i][bIndex]) > epsilon) {
                 return false;
             }
         }
@@ -76,6 +70,9 @@ public class LCSSDistance extends MatrixBasedDistanceMeasure {
         final int aLength = a.getMaxLength();
         final int bLength = b.getMaxLength();
         setup(aLength, bLength, true);
+        final int numDimensions = a.getNumDimensions();
+        final double[][] aValues = getValues(a, 0);
+        final double[][] bValues = getValues(b, 1);
         
         // 22/10/19 goastler - limit LCSS such that if any value in the current window is larger than the limit then we can stop here, no point in doing the extra work
         if(limit != Double.POSITIVE_INFINITY) { // check if there's a limit set
@@ -103,11 +100,11 @@ public class LCSSDistance extends MatrixBasedDistanceMeasure {
         // col index
         int j = start;
         // process top left sqaure of mat
-        double min = row[j] = approxEqual(a, i, b, j) ? 1 : 0;
+        double min = row[j] = approxEqual(aValues, i, bValues, j, numDimensions) ? 1 : 0;
         j++;
         // compute the first row
         for(; j <= end; j++) {
-            if(approxEqual(a, i, b, j)) {
+            if(approxEqual(aValues, i, bValues, j, numDimensions)) {
                 row[j] = 1;
             } else {
                 row[j] = row[j - 1];
@@ -143,7 +140,7 @@ public class LCSSDistance extends MatrixBasedDistanceMeasure {
             
             // if assessing the left most column then only mapping option is top - not left or topleft
             if(j == 0) {
-                if(approxEqual(a, i, b, j)) {
+                if(approxEqual(aValues, i, bValues, j, numDimensions)) {
                     row[j] = 1;
                 } else {
                     row[j] = prevRow[start];
@@ -153,7 +150,7 @@ public class LCSSDistance extends MatrixBasedDistanceMeasure {
             
             // compute the distance for each cell in the row
             for(; j <= end; j++) {
-                if(approxEqual(a, i, b, j)) {
+                if(approxEqual(aValues, i, bValues, j, numDimensions)) {
                     row[j] = prevRow[j - 1] + 1;
                 } else {
                     // note that the below is an edge case fix. LCSS algorithmically doesn't consider the topLeft cell
@@ -173,7 +170,7 @@ public class LCSSDistance extends MatrixBasedDistanceMeasure {
         }
         
         // last value in the current row is the distance
-        final double distance = 1d - row[row.length - 1] / Math.min(aLength, bLength);
+        final double distance = 1d - row[bLength - 1] / Math.min(aLength, bLength);
         teardown();
         return distance;
     }
@@ -0,0 +1,136 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tsml.classifiers.distance_based.distances.lower_bounds;
+
+import tsml.data_containers.TimeSeriesInstance;
+
+import java.io.Serializable;
+
+/**
+ * The upper and lower envelope of a time series instance under a warping window, i.e. the max and min value each
+ * point can be aligned to. The window for each point is computed the same way as the window for each row in the
+ * matrix based distance measures (e.g. DTWDistance) so the envelope matches the alignments the distance measure
+ * considers exactly.
+ */
+public class Envelope implements Serializable {
+
+    private final double[][] upper;
+    private final double[][] lower;
+
+    public Envelope(TimeSeriesInstance inst, double window) {
+        final int numDimensions = inst.getNumDimensions();
+        final int length = inst.getMaxLength();
+        final int[] starts = new int[length];
+        final int[] ends = new int[length];
+        windowBounds(length, window, starts, ends);
+        upper = new double[numDimensions][length];
+        lower = new double[numDimensions][length];
+        final int[] maxQueue = new int[length];
+        final int[] minQueue = new int[length];
+        for(int i = 0; i < numDimensions; i++) {
+            fill(inst.get(i).toValueArray(), starts, ends, upper[i], lower[i], maxQueue, minQueue);
+        }
+    }
+
+    public double[] getUpper(int dimensionIndex) {
+        return upper[dimensionIndex];
+    }
+
+    public double[] getLower(int dimensionIndex) {
+        return lower[dimensionIndex];
+    }
+
+    /**
+     * Find the start and end (both inclusive) of the window for each point of a pair of equal length series. This
+     * mirrors the window computation in the matrix based distance measures.
+     *
+     * @param length the length of both series
+     * @param window the window as a proportion of the length
+     * @param starts the start of the window for each point
+     * @param ends   the end of the window for each point
+     */
+    public static void windowBounds(int length, double window, int[] starts, int[] ends) {
+        final double windowSize = window * length;
+        starts[0] = 0;
+        ends[0] = Math.min(length - 1, (int) Math.floor(windowSize));
+        // the series are of equal length, so the mid point of the window is the point itself
+        for(int i = 1; i < length; i++) {
+            starts[i] = Math.max(0, (int) Math.ceil(i - windowSize));
+            ends[i] = Math.min(length - 1, (int) Math.floor(i + windowSize));
+        }
+    }
+
+    /**
+     * Fill the upper and lower envelope of a series in linear time using monotonic queues of indices. The window
+     * starts and ends must never decrease.
+     *
+     * @param values   the series
+     * @param starts   the start of the window for each point
+     * @param ends     the end of the window for each point
+     * @param upper    the upper envelope to fill
+     * @param lower    the lower envelope to fill
+     * @param maxQueue working space, at least as long as the series
+     * @param minQueue working space, at least as long as the series
+     */
+    public static void fill(double[] values, int[] starts, int[] ends, double[] upper, double[] lower, int[] maxQueue,
+            int[] minQueue) {
+        int maxHead = 0, maxTail = 0, minHead = 0, minTail = 0;
+        int next = 0;
+        for(int i = 0; i < starts.length; i++) {
+            // add the values entering the window
+            for(; next <= ends[i]; next++) {
+                final double value = values[next];
+                while(maxTail > maxHead && values[maxQueue[maxTail - 1]] <= value) maxTail--;
+                maxQueue[maxTail++] = next;
+                while(minTail > minHead && values[minQueue[minTail - 1]] >= value) minTail--;
+                minQueue[minTail++] = next;
+            }
+            // drop the values leaving the window
+            while(maxQueue[maxHead] < starts[i]) maxHead++;
+            while(minQueue[minHead] < starts[i]) minHead++;
+            upper[i] = values[maxQueue[maxHead]];
+            lower[i] = values[minQueue[minHead]];
+        }
+    }
+
+    /**
+     * The lower bounds assume the pair of instances line up point for point, so only equal length instances with the
+     * same number of dimensions and no missing values can be bounded.
+     *
+     * @param a first instance
+     * @param b second instance
+     * @return whether a lower bound can be computed for the pair
+     */
+    public static boolean canBound(TimeSeriesInstance a, TimeSeriesInstance b) {
+        return a.isEqualLength() && b.isEqualLength() && !a.hasMissing() && !b.hasMissing()
+                       && a.getMaxLength() == b.getMaxLength() && a.getNumDimensions() == b.getNumDimensions();
+    }
+
+    /**
+     * @return the distance from a value to the nearest edge of a range, or zero if the value is inside the range
+     */
+    public static double distanceOutside(double value, double upper, double lower) {
+        if(value > upper) {
+            return value - upper;
+        } else if(value < lower) {
+            return lower - value;
+        } else {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package tsml.classifiers.distance_based.distances.lower_bounds;
+
+import tsml.data_containers.TimeSeriesInstance;
+import tsml.data_containers.TimeSeriesInstances;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Base class for lower bounds which compare the query against the envelope of the candidate. The envelopes of the
+ * candidates are precomputed in buildLowerBound(), keyed by instance identity. Envelopes for any other candidates are
+ * computed on the fly and not kept.
+ */
+public abstract class EnvelopeLowerBound implements LowerBound {
+
+    private final double window;
+    private final Map<TimeSeriesInstance, Envelope> envelopes = new IdentityHashMap<>();
+
+    public EnvelopeLowerBound(double window) {
+        this.window = window;
+    }
+
+    public double getWindow() {
+        return window;
+    }
+
+    @Override public void buildLowerBound(final TimeSeriesInstances data) {
+        envelopes.clear();
+        for(TimeSeriesInstance inst : data) {
+            if(inst.isEqualLength() && !inst.hasMissing()) {
+                envelopes.put(inst, new Envelope(inst, window));
+            }
+        }
+    }
+
+    protected Envelope getEnvelope(TimeSeriesInstance candidate) {
+        final Envelope envelope = envelopes.get(candidate);
+        if(envelope != null) {
+            return envelope;
+        }
+        return new Envelope(candidate, window);
+    }
+
+    @Override public double lowerBound(final TimeSeriesInstance query, final TimeSeriesInstance candidate,
+            final double limit) {
+        if(!Envelope.canBound(query, candidate)) {
+            return 0;
+        }
+        return lowerBound(query, getEnvelope(candidate), candidate, limit);
+    }
+
+    /**
+     * Find the lower bound between a query and candidate which have already been checked to be boundable.
+     */
+    protected abstract double lowerBound(TimeSeriesInstance query, Envelope envelope, TimeSeriesInstance candidate,
+            double limit);
+}
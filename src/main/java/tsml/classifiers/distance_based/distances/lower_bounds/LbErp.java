@@ -0,0 +1,58 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package tsml.classifiers.distance_based.distances.lower_bounds;
+
+import tsml.data_containers.TimeSeries;
+import tsml.data_containers.TimeSeriesInstance;
+
+/**
+ * LB_Keogh adapted for ERP. Each point of the query after the first is either aligned to a point of the candidate
+ * within the window or to the gap value g, so the envelope of the candidate is widened to include g. The first point is
+ * skipped as ERPDistance does not charge for it.
+ */
+public class LbErp extends EnvelopeLowerBound {
+
+    private final double g;
+
+    public LbErp(final double window, final double g) {
+        super(window);
+        this.g = g;
+    }
+
+    @Override protected double lowerBound(final TimeSeriesInstance query, final Envelope envelope,
+            final TimeSeriesInstance candidate, final double limit) {
+        final int numDimensions = query.getNumDimensions();
+        final int length = query.getMaxLength();
+        double sum = 0;
+        for(int i = 0; i < numDimensions; i++) {
+            final TimeSeries series = query.get(i);
+            final double[] upper = envelope.getUpper(i);
+            final double[] lower = envelope.getLower(i);
+            for(int j = 1; j < length; j++) {
+                final double diff = Envelope.distanceOutside(series.getValue(j), Math.max(g, upper[j]),
+                        Math.min(g, lower[j]));
+                sum += diff * diff;
+                if(sum > limit) {
+                    return sum;
+                }
+            }
+        }
+        return sum;
+    }
+}
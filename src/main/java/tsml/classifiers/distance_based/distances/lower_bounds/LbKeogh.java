@@ -0,0 +1,66 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package tsml.classifiers.distance_based.distances.lower_bounds;
+
+import tsml.data_containers.TimeSeries;
+import tsml.data_containers.TimeSeriesInstance;
+
+/**
+ * LB_Keogh for DTW. Each point of the query must be aligned to at least one point of the candidate within the window,
+ * so the squared distance from each query point to the envelope of the candidate is a lower bound on the cost of
+ * aligning that point.
+ */
+public class LbKeogh extends EnvelopeLowerBound {
+
+    public LbKeogh(final double window) {
+        super(window);
+    }
+
+    @Override protected double lowerBound(final TimeSeriesInstance query, final Envelope envelope,
+            final TimeSeriesInstance candidate, final double limit) {
+        return distance(query, envelope, limit);
+    }
+
+    /**
+     * Find the squared distance of a series outside an envelope, stopping early once beyond the limit.
+     *
+     * @param inst     the series
+     * @param envelope the envelope
+     * @param limit    the limit
+     * @return the distance outside the envelope
+     */
+    public static double distance(final TimeSeriesInstance inst, final Envelope envelope, final double limit) {
+        final int numDimensions = inst.getNumDimensions();
+        final int length = inst.getMaxLength();
+        double sum = 0;
+        for(int i = 0; i < numDimensions; i++) {
+            final TimeSeries series = inst.get(i);
+            final double[] upper = envelope.getUpper(i);
+            final double[] lower = envelope.getLower(i);
+            for(int j = 0; j < length; j++) {
+                final double diff = Envelope.distanceOutside(series.getValue(j), upper[j], lower[j]);
+                sum += diff * diff;
+                if(sum > limit) {
+                    return sum;
+                }
+            }
+        }
+        return sum;
+    }
+}
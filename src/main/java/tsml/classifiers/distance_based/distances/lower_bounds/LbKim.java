@@ -0,0 +1,42 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package tsml.classifiers.distance_based.distances.lower_bounds;
+
+import tsml.classifiers.distance_based.distances.dtw.DTWDistance;
+import tsml.data_containers.TimeSeriesInstance;
+
+/**
+ * LB_Kim for DTW. The first points and the last points of both series are always aligned, so the cost of those two
+ * alignments is a lower bound on the distance.
+ */
+public class LbKim implements LowerBound {
+
+    @Override public double lowerBound(final TimeSeriesInstance query, final TimeSeriesInstance candidate,
+            final double limit) {
+        if(!Envelope.canBound(query, candidate)) {
+            return 0;
+        }
+        final int last = query.getMaxLength() - 1;
+        double sum = DTWDistance.cost(query, 0, candidate, 0);
+        if(last > 0) {
+            sum += DTWDistance.cost(query, last, candidate, last);
+        }
+        return sum;
+    }
+}
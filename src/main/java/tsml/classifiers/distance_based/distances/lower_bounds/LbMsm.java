@@ -0,0 +1,68 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package tsml.classifiers.distance_based.distances.lower_bounds;
+
+import tsml.data_containers.TimeSeries;
+import tsml.data_containers.TimeSeriesInstance;
+
+/**
+ * Lower bound for MSM. The first points of both series are always matched directly. Every later point of the query is
+ * either matched directly to a point of the candidate, costing at least its distance outside the range of the
+ * candidate, or split / merged, costing at least c per dimension.
+ */
+public class LbMsm extends EnvelopeLowerBound {
+
+    private final double c;
+
+    public LbMsm(final double c) {
+        // MSM does not use a window, so the envelope is the min and max of the whole candidate
+        super(1);
+        this.c = c;
+    }
+
+    @Override protected double lowerBound(final TimeSeriesInstance query, final Envelope envelope,
+            final TimeSeriesInstance candidate, final double limit) {
+        final int numDimensions = query.getNumDimensions();
+        final int length = query.getMaxLength();
+        final double moveCost = c * numDimensions;
+        double sum = 0;
+        for(int j = 0; j < numDimensions; j++) {
+            sum += Math.abs(query.get(j).getValue(0) - candidate.get(j).getValue(0));
+        }
+        if(numDimensions == 1) {
+            // the min over dimensions below is per point, so only the univariate case can loop per dimension
+            final TimeSeries series = query.get(0);
+            final double[] upper = envelope.getUpper(0);
+            final double[] lower = envelope.getLower(0);
+            for(int i = 1; i < length && sum <= limit; i++) {
+                sum += Math.min(Envelope.distanceOutside(series.getValue(i), upper[i], lower[i]), moveCost);
+            }
+            return sum;
+        }
+        for(int i = 1; i < length && sum <= limit; i++) {
+            double cost = 0;
+            for(int j = 0; j < numDimensions; j++) {
+                cost += Envelope.distanceOutside(query.get(j).getValue(i), envelope.getUpper(j)[i],
+                        envelope.getLower(j)[i]);
+            }
+            sum += Math.min(cost, moveCost);
+        }
+        return sum;
+    }
+}
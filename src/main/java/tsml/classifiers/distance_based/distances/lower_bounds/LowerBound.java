@@ -0,0 +1,57 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package tsml.classifiers.distance_based.distances.lower_bounds;
+
+import tsml.data_containers.TimeSeriesInstance;
+import tsml.data_containers.TimeSeriesInstances;
+
+import java.io.Serializable;
+
+/**
+ * A lower bound on a distance measure. A lower bound is cheaper to compute than the distance and never exceeds it, so
+ * if the lower bound between two instances is beyond the limit then the distance is too and need not be computed.
+ */
+public interface LowerBound extends Serializable {
+
+    default String getName() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * Precompute anything needed per candidate instance, e.g. the envelope of each instance. The candidates are the
+     * instances which appear as the second argument to lowerBound(), typically the train data.
+     *
+     * @param data the candidate instances
+     */
+    default void buildLowerBound(TimeSeriesInstances data) {
+
+    }
+
+    /**
+     * Find the lower bound of the distance between a query and a candidate instance. Computation may stop early once
+     * the bound exceeds the limit, in which case any value above the limit may be returned. Instances which cannot be
+     * bounded (e.g. unequal length) give a lower bound of 0.
+     *
+     * @param query     the query instance
+     * @param candidate the candidate instance
+     * @param limit     the limit beyond which the exact bound is not needed
+     * @return the lower bound
+     */
+    double lowerBound(TimeSeriesInstance query, TimeSeriesInstance candidate, double limit);
+}
@@ -0,0 +1,139 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package tsml.classifiers.distance_based.distances.lower_bounds;
+
+import tsml.data_containers.TimeSeriesInstance;
+import tsml.data_containers.TimeSeriesInstances;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Applies a series of lower bounds in turn, cheapest first, to decide whether a distance can be skipped. The number of
+ * pairs each bound is applied to and the number it prunes are counted to show how effective each bound is.
+ */
+public class LowerBoundCascade implements Serializable {
+
+    private final List<LowerBound> lowerBounds;
+    private final LongAdder[] evaluated;
+    private final LongAdder[] pruned;
+    private final LongAdder count = new LongAdder();
+
+    public LowerBoundCascade(List<LowerBound> lowerBounds) {
+        this.lowerBounds = new ArrayList<>(lowerBounds);
+        evaluated = new LongAdder[lowerBounds.size()];
+        pruned = new LongAdder[lowerBounds.size()];
+        for(int i = 0; i < lowerBounds.size(); i++) {
+            evaluated[i] = new LongAdder();
+            pruned[i] = new LongAdder();
+        }
+    }
+
+    public void buildLowerBounds(TimeSeriesInstances data) {
+        for(LowerBound lowerBound : lowerBounds) {
+            lowerBound.buildLowerBound(data);
+        }
+    }
+
+    public boolean isEmpty() {
+        return lowerBounds.isEmpty();
+    }
+
+    /**
+     * Apply the lower bounds to a pair of instances until one exceeds the limit.
+     *
+     * @param query     the query instance
+     * @param candidate the candidate instance
+     * @param limit     the limit
+     * @return true if a lower bound exceeds the limit, i.e. the distance is beyond the limit and need not be computed
+     */
+    public boolean prune(TimeSeriesInstance query, TimeSeriesInstance candidate, double limit) {
+        count.increment();
+        for(int i = 0; i < lowerBounds.size(); i++) {
+            evaluated[i].increment();
+            if(lowerBounds.get(i).lowerBound(query, candidate, limit) > limit) {
+                pruned[i].increment();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<LowerBound> getLowerBounds() {
+        return lowerBounds;
+    }
+
+    /**
+     * @return the number of pairs the cascade has been applied to
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getNumEvaluated(int index) {
+        return evaluated[index].sum();
+    }
+
+    public long getNumPruned(int index) {
+        return pruned[index].sum();
+    }
+
+    /**
+     * @return the proportion of the pairs reaching a bound which the bound prunes, or NaN if none have reached it
+     */
+    public double getPruneRate(int index) {
+        final long numEvaluated = getNumEvaluated(index);
+        return numEvaluated == 0 ? Double.NaN : (double) getNumPruned(index) / numEvaluated;
+    }
+
+    /**
+     * @return the proportion of the pairs which the cascade prunes, or NaN if it has not been applied
+     */
+    public double getPruneRate() {
+        final long total = getCount();
+        if(total == 0) {
+            return Double.NaN;
+        }
+        long numPruned = 0;
+        for(int i = 0; i < lowerBounds.size(); i++) {
+            numPruned += getNumPruned(i);
+        }
+        return (double) numPruned / total;
+    }
+
+    public void resetStats() {
+        count.reset();
+        for(int i = 0; i < lowerBounds.size(); i++) {
+            evaluated[i].reset();
+            pruned[i].reset();
+        }
+    }
+
+    @Override public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("pairs: ").append(getCount()).append(", prune rate: ").append(getPruneRate());
+        for(int i = 0; i < lowerBounds.size(); i++) {
+            sb.append(", ").append(lowerBounds.get(i).getName()).append(": ").append(getNumPruned(i)).append("/")
+                    .append(getNumEvaluated(i)).append(" (").append(getPruneRate(i)).append(")");
+        }
+        return sb.toString();
+    }
+}
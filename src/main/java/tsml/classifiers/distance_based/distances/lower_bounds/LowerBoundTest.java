@@ -0,0 +1,108 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package tsml.classifiers.distance_based.distances.lower_bounds;
+
+import org.junit.Assert;
+import org.junit.Test;
+import tsml.classifiers.distance_based.distances.DistanceMeasure;
+import tsml.classifiers.distance_based.distances.dtw.DTWDistance;
+import tsml.classifiers.distance_based.distances.erp.ERPDistance;
+import tsml.classifiers.distance_based.distances.msm.MSMDistance;
+import tsml.data_containers.TimeSeriesInstance;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Purpose: test the lower bounds never exceed the distance they bound.
+ */
+public class LowerBoundTest {
+
+    private static TimeSeriesInstance randomInstance(Random random, int numDimensions, int length) {
+        final double[][] values = new double[numDimensions][length];
+        for(double[] dimension : values) {
+            for(int i = 0; i < length; i++) {
+                dimension[i] = random.nextGaussian();
+            }
+        }
+        return new TimeSeriesInstance(values);
+    }
+
+    @Test
+    public void testLowerBoundsBelowDistance() {
+        final Random random = new Random(0);
+        for(int i = 0; i < 1000; i++) {
+            final int numDimensions = 1 + random.nextInt(3);
+            final int length = 1 + random.nextInt(30);
+            final TimeSeriesInstance a = randomInstance(random, numDimensions, length);
+            final TimeSeriesInstance b = randomInstance(random, numDimensions, length);
+            final double window = random.nextDouble();
+            final DTWDistance dtw = new DTWDistance();
+            dtw.setWindow(window);
+            final ERPDistance erp = new ERPDistance();
+            erp.setWindow(window);
+            erp.setG(random.nextGaussian());
+            final MSMDistance msm = new MSMDistance();
+            msm.setC(random.nextDouble() * 5);
+            for(DistanceMeasure distanceMeasure : Arrays.asList(dtw, erp, msm)) {
+                final double distance = distanceMeasure.distance(a, b);
+                for(LowerBound lowerBound : distanceMeasure.getLowerBounds()) {
+                    final double bound = lowerBound.lowerBound(a, b, Double.POSITIVE_INFINITY);
+                    Assert.assertTrue(lowerBound.getName() + " " + bound + " > " + distanceMeasure.getName() + " " + distance,
+                            bound <= distance + 1e-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEnvelope() {
+        final TimeSeriesInstance inst = new TimeSeriesInstance(new double[] {1, 5, 2, 8, 3, 0});
+        final Envelope envelope = new Envelope(inst, 0.2); // window of 1 point either side
+        Assert.assertArrayEquals(new double[] {5, 5, 8, 8, 8, 3}, envelope.getUpper(0), 0);
+        Assert.assertArrayEquals(new double[] {1, 1, 2, 2, 0, 0}, envelope.getLower(0), 0);
+    }
+
+    @Test
+    public void testUnequalLengthNotBounded() {
+        final TimeSeriesInstance a = new TimeSeriesInstance(new double[] {1, 2, 3});
+        final TimeSeriesInstance b = new TimeSeriesInstance(new double[] {10, 20, 30, 40});
+        for(LowerBound lowerBound : new DTWDistance().getLowerBounds()) {
+            Assert.assertEquals(0, lowerBound.lowerBound(a, b, Double.POSITIVE_INFINITY), 0);
+        }
+    }
+
+    @Test
+    public void testCascadeCounts() {
+        final DTWDistance dtw = new DTWDistance();
+        dtw.setWindow(0.2);
+        final LowerBoundCascade cascade = new LowerBoundCascade(dtw.getLowerBounds());
+        final TimeSeriesInstance a = new TimeSeriesInstance(new double[] {1, 2, 3, 4, 5});
+        final TimeSeriesInstance b = new TimeSeriesInstance(new double[] {11, 12, 13, 14, 15});
+        // the first and last points are far apart so LB_Kim prunes
+        Assert.assertTrue(cascade.prune(a, b, 1));
+        // nothing can prune when the limit is beyond the distance
+        Assert.assertFalse(cascade.prune(a, b, dtw.distance(a, b)));
+        Assert.assertEquals(2, cascade.getCount());
+        Assert.assertEquals(2, cascade.getNumEvaluated(0));
+        Assert.assertEquals(1, cascade.getNumPruned(0));
+        Assert.assertEquals(1, cascade.getNumEvaluated(1));
+        Assert.assertEquals(0.5, cascade.getPruneRate(), 0);
+    }
+}
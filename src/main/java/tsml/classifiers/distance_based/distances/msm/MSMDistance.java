@@ -18,12 +18,15 @@
 package tsml.classifiers.distance_based.distances.msm;
 
 import tsml.classifiers.distance_based.distances.MatrixBasedDistanceMeasure;
+import tsml.classifiers.distance_based.distances.lower_bounds.LbMsm;
+import tsml.classifiers.distance_based.distances.lower_bounds.LowerBound;
 import tsml.classifiers.distance_based.utils.collections.params.ParamHandlerUtils;
 import tsml.classifiers.distance_based.utils.collections.params.ParamSet;
-import tsml.data_containers.TimeSeries;
 import tsml.data_containers.TimeSeriesInstance;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * MSM distance measure.
@@ -78,16 +81,10 @@ public class MSMDistance extends MatrixBasedDistanceMeasure {
      * @param cIndex
      * @return
      */
-    private double cost(final TimeSeriesInstance a, final int aIndex, final TimeSeriesInstance b, final int bIndex, final TimeSeriesInstance c, final int cIndex) {
+    private double cost(final double[][] a, final int aIndex, final double[][] b, final int bIndex, final double[][] c, final int cIndex, final int numDimensions) {
         double sum = 0;
-        for(int i = 0; i < a.getNumDimensions(); i++) {
-            final TimeSeries aDim = a.get(i);
-            final TimeSeries bDim = b.get(i);
-            final TimeSeries cDim = c.get(i);
-            final Double aValue = aDim.get(aIndex);
-            final Double bValue = bDim.get(bIndex);
-            final Double cValue = cDim.get(cIndex);
-            sum += findCost(aValue, bValue, cValue);
+        for(int i = 0; i < numDimensions; i++) {
+            sum += findCost(a[i][aIndex], b[i][bIndex], c[i][cIndex]);
         }
         return sum;
     }
@@ -100,18 +97,19 @@ public class MSMDistance extends MatrixBasedDistanceMeasure {
      * @param bIndex
      * @return
      */
-    private double directCost(final TimeSeriesInstance a, final int aIndex, final TimeSeriesInstance b, final int bIndex) {
+    private double directCost(final double[][] a, final int aIndex, final double[][] b, final int bIndex, final int numDimensions) {
         double sum = 0;
-        for(int i = 0; i < a.getNumDimensions(); i++) {
-            final TimeSeries aDim = a.get(i);
-            final TimeSeries bDim = b.get(i);
-            final Double aValue = aDim.get(aIndex);
-            final Double bValue = bDim.get(bIndex);
-            sum += Math.abs(aValue - bValue);
+        for(int i = 0; i < numDimensions; i++) {
+            sum += Math.abs(a[i][aIndex] - b[i][bIndex]);
         }
         return sum;
     }
 
+    @Override
+    public List<LowerBound> getLowerBounds() {
+        return Collections.singletonList(new LbMsm(c));
+    }
+
     @Override
     public double distance(TimeSeriesInstance a, TimeSeriesInstance b, final double limit) {
 
@@ -125,6 +123,9 @@ public class MSMDistance extends MatrixBasedDistanceMeasure {
         final int aLength = a.getMaxLength();
         final int bLength = b.getMaxLength();
         setup(aLength, bLength, true);
+        final int numDimensions = a.getNumDimensions();
+        final double[][] aValues = getValues(a, 0);
+        final double[][] bValues = getValues(b, 1);
 
         // step is the increment of the mid point for each row
         final double step = (double) (bLength - 1) / (aLength - 1);
@@ -144,11 +145,11 @@ public class MSMDistance extends MatrixBasedDistanceMeasure {
         // col index
         int j = start;
         // process top left sqaure of mat
-        double min = row[j] = directCost(a, i, b, j);
+        double min = row[j] = directCost(aValues, i, bValues, j, numDimensions);
         j++;
         // compute the first row
         for(; j <= end; j++) {
-            row[j] = row[j - 1] + cost(b, j, a, i, b, j - 1);
+            row[j] = row[j - 1] + cost(bValues, j, aValues, i, bValues, j - 1, numDimensions);
             min = Math.min(min, row[j]);
         }
         if(min > limit) return Double.POSITIVE_INFINITY; // quit if beyond limit
@@ -180,15 +181,15 @@ public class MSMDistance extends MatrixBasedDistanceMeasure {
             
             // if assessing the left most column then only mapping option is top - not left or topleft
             if(j == 0) {
-                row[j] = prevRow[j] + cost(a, i, a, i - 1, b, j);
+                row[j] = prevRow[j] + cost(aValues, i, aValues, i - 1, bValues, j, numDimensions);
                 min = Math.min(min, row[j++]);
             }
             
             // compute the distance for each cell in the row
             for(; j <= end; j++) {
-                final double topLeft = prevRow[j - 1] + directCost(a, i, b, j);
-                final double top = prevRow[j] + cost(a, i, a, i - 1, b, j);
-                final double left = row[j - 1] + cost(b, j, a, i, b, j - 1);
+                final double topLeft = prevRow[j - 1] + directCost(aValues, i, bValues, j, numDimensions);
+                final double top = prevRow[j] + cost(aValues, i, aValues, i - 1, bValues, j, numDimensions);
+                final double left = row[j - 1] + cost(bValues, j, aValues, i, bValues, j - 1, numDimensions);
                 row[j] = Math.min(top, Math.min(left, topLeft));
                 min = Math.min(min, row[j]);
             }
@@ -197,7 +198,7 @@ public class MSMDistance extends MatrixBasedDistanceMeasure {
         }
         
         // last value in the current row is the distance
-        final double distance = row[row.length - 1];
+        final double distance = row[bLength - 1];
         teardown();
         return distance;
     }
@@ -19,12 +19,13 @@ package tsml.classifiers.distance_based.distances.twed;
 
 import tsml.classifiers.distance_based.distances.MatrixBasedDistanceMeasure;
 import tsml.classifiers.distance_based.utils.collections.params.ParamSet;
-import tsml.data_containers.TimeSeries;
 import tsml.data_containers.TimeSeriesInstance;
 import utilities.ArrayUtilities;
 
 import java.util.Arrays;
 
+import static tsml.classifiers.distance_based.distances.dtw.DTWDistance.cost;
+
 /**
  * TWED distance measure.
  * <p>
@@ -39,26 +40,11 @@ public class TWEDistance
     public static final String NU_FLAG = "n";
     public static final String LAMBDA_FLAG = "l";
 
-    private double cost(final TimeSeriesInstance a, final int aIndex, final TimeSeriesInstance b, final int bIndex) {
-        double sum = 0;
-        for(int i = 0; i < a.getNumDimensions(); i++) {
-            final TimeSeries aDim = a.get(i);
-            final TimeSeries bDim = b.get(i);
-            final double aValue = aDim.get(aIndex);
-            final double bValue = bDim.get(bIndex);
-            final double sqDiff = StrictMath.pow(aValue - bValue, 2);
-            sum += sqDiff;
-        }
-        return sum;
-    }
-    
-    private double cellCost(final TimeSeriesInstance a, final int aIndex) {
+    private double cellCost(final double[][] a, final int aIndex, final int numDimensions) {
         double sum = 0;
-        for(int i = 0; i < a.getNumDimensions(); i++) {
-            final TimeSeries aDim = a.get(i);
-            final double aValue = aDim.get(aIndex);
-            final double sq = StrictMath.pow(aValue, 2);
-            sum += sq;
+        for(int i = 0; i < numDimensions; i++) {
+            final double aValue = a[i][aIndex];
+            sum += aValue * aValue;
         }
         return sum;
     }
@@ -76,6 +62,9 @@ public class TWEDistance
         final int aLength = a.getMaxLength();
         final int bLength = b.getMaxLength();
         setup(aLength + 1, bLength + 1, true);
+        final int numDimensions = a.getNumDimensions();
+        final double[][] aValues = getValues(a, 0);
+        final double[][] bValues = getValues(b, 1);
 
         // step is the increment of the mid point for each row
         final double step = (double) (bLength) / (aLength);
@@ -91,7 +80,8 @@ public class TWEDistance
         int prevEnd; // store end of window from previous row to fill in shifted space with inf
         double[] row = getRow(i);
         double[] prevRow;
-        double[] jCosts = new double[bLength + 1];
+        // cost of each column, filled in as the window first reaches it
+        final double[] jCosts = getScratch(bLength + 1);
         double min, iCost;
 
         // col index
@@ -99,12 +89,12 @@ public class TWEDistance
 
         // border of the cost matrix initialization
         row[j++] = 0;
-        row[j] = jCosts[j] = cellCost(b, i);
+        row[j] = jCosts[j] = cellCost(bValues, i, numDimensions);
         j++;
         // compute the first padded row
         for(; j <= end; j++) {
             //CHANGE AJB 8/1/16: Only use power of 2 for speed up
-            jCosts[j] = cost(b, j - 2, b, j - 1);
+            jCosts[j] = cost(bValues, j - 2, bValues, j - 1, numDimensions);
             row[j] = row[j - 1] + jCosts[j];
         }
         i++;
@@ -136,14 +126,14 @@ public class TWEDistance
 
             // fill any jCosts which have not yet been visited
             for(int x = prevEnd + 1; x <= end; x++) {
-                jCosts[x] = cost(b, x - 2, b, x - 1);
+                jCosts[x] = cost(bValues, x - 2, bValues, x - 1, numDimensions);
             }
 
             // the ith cost for this row
             if(i > 1) {
-                iCost = cost(a, i - 2, a, i - 1);
+                iCost = cost(aValues, i - 2, aValues, i - 1, numDimensions);
             } else {
-                iCost = cellCost(a, i - 1);
+                iCost = cellCost(aValues, i - 1, numDimensions);
             }
 
             // if assessing the left most column then only mapping option is top - not left or topleft
@@ -154,10 +144,10 @@ public class TWEDistance
 
             // compute the distance for each cell in the row
             for(; j <= end; j++) {
-                double dist = cost(a, i - 1, b, j - 1);
+                double dist = cost(aValues, i - 1, bValues, j - 1, numDimensions);
                 double htrans = Math.abs(i - j);
                 if(i > 1 && j > 1) {
-                    dist += cost(a, i - 2, b, j - 2);
+                    dist += cost(aValues, i - 2, bValues, j - 2, numDimensions);
                     htrans *= 2;
                 }
                 final double topLeft = prevRow[j - 1] + nu * htrans + dist;
@@ -171,7 +161,7 @@ public class TWEDistance
         }
         
         // last value in the current row is the distance
-        final double distance = row[row.length - 1];
+        final double distance = row[bLength];
         teardown();
         return distance;
     }
@@ -35,7 +35,7 @@ public class WDTWDistance
     extends MatrixBasedDistanceMeasure implements WDTW {
 
     private double g = 0.05;
-    private double[] weights = new double[0];
+    private volatile double[] weights = new double[0];
 
     @Override
     public double getG() {
@@ -51,16 +51,20 @@ public class WDTWDistance
         this.g = g;
     }
     
-    private void generateWeights(int length) {
-        if(weights.length < length) {
-            final double halfLength = (double) length / 2;
-            double[] oldWeights = weights;
-            weights = new double[length];
-            System.arraycopy(oldWeights, 0, weights, 0, oldWeights.length);
-            for(int i = oldWeights.length; i < length; i++) {
-                weights[i] = 1d / (1d + Math.exp(-g * (i - halfLength)));
-            }
+    private double[] generateWeights(int length) {
+        final double[] oldWeights = weights;
+        if(oldWeights.length >= length) {
+            return oldWeights;
+        }
+        final double halfLength = (double) length / 2;
+        // filled before being published, so other threads sharing this measure never see a partially filled array
+        final double[] newWeights = new double[length];
+        System.arraycopy(oldWeights, 0, newWeights, 0, oldWeights.length);
+        for(int i = oldWeights.length; i < length; i++) {
+            newWeights[i] = 1d / (1d + Math.exp(-g * (i - halfLength)));
         }
+        weights = newWeights;
+        return newWeights;
     }
 
     @Override
@@ -76,6 +80,9 @@ public class WDTWDistance
         final int aLength = a.getMaxLength();
         final int bLength = b.getMaxLength();
         setup(aLength, bLength, true);
+        final int numDimensions = a.getNumDimensions();
+        final double[][] aValues = getValues(a, 0);
+        final double[][] bValues = getValues(b, 1);
 
         // step is the increment of the mid point for each row
         final double step = (double) (bLength - 1) / (aLength - 1);
@@ -83,7 +90,7 @@ public class WDTWDistance
         final double windowSize = window * bLength;
 
         // generate weights for soft weighting of costs
-        generateWeights(Math.max(aLength, bLength));
+        final double[] weights = generateWeights(Math.max(aLength, bLength));
 
         // row index
         int i = 0;
@@ -100,11 +107,11 @@ public class WDTWDistance
         int j = start;
         
         // process top left cell of mat
-        double min = row[j] = weights[j] * cost(a, i, b, j);
+        double min = row[j] = weights[j] * cost(aValues, i, bValues, j, numDimensions);
         j++;
         // compute the first row
         for(; j <= end; j++) {
-            row[j] = row[j - 1] + weights[j] * cost(a, i, b, j);
+            row[j] = row[j - 1] + weights[j] * cost(aValues, i, bValues, j, numDimensions);
             min = Math.min(min, row[j]);
         }
         if(min > limit) return Double.POSITIVE_INFINITY; // quit if beyond limit
@@ -137,12 +144,12 @@ public class WDTWDistance
             
             // if assessing the left most column then only mapping option is top - not left or topleft
             if(j == 0) {
-                row[j] = prevRow[j] + weights[Math.abs(i - j)] * cost(a, i, b, j);
+                row[j] = prevRow[j] + weights[Math.abs(i - j)] * cost(aValues, i, bValues, j, numDimensions);
                 min = Math.min(min, row[j++]);
             }
             // compute the distance for each cell in the row
             for(; j <= end; j++) {
-                row[j] = Math.min(prevRow[j], Math.min(row[j - 1], prevRow[j - 1])) + weights[Math.abs(i - j)] * cost(a, i, b, j);;
+                row[j] = Math.min(prevRow[j], Math.min(row[j - 1], prevRow[j - 1])) + weights[Math.abs(i - j)] * cost(aValues, i, bValues, j, numDimensions);
                 min = Math.min(min, row[j]);
             }
             
@@ -150,7 +157,7 @@ public class WDTWDistance
         }
         
         // last value in the current row is the distance
-        final double distance = row[row.length - 1];
+        final double distance = row[bLength - 1];
         teardown();
         return distance;
     }
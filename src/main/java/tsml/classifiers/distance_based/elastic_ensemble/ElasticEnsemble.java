@@ -13,7 +13,9 @@ import tsml.classifiers.distance_based.distances.msm.spaces.MSMDistanceSpace;
 import tsml.classifiers.distance_based.distances.twed.spaces.TWEDistanceSpace;
 import tsml.classifiers.distance_based.distances.wdtw.spaces.WDDTWDistanceSpace;
 import tsml.classifiers.distance_based.distances.wdtw.spaces.WDTWDistanceSpace;
+import tsml.classifiers.distance_based.optimised.Agent;
 import tsml.classifiers.distance_based.optimised.KnnAgent;
+import tsml.classifiers.distance_based.optimised.NnTableAgent;
 import tsml.classifiers.distance_based.optimised.OptimisedClassifier;
 import tsml.classifiers.distance_based.utils.classifiers.BaseClassifier;
 import tsml.classifiers.distance_based.utils.classifiers.configs.Configs;
@@ -24,6 +26,7 @@ import tsml.classifiers.distance_based.utils.classifiers.contracting.ContractedT
 import tsml.classifiers.distance_based.utils.classifiers.contracting.ProgressiveBuild;
 import tsml.classifiers.distance_based.utils.classifiers.results.ResultUtils;
 import tsml.classifiers.distance_based.utils.collections.params.ParamSpaceBuilder;
+import tsml.classifiers.distance_based.utils.collections.params.iteration.GridSearch;
 import tsml.classifiers.distance_based.utils.collections.params.iteration.RandomSearch;
 import tsml.classifiers.distance_based.utils.system.memory.MemoryWatchable;
 import tsml.classifiers.distance_based.utils.system.memory.MemoryWatcher;
@@ -61,7 +64,10 @@ public class ElasticEnsemble extends BaseClassifier implements ContractedTrain,
                     new TWEDistanceSpace(),
                     new MSMDistanceSpace()  
             ));
+            ee.setNnTableTuning(false);
         });
+
+        configs.add("FastEE", "EE with each constituent tuned by full LOOCV over a nearest neighbour table shared between param sets", "EE", ee -> ee.setNnTableTuning(true));
         
         return configs;
     }
@@ -82,6 +88,8 @@ public class ElasticEnsemble extends BaseClassifier implements ContractedTrain,
     private List<ParamSpaceBuilder> distanceMeasureSpaceBuilders = new ArrayList<>();
     private List<OptimisedClassifier> constiteunts;
     private List<OptimisedClassifier> remainingConstituents;
+    // whether to tune each constituent by full LOOCV with a NnTableTuner rather than incrementally by a KnnAgent
+    private boolean nnTableTuning = false;
 
     @Override public CheckpointConfig getCheckpointConfig() {
         return checkpointConfig;
@@ -145,15 +153,28 @@ public class ElasticEnsemble extends BaseClassifier implements ContractedTrain,
                 remainingConstituents = new LinkedList<>(); // the classifiers which are not fully built
                 for(ParamSpaceBuilder builder : distanceMeasureSpaceBuilders) {
                     // build the agent to guide knn tuning
-                    final KnnAgent agent = new KnnAgent();
-                    agent.setParamSpaceBuilder(builder);
-                    agent.setSearch(new RandomSearch());
-                    agent.setEvaluatorBuilder(InternalEstimateEvaluator::new);
-                    agent.setScorer(ClassifierResults::getAcc);
+                    final Agent agent;
+                    if(nnTableTuning) {
+                        // evaluate every param set in full, reusing the nearest neighbours between param sets
+                        final NnTableAgent tableAgent = new NnTableAgent();
+                        tableAgent.setParamSpaceBuilder(builder);
+                        tableAgent.setSearch(new GridSearch());
+                        tableAgent.setEvaluatorBuilder(InternalEstimateEvaluator::new);
+                        tableAgent.setScorer(ClassifierResults::getAcc);
+                        agent = tableAgent;
+                    } else {
+                        final KnnAgent knnAgent = new KnnAgent();
+                        knnAgent.setParamSpaceBuilder(builder);
+                        knnAgent.setSearch(new RandomSearch());
+                        knnAgent.setEvaluatorBuilder(InternalEstimateEvaluator::new);
+                        knnAgent.setScorer(ClassifierResults::getAcc);
+                        agent = knnAgent;
+                    }
                     // build the optimised classifier, which uses the agent to do the optimisation
                     final OptimisedClassifier classifier = new OptimisedClassifier();
                     classifier.setAgent(agent);
                     classifier.setSeed(getSeed());
+                    classifier.setTrainData(trainData);
                     // kick off the classifier
                     classifier.beforeBuild();
                     if(!classifier.isFullyBuilt()) {
@@ -263,6 +284,14 @@ public class ElasticEnsemble extends BaseClassifier implements ContractedTrain,
         }
     }
 
+    public boolean isNnTableTuning() {
+        return nnTableTuning;
+    }
+
+    public void setNnTableTuning(final boolean nnTableTuning) {
+        this.nnTableTuning = nnTableTuning;
+    }
+
     public long getTestTimeLimit() {
         return testTimeLimit;
     }
@@ -26,6 +26,7 @@ import experiments.data.DatasetLoading;
 import tsml.classifiers.TrainEstimateTimeable;
 import tsml.classifiers.distance_based.distances.DistanceMeasure;
 import tsml.classifiers.distance_based.distances.ed.EDistance;
+import tsml.classifiers.distance_based.distances.lower_bounds.LowerBoundCascade;
 import tsml.classifiers.distance_based.utils.classifiers.configs.Configs;
 import tsml.classifiers.distance_based.utils.collections.pruned.PrunedMap;
 import tsml.classifiers.distance_based.utils.classifiers.BaseClassifier;
@@ -123,6 +124,7 @@ public class KNN extends BaseClassifier implements ParamHandler, Checkpointed, C
             knn.setAutoK(false);
             knn.setEarlyPredict(false);
             knn.setEarlyAbandonDistances(false);
+            knn.setLowerBoundDistances(true);
             knn.setNeighbourhoodSizeLimit(-1);
             knn.setNeighbourhoodSizeLimitProportional(1d);
         });
@@ -142,6 +144,9 @@ public class KNN extends BaseClassifier implements ParamHandler, Checkpointed, C
     private int neighbourhoodSize;
     private boolean earlyPredict;
     private boolean earlyAbandonDistances;
+    // whether to lower bound distances to skip computing those which cannot be a nearest neighbour
+    private boolean lowerBoundDistances;
+    private LowerBoundCascade lowerBoundCascade;
     private boolean autoK;
     private int bestK;
     
@@ -156,6 +161,7 @@ public class KNN extends BaseClassifier implements ParamHandler, Checkpointed, C
     
     public static final String EARLY_PREDICT_FLAG = "p";
     public static final String EARLY_ABANDON_DISTANCES_FLAG = "e";
+    public static final String LOWER_BOUND_DISTANCES_FLAG = "l";
     public static final String NEIGHBOURHOOD_SIZE_LIMIT_FLAG = "n";
     public static final String AUTO_K_FLAG = "a";
     
@@ -188,6 +194,7 @@ public class KNN extends BaseClassifier implements ParamHandler, Checkpointed, C
         return super.getParams()
                        .add(DistanceMeasure.DISTANCE_MEASURE_FLAG, distanceMeasure)
                        .add(EARLY_ABANDON_DISTANCES_FLAG, earlyAbandonDistances)
+                       .add(LOWER_BOUND_DISTANCES_FLAG, lowerBoundDistances)
                        .add(EARLY_PREDICT_FLAG, earlyPredict)
                        .add(NEIGHBOURHOOD_SIZE_LIMIT_FLAG, neighbourhoodSizeLimit)
                        .add(AUTO_K_FLAG, autoK);
@@ -197,6 +204,7 @@ public class KNN extends BaseClassifier implements ParamHandler, Checkpointed, C
         super.setParams(params);
         setDistanceMeasure(params.get(DistanceMeasure.DISTANCE_MEASURE_FLAG, distanceMeasure));
         setEarlyAbandonDistances(params.get(EARLY_ABANDON_DISTANCES_FLAG, earlyAbandonDistances));
+        setLowerBoundDistances(params.get(LOWER_BOUND_DISTANCES_FLAG, lowerBoundDistances));
         setEarlyPredict(params.get(EARLY_PREDICT_FLAG, earlyPredict));
         setAutoK(params.get(AUTO_K_FLAG, autoK));
     }
@@ -264,6 +272,11 @@ public class KNN extends BaseClassifier implements ParamHandler, Checkpointed, C
                 super.buildClassifier(data);
                 neighbourhoodSize = 0;
                 trainData = data;
+                // precompute anything the lower bounds need for the train insts, e.g. envelopes
+                lowerBoundCascade = new LowerBoundCascade(distanceMeasure.getLowerBounds());
+                if(lowerBoundDistances) {
+                    lowerBoundCascade.buildLowerBounds(trainData);
+                }
                 longestAddNeighbourTime = 0;
                 runTimer.reset();
                 runTimer.start(timeStamp);
@@ -462,6 +475,22 @@ public class KNN extends BaseClassifier implements ParamHandler, Checkpointed, C
         this.earlyAbandonDistances = earlyAbandonDistances;
     }
 
+    public boolean isLowerBoundDistances() {
+        return lowerBoundDistances;
+    }
+
+    public void setLowerBoundDistances(final boolean lowerBoundDistances) {
+        this.lowerBoundDistances = lowerBoundDistances;
+    }
+
+    /**
+     * @return the lower bounds in use, including how many distances each has pruned across the train estimate and
+     * test predictions so far. Null before the classifier has been built.
+     */
+    public LowerBoundCascade getLowerBoundCascade() {
+        return lowerBoundCascade;
+    }
+
     @Override public long getTrainTimeLimit() {
         return trainTimeLimit;
     }
@@ -648,8 +677,21 @@ public class KNN extends BaseClassifier implements ParamHandler, Checkpointed, C
                     limit = Math.max(this.limit, altSearch.getLimit());
                 }
 
-                // compute the distance to the neighbour
-                distance = distanceMeasure.distance(getTarget(), neighbour, limit);
+                // lower bound the distance first if the neighbour would only be added when within the distance of the
+                // current nearest neighbours. If a lower bound exceeds that then so does the distance, so the neighbour
+                // cannot be one of the nearest and the distance is skipped. This gives the same result as the distance
+                // being early abandoned.
+                double pruneLimit = getPruneLimit();
+                if(symmetric) {
+                    pruneLimit = Math.max(pruneLimit, altSearch.getPruneLimit());
+                }
+                if(lowerBoundDistances && pruneLimit != Double.POSITIVE_INFINITY
+                           && lowerBoundCascade.prune(getTarget(), neighbour, pruneLimit)) {
+                    distance = Double.POSITIVE_INFINITY;
+                } else {
+                    // compute the distance to the neighbour
+                    distance = distanceMeasure.distance(getTarget(), neighbour, limit);
+                }
                 nearest = add(neighbourIndexInTrainData, distance);
                 
                 if(nearest && earlyPredict) {
@@ -748,6 +790,15 @@ public class KNN extends BaseClassifier implements ParamHandler, Checkpointed, C
         public double getLimit() {
             return limit;
         }
+
+        // a neighbour beyond this distance will not be one of the nearest neighbours. This is infinite until k
+        // neighbours are held, as any neighbour is one of the nearest until then.
+        public double getPruneLimit() {
+            if(nearestNeighbourIndices.size() < nearestNeighbourIndices.getLimit()) {
+                return Double.POSITIVE_INFINITY;
+            }
+            return nearestNeighbourIndices.lastKey();
+        }
         
         public long getTime() {
             return time;
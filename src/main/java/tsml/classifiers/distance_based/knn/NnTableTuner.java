@@ -0,0 +1,652 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tsml.classifiers.distance_based.knn;
+
+import evaluation.storage.ClassifierResults;
+import tsml.classifiers.distance_based.distances.DistanceMeasure;
+import tsml.classifiers.distance_based.distances.dtw.DTWDistance;
+import tsml.classifiers.distance_based.distances.ed.EDistance;
+import tsml.classifiers.distance_based.distances.erp.ERPDistance;
+import tsml.classifiers.distance_based.distances.lcss.LCSSDistance;
+import tsml.classifiers.distance_based.distances.lower_bounds.LowerBoundCascade;
+import tsml.classifiers.distance_based.distances.msm.MSMDistance;
+import tsml.classifiers.distance_based.distances.transformed.TransformDistanceMeasure;
+import tsml.classifiers.distance_based.distances.twed.TWEDistance;
+import tsml.classifiers.distance_based.distances.wdtw.WDTWDistance;
+import tsml.classifiers.distance_based.utils.collections.CollectionUtils;
+import tsml.classifiers.distance_based.utils.collections.params.ParamSet;
+import tsml.data_containers.TimeSeriesInstance;
+import tsml.data_containers.TimeSeriesInstances;
+import tsml.transformers.TrainableTransformer;
+import tsml.transformers.Transformer;
+import utilities.ArrayUtilities;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Leave-one-out cross validation of a 1NN over every parameter set of a DTW, WDTW, ERP, LCSS, MSM, TWED or ED space
+ * (optionally on transformed data, e.g. DDTW / WDDTW), giving the same train estimate per parameter set as a KNN with
+ * k = 1 but sharing work between the parameter sets.
+ * <p>
+ * The parameter sets are evaluated in an order where the distances of one parameter set bound those of the next, e.g.
+ * descending window for DTW as narrowing the window can only increase the distance. A table of the best known lower
+ * bound of the distance between each pair of instances is carried from one parameter set to the next, scaled by how
+ * far the distance can fall between them. Pairs are skipped where the bound is already beyond the nearest neighbour
+ * so far, the rest are tried against the measure's lower bounds and early abandoned against the nearest neighbour. The
+ * nearest neighbour of each instance under the previous parameter set is tried first, so the nearest neighbour found
+ * early is usually close and prunes most of the remaining pairs.
+ * <p>
+ * For DTW the warping path of each exact distance is tracked. The distance is reused as-is by the following windows
+ * which still contain the whole path, as the distance cannot rise above it nor fall below it.
+ * <p>
+ * Only data of equal length with no missing values is supported, see isSupported. The parameter sets must be evaluated
+ * in order, 0 to size() - 1.
+ * <p>
+ * Contributors: goastler
+ */
+public class NnTableTuner implements Serializable {
+
+    // shrink scaled bounds slightly so rounding in the distances can never make a bound exceed the distance
+    private static final double MARGIN = 1 - 1e-9;
+
+    private final List<ParamSet> paramSets;
+    private final List<DistanceMeasure> distanceMeasures;
+    private final Relation relation;
+    private final Transformer transformer;
+
+    private TimeSeriesInstances data;
+    private double[][][] values;
+    private int[] labelIndices;
+    private int numClasses;
+    // the warping path radius fully inside each DTW window, i.e. path deviations which fit the window
+    private int[] radii;
+    // lower bound per pair of instances, the exact distance where exactTo >= the current position
+    private double[] bounds;
+    // the last position at which the bound of a pair is the exact distance, -1 if never
+    private int[] exactTo;
+    // nearest neighbour of each instance under the previous parameter set, -1 if none
+    private int[] nearest;
+    private int position;
+    private long distanceCount;
+    private long reuseCount;
+    private long pruneCount;
+
+    private transient double[][] dtwRows;
+    private transient int[][] deviationRows;
+    private transient int deviation;
+
+    /**
+     * @param paramSets parameter sets of a single distance measure, each holding only the distance measure. Use
+     *                  isSupported to check whether they can be tuned together.
+     */
+    public NnTableTuner(List<ParamSet> paramSets) {
+        if(paramSets.isEmpty()) {
+            throw new IllegalArgumentException("no param sets");
+        }
+        final List<DistanceMeasure> measures = new ArrayList<>();
+        for(ParamSet paramSet : paramSets) {
+            measures.add(distanceMeasureOf(paramSet));
+        }
+        relation = relationOf(measures);
+        if(relation == null) {
+            throw new IllegalArgumentException("unsupported param sets: " + paramSets);
+        }
+        transformer = transformerOf(measures.get(0));
+        // order the param sets so each bounds the next as tightly as possible
+        final List<Integer> order = new ArrayList<>();
+        for(int i = 0; i < paramSets.size(); i++) {
+            order.add(i);
+        }
+        final List<double[]> keys = new ArrayList<>();
+        for(DistanceMeasure measure : measures) {
+            keys.add(relation.key(innerOf(measure)));
+        }
+        order.sort(Comparator.comparing(keys::get, NnTableTuner::compareKeys));
+        this.paramSets = new ArrayList<>();
+        this.distanceMeasures = new ArrayList<>();
+        for(Integer i : order) {
+            this.paramSets.add(paramSets.get(i));
+            this.distanceMeasures.add(innerOf(measures.get(i)));
+        }
+    }
+
+    /**
+     * @param paramSets the parameter sets
+     * @param data the train data
+     * @return whether the parameter sets can be tuned by a NnTableTuner on the data
+     */
+    public static boolean isSupported(List<ParamSet> paramSets, TimeSeriesInstances data) {
+        if(paramSets.isEmpty() || data.numInstances() < 2 || !data.isEqualLength() || data.hasMissing()) {
+            return false;
+        }
+        final List<DistanceMeasure> measures = new ArrayList<>();
+        for(ParamSet paramSet : paramSets) {
+            if(paramSet.size() != 1 || !paramSet.containsKey(DistanceMeasure.DISTANCE_MEASURE_FLAG)) {
+                return false;
+            }
+            final Object measure = paramSet.get(DistanceMeasure.DISTANCE_MEASURE_FLAG);
+            if(!(measure instanceof DistanceMeasure)) {
+                return false;
+            }
+            measures.add((DistanceMeasure) measure);
+        }
+        return relationOf(measures) != null;
+    }
+
+    /**
+     * Prepare the table for the given train data, restarting from the first parameter set.
+     * @param trainData the train data
+     */
+    public void buildTuner(TimeSeriesInstances trainData) {
+        if(trainData.numInstances() < 2 || !trainData.isEqualLength() || trainData.hasMissing()) {
+            throw new IllegalArgumentException("train data must hold 2+ equal length instances with no missing values");
+        }
+        final int numInstances = trainData.numInstances();
+        final List<TimeSeriesInstance> instances = new ArrayList<>();
+        for(TimeSeriesInstance instance : trainData) {
+            instances.add(transformer == null ? instance : transformer.transform(instance));
+        }
+        data = new TimeSeriesInstances(instances, trainData.getClassLabels());
+        if(!data.isEqualLength() || data.hasMissing()) {
+            throw new IllegalArgumentException("transformed data must be equal length with no missing values");
+        }
+        numClasses = trainData.numClasses();
+        labelIndices = new int[numInstances];
+        values = new double[numInstances][][];
+        for(int i = 0; i < numInstances; i++) {
+            labelIndices[i] = trainData.get(i).getLabelIndex();
+            values[i] = data.get(i).toValueArray();
+        }
+        radii = null;
+        if(relation == Relation.DTW) {
+            final int length = data.getMaxLength();
+            radii = new int[size()];
+            for(int i = 0; i < radii.length; i++) {
+                radii[i] = radius(((DTWDistance) distanceMeasures.get(i)).getWindow() * length, length);
+            }
+        }
+        bounds = new double[numInstances * (numInstances - 1) / 2];
+        exactTo = new int[bounds.length];
+        Arrays.fill(exactTo, -1);
+        nearest = new int[numInstances];
+        Arrays.fill(nearest, -1);
+        position = 0;
+        distanceCount = 0;
+        reuseCount = 0;
+        pruneCount = 0;
+    }
+
+    public int size() {
+        return paramSets.size();
+    }
+
+    /**
+     * @return the parameter sets in the order they are evaluated
+     */
+    public List<ParamSet> getParamSets() {
+        return Collections.unmodifiableList(paramSets);
+    }
+
+    public ParamSet getParamSet(int position) {
+        return paramSets.get(position);
+    }
+
+    /**
+     * @return the position of the next parameter set to evaluate
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    public boolean hasNext() {
+        return position < size();
+    }
+
+    /**
+     * @return the number of distances computed so far, including those early abandoned
+     */
+    public long getDistanceCount() {
+        return distanceCount;
+    }
+
+    /**
+     * @return the number of exact distances reused from an earlier parameter set
+     */
+    public long getReuseCount() {
+        return reuseCount;
+    }
+
+    /**
+     * @return the number of distances skipped by a bound in the table or the lower bounds of the measure
+     */
+    public long getPruneCount() {
+        return pruneCount;
+    }
+
+    /**
+     * Evaluate the next parameter set by leave-one-out cross validation.
+     * @param position the position of the parameter set, which must be the next to evaluate
+     * @param random the random source to break ties in the predictions
+     * @return the train estimate, one prediction per train instance as KNN gives
+     */
+    public ClassifierResults evaluate(int position, Random random) {
+        if(data == null) {
+            throw new IllegalStateException("tuner not built");
+        }
+        if(position != this.position) {
+            throw new IllegalStateException("expected to evaluate position " + this.position + ", not " + position);
+        }
+        if(position > 0) {
+            final double factor = relation.boundFactor(distanceMeasures.get(position - 1),
+                    distanceMeasures.get(position), data.getMaxLength());
+            if(factor != 1) {
+                for(int p = 0; p < bounds.length; p++) {
+                    if(exactTo[p] < position) {
+                        // a zero factor drops the bound, including any infinite bound
+                        bounds[p] = factor == 0 ? 0 : bounds[p] * factor;
+                    }
+                }
+            }
+        }
+        final DistanceMeasure distanceMeasure = distanceMeasures.get(position);
+        final LowerBoundCascade lowerBoundCascade = new LowerBoundCascade(distanceMeasure.getLowerBounds());
+        if(!lowerBoundCascade.isEmpty()) {
+            lowerBoundCascade.buildLowerBounds(data);
+        }
+        final ClassifierResults results = new ClassifierResults();
+        final int numInstances = data.numInstances();
+        final int[] nextNearest = new int[numInstances];
+        final List<Integer> ties = new ArrayList<>();
+        for(int i = 0; i < numInstances; i++) {
+            final long timeStamp = System.nanoTime();
+            ties.clear();
+            double bsf = Double.POSITIVE_INFINITY;
+            // the previous nearest neighbour goes first, then the rest in order
+            for(int k = -1; k < numInstances; k++) {
+                final int j = k < 0 ? nearest[i] : k;
+                if(j < 0 || j == i || (k >= 0 && j == nearest[i])) {
+                    continue;
+                }
+                final int p = pairIndex(i, j);
+                final double distance;
+                if(exactTo[p] >= position) {
+                    distance = bounds[p];
+                    reuseCount++;
+                } else if(bounds[p] > bsf) {
+                    // strictly beyond the nearest neighbours, whereas a tie would share the vote
+                    pruneCount++;
+                    continue;
+                } else if(bsf != Double.POSITIVE_INFINITY && lowerBoundCascade.prune(data.get(i), data.get(j), bsf)) {
+                    bounds[p] = Math.max(bounds[p], bsf);
+                    pruneCount++;
+                    continue;
+                } else {
+                    distance = distance(distanceMeasure, i, j, relation.earlyAbandon() ? bsf : Double.POSITIVE_INFINITY);
+                    distanceCount++;
+                    if(distance == Double.POSITIVE_INFINITY && bsf != Double.POSITIVE_INFINITY) {
+                        // early abandoned, so the distance is beyond the nearest neighbour
+                        bounds[p] = Math.max(bounds[p], bsf);
+                        continue;
+                    }
+                    bounds[p] = distance;
+                    exactTo[p] = exactTo(position);
+                }
+                if(distance < bsf) {
+                    bsf = distance;
+                    ties.clear();
+                    ties.add(j);
+                } else if(distance == bsf) {
+                    ties.add(j);
+                }
+            }
+            // ties share the vote equally, the same as KNN
+            final double[] distribution = new double[numClasses];
+            final double weight = 1d / ties.size();
+            for(Integer j : ties) {
+                distribution[labelIndices[j]] += weight;
+            }
+            ArrayUtilities.normalise(distribution, true);
+            nextNearest[i] = ties.get(0);
+            final int prediction = CollectionUtils.bestIndex(ArrayUtilities.asList(distribution), random);
+            results.addPrediction(labelIndices[i], distribution, prediction, System.nanoTime() - timeStamp, null);
+        }
+        nearest = nextNearest;
+        this.position++;
+        return results;
+    }
+
+    private double distance(DistanceMeasure distanceMeasure, int i, int j, double limit) {
+        if(relation == Relation.DTW) {
+            return dtw(values[i], values[j], ((DTWDistance) distanceMeasure).getWindow(), limit);
+        }
+        return distanceMeasure.distance(data.get(i), data.get(j), limit);
+    }
+
+    /**
+     * @param position the position a distance was computed at
+     * @return the last position the distance holds for
+     */
+    private int exactTo(int position) {
+        int to = position;
+        if(relation == Relation.DTW) {
+            // the same distance holds while the window contains the warping path
+            while(to + 1 < size() && radii[to + 1] >= deviation) {
+                to++;
+            }
+        } else {
+            final double[] key = relation.key(distanceMeasures.get(position));
+            while(to + 1 < size() && Arrays.equals(key, relation.key(distanceMeasures.get(to + 1)))) {
+                to++;
+            }
+        }
+        return to;
+    }
+
+    private static int pairIndex(int i, int j) {
+        if(i > j) {
+            final int tmp = i;
+            i = j;
+            j = tmp;
+        }
+        return j * (j - 1) / 2 + i;
+    }
+
+    /**
+     * The largest deviation from the diagonal which lies inside the DTW window on every row, computed as DTWDistance
+     * computes the window so that rounding is accounted for.
+     */
+    private static int radius(double windowSize, int length) {
+        int radius = length;
+        // equal length series, so the mid point of the window on each row is on the diagonal
+        for(int i = 0; i < length; i++) {
+            final int start = i == 0 ? 0 : (int) Math.ceil(i - windowSize);
+            final int end = i == 0 ? (int) Math.floor(windowSize) : (int) Math.floor(i + windowSize);
+            if(start > 0) {
+                radius = Math.min(radius, i - start);
+            }
+            if(end < length - 1) {
+                radius = Math.min(radius, end - i);
+            }
+        }
+        return Math.max(-1, radius);
+    }
+
+    /**
+     * DTW as computed by DTWDistance for equal length series, additionally tracking the smallest deviation from the
+     * diagonal of any optimal warping path. The deviation is left in the deviation field.
+     */
+    private double dtw(double[][] aValues, double[][] bValues, double window, double limit) {
+        final int length = aValues[0].length;
+        final int numDimensions = aValues.length;
+        if(dtwRows == null || dtwRows[0].length < length) {
+            dtwRows = new double[2][length];
+            deviationRows = new int[2][length];
+        }
+        final double windowSize = window * length;
+        int i = 0;
+        int start;
+        int end = Math.min(length - 1, (int) Math.floor(windowSize));
+        int prevEnd;
+        double[] row = dtwRows[0];
+        int[] deviations = deviationRows[0];
+        double[] prevRow;
+        int[] prevDeviations;
+        int j = 0;
+        double min = row[j] = DTWDistance.cost(aValues, 0, bValues, 0, numDimensions);
+        deviations[j++] = 0;
+        for(; j <= end; j++) {
+            row[j] = row[j - 1] + DTWDistance.cost(aValues, i, bValues, j, numDimensions);
+            deviations[j] = j;
+            min = Math.min(min, row[j]);
+        }
+        if(min > limit) return Double.POSITIVE_INFINITY;
+        i++;
+        for(; i < length; i++) {
+            min = Double.POSITIVE_INFINITY;
+            prevRow = row;
+            prevDeviations = deviations;
+            row = dtwRows[i % 2];
+            deviations = deviationRows[i % 2];
+            prevEnd = end;
+            start = Math.max(0, (int) Math.ceil(i - windowSize));
+            end = Math.min(length - 1, (int) Math.floor(i + windowSize));
+            j = start;
+            Arrays.fill(prevRow, prevEnd + 1, end + 1, Double.POSITIVE_INFINITY);
+            if(j > 0) row[j - 1] = Double.POSITIVE_INFINITY;
+            if(j == 0) {
+                row[j] = prevRow[j] + DTWDistance.cost(aValues, i, bValues, j, numDimensions);
+                deviations[j] = Math.max(prevDeviations[j], i);
+                min = Math.min(min, row[j++]);
+            }
+            for(; j <= end; j++) {
+                final double top = prevRow[j];
+                final double left = row[j - 1];
+                final double topLeft = prevRow[j - 1];
+                final double best = Math.min(top, Math.min(left, topLeft));
+                row[j] = best + DTWDistance.cost(aValues, i, bValues, j, numDimensions);
+                // follow whichever optimal predecessor keeps closest to the diagonal
+                int deviation = Integer.MAX_VALUE;
+                if(topLeft == best) deviation = prevDeviations[j - 1];
+                if(top == best) deviation = Math.min(deviation, prevDeviations[j]);
+                if(left == best) deviation = Math.min(deviation, deviations[j - 1]);
+                deviations[j] = Math.max(deviation, Math.abs(i - j));
+                min = Math.min(min, row[j]);
+            }
+            if(min > limit) return Double.POSITIVE_INFINITY;
+        }
+        deviation = deviations[length - 1];
+        return row[length - 1];
+    }
+
+    private static DistanceMeasure distanceMeasureOf(ParamSet paramSet) {
+        final Object measure = paramSet.get(DistanceMeasure.DISTANCE_MEASURE_FLAG);
+        if(paramSet.size() != 1 || !(measure instanceof DistanceMeasure)) {
+            throw new IllegalArgumentException("expected only a distance measure in " + paramSet);
+        }
+        return (DistanceMeasure) measure;
+    }
+
+    private static DistanceMeasure innerOf(DistanceMeasure measure) {
+        if(measure instanceof TransformDistanceMeasure) {
+            return ((TransformDistanceMeasure) measure).getDistanceMeasure();
+        }
+        return measure;
+    }
+
+    private static Transformer transformerOf(DistanceMeasure measure) {
+        if(measure instanceof TransformDistanceMeasure) {
+            return ((TransformDistanceMeasure) measure).getTransformer();
+        }
+        return null;
+    }
+
+    /**
+     * @return the relation shared by all the measures, null if the measures are not all the same supported measure
+     * on the same transform
+     */
+    private static Relation relationOf(List<DistanceMeasure> measures) {
+        Relation relation = null;
+        Class<?> transformerClass = null;
+        for(int i = 0; i < measures.size(); i++) {
+            final DistanceMeasure measure = measures.get(i);
+            final Transformer transformer = transformerOf(measure);
+            if(transformer instanceof TrainableTransformer) {
+                // KNN does not fit transformers, so neither can the table
+                return null;
+            }
+            final Class<?> measureTransformerClass = transformer == null ? null : transformer.getClass();
+            final Relation measureRelation = Relation.of(innerOf(measure));
+            if(measureRelation == null) {
+                return null;
+            }
+            if(i == 0) {
+                relation = measureRelation;
+                transformerClass = measureTransformerClass;
+            } else if(relation != measureRelation || transformerClass != measureTransformerClass) {
+                return null;
+            }
+        }
+        return relation;
+    }
+
+    private static int compareKeys(double[] a, double[] b) {
+        for(int i = 0; i < a.length; i++) {
+            final int comparison = Double.compare(a[i], b[i]);
+            if(comparison != 0) {
+                return comparison;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Ratio of two parameters, capped at 1, where the distance grows with the parameter.
+     */
+    private static double ratio(double to, double from) {
+        return to >= from ? 1 : to / from;
+    }
+
+    /**
+     * How the distances of a measure relate between parameter sets. Parameter sets are evaluated in ascending order of
+     * key, and the distance under a later parameter set is at least boundFactor times the distance under the earlier.
+     */
+    private enum Relation {
+        // narrowing the window removes warping paths, so the distance can only rise
+        DTW(DTWDistance.class) {
+            @Override double[] key(DistanceMeasure measure) {
+                return new double[] {-((DTWDistance) measure).getWindow()};
+            }
+
+            @Override double boundFactor(DistanceMeasure from, DistanceMeasure to, int length) {
+                return ((DTWDistance) to).getWindow() <= ((DTWDistance) from).getWindow() ? 1 : 0;
+            }
+        },
+        // each cost on a path is scaled by a weight, so the distance falls by at most the smallest weight ratio
+        WDTW(WDTWDistance.class) {
+            @Override double[] key(DistanceMeasure measure) {
+                return new double[] {((WDTWDistance) measure).getG()};
+            }
+
+            @Override double boundFactor(DistanceMeasure from, DistanceMeasure to, int length) {
+                final double fromG = ((WDTWDistance) from).getG();
+                final double toG = ((WDTWDistance) to).getG();
+                final double halfLength = (double) length / 2;
+                double factor = 1;
+                for(int i = 0; i < length; i++) {
+                    final double fromWeight = 1d / (1d + Math.exp(-fromG * (i - halfLength)));
+                    final double toWeight = 1d / (1d + Math.exp(-toG * (i - halfLength)));
+                    factor = Math.min(factor, toWeight / fromWeight);
+                }
+                return factor * MARGIN;
+            }
+        },
+        // ties in the ERP recurrence do not take the minimum, so there is no bound between parameter sets
+        ERP(ERPDistance.class) {
+            @Override double[] key(DistanceMeasure measure) {
+                final ERPDistance erp = (ERPDistance) measure;
+                return new double[] {erp.getG(), -erp.getWindow()};
+            }
+
+            @Override double boundFactor(DistanceMeasure from, DistanceMeasure to, int length) {
+                return 0;
+            }
+        },
+        // a match takes the diagonal rather than the maximum, so there is no bound between parameter sets
+        LCSS(LCSSDistance.class) {
+            @Override double[] key(DistanceMeasure measure) {
+                final LCSSDistance lcss = (LCSSDistance) measure;
+                return new double[] {-lcss.getWindow(), -lcss.getEpsilon()};
+            }
+
+            @Override double boundFactor(DistanceMeasure from, DistanceMeasure to, int length) {
+                return 0;
+            }
+
+            @Override boolean earlyAbandon() {
+                // the limit of LCSSDistance is not exact, so distances are always computed in full
+                return false;
+            }
+        },
+        // every split / merge costs at least c, so raising c can only raise the distance
+        MSM(MSMDistance.class) {
+            @Override double[] key(DistanceMeasure measure) {
+                return new double[] {((MSMDistance) measure).getC()};
+            }
+
+            @Override double boundFactor(DistanceMeasure from, DistanceMeasure to, int length) {
+                final double ratio = ratio(((MSMDistance) to).getC(), ((MSMDistance) from).getC());
+                return ratio == 1 ? 1 : ratio * MARGIN;
+            }
+        },
+        // each cost is a sum of a value difference, nu times a time difference and lambda for a deletion
+        TWED(TWEDistance.class) {
+            @Override double[] key(DistanceMeasure measure) {
+                final TWEDistance twed = (TWEDistance) measure;
+                return new double[] {twed.getLambda(), twed.getNu()};
+            }
+
+            @Override double boundFactor(DistanceMeasure from, DistanceMeasure to, int length) {
+                final TWEDistance fromTwed = (TWEDistance) from;
+                final TWEDistance toTwed = (TWEDistance) to;
+                final double ratio = Math.min(ratio(toTwed.getLambda(), fromTwed.getLambda()),
+                        ratio(toTwed.getNu(), fromTwed.getNu()));
+                return ratio == 1 ? 1 : ratio * MARGIN;
+            }
+        },
+        // no parameters
+        ED(EDistance.class) {
+            @Override double[] key(DistanceMeasure measure) {
+                return new double[0];
+            }
+
+            @Override double boundFactor(DistanceMeasure from, DistanceMeasure to, int length) {
+                return 1;
+            }
+        };
+
+        private final Class<? extends DistanceMeasure> measureClass;
+
+        Relation(Class<? extends DistanceMeasure> measureClass) {
+            this.measureClass = measureClass;
+        }
+
+        abstract double[] key(DistanceMeasure measure);
+
+        abstract double boundFactor(DistanceMeasure from, DistanceMeasure to, int length);
+
+        boolean earlyAbandon() {
+            return true;
+        }
+
+        static Relation of(DistanceMeasure measure) {
+            for(Relation relation : values()) {
+                // exact class only, as a subclass may compute the distance differently
+                if(relation.measureClass == measure.getClass()) {
+                    return relation;
+                }
+            }
+            return null;
+        }
+    }
+}
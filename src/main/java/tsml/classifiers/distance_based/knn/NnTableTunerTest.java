@@ -0,0 +1,142 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tsml.classifiers.distance_based.knn;
+
+import evaluation.storage.ClassifierResults;
+import org.junit.Assert;
+import org.junit.Test;
+import tsml.classifiers.distance_based.distances.DistanceMeasure;
+import tsml.classifiers.distance_based.distances.dtw.spaces.DDTWDistanceSpace;
+import tsml.classifiers.distance_based.distances.dtw.spaces.DTWDistanceSpace;
+import tsml.classifiers.distance_based.distances.erp.spaces.ERPDistanceSpace;
+import tsml.classifiers.distance_based.distances.lcss.spaces.LCSSDistanceSpace;
+import tsml.classifiers.distance_based.distances.msm.spaces.MSMDistanceSpace;
+import tsml.classifiers.distance_based.distances.twed.spaces.TWEDistanceSpace;
+import tsml.classifiers.distance_based.distances.wdtw.spaces.WDTWDistanceSpace;
+import tsml.classifiers.distance_based.utils.collections.params.ParamSet;
+import tsml.classifiers.distance_based.utils.collections.params.ParamSpaceBuilder;
+import tsml.classifiers.distance_based.utils.collections.params.iteration.GridSearch;
+import tsml.data_containers.TimeSeriesInstances;
+import utilities.ArrayUtilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Purpose: test the table tuner gives the same LOOCV predictions as a brute force 1NN for every param set.
+ */
+public class NnTableTunerTest {
+
+    private static TimeSeriesInstances randomData(Random random, int numInstances, int numDimensions, int length,
+            boolean quantise) {
+        final double[][][] values = new double[numInstances][numDimensions][length];
+        final int[] labels = new int[numInstances];
+        for(int i = 0; i < numInstances; i++) {
+            labels[i] = random.nextInt(3);
+            final double phase = random.nextDouble() * 6;
+            for(double[] dimension : values[i]) {
+                for(int t = 0; t < length; t++) {
+                    final double value = Math.sin(t * 0.3 * (labels[i] + 1) + phase) + random.nextGaussian() * 0.3;
+                    // quantised values give tied distances
+                    dimension[t] = quantise ? Math.round(value * 4) / 4d : value;
+                }
+            }
+        }
+        return new TimeSeriesInstances(values, labels, new String[] {"a", "b", "c"});
+    }
+
+    private static double[] bruteForce(DistanceMeasure distanceMeasure, TimeSeriesInstances data, int i) {
+        double bsf = Double.POSITIVE_INFINITY;
+        final List<Integer> nearest = new ArrayList<>();
+        for(int j = 0; j < data.numInstances(); j++) {
+            if(i == j) {
+                continue;
+            }
+            final double distance = i < j ? distanceMeasure.distance(data.get(i), data.get(j)) :
+                                            distanceMeasure.distance(data.get(j), data.get(i));
+            if(distance < bsf) {
+                bsf = distance;
+                nearest.clear();
+            }
+            if(distance == bsf) {
+                nearest.add(j);
+            }
+        }
+        final double[] distribution = new double[data.numClasses()];
+        for(int j : nearest) {
+            distribution[data.get(j).getLabelIndex()] += 1d / nearest.size();
+        }
+        ArrayUtilities.normalise(distribution, true);
+        return distribution;
+    }
+
+    private static void assertSameAsBruteForce(ParamSpaceBuilder builder, TimeSeriesInstances data) {
+        final GridSearch search = new GridSearch();
+        search.buildSearch(builder.build(data));
+        final List<ParamSet> paramSets = new ArrayList<>();
+        while(search.hasNext()) {
+            paramSets.add(search.next());
+        }
+        Assert.assertTrue(NnTableTuner.isSupported(paramSets, data));
+        final NnTableTuner tuner = new NnTableTuner(paramSets);
+        tuner.buildTuner(data);
+        final List<ClassifierResults> results = new ArrayList<>();
+        for(int i = 0; i < tuner.size(); i++) {
+            results.add(tuner.evaluate(i, new Random(0)));
+        }
+        for(int i = 0; i < tuner.size(); i++) {
+            final ParamSet paramSet = tuner.getParamSet(i);
+            final DistanceMeasure distanceMeasure = paramSet.get(DistanceMeasure.DISTANCE_MEASURE_FLAG);
+            distanceMeasure.buildDistanceMeasure(data);
+            for(int j = 0; j < data.numInstances(); j++) {
+                final double[] expected = bruteForce(distanceMeasure, data, j);
+                final double[] actual = results.get(i).getProbabilityDistribution(j);
+                Assert.assertArrayEquals(paramSet + " instance " + j + " " + Arrays.toString(actual), expected,
+                        actual, 0);
+            }
+        }
+        Assert.assertTrue(tuner.getDistanceCount() < (long) tuner.size() * data.numInstances() * (data.numInstances() - 1));
+    }
+
+    @Test
+    public void testSameAsBruteForce() {
+        final ParamSpaceBuilder[] builders = {new DTWDistanceSpace(), new DDTWDistanceSpace(), new WDTWDistanceSpace(),
+                new LCSSDistanceSpace(), new ERPDistanceSpace(), new TWEDistanceSpace(), new MSMDistanceSpace()};
+        for(int seed = 0; seed < 2; seed++) {
+            final TimeSeriesInstances data = randomData(new Random(seed), 20, 1 + seed, 25, seed == 0);
+            for(ParamSpaceBuilder builder : builders) {
+                assertSameAsBruteForce(builder, data);
+            }
+        }
+    }
+
+    @Test
+    public void testUnequalLengthUnsupported() {
+        final double[][][] values = {{{1, 2, 3}}, {{1, 2}}, {{3, 2, 1}}};
+        final TimeSeriesInstances data = new TimeSeriesInstances(values, new int[] {0, 1, 0}, new String[] {"a", "b"});
+        final GridSearch search = new GridSearch();
+        search.buildSearch(new DTWDistanceSpace().build(data));
+        final List<ParamSet> paramSets = new ArrayList<>();
+        while(search.hasNext()) {
+            paramSets.add(search.next());
+        }
+        Assert.assertFalse(NnTableTuner.isSupported(paramSets, data));
+    }
+}
@@ -0,0 +1,122 @@
+package tsml.classifiers.distance_based.optimised;
+
+import evaluation.evaluators.Evaluator;
+import evaluation.evaluators.InternalEstimateEvaluator;
+import evaluation.storage.ClassifierResults;
+import tsml.classifiers.TSClassifier;
+import tsml.classifiers.distance_based.distances.dtw.spaces.DTWDistanceSpace;
+import tsml.classifiers.distance_based.knn.KNN;
+import tsml.classifiers.distance_based.knn.NnTableTuner;
+import tsml.classifiers.distance_based.utils.classifiers.configs.ClassifierBuilder;
+import tsml.classifiers.distance_based.utils.classifiers.results.ResultUtils;
+import tsml.classifiers.distance_based.utils.collections.params.ParamHandlerUtils;
+import tsml.classifiers.distance_based.utils.collections.params.ParamSet;
+import tsml.classifiers.distance_based.utils.collections.params.iteration.AbstractSearch;
+import tsml.classifiers.distance_based.utils.collections.params.iteration.GridSearch;
+import tsml.data_containers.TimeSeriesInstances;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Agent to tune a 1NN over a distance measure space by full LOOCV of every param set, sharing the nearest neighbour
+ * table between param sets using a NnTableTuner. The train estimate of each param set is the same as the KNN would
+ * give itself. Spaces / data the tuner does not support fall back to the KNN's own train estimate per param set.
+ */
+public class NnTableAgent extends BaseParamAgent {
+
+    public NnTableAgent() {
+        setParamSpaceBuilder(new DTWDistanceSpace());
+        setSearch(new GridSearch());
+        setEvaluatorBuilder(InternalEstimateEvaluator::new);
+        setClassifierBuilder((ClassifierBuilder<TSClassifier>) () -> {
+            final KNN classifier = new KNN();
+            classifier.setSeed(getSeed());
+            return classifier;
+        });
+    }
+
+    private List<ParamSet> paramSets;
+    private NnTableTuner tuner;
+    private int position;
+
+    @Override public void buildAgent(final TimeSeriesInstances trainData) {
+        super.buildAgent(trainData);
+        // the tuner chooses the order of the param sets, so take them all from the search up front
+        paramSets = new ArrayList<>();
+        final AbstractSearch search = getSearch();
+        while(search.hasNext()) {
+            paramSets.add(search.next());
+        }
+        tuner = null;
+        if(NnTableTuner.isSupported(paramSets, trainData)) {
+            tuner = new NnTableTuner(paramSets);
+            tuner.buildTuner(trainData);
+            paramSets = tuner.getParamSets();
+        }
+        position = 0;
+    }
+
+    public boolean isTableTuning() {
+        return tuner != null;
+    }
+
+    @Override protected boolean dropResultsOnFeedback() {
+        // the table only moves forward, so results can't be recomputed for an earlier param set
+        return tuner == null;
+    }
+
+    @Override public boolean hasNextExplore() {
+        return position < paramSets.size();
+    }
+
+    @Override protected Evaluation nextExplore() {
+        final ParamSet paramSet = paramSets.get(position);
+        final TSClassifier classifier = getClassifierBuilder().build();
+        copySeedTo(classifier);
+        ParamHandlerUtils.setParams(classifier, paramSet);
+        final Evaluator evaluator;
+        if(tuner == null) {
+            evaluator = getEvaluatorBuilder().build();
+        } else {
+            evaluator = new TableEvaluator(tuner, position);
+        }
+        copySeedTo(evaluator);
+        position++;
+        final Evaluation evaluation = buildEvaluation();
+        evaluation.setClassifier(classifier);
+        evaluation.setEvaluator(evaluator);
+        evaluation.setScorer(getScorer());
+        return evaluation;
+    }
+
+    /**
+     * Evaluates a param set from the table. The KNN is built without a train estimate so it is ready to predict test
+     * instances.
+     */
+    private static class TableEvaluator extends Evaluator {
+
+        private final NnTableTuner tuner;
+        private final int position;
+
+        private TableEvaluator(NnTableTuner tuner, int position) {
+            super(0, false, false);
+            this.tuner = tuner;
+            this.position = position;
+        }
+
+        @Override public ClassifierResults evaluate(final TSClassifier classifier, final TimeSeriesInstances data)
+                throws Exception {
+            if(!(classifier instanceof KNN)) {
+                throw new IllegalArgumentException("expected knn");
+            }
+            final KNN knn = (KNN) classifier;
+            knn.setEstimateOwnPerformance(false);
+            knn.buildClassifier(data);
+            final ClassifierResults results = tuner.evaluate(position, new Random(getSeed()));
+            ResultUtils.setInfo(results, knn, data);
+            return results;
+        }
+    }
+}
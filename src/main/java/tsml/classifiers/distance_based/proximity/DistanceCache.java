@@ -0,0 +1,123 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tsml.classifiers.distance_based.proximity;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import tsml.classifiers.distance_based.distances.DistanceMeasure;
+import tsml.data_containers.TimeSeriesInstance;
+
+/**
+ * Concurrent, size bounded cache of exemplar to instance distances. The trees of a forest share a cache so a distance
+ * is only computed once when several trees (or several splits of a tree) compare the same exemplar and instance using
+ * the same distance measure and parameters.
+ * <p>
+ * Instances are compared by identity rather than by value. Trees reference the train instances directly, so the
+ * identity of an instance is the same in every tree. Distances are only stored when exact, i.e. not abandoned early
+ * against the limit. Each entry costs roughly 100 bytes, the least recently used entries are evicted once the maximum
+ * number of entries is reached.
+ */
+public class DistanceCache {
+
+    // rough size of an entry, including the key and the boxed distance
+    public static final long ENTRY_BYTES = 100;
+    // below this many entries a cache is not worth keeping
+    public static final long MIN_SIZE = 1000;
+
+    private final Cache<Key, Double> cache;
+    private final long maxSize;
+
+    public DistanceCache(long maxSize) {
+        if(maxSize <= 0) {
+            throw new IllegalArgumentException("max size must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        cache = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+    }
+
+    /**
+     * Find the distance between an exemplar and an instance, using the cached distance if there is one.
+     * @param distanceMeasureKey a string uniquely identifying the distance measure and its parameters, e.g. the
+     *                           toString of the distance measure
+     * @param distanceMeasure the distance measure to compute the distance with if not cached
+     * @param exemplar the exemplar
+     * @param inst the instance
+     * @param limit the early abandon limit
+     * @return the distance, which may be exact even if above the limit
+     */
+    public double distance(String distanceMeasureKey, DistanceMeasure distanceMeasure, TimeSeriesInstance exemplar,
+            TimeSeriesInstance inst, double limit) {
+        final Key key = new Key(distanceMeasureKey, exemplar, inst);
+        final Double cached = cache.getIfPresent(key);
+        if(cached != null) {
+            return cached;
+        }
+        final double distance = distanceMeasure.distance(exemplar, inst, limit);
+        // distances beyond the limit may have been abandoned, so are a lower bound rather than the exact distance
+        if(distance <= limit) {
+            cache.put(key, distance);
+        }
+        return distance;
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public long estimatedBytes() {
+        return cache.size() * ENTRY_BYTES;
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    private static class Key {
+        private final String distanceMeasureKey;
+        private final TimeSeriesInstance exemplar;
+        private final TimeSeriesInstance inst;
+        private final int hash;
+
+        private Key(final String distanceMeasureKey, final TimeSeriesInstance exemplar, final TimeSeriesInstance inst) {
+            this.distanceMeasureKey = distanceMeasureKey;
+            this.exemplar = exemplar;
+            this.inst = inst;
+            hash = (distanceMeasureKey.hashCode() * 31 + System.identityHashCode(exemplar)) * 31
+                           + System.identityHashCode(inst);
+        }
+
+        @Override public boolean equals(final Object o) {
+            if(this == o) {
+                return true;
+            }
+            if(!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return exemplar == other.exemplar && inst == other.inst && distanceMeasureKey.equals(other.distanceMeasureKey);
+        }
+
+        @Override public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -22,6 +22,9 @@ import evaluation.evaluators.Evaluator;
 import evaluation.evaluators.OutOfBagEvaluator;
 import evaluation.storage.ClassifierResults;
 import experiments.data.DatasetLoading;
+import tsml.classifiers.MemoryContract;
+import tsml.classifiers.MemoryContractable;
+import tsml.classifiers.MultiThreadable;
 import tsml.classifiers.TrainEstimateTimeable;
 import tsml.classifiers.distance_based.utils.classifiers.*;
 import tsml.classifiers.distance_based.utils.classifiers.checkpointing.CheckpointConfig;
@@ -39,9 +42,10 @@ import tsml.classifiers.distance_based.utils.system.timing.StopWatch;
 import tsml.data_containers.TimeSeriesInstance;
 import tsml.data_containers.TimeSeriesInstances;
 import utilities.ClassifierTools;
+import utilities.ObjectSizes;
 
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 
 import static utilities.ArrayUtilities.*;
 import static utilities.Utilities.argMax;
@@ -52,7 +56,8 @@ import static utilities.Utilities.argMax;
  * Contributors: goastler
  */
 public class ProximityForest extends BaseClassifier implements ContractedTrain, ContractedTest, TrainEstimateTimeable,
-                                                                       Checkpointed, MemoryWatchable {
+                                                                       Checkpointed, MemoryWatchable, MultiThreadable,
+                                                                       MemoryContractable {
 
     public static void main(String[] args) throws Exception {
 ////        Thread.sleep(10000);
@@ -156,11 +161,131 @@ public class ProximityForest extends BaseClassifier implements ContractedTrain,
     private double[][] trainEstimateDistributions;
     private final StopWatch evaluationTimer = new StopWatch();
     private long[] trainEstimatePredictionTimes;
+    // the number of trees to build / predict with at once
+    private int numThreads = 1;
+    private transient ExecutorService executor;
+    // thread pools shared between all forests by number of threads, so forests built in turn (e.g. the folds of a cv)
+    // reuse the same threads rather than each starting their own
+    private static final Map<Integer, ExecutorService> THREAD_POOLS = new ConcurrentHashMap<>();
+    // the max number of exemplar to instance distances to cache between trees, <= 0 disables the cache
+    private long distanceCacheSize;
+    private transient DistanceCache distanceCache;
+    // accounting for the memory contract, the trees are the members and the distance cache the base
+    private final MemoryContract memoryContract = new MemoryContract();
 
     @Override public long getMaxMemoryUsage() {
         return memoryWatcher.getMaxMemoryUsage();
     }
 
+    @Override public void enableMultiThreading(final int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+        executor = null;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    private ExecutorService getExecutor() {
+        if(executor == null) {
+            executor = THREAD_POOLS.computeIfAbsent(numThreads, n -> Executors.newFixedThreadPool(n, r -> {
+                final Thread thread = new Thread(r);
+                thread.setDaemon(true);
+                return thread;
+            }));
+        }
+        return executor;
+    }
+
+    /**
+     * Run the jobs, in parallel if multi-threading. The results are in the same order as the jobs.
+     */
+    private <A> List<A> runJobs(List<Callable<A>> jobs) throws Exception {
+        final List<A> results = new ArrayList<>(jobs.size());
+        if(numThreads == 1 || jobs.size() == 1) {
+            for(Callable<A> job : jobs) {
+                results.add(job.call());
+            }
+        } else {
+            for(Future<A> future : getExecutor().invokeAll(jobs)) {
+                try {
+                    results.add(future.get());
+                } catch(ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : e;
+                }
+            }
+        }
+        return results;
+    }
+
+    public long getDistanceCacheSize() {
+        return distanceCacheSize;
+    }
+
+    /**
+     * Share a cache of exemplar to instance distances between the trees. Trees which sample the same distance
+     * measure and parameters (e.g. ED or full window DTW) and the same exemplar can then skip the distance computation.
+     * @param distanceCacheSize the max number of distances to cache, <= 0 to disable the cache
+     */
+    public void setDistanceCacheSize(final long distanceCacheSize) {
+        this.distanceCacheSize = distanceCacheSize;
+        distanceCache = null;
+    }
+
+    private DistanceCache getDistanceCache() {
+        if(distanceCacheSize > 0 && distanceCache == null) {
+            distanceCache = new DistanceCache(distanceCacheSize);
+        }
+        return distanceCache;
+    }
+
+    /**
+     * Limit the memory used by the forest. Once there is no room for another batch of trees the distance cache is
+     * halved (then dropped) and the per tree out-of-bag evaluations are released, and if there's still no room no more
+     * trees are built.
+     */
+    @Override public void setMemoryLimit(final DataUnit unit, final long amount) {
+        memoryContract.setLimit(unit, amount);
+    }
+
+    public long getMemoryLimit() {
+        return memoryContract.getLimit();
+    }
+
+    private boolean insideMemoryLimit(int numTrees) {
+        if(!memoryContract.isContracted() || trees.isEmpty()) {
+            return true;
+        }
+        memoryContract.setBaseBytes(distanceCache == null ? 0 : distanceCache.estimatedBytes());
+        if(memoryContract.hasRoomForMembers(numTrees)) {
+            return true;
+        }
+        // the cache only saves time, so give up half of it before giving up on more trees. The smaller cache is
+        // created when the next trees are built
+        if(distanceCache != null && distanceCache.size() > 0) {
+            distanceCache.clear();
+            distanceCache = null;
+            distanceCacheSize /= 2;
+            if(distanceCacheSize < DistanceCache.MIN_SIZE) {
+                distanceCacheSize = 0;
+            }
+            getLogger().info("near the memory limit, distance cache size reduced to " + distanceCacheSize);
+            memoryContract.setBaseBytes(0);
+            if(memoryContract.hasRoomForMembers(numTrees)) {
+                return true;
+            }
+        }
+        // the out-of-bag evaluations of each tree are only kept for inspection
+        if(treeEvaluators != null && treeTrainResults != null
+                   && (!treeEvaluators.isEmpty() || !treeTrainResults.isEmpty())) {
+            getLogger().info("near the memory limit, releasing the tree evaluations");
+            treeEvaluators.clear();
+            treeTrainResults.clear();
+        }
+        return false;
+    }
+
     @Override
     public void buildClassifier(TimeSeriesInstances trainData) throws Exception {
         // timings:
@@ -216,6 +341,11 @@ public class ProximityForest extends BaseClassifier implements ContractedTrain,
         // or the classifier has been initialised from scratch / resumed and can just start from the timestamp
         runTimer.start(timeStamp);
         evaluationTimer.checkStopped();
+        memoryContract.reset();
+        memoryContract.setSharedTypes(TimeSeriesInstance.class, TimeSeriesInstances.class, DistanceCache.class);
+        for(ProximityTree tree : trees) {
+            memoryContract.addMember(tree, -1);
+        }
         
         LogUtils.logTimeContract(runTimer.elapsedTime(), trainTimeLimit, getLogger(), "train");
         // whether work has been done in this call to buildClassifier
@@ -260,51 +390,74 @@ public class ProximityForest extends BaseClassifier implements ContractedTrain,
                 &&
                 // and there's remaining time left to build more trees
                 insideTrainTimeLimit(runTimer.elapsedTime() + longestTrainStageTime)
+                &&
+                // and there's room for another batch of trees
+                insideMemoryLimit(hasNumTreeLimit() ? Math.min(numThreads, numTreeLimit - trees.size()) : numThreads)
         ) {
             // reset the tree build timer
             trainStageTimer.resetAndStart();
-            // setup a new tree
-            final int treeIndex = trees.size();
-            final ProximityTree tree = proximityTreeBuilder.build();
-            final int treeSeed = rand.nextInt();
-            tree.setSeed(treeSeed);
-            // setup the constituent
-            trees.add(tree);
-            // estimate the performance of the tree
+            // setup a batch of new trees, one per thread
+            int numTrees = numThreads;
+            if(hasNumTreeLimit()) {
+                numTrees = Math.min(numTrees, numTreeLimit - trees.size());
+            }
+            final List<Callable<TreeBuild>> jobs = new ArrayList<>(numTrees);
+            for(int i = 0; i < numTrees; i++) {
+                final int treeIndex = trees.size();
+                final ProximityTree tree = proximityTreeBuilder.build();
+                final int treeSeed = rand.nextInt();
+                tree.setSeed(treeSeed);
+                tree.setDistanceCache(getDistanceCache());
+                // setup the constituent
+                trees.add(tree);
+                jobs.add(() -> buildTree(tree, treeIndex, treeSeed, trainData));
+            }
+            // build the trees, in parallel if multi-threading
+            final List<TreeBuild> treeBuilds = runJobs(jobs);
+            for(TreeBuild treeBuild : treeBuilds) {
+                memoryContract.addMember(trees.get(treeBuild.treeIndex), treeBuild.allocatedBytes);
+            }
+            // estimate the performance of the trees
             if(estimateOwnPerformance && trainEstimateMethod.equals(TrainEstimateMethod.OOB)) {
+                // the trees were evaluated in parallel, so only the evaluation's share of the wall clock time spent
+                // on this batch is attributed to the train estimate
+                long evaluationTime = 0;
+                long buildTime = 0;
+                for(TreeBuild treeBuild : treeBuilds) {
+                    evaluationTime += treeBuild.evaluationTime;
+                    buildTime += treeBuild.evaluationTime + treeBuild.buildTime;
+                }
+                if(buildTime > 0) {
+                    evaluationTimer.add((long) ((double) evaluationTime / buildTime * trainStageTimer.elapsedTime()));
+                }
                 // the timer for contracting the estimate of train error
                 evaluationTimer.start();
-                // build train estimate based on method
-                final OutOfBagEvaluator oobe = new OutOfBagEvaluator();
-                oobe.setCloneClassifier(false);
-                oobe.setSeed(treeSeed);
-                treeEvaluators.add(oobe);
-                getLogger().info(() -> "oob evaluating tree " + treeIndex);
-                // evaluate the tree
-                final ClassifierResults treeEvaluationResults = oobe.evaluate(tree, trainData);
-                treeTrainResults.add(treeEvaluationResults);
-                // for each index in the test data of the oobe
-                final List<Integer> outOfBagTestDataIndices = oobe.getOutOfBagTestDataIndices();
-                // for each instance in the oobe test data, add the distribution and prediction time to the corresponding instance predictions in the train estimate results
-                for(int oobeIndex = 0; oobeIndex < outOfBagTestDataIndices.size(); oobeIndex++) {
-                    final int trainDataIndex = outOfBagTestDataIndices.get(oobeIndex);
-                    // get the corresponding distribution from the oobe results
-                    double[] distribution = treeEvaluationResults.getProbabilityDistribution(oobeIndex);
-                    distribution = vote(treeIndex, distribution);
-                    // get the corresponding distribution from the train estimate distribution
-                    // add tree's distribution for this instance onto the overall train estimate distribution for this instance
-                    add(trainEstimateDistributions[trainDataIndex], distribution);
-                    // add the prediction time from the oobe to the time for this instance in the train estimate
-                    trainEstimatePredictionTimes[trainDataIndex] += treeEvaluationResults.getPredictionTime(oobeIndex);
+                // votes are cast in tree order as voting ties are broken randomly
+                for(TreeBuild treeBuild : treeBuilds) {
+                    final int treeIndex = treeBuild.treeIndex;
+                    final OutOfBagEvaluator oobe = treeBuild.oobe;
+                    final ClassifierResults treeEvaluationResults = treeBuild.treeEvaluationResults;
+                    treeEvaluators.add(oobe);
+                    treeTrainResults.add(treeEvaluationResults);
+                    // for each index in the test data of the oobe
+                    final List<Integer> outOfBagTestDataIndices = oobe.getOutOfBagTestDataIndices();
+                    // for each instance in the oobe test data, add the distribution and prediction time to the corresponding instance predictions in the train estimate results
+                    for(int oobeIndex = 0; oobeIndex < outOfBagTestDataIndices.size(); oobeIndex++) {
+                        final int trainDataIndex = outOfBagTestDataIndices.get(oobeIndex);
+                        // get the corresponding distribution from the oobe results
+                        double[] distribution = treeEvaluationResults.getProbabilityDistribution(oobeIndex);
+                        distribution = vote(treeIndex, distribution);
+                        // get the corresponding distribution from the train estimate distribution
+                        // add tree's distribution for this instance onto the overall train estimate distribution for this instance
+                        add(trainEstimateDistributions[trainDataIndex], distribution);
+                        // add the prediction time from the oobe to the time for this instance in the train estimate
+                        trainEstimatePredictionTimes[trainDataIndex] += treeEvaluationResults.getPredictionTime(oobeIndex);
+                    }
+                    treeEvaluationResults.setErrorEstimateMethod(getEstimatorMethod());
                 }
-                treeEvaluationResults.setErrorEstimateMethod(getEstimatorMethod());
                 evaluationTimer.stop();
             }
-            // build the tree if not producing train estimate OR rebuild after evaluation
-            getLogger().info(() -> "building tree " + treeIndex);
-            tree.setRebuild(true);
-            tree.buildClassifier(trainData);
-            // tree fully built
+            // trees fully built
             trainStageTimer.stop();
             workDone = true;
             // optional checkpoint
@@ -349,6 +502,56 @@ public class ProximityForest extends BaseClassifier implements ContractedTrain,
         }
     }
 
+    /**
+     * The outcome of building a tree, along with the out-of-bag evaluation of the tree if estimating the train error.
+     */
+    private static class TreeBuild {
+        private final int treeIndex;
+        private OutOfBagEvaluator oobe;
+        private ClassifierResults treeEvaluationResults;
+        private long evaluationTime;
+        private long buildTime;
+        // bytes allocated by the thread evaluating and building the tree
+        private long allocatedBytes;
+
+        private TreeBuild(final int treeIndex) {
+            this.treeIndex = treeIndex;
+        }
+    }
+
+    /**
+     * Evaluate (if estimating the train error via OOB) then build a tree on the train data. This only touches the
+     * given tree, so several trees can be built at once.
+     */
+    private TreeBuild buildTree(ProximityTree tree, int treeIndex, int treeSeed, TimeSeriesInstances trainData) throws Exception {
+        final TreeBuild treeBuild = new TreeBuild(treeIndex);
+        final StopWatch timer = new StopWatch();
+        final long allocationStart = ObjectSizes.threadAllocatedBytes();
+        if(estimateOwnPerformance && trainEstimateMethod.equals(TrainEstimateMethod.OOB)) {
+            timer.start();
+            // build train estimate based on method
+            final OutOfBagEvaluator oobe = new OutOfBagEvaluator();
+            oobe.setCloneClassifier(false);
+            oobe.setSeed(treeSeed);
+            getLogger().info(() -> "oob evaluating tree " + treeIndex);
+            // evaluate the tree
+            treeBuild.treeEvaluationResults = oobe.evaluate(tree, trainData);
+            treeBuild.oobe = oobe;
+            timer.stop();
+            treeBuild.evaluationTime = timer.elapsedTime();
+            timer.reset();
+        }
+        // build the tree if not producing train estimate OR rebuild after evaluation
+        timer.start();
+        getLogger().info(() -> "building tree " + treeIndex);
+        tree.setRebuild(true);
+        tree.buildClassifier(trainData);
+        timer.stop();
+        treeBuild.buildTime = timer.elapsedTime();
+        treeBuild.allocatedBytes = ObjectSizes.threadAllocatedBytesSince(allocationStart);
+        return treeBuild;
+    }
+
     @Override
     public double[] distributionForInstance(final TimeSeriesInstance instance) throws Exception {
         // start timer
@@ -363,12 +566,23 @@ public class ProximityForest extends BaseClassifier implements ContractedTrain,
             i < trees.size()
             &&
             (testTimeLimit <= 0 || testTimer.elapsedTime() + longestTestStageTimeNanos < testTimeLimit)
-                ; i++) {
+                ; ) {
             testStageTimer.resetAndStart();
-            // let the constituent vote
-            final double[] distribution = vote(i, instance);
-            // add the vote to the total votes
-            add(finalDistribution, distribution);
+            // let a batch of constituents predict, one per thread
+            final int numTrees = Math.min(numThreads, trees.size() - i);
+            final List<Callable<double[]>> jobs = new ArrayList<>(numTrees);
+            for(int j = i; j < i + numTrees; j++) {
+                final ProximityTree tree = trees.get(j);
+                jobs.add(() -> tree.distributionForInstance(instance));
+            }
+            final List<double[]> distributions = runJobs(jobs);
+            // votes are cast in tree order as voting ties are broken randomly
+            for(double[] distribution : distributions) {
+                // let the constituent vote
+                // add the vote to the total votes
+                add(finalDistribution, vote(i, distribution));
+                i++;
+            }
             // update timings
             testStageTimer.stop();
             longestTestStageTimeNanos = Math.max(longestTestStageTimeNanos, testStageTimer.elapsedTime());
@@ -380,12 +594,6 @@ public class ProximityForest extends BaseClassifier implements ContractedTrain,
         return finalDistribution;
     }
     
-    private double[] vote(int constituentIndex, TimeSeriesInstance instance) throws Exception {
-        final ProximityTree tree = trees.get(constituentIndex);
-        final double[] distribution = tree.distributionForInstance(instance);
-        return vote(constituentIndex, distribution);
-    }
-    
     private double[] vote(int constituentIndex, double[] distribution) {
         // vote for the highest probability class
         final int index = argMax(distribution, getRandom());
@@ -0,0 +1,61 @@
+package tsml.classifiers.distance_based.proximity;
+
+import evaluation.storage.ClassifierResults;
+import experiments.data.DatasetLoading;
+import org.junit.Assert;
+import org.junit.Test;
+import weka.core.Instances;
+
+/**
+ * Purpose: test a seeded ProximityForest gives the same predictions and train estimate with 1 and several threads.
+ */
+public class ProximityForestTest {
+
+    private static ProximityForest build(Instances train, String config, int numThreads, long distanceCacheSize)
+            throws Exception {
+        final ProximityForest pf = ProximityForest.CONFIGS.get(config).build();
+        pf.setSeed(0);
+        pf.setNumTreeLimit(10);
+        pf.setEstimateOwnPerformance(true);
+        pf.setDistanceCacheSize(distanceCacheSize);
+        pf.enableMultiThreading(numThreads);
+        pf.buildClassifier(train);
+        return pf;
+    }
+
+    private static void assertSameForThreads(String config, long distanceCacheSize) throws Exception {
+        final Instances[] data = DatasetLoading.sampleItalyPowerDemand(0);
+        final ProximityForest single = build(data[0], config, 1, distanceCacheSize);
+        final ProximityForest multi = build(data[0], config, 4, distanceCacheSize);
+
+        final ClassifierResults singleTrain = single.getTrainResults();
+        final ClassifierResults multiTrain = multi.getTrainResults();
+        Assert.assertEquals(config, data[0].numInstances(), singleTrain.numInstances());
+        Assert.assertArrayEquals(config, singleTrain.getPredClassValsAsArray(), multiTrain.getPredClassValsAsArray(),
+                0);
+        for(int i = 0; i < singleTrain.numInstances(); i++) {
+            Assert.assertArrayEquals(config + " train " + i, singleTrain.getProbabilityDistribution(i),
+                    multiTrain.getProbabilityDistribution(i), 0);
+        }
+
+        for(int i = 0; i < data[1].numInstances(); i++) {
+            Assert.assertArrayEquals(config + " test " + i, single.distributionForInstance(data[1].get(i)),
+                    multi.distributionForInstance(data[1].get(i)), 0);
+        }
+    }
+
+    @Test
+    public void testOobSameForThreads() throws Exception {
+        assertSameForThreads("PF_R5_OOB", 0);
+    }
+
+    @Test
+    public void testCvSameForThreads() throws Exception {
+        assertSameForThreads("PF_R1_CV", 0);
+    }
+
+    @Test
+    public void testDistanceCacheSameForThreads() throws Exception {
+        assertSameForThreads("PF_R5_OOB", 100000);
+    }
+}
@@ -199,6 +199,8 @@ public class ProximityTree extends BaseClassifier implements ContractedTest, Con
     private boolean partitionExaminationReordering;
     // cache certain transformers to avoid repetition
     private Map<Transformer, CachedTransformer> transformerCache;
+    // optional cache of exemplar to instance distances, shared between the trees of a forest
+    private transient DistanceCache distanceCache;
 
     public DistanceMode getDistanceMode() {
         return distanceMode;
@@ -262,6 +264,19 @@ public class ProximityTree extends BaseClassifier implements ContractedTest, Con
         transformerCache = cache;
     }
 
+    public DistanceCache getDistanceCache() {
+        return distanceCache;
+    }
+
+    /**
+     * Set a cache of exemplar to instance distances. The cache is only used when splitting the train data with
+     * untransformed instances, i.e. univariate data or multivariate data without dimension sampling / conversion.
+     * @param distanceCache the cache, or null to compute every distance
+     */
+    public void setDistanceCache(final DistanceCache distanceCache) {
+        this.distanceCache = distanceCache;
+    }
+
     public enum DimensionSamplingMode {
         SINGLE, // randomly pick a single dimension, discarding others
         SUBSET, // randomly pick a subset of dimensions (between 1 and all dimensions) and discard others
@@ -645,6 +660,8 @@ public class ProximityTree extends BaseClassifier implements ContractedTest, Con
 
         private TransformPipeline pipeline;
         private TimeSeriesInstances transformedDataAtSplit;
+        // identifies the distance measure and its params in the distance cache
+        private String distanceMeasureKey;
         
         private double[] distribution;
         
@@ -908,6 +925,10 @@ public class ProximityTree extends BaseClassifier implements ContractedTest, Con
             
             // setup the distance function (note this JUST sets up the distance measure, not the transformed distance measure)
             distanceMeasure.buildDistanceMeasure(transformedDataAtSplit);
+            
+            if(distanceCache != null) {
+                distanceMeasureKey = distanceMeasure.toString();
+            }
                         
         }
         
@@ -1003,6 +1024,10 @@ public class ProximityTree extends BaseClassifier implements ContractedTest, Con
             } else {
                 inst = pipeline.transform(inst);
             }
+            // distances are only cached for train insts which have not been transformed, otherwise the inst is a new
+            // object every time
+            final boolean cacheDistances = distanceCache != null && distanceMeasureKey != null
+                                                   && instIndexInSplitData >= 0 && pipeline.getTransformers().isEmpty();
             // a map to maintain the closest partition indices
             final PrunedMap<Double, Integer> filter = PrunedMap.asc(1);
             // maintain a limit on distance computation
@@ -1016,7 +1041,12 @@ public class ProximityTree extends BaseClassifier implements ContractedTest, Con
                 }
                 final TimeSeriesInstance exemplar = exemplars.get(i);
                 // find the distance
-                final double distance = distanceMeasure.distance(exemplar, inst, limit);
+                final double distance;
+                if(cacheDistances) {
+                    distance = distanceCache.distance(distanceMeasureKey, distanceMeasure, exemplar, inst, limit);
+                } else {
+                    distance = distanceMeasure.distance(exemplar, inst, limit);
+                }
                 // add the distance and partition to the map
                 if(filter.add(distance, i)) {
                     // new min dist
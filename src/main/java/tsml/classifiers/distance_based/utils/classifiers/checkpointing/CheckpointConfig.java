@@ -1,6 +1,7 @@
 package tsml.classifiers.distance_based.utils.classifiers.checkpointing;
 
 import tsml.classifiers.distance_based.utils.system.logging.Loggable;
+import utilities.serialisation.AsyncCheckpointWriter;
 
 import java.io.Serializable;
 import java.util.concurrent.TimeUnit;
@@ -10,6 +11,7 @@ public class CheckpointConfig implements Serializable, Loggable {
     public CheckpointConfig() {
         setCheckpointInterval(TimeUnit.NANOSECONDS.convert(4, TimeUnit.HOURS));
         setKeepCheckpoints(false);
+        setAsyncCheckpointing(true);
         setCheckpointPath(null);
         setLogger(null);
         clear();
@@ -21,7 +23,9 @@ public class CheckpointConfig implements Serializable, Loggable {
     private long lastCheckpointRunTime;
     private long checkpointLoadTime;
     private long checkpointSaveTime;
+    private boolean asyncCheckpointing;
     private transient Logger logger;
+    private transient AsyncCheckpointWriter checkpointWriter;
     
     public void clear() {
         lastCheckpointRunTime = 0;
@@ -37,6 +41,21 @@ public class CheckpointConfig implements Serializable, Loggable {
         this.keepCheckpoints = keepCheckpoints;
     }
 
+    public boolean isAsyncCheckpointing() {
+        return asyncCheckpointing;
+    }
+
+    public void setAsyncCheckpointing(final boolean asyncCheckpointing) {
+        this.asyncCheckpointing = asyncCheckpointing;
+    }
+
+    public AsyncCheckpointWriter getCheckpointWriter() {
+        if(checkpointWriter == null) {
+            checkpointWriter = new AsyncCheckpointWriter();
+        }
+        return checkpointWriter;
+    }
+
     public String getCheckpointPath() {
         return checkpointPath;
     }
@@ -102,6 +102,18 @@ public interface Checkpointed extends Checkpointable, TimedTrain {
         getCheckpointConfig().setKeepCheckpoints(state);
     }
 
+    /**
+     * Whether checkpoints are written on a background thread while building continues. Forced checkpoints always
+     * wait for the write to finish.
+     */
+    default boolean isAsyncCheckpointing() {
+        return getCheckpointConfig().isAsyncCheckpointing();
+    }
+
+    default void setAsyncCheckpointing(boolean state) {
+        getCheckpointConfig().setAsyncCheckpointing(state);
+    }
+
     /**
      * Load the most recent checkpoint
      * @return
@@ -117,7 +129,8 @@ public interface Checkpointed extends Checkpointable, TimedTrain {
             } else if(!dir.isDirectory()) {
                 logger.info("checkpoint path is not a dir, skipping load checkpoint");
             } else {
-                final String[] files = dir.list();
+                // only complete checkpoints, not any partially written temporary files
+                final String[] files = dir.list((d, name) -> name.startsWith(CHECKPOINT_PREFIX_WITH_UNDERSCORE) && name.endsWith(CHECKPOINT_EXTENSION_WITH_DOT));
                 if(files == null || files.length <= 0) {
                     logger.info("no past checkpoints found");
                 } else {
@@ -162,9 +175,7 @@ public interface Checkpointed extends Checkpointable, TimedTrain {
         boolean saved = false;
         if(isCheckpointPathSet()) {
             if(isCheckpointIntervalExpired() || force) {
-                // get current checkpoints that already exist
                 final String path = getCheckpointPath();
-                final String[] files = new File(path).list();
                 // save this checkpoint
                 final long runTime = getRunTime();
                 final String checkpointPath = path + "/" + CHECKPOINT_PREFIX_WITH_UNDERSCORE + runTime + CHECKPOINT_EXTENSION_WITH_DOT;
@@ -173,30 +184,46 @@ public interface Checkpointed extends Checkpointable, TimedTrain {
                 getCheckpointConfig().addSaveTime(timeStampBeforeSave - timeStamp);
                 // update the start time as we've already accounted for time before save operation
                 timeStamp = timeStampBeforeSave;
-                saveToFile(checkpointPath);
-                // remove any previous checkpoints
-                if(!isKeepCheckpoints()) {
-                    if(files != null) {
-                        for(String file : files) {
-                            final File f = new File(path + "/" + file);
-                            final String name = f.getName();
-                            if(name.startsWith(CHECKPOINT_PREFIX_WITH_UNDERSCORE) && name.endsWith(CHECKPOINT_EXTENSION_WITH_DOT)) {
-                                if(!f.delete()) {
-                                    throw new IllegalStateException("failed to delete checkpoint " + f.getPath());
-                                }
-                            }
-                        }
+                // snapshot the current state, the file is written in the background. Any previous checkpoints are
+                // removed once the new one is in place
+                final CheckpointConfig config = getCheckpointConfig();
+                final boolean keepCheckpoints = isKeepCheckpoints();
+                FileUtils.makeParentDir(checkpointPath);
+                config.getCheckpointWriter().writeSnapshot(path, new File(checkpointPath), this,
+                        getCheckpointSerializer(), getCheckpointCompression(), file -> {
+                    if(!keepCheckpoints) {
+                        deleteCheckpointsOtherThan(file);
                     }
+                    config.getLogger().info("saved checkpoint to " + file.getPath());
+                });
+                if(force || !config.isAsyncCheckpointing()) {
+                    config.getCheckpointWriter().flush();
                 }
-                getCheckpointConfig().getLogger().info("saved checkpoint to " + checkpointPath);
                 // update the checkpoint time stamp
-                getCheckpointConfig().setLastCheckpointRunTime(runTime);
+                config.setLastCheckpointRunTime(runTime);
             }
         }
         getCheckpointConfig().addSaveTime(System.nanoTime() - timeStamp);
         return saved;
     }
     
+    /**
+     * Remove any previous checkpoints in the same directory as the given checkpoint
+     */
+    static void deleteCheckpointsOtherThan(File checkpoint) {
+        final File[] files = checkpoint.getParentFile().listFiles();
+        if(files != null) {
+            for(File f : files) {
+                final String name = f.getName();
+                if(!f.equals(checkpoint) && name.startsWith(CHECKPOINT_PREFIX_WITH_UNDERSCORE) && name.endsWith(CHECKPOINT_EXTENSION_WITH_DOT)) {
+                    if(!f.delete()) {
+                        throw new IllegalStateException("failed to delete checkpoint " + f.getPath());
+                    }
+                }
+            }
+        }
+    }
+
     @Override default void copyFromSerObject(Object obj) throws Exception {
         CopierUtils.shallowCopy(obj, this);
     }
@@ -25,6 +25,7 @@ import machine_learning.classifiers.ensembles.AbstractEnsemble;
 import machine_learning.classifiers.ensembles.voting.MajorityConfidence;
 import machine_learning.classifiers.ensembles.weightings.TrainAcc;
 import tsml.classifiers.EnhancedAbstractClassifier;
+import tsml.classifiers.MemoryContractable;
 import tsml.classifiers.TrainTimeContractable;
 import tsml.classifiers.Tuneable;
 import tsml.classifiers.dictionary_based.BOSS;
@@ -40,6 +41,7 @@ import tsml.data_containers.TimeSeriesInstances;
 import tsml.data_containers.utilities.Converter;
 import tsml.transformers.Resizer;
 import utilities.ClassifierTools;
+import utilities.ObjectSizes;
 import weka.classifiers.Classifier;
 import weka.core.*;
 
@@ -62,7 +64,7 @@ import java.util.concurrent.TimeUnit;
  *
  * Version 1.0:
  */
-public class HIVE_COTE extends AbstractEnsemble implements TechnicalInformationHandler, TrainTimeContractable, Tuneable {
+public class HIVE_COTE extends AbstractEnsemble implements TechnicalInformationHandler, TrainTimeContractable, MemoryContractable, Tuneable {
 
     //TrainTimeContractable
     protected boolean trainTimeContract = false;
@@ -79,6 +81,9 @@ public class HIVE_COTE extends AbstractEnsemble implements TechnicalInformationH
     protected final double BASE_CLASSIFIER_CONTRACT_PROP = 0.99; //if e.g 1 day contract, 864 seconds grace time
     protected double alpha=4.0; // Weighting parameter for voting method
 
+    //MemoryContractable, the limit less the train data is split evenly between the modules. If <=0, no contract
+    protected long memoryLimitBytes = 0;
+
     private int defaultSettings = 2;
     private Resizer resizer;
 
@@ -320,7 +325,13 @@ public class HIVE_COTE extends AbstractEnsemble implements TechnicalInformationH
             setupContracting();
         }
 
-        super.buildClassifier(Converter.toArff(data));
+        Instances insts = Converter.toArff(data);
+        if (memoryLimitBytes > 0)
+            setupMemoryContract(ObjectSizes.deepSizeOf(insts));
+
+        super.buildClassifier(insts);
+        if (memoryLimitBytes > 0)
+            trainInsts = null;
         trainResults.setParas(getParameters());
         printLineDebug("*************** Finished HIVE-COTE Build with train time " +
                 (trainResults.getBuildTime()/1000000000/60/60.0) + " hours, Train+Estimate time = "+(trainResults.getBuildPlusEstimateTime()/1000000000/60/60.0)+" hours ***************");
@@ -355,7 +366,12 @@ public class HIVE_COTE extends AbstractEnsemble implements TechnicalInformationH
             setupContracting();
         }
 
+        if (memoryLimitBytes > 0)
+            setupMemoryContract(0);
+
         super.buildClassifier(data);
+        if (memoryLimitBytes > 0)
+            trainInsts = null;
         trainResults.setParas(getParameters());
         printLineDebug("*************** Finished HIVE-COTE Build with train time " +
                 (trainResults.getBuildTime()/1000000000/60/60.0) + " hours, Train+Estimate time = "+(trainResults.getBuildPlusEstimateTime()/1000000000/60/60.0)+" hours ***************");
@@ -456,6 +472,35 @@ public class HIVE_COTE extends AbstractEnsemble implements TechnicalInformationH
                 ((TrainTimeContractable) module.getClassifier()).setTrainTimeLimit(highFidelityUnit, highFidelityTimePerClassifier);
     }
 
+    @Override //MemoryContractable
+    public void setMemoryLimit(DataUnit unit, long amount) {
+        memoryLimitBytes = MemoryContractable.toBytes(unit, amount);
+    }
+
+    /**
+     * Splits what the train data leaves of the memory contract evenly between the modules, to be called at the start
+     * of build classifier. The modules may be built at the same time when multi threaded, so each gets its share
+     * either way, and together they keep to the contract.
+     *
+     * @param trainBytes memory used by the train data if the ensemble made its own copy, e.g. by conversion
+     */
+    protected void setupMemoryContract(long trainBytes) {
+        long moduleBytes = memoryLimitBytes - trainBytes;
+        if (moduleBytes < modules.length)
+            System.out.println("WARNING: the train data of " + ensembleName + " takes " + trainBytes + " bytes of its "
+                    + memoryLimitBytes + " byte memory contract, the modules will be built as small as they can be.");
+        // a limit of 0 is no limit, so each module gets at least a byte
+        long bytesPerClassifier = Math.max(1, moduleBytes / modules.length);
+        printLineDebug(" Setting up memory contract\nTotal Contract = "+memoryLimitBytes+" bytes, Per Classifier = "+bytesPerClassifier+" bytes");
+        for (EnsembleModule module : modules) {
+            if (module.getClassifier() instanceof MemoryContractable)
+                ((MemoryContractable) module.getClassifier()).setMemoryLimit(bytesPerClassifier);
+            else
+                System.out.println("WARNING: trying to memory contract " + ensembleName + ", but base classifier " + module.getModuleName() + " is not memory contractable, "
+                        + "and is therefore not considered in the contract. The ensemble as a whole may not meet the contract.");
+        }
+    }
+
     public void setAlpha(double alpha){
         this.alpha = alpha;
         this.weightingScheme = new TrainAcc(this.alpha);
@@ -500,6 +545,7 @@ public class HIVE_COTE extends AbstractEnsemble implements TechnicalInformationH
         String str="WeightingScheme,"+weightingScheme+","+"VotingScheme,"+votingScheme+",alpha,"+alpha+
                 ",seedClassifier,"+seedClassifier+",seed,"+seed;
         if (trainTimeContract) str += ",contractTime(hrs),"+trainContractTimeNanos/1000000000/60/60.0;
+        if (memoryLimitBytes > 0) str += ",memoryContract(bytes),"+memoryLimitBytes;
 
         for (EnsembleModule module : modules)
             str+=","+module.getModuleName()+","+module.posteriorWeights[0];
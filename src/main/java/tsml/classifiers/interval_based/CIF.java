@@ -31,6 +31,10 @@ import tsml.data_containers.TimeSeriesInstances;
 import tsml.data_containers.utilities.Converter;
 import tsml.transformers.Catch22;
 import utilities.ClassifierTools;
+import utilities.serialisation.AsyncCheckpointWriter;
+import utilities.serialisation.CheckpointCompression;
+import utilities.serialisation.CheckpointFiles;
+import utilities.serialisation.CheckpointSerializer;
 import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Classifier;
 import weka.core.*;
@@ -145,6 +149,11 @@ public class CIF extends EnhancedAbstractClassifier implements TechnicalInformat
     private long lastCheckpointTime = 0;
     private long checkpointTimeDiff = 0;
     private boolean internalContractCheckpointHandling = false;
+    private boolean asyncCheckpointing = true;
+    private transient AsyncCheckpointWriter checkpointWriter;
+    private transient CheckpointSerializer checkpointSerializer;
+    private CheckpointCompression checkpointCompression;
+    private int numCheckpointedTrees = 0;
 
     /**
      * Flags and data required if Contracting
@@ -434,6 +443,7 @@ public class CIF extends EnhancedAbstractClassifier implements TechnicalInformat
             }
 
             intervalDimensions = new ArrayList<>();
+            numCheckpointedTrees = 0;
         }
 
         if (multiThread) {
@@ -482,7 +492,8 @@ public class CIF extends EnhancedAbstractClassifier implements TechnicalInformat
         }
 
         if (checkpoint) {
-            saveToFile(checkpointPath);
+            saveCheckpoint();
+            finishCheckpointing();
         }
 
         trainResults.setTimeUnit(TimeUnit.NANOSECONDS);
@@ -706,7 +717,7 @@ public class CIF extends EnhancedAbstractClassifier implements TechnicalInformat
             //Timed checkpointing if enabled, else checkpoint every 100 trees
             if (checkpoint && ((checkpointTime > 0 && System.nanoTime() - lastCheckpointTime > checkpointTime)
                     || trees.size() % 100 == 0)) {
-                saveToFile(checkpointPath);
+                saveCheckpoint();
             }
         }
     }
@@ -1042,6 +1053,51 @@ public class CIF extends EnhancedAbstractClassifier implements TechnicalInformat
         return true;
     }
 
+    /**
+     * Whether to write checkpoint files on a background thread while building continues, or wait for each
+     * checkpoint to be written.
+     *
+     * @param b write checkpoints in the background
+     */
+    public void setAsyncCheckpointing(boolean b) {
+        asyncCheckpointing = b;
+    }
+
+    /**
+     * Serialiser used for the checkpoint files, both the CIF state and each tree.
+     *
+     * @param s checkpoint serialiser, i.e. JavaCheckpointSerializer or KryoCheckpointSerializer
+     * @return true
+     */
+    @Override //Checkpointable
+    public boolean setCheckpointSerializer(CheckpointSerializer s) {
+        checkpointSerializer = s;
+        return true;
+    }
+
+    /**
+     * Compression used for the checkpoint files, the Checkpointable default if not set.
+     *
+     * @param c checkpoint compression
+     * @return true
+     */
+    @Override //Checkpointable
+    public boolean setCheckpointCompression(CheckpointCompression c) {
+        checkpointCompression = c;
+        return true;
+    }
+
+    @Override //Checkpointable
+    public CheckpointSerializer getCheckpointSerializer() {
+        //the serialiser is transient, so is also null after this has been deserialised
+        return checkpointSerializer != null ? checkpointSerializer : Checkpointable.super.getCheckpointSerializer();
+    }
+
+    @Override //Checkpointable
+    public CheckpointCompression getCheckpointCompression() {
+        return checkpointCompression != null ? checkpointCompression : Checkpointable.super.getCheckpointCompression();
+    }
+
     /**
      * Serialises this CIF object to the specified path.
      *
@@ -1059,6 +1115,65 @@ public class CIF extends EnhancedAbstractClassifier implements TechnicalInformat
         if (internalContractCheckpointHandling) checkpointTimeDiff += System.nanoTime() - lastCheckpointTime;
     }
 
+    /**
+     * Checkpoints this CIF object. Each tree built since the last checkpoint is written to its own file in the
+     * background, followed by a snapshot of the rest of the current state, which records how many trees have been
+     * written. Only the time taken to snapshot the state without the trees is spent on the building thread.
+     *
+     * @throws Exception if the snapshot fails or a previous checkpoint failed to write
+     */
+    private void saveCheckpoint() throws Exception {
+        lastCheckpointTime = System.nanoTime();
+        if (checkpointWriter == null) checkpointWriter = new AsyncCheckpointWriter();
+
+        //built trees are not modified again, so are handed to the background writer as they are
+        for (int i = numCheckpointedTrees; i < trees.size(); i++) {
+            checkpointWriter.write(treeCheckpointFile(i), new Object[]{ trees.get(i), intervals.get(i),
+                    subsampleAtts.get(i), intervalDimensions.get(i) }, getCheckpointSerializer(),
+                    getCheckpointCompression());
+        }
+        numCheckpointedTrees = trees.size();
+
+        //the snapshot leaves out the trees, which are already on their way to disk
+        ArrayList<Classifier> builtTrees = trees;
+        ArrayList<int[][]> builtIntervals = intervals;
+        ArrayList<int[]> builtSubsampleAtts = subsampleAtts;
+        ArrayList<int[]> builtIntervalDimensions = intervalDimensions;
+        trees = null;
+        intervals = null;
+        subsampleAtts = null;
+        intervalDimensions = null;
+        try {
+            checkpointWriter.writeSnapshot(new File(checkpointPath + "CIF" + seed + ".ser"), this,
+                    getCheckpointSerializer(), getCheckpointCompression());
+        } finally {
+            trees = builtTrees;
+            intervals = builtIntervals;
+            subsampleAtts = builtSubsampleAtts;
+            intervalDimensions = builtIntervalDimensions;
+        }
+        if (!asyncCheckpointing) checkpointWriter.flush();
+        if (internalContractCheckpointHandling) checkpointTimeDiff += System.nanoTime() - lastCheckpointTime;
+    }
+
+    /**
+     * File the tree at index i, with its intervals and attributes, is checkpointed to.
+     */
+    private File treeCheckpointFile(int i) {
+        return new File(checkpointPath + "CIF" + seed + "-" + i + ".ser");
+    }
+
+    /**
+     * Waits for any checkpoint still being written in the background.
+     *
+     * @throws Exception if a checkpoint failed to write
+     */
+    private void finishCheckpointing() throws Exception {
+        long time = System.nanoTime();
+        checkpointWriter.flush();
+        if (internalContractCheckpointHandling) checkpointTimeDiff += System.nanoTime() - time;
+    }
+
     /**
      * Copies values from a loaded CIF object into this object.
      *
@@ -1117,6 +1232,7 @@ public class CIF extends EnhancedAbstractClassifier implements TechnicalInformat
             numInstances = saved.numInstances;
             numDimensions = saved.numDimensions;
             intervalDimensions = saved.intervalDimensions;
+            numCheckpointedTrees = saved.numCheckpointedTrees;
             //c22 = saved.c22;
 
             trainResults = saved.trainResults;
@@ -1134,6 +1250,21 @@ public class CIF extends EnhancedAbstractClassifier implements TechnicalInformat
         } catch (Exception ex) {
             System.out.println("Unable to assign variables when loading serialised file");
         }
+
+        //checkpoints without the trees record how many were written to their own files, older ones hold them all
+        if (trees == null) {
+            trees = new ArrayList<>(numCheckpointedTrees);
+            intervals = new ArrayList<>(numCheckpointedTrees);
+            subsampleAtts = new ArrayList<>(numCheckpointedTrees);
+            intervalDimensions = new ArrayList<>(numCheckpointedTrees);
+            for (int i = 0; i < numCheckpointedTrees; i++) {
+                Object[] tree = (Object[]) CheckpointFiles.load(treeCheckpointFile(i), getCheckpointSerializer());
+                trees.add((Classifier) tree[0]);
+                intervals.add((int[][]) tree[1]);
+                subsampleAtts.add((int[]) tree[2]);
+                intervalDimensions.add((int[]) tree[3]);
+            }
+        }
     }
 
     /**
@@ -29,6 +29,10 @@ import tsml.transformers.Catch22;
 import tsml.transformers.Differences;
 import tsml.transformers.Fast_FFT;
 import utilities.ClassifierTools;
+import utilities.serialisation.AsyncCheckpointWriter;
+import utilities.serialisation.CheckpointCompression;
+import utilities.serialisation.CheckpointFiles;
+import utilities.serialisation.CheckpointSerializer;
 import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Classifier;
 import weka.core.*;
@@ -144,6 +148,11 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
     private long lastCheckpointTime = 0;
     private long checkpointTimeDiff = 0;
     private boolean internalContractCheckpointHandling = false;
+    private boolean asyncCheckpointing = true;
+    private transient AsyncCheckpointWriter checkpointWriter;
+    private transient CheckpointSerializer checkpointSerializer;
+    private CheckpointCompression checkpointCompression;
+    private int numCheckpointedTrees = 0;
 
     /**
      * Flags and data required if Contracting
@@ -437,6 +446,7 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
             }
 
             intervalDimensions = new ArrayList<>();
+            numCheckpointedTrees = 0;
         }
 
         if (multiThread) {
@@ -482,7 +492,8 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
         }
 
         if (checkpoint) {
-            saveToFile(checkpointPath);
+            saveCheckpoint();
+            finishCheckpointing();
         }
 
         trainResults.setTimeUnit(TimeUnit.NANOSECONDS);
@@ -758,7 +769,7 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
             //Timed checkpointing if enabled, else checkpoint every 100 trees
             if (checkpoint && ((checkpointTime > 0 && System.nanoTime() - lastCheckpointTime > checkpointTime)
                     || trees.size() % 100 == 0)) {
-                saveToFile(checkpointPath);
+                saveCheckpoint();
             }
 
             underContractTime = withinTrainContract(trainResults.getBuildTime());
@@ -1107,6 +1118,51 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
         return true;
     }
 
+    /**
+     * Whether to write checkpoint files on a background thread while building continues, or wait for each
+     * checkpoint to be written.
+     *
+     * @param b write checkpoints in the background
+     */
+    public void setAsyncCheckpointing(boolean b) {
+        asyncCheckpointing = b;
+    }
+
+    /**
+     * Serialiser used for the checkpoint files, both the DrCIF state and each tree.
+     *
+     * @param s checkpoint serialiser, i.e. JavaCheckpointSerializer or KryoCheckpointSerializer
+     * @return true
+     */
+    @Override //Checkpointable
+    public boolean setCheckpointSerializer(CheckpointSerializer s) {
+        checkpointSerializer = s;
+        return true;
+    }
+
+    /**
+     * Compression used for the checkpoint files, the Checkpointable default if not set.
+     *
+     * @param c checkpoint compression
+     * @return true
+     */
+    @Override //Checkpointable
+    public boolean setCheckpointCompression(CheckpointCompression c) {
+        checkpointCompression = c;
+        return true;
+    }
+
+    @Override //Checkpointable
+    public CheckpointSerializer getCheckpointSerializer() {
+        //the serialiser is transient, so is also null after this has been deserialised
+        return checkpointSerializer != null ? checkpointSerializer : Checkpointable.super.getCheckpointSerializer();
+    }
+
+    @Override //Checkpointable
+    public CheckpointCompression getCheckpointCompression() {
+        return checkpointCompression != null ? checkpointCompression : Checkpointable.super.getCheckpointCompression();
+    }
+
     /**
      * Serialises this DrCIF object to the specified path.
      *
@@ -1124,6 +1180,65 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
         if (internalContractCheckpointHandling) checkpointTimeDiff += System.nanoTime() - lastCheckpointTime;
     }
 
+    /**
+     * Checkpoints this DrCIF object. Each tree built since the last checkpoint is written to its own file in the
+     * background, followed by a snapshot of the rest of the current state, which records how many trees have been
+     * written. Only the time taken to snapshot the state without the trees is spent on the building thread.
+     *
+     * @throws Exception if the snapshot fails or a previous checkpoint failed to write
+     */
+    private void saveCheckpoint() throws Exception {
+        lastCheckpointTime = System.nanoTime();
+        if (checkpointWriter == null) checkpointWriter = new AsyncCheckpointWriter();
+
+        //built trees are not modified again, so are handed to the background writer as they are
+        for (int i = numCheckpointedTrees; i < trees.size(); i++) {
+            checkpointWriter.write(treeCheckpointFile(i), new Object[]{ trees.get(i), intervals.get(i),
+                    subsampleAtts.get(i), intervalDimensions.get(i) }, getCheckpointSerializer(),
+                    getCheckpointCompression());
+        }
+        numCheckpointedTrees = trees.size();
+
+        //the snapshot leaves out the trees, which are already on their way to disk
+        ArrayList<Classifier> builtTrees = trees;
+        ArrayList<int[][][]> builtIntervals = intervals;
+        ArrayList<int[]> builtSubsampleAtts = subsampleAtts;
+        ArrayList<int[][]> builtIntervalDimensions = intervalDimensions;
+        trees = null;
+        intervals = null;
+        subsampleAtts = null;
+        intervalDimensions = null;
+        try {
+            checkpointWriter.writeSnapshot(new File(checkpointPath + "DrCIF" + seed + ".ser"), this,
+                    getCheckpointSerializer(), getCheckpointCompression());
+        } finally {
+            trees = builtTrees;
+            intervals = builtIntervals;
+            subsampleAtts = builtSubsampleAtts;
+            intervalDimensions = builtIntervalDimensions;
+        }
+        if (!asyncCheckpointing) checkpointWriter.flush();
+        if (internalContractCheckpointHandling) checkpointTimeDiff += System.nanoTime() - lastCheckpointTime;
+    }
+
+    /**
+     * File the tree at index i, with its intervals and attributes, is checkpointed to.
+     */
+    private File treeCheckpointFile(int i) {
+        return new File(checkpointPath + "DrCIF" + seed + "-" + i + ".ser");
+    }
+
+    /**
+     * Waits for any checkpoint still being written in the background.
+     *
+     * @throws Exception if a checkpoint failed to write
+     */
+    private void finishCheckpointing() throws Exception {
+        long time = System.nanoTime();
+        checkpointWriter.flush();
+        if (internalContractCheckpointHandling) checkpointTimeDiff += System.nanoTime() - time;
+    }
+
     /**
      * Copies values from a loaded DrCIF object into this object.
      *
@@ -1174,6 +1289,7 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
             numInstances = saved.numInstances;
             numDimensions = saved.numDimensions;
             intervalDimensions = saved.intervalDimensions;
+            numCheckpointedTrees = saved.numCheckpointedTrees;
             //c22 = saved.c22;
             //fft = saved.fft;
             //di = saved.di;
@@ -1193,6 +1309,21 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
         } catch (Exception ex) {
             System.out.println("Unable to assign variables when loading serialised file");
         }
+
+        //checkpoints without the trees record how many were written to their own files, older ones hold them all
+        if (trees == null) {
+            trees = new ArrayList<>(numCheckpointedTrees);
+            intervals = new ArrayList<>(numCheckpointedTrees);
+            subsampleAtts = new ArrayList<>(numCheckpointedTrees);
+            intervalDimensions = new ArrayList<>(numCheckpointedTrees);
+            for (int i = 0; i < numCheckpointedTrees; i++) {
+                Object[] tree = (Object[]) CheckpointFiles.load(treeCheckpointFile(i), getCheckpointSerializer());
+                trees.add((Classifier) tree[0]);
+                intervals.add((int[][][]) tree[1]);
+                subsampleAtts.add((int[]) tree[2]);
+                intervalDimensions.add((int[][]) tree[3]);
+            }
+        }
     }
 
     /**
@@ -1717,94 +1848,50 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
         }
     }
 
-    public static final Function<Interval, Double> c22_0 = (Interval i) -> {
-        double[] intervalArray = Arrays.copyOfRange(i.series, i.start, i.end + 1);
-        return Catch22.getSummaryStatByIndex(0, intervalArray, true);
-    };
-    public static final Function<Interval, Double> c22_1 = (Interval i) -> {
-        double[] intervalArray = Arrays.copyOfRange(i.series, i.start, i.end + 1);
-        return Catch22.getSummaryStatByIndex(1, intervalArray, true);
-    };
-    public static final Function<Interval, Double> c22_2 = (Interval i) -> {
-        double[] intervalArray = Arrays.copyOfRange(i.series, i.start, i.end + 1);
-        return Catch22.getSummaryStatByIndex(2, intervalArray, true);
-    };
-    public static final Function<Interval, Double> c22_3 = (Interval i) -> {
-        double[] intervalArray = Arrays.copyOfRange(i.series, i.start, i.end + 1);
-        return Catch22.getSummaryStatByIndex(3, intervalArray, true);
-    };
-    public static final Function<Interval, Double> c22_4 = (Interval i) -> {
-        double[] intervalArray = Arrays.copyOfRange(i.series, i.start, i.end + 1);
-        return Catch22.getSummaryStatByIndex(4, intervalArray, true);
-    };
-    public static final Function<Interval, Double> c22_5 = (Interval i) -> {
-        double[] intervalArray = Arrays.copyOfRange(i.series, i.start, i.end + 1);
-        return Catch22.getSummaryStatByIndex(5, intervalArray, true);
-    };
-    public static final Function<Interval, Double> c22_6 = (Interval i) -> {
-        double[] intervalArray = Arrays.copyOfRange(i.series, i.start, i.end + 1);
-        return Catch22.getSummaryStatByIndex(6, intervalArray, true);
-    };
-    public static final Function<Interval, Double> c22_7 = (Interval i) -> {
-        double[] intervalArray = Arrays.copyOfRange(i.series, i.start, i.end + 1);
-        return Catch22.getSummaryStatByIndex(7, intervalArray, true);
-    };
-    public static final Function<Interval, Double> c22_8 = (Interval i) -> {
-        double[] intervalArray = Arrays.copyOfRange(i.series, i.start, i.end + 1);
-        return Catch22.getSummaryStatByIndex(8, intervalArray, true);
-    };
-    public static final Function<Interval, Double> c22_9 = (Interval i) -> {
-        double[] intervalArray = Arrays.copyOfRange(i.series, i.start, i.end + 1);
-        return Catch22.getSummaryStatByIndex(9, intervalArray, true);
-    };
-    public static final Function<Interval, Double> c22_10 = (Interval i) -> {
-        double[] intervalArray = Arrays.copyOfRange(i.series, i.start, i.end + 1);
-        return Catch22.getSummaryStatByIndex(10, intervalArray, true);
-    };
-    public static final Function<Interval, Double> c22_11 = (Interval i) -> {
-        double[] intervalArray = Arrays.copyOfRange(i.series, i.start, i.end + 1);
-        return Catch22.getSummaryStatByIndex(11, intervalArray, true);
-    };
-    public static final Function<Interval, Double> c22_12 = (Interval i) -> {
-        double[] intervalArray = Arrays.copyOfRange(i.series, i.start, i.end + 1);
-        return Catch22.getSummaryStatByIndex(12, intervalArray, true);
-    };
-    public static final Function<Interval, Double> c22_13 = (Interval i) -> {
-        double[] intervalArray = Arrays.copyOfRange(i.series, i.start, i.end + 1);
-        return Catch22.getSummaryStatByIndex(13, intervalArray, true);
-    };
-    public static final Function<Interval, Double> c22_14 = (Interval i) -> {
-        double[] intervalArray = Arrays.copyOfRange(i.series, i.start, i.end + 1);
-        return Catch22.getSummaryStatByIndex(14, intervalArray, true);
-    };
-    public static final Function<Interval, Double> c22_15 = (Interval i) -> {
-        double[] intervalArray = Arrays.copyOfRange(i.series, i.start, i.end + 1);
-        return Catch22.getSummaryStatByIndex(15, intervalArray, true);
-    };
-    public static final Function<Interval, Double> c22_16 = (Interval i) -> {
-        double[] intervalArray = Arrays.copyOfRange(i.series, i.start, i.end + 1);
-        return Catch22.getSummaryStatByIndex(16, intervalArray, true);
-    };
-    public static final Function<Interval, Double> c22_17 = (Interval i) -> {
-        double[] intervalArray = Arrays.copyOfRange(i.series, i.start, i.end + 1);
-        return Catch22.getSummaryStatByIndex(17, intervalArray, true);
-    };
-    public static final Function<Interval, Double> c22_18 = (Interval i) -> {
-        double[] intervalArray = Arrays.copyOfRange(i.series, i.start, i.end + 1);
-        return Catch22.getSummaryStatByIndex(18, intervalArray, true);
-    };
-    public static final Function<Interval, Double> c22_19 = (Interval i) -> {
-        double[] intervalArray = Arrays.copyOfRange(i.series, i.start, i.end + 1);
-        return Catch22.getSummaryStatByIndex(19, intervalArray, true);
-    };
-    public static final Function<Interval, Double> c22_20 = (Interval i) -> {
-        double[] intervalArray = Arrays.copyOfRange(i.series, i.start, i.end + 1);
-        return Catch22.getSummaryStatByIndex(20, intervalArray, true);
-    };
-    public static final Function<Interval, Double> c22_21 = (Interval i) -> {
-        double[] intervalArray = Arrays.copyOfRange(i.series, i.start, i.end + 1);
-        return Catch22.getSummaryStatByIndex(21, intervalArray, true);
-    };
+    public static final Function<Interval, Double> c22_0 = (Interval i) ->
+            Catch22.getSummaryStatByIndex(0, i.series, i.start, i.end, true);
+    public static final Function<Interval, Double> c22_1 = (Interval i) ->
+            Catch22.getSummaryStatByIndex(1, i.series, i.start, i.end, true);
+    public static final Function<Interval, Double> c22_2 = (Interval i) ->
+            Catch22.getSummaryStatByIndex(2, i.series, i.start, i.end, true);
+    public static final Function<Interval, Double> c22_3 = (Interval i) ->
+            Catch22.getSummaryStatByIndex(3, i.series, i.start, i.end, true);
+    public static final Function<Interval, Double> c22_4 = (Interval i) ->
+            Catch22.getSummaryStatByIndex(4, i.series, i.start, i.end, true);
+    public static final Function<Interval, Double> c22_5 = (Interval i) ->
+            Catch22.getSummaryStatByIndex(5, i.series, i.start, i.end, true);
+    public static final Function<Interval, Double> c22_6 = (Interval i) ->
+            Catch22.getSummaryStatByIndex(6, i.series, i.start, i.end, true);
+    public static final Function<Interval, Double> c22_7 = (Interval i) ->
+            Catch22.getSummaryStatByIndex(7, i.series, i.start, i.end, true);
+    public static final Function<Interval, Double> c22_8 = (Interval i) ->
+            Catch22.getSummaryStatByIndex(8, i.series, i.start, i.end, true);
+    public static final Function<Interval, Double> c22_9 = (Interval i) ->
+            Catch22.getSummaryStatByIndex(9, i.series, i.start, i.end, true);
+    public static final Function<Interval, Double> c22_10 = (Interval i) ->
+            Catch22.getSummaryStatByIndex(10, i.series, i.start, i.end, true);
+    public static final Function<Interval, Double> c22_11 = (Interval i) ->
+            Catch22.getSummaryStatByIndex(11, i.series, i.start, i.end, true);
+    public static final Function<Interval, Double> c22_12 = (Interval i) ->
+            Catch22.getSummaryStatByIndex(12, i.series, i.start, i.end, true);
+    public static final Function<Interval, Double> c22_13 = (Interval i) ->
+            Catch22.getSummaryStatByIndex(13, i.series, i.start, i.end, true);
+    public static final Function<Interval, Double> c22_14 = (Interval i) ->
+            Catch22.getSummaryStatByIndex(14, i.series, i.start, i.end, true);
+    public static final Function<Interval, Double> c22_15 = (Interval i) ->
+            Catch22.getSummaryStatByIndex(15, i.series, i.start, i.end, true);
+    public static final Function<Interval, Double> c22_16 = (Interval i) ->
+            Catch22.getSummaryStatByIndex(16, i.series, i.start, i.end, true);
+    public static final Function<Interval, Double> c22_17 = (Interval i) ->
+            Catch22.getSummaryStatByIndex(17, i.series, i.start, i.end, true);
+    public static final Function<Interval, Double> c22_18 = (Interval i) ->
+            Catch22.getSummaryStatByIndex(18, i.series, i.start, i.end, true);
+    public static final Function<Interval, Double> c22_19 = (Interval i) ->
+            Catch22.getSummaryStatByIndex(19, i.series, i.start, i.end, true);
+    public static final Function<Interval, Double> c22_20 = (Interval i) ->
+            Catch22.getSummaryStatByIndex(20, i.series, i.start, i.end, true);
+    public static final Function<Interval, Double> c22_21 = (Interval i) ->
+            Catch22.getSummaryStatByIndex(21, i.series, i.start, i.end, true);
     public static final Function<Interval, Double> mean = (Interval i) ->
             FeatureSet.calcFeatureByIndex(22, i.start, i.end, i.series);
     public static final Function<Interval, Double> median = (Interval i) ->
@@ -329,6 +329,15 @@ public class Arsenal extends EnhancedAbstractClassifier implements TrainTimeCont
         return findIndexOfMax(probs, rand);
     }
 
+    /**
+     * Predicting only reads the fitted kernels and ridge coefficients, so batches can be predicted in parallel. Other 
+     * classifiers are not known to be safe to predict with concurrently.
+     */
+    @Override
+    public boolean canPredictConcurrently() {
+        return cls instanceof RidgeClassifierCV;
+    }
+
     public double[] distributionForInstance(Instance instance) throws Exception {
         double[] probs = new double[header.numClasses()];
         for (int i = 0; i < classifiers.length; i++) {
@@ -238,6 +238,15 @@ public class ROCKETClassifier extends EnhancedAbstractClassifier implements Trai
         return findIndexOfMax(probs, rand);
     }
 
+    /**
+     * Predicting only reads the fitted kernels and ridge coefficients, so batches can be predicted in parallel. Other 
+     * classifiers are not known to be safe to predict with concurrently.
+     */
+    @Override
+    public boolean canPredictConcurrently() {
+        return cls instanceof RidgeClassifierCV;
+    }
+
     public double[] distributionForInstance(Instance instance) throws Exception {
         Instance transformedInst = rocket.transform(instance);
         transformedInst.setDataset(header);
@@ -94,6 +94,14 @@ public class DTW1NN extends Efficient1NN {
         return super.loocv(train);
     }
 
+    @Override
+    public ParallelLoocv.Search loocv(Instances train, ParallelLoocv search) throws Exception {
+        if (this.allowLoocv == true && this.classifierIdentifier.contains("R1")) {
+            this.classifierIdentifier = this.classifierIdentifier.replace("R1", "Rn");
+        }
+        return super.loocv(train, search);
+    }
+
     @Override
     public double[] loocv(Instances[] train) throws Exception {
         if (this.allowLoocv == true && this.classifierIdentifier.contains("R1")) {
@@ -299,6 +307,15 @@ public class DTW1NN extends Efficient1NN {
         return this.r + "";
     }
 
+    /**
+     * The distance only depends on r through the window size, and the band of the distance is within the window, so
+     * LB_Keogh with this window bounds it
+     */
+    @Override
+    public int getLowerBoundWindow(int seriesLength) {
+        return getWindowSize(seriesLength);
+    }
+
 
     /************************************************************************************************
      Support for FastEE
@@ -67,6 +67,11 @@ public class DTWKNN extends DTW1NN {
         this.k = k;
     }
     
+    @Override
+    protected boolean isParallelLoocvSupported() {
+        return false;
+    }
+
     @Override
     public double classifyInstance(Instance instance) throws Exception {
         return indexOfMax(distributionForInstance(instance));
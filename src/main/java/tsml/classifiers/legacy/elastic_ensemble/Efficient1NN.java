@@ -24,6 +24,8 @@ import java.util.Scanner;
 
 import experiments.data.DatasetLoading;
 import tsml.classifiers.EnhancedAbstractClassifier;
+import tsml.classifiers.MultiThreadable;
+import tsml.classifiers.TrainTimeContractable;
 import tsml.classifiers.legacy.elastic_ensemble.fast_elastic_ensemble.CandidateNN;
 import tsml.classifiers.legacy.elastic_ensemble.fast_elastic_ensemble.utils.SequenceStatsCache;
 import utilities.InstanceTools;
@@ -42,10 +44,14 @@ import weka.core.Instances;
  * E.G. a DTW implementation with window = 0.5 (50%) for two instances with 10
  * channels would calculate the DTW distance separately for each channel, and
  * sum the 10 distances together.
+ * <p>
+ * The univariate LOOCV over the 100 param options is run by ParallelLoocv, over numThreads threads and within the
+ * train time limit if one is set.
  *
  * @author Jason Lines (j.lines@uea.ac.uk)
  */
-public abstract class Efficient1NN extends EnhancedAbstractClassifier implements SaveParameterInfo{
+public abstract class Efficient1NN extends EnhancedAbstractClassifier implements SaveParameterInfo, MultiThreadable,
+        TrainTimeContractable {
     protected Instances train;
     protected Instances[] trainGroup;
     protected String classifierIdentifier;
@@ -58,6 +64,9 @@ public abstract class Efficient1NN extends EnhancedAbstractClassifier implements
     private String datasetName;
     private int resampleId;
 
+    protected int numThreads = 1;
+    protected long trainContractTimeNanos = 0;
+
     public Efficient1NN() {
         super(CANNOT_ESTIMATE_OWN_PERFORMANCE);
     }
@@ -117,6 +126,48 @@ public abstract class Efficient1NN extends EnhancedAbstractClassifier implements
      */
     public abstract void setParamsFromParamId(Instances train, int paramId);
 
+    /**
+     * The window of an LB_Keogh lower bound for the distance with the current params, used to prune the LOOCV. Only
+     * override for distances which depend on the params only through the window, as params giving the same window
+     * share their LOOCV results.
+     *
+     * @param seriesLength length of the series, excluding the class value
+     * @return the window, or -1 if the distance has no LB_Keogh lower bound
+     */
+    public int getLowerBoundWindow(int seriesLength) {
+        return -1;
+    }
+
+    /**
+     * @return whether the LOOCV predictions are those of a 1NN classifier, so can be found by ParallelLoocv
+     */
+    protected boolean isParallelLoocvSupported() {
+        return true;
+    }
+
+    @Override
+    public void enableMultiThreading(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * Limits the time of the LOOCV, which then uses the best param options evaluated so far
+     */
+    @Override
+    public void setTrainTimeLimit(long time) {
+        trainContractTimeNanos = time;
+    }
+
+    @Override
+    public boolean withinTrainContract(long start) {
+        return trainContractTimeNanos <= 0 || start < trainContractTimeNanos;
+    }
+
+    @Override
+    public long getTrainContractTimeNanos() {
+        return trainContractTimeNanos;
+    }
+
     public void buildClassifier(Instances train) throws Exception {
         this.train = train;
         this.trainGroup = null;
@@ -298,6 +349,24 @@ public abstract class Efficient1NN extends EnhancedAbstractClassifier implements
 
 
     public double[] loocv(Instances train) throws Exception {
+        ParallelLoocv search = new ParallelLoocv(numThreads);
+        search.setTrainTimeLimit(trainContractTimeNanos);
+        try {
+            return loocv(train, search).get();
+        } finally {
+            search.shutdown();
+        }
+    }
+
+    /**
+     * Starts the LOOCV on the threads of search, e.g. to share them between the measures of an ensemble. The result
+     * is loaded from file instead if file writing is on and it exists.
+     *
+     * @param train the train data
+     * @param search the search to run the LOOCV
+     * @return the LOOCV, whose result is the accuracy of the best params followed by the train predictions
+     */
+    public ParallelLoocv.Search loocv(Instances train, ParallelLoocv search) throws Exception {
         double[] accAndPreds = null;
         String parsedFileName = this.outputDir + this.classifierIdentifier + "/Predictions/" + datasetName + "/trainFold" + resampleId + ".csv";
 
@@ -332,7 +401,7 @@ public abstract class Efficient1NN extends EnhancedAbstractClassifier implements
 //                    System.err.println(((double)correct/train.numInstances())+" "+accAndPreds[0]);
 //                    throw new Exception("Attempted file loading, but accuracy doesn't match itself?!");
 //                }
-                return accAndPreds;
+                return search.completed(accAndPreds);
             } else {
                 new File(this.outputDir + this.classifierIdentifier + "/Predictions/" + datasetName + "/").mkdirs();
             }
@@ -341,42 +410,54 @@ public abstract class Efficient1NN extends EnhancedAbstractClassifier implements
 //        write output
 //        maybe a different version which looks for missing files and runs them?
 
-
-        double bsfAcc = -1;
-        int bsfParamId = -1;
-        double[] bsfaccAndPreds = null;
-
-        for (int paramId = 0; paramId < 100; paramId++) {
-//            System.out.print(paramId+" ");
-            accAndPreds = loocvAccAndPreds(train, paramId);
-//            System.out.println(this.allowLoocv);
-//            System.out.println(accAndPreds[0]);
-            if (accAndPreds[0] > bsfAcc) {
-                bsfAcc = accAndPreds[0];
-                bsfParamId = paramId;
-                bsfaccAndPreds = accAndPreds;
-            }
-            if (!this.allowLoocv) {
-                paramId = 100;
+        // the per param files are written by loocvAccAndPreds
+        if (this.individualCvParamFileWriting || !isParallelLoocvSupported()) {
+            double bsfAcc = -1;
+            int bsfParamId = -1;
+            double[] bsfaccAndPreds = null;
+
+            for (int paramId = 0; paramId < 100; paramId++) {
+//                System.out.print(paramId+" ");
+                accAndPreds = loocvAccAndPreds(train, paramId);
+//                System.out.println(this.allowLoocv);
+//                System.out.println(accAndPreds[0]);
+                if (accAndPreds[0] > bsfAcc) {
+                    bsfAcc = accAndPreds[0];
+                    bsfParamId = paramId;
+                    bsfaccAndPreds = accAndPreds;
+                }
+                if (!this.allowLoocv) {
+                    paramId = 100;
+                }
             }
+            finishLoocv(train, bsfParamId, bsfaccAndPreds);
+            return search.completed(bsfaccAndPreds);
         }
+
+        return search.submit(this, train);
+    }
+
+    /**
+     * Builds on the full train data with the best params found by the LOOCV, and writes the parsed results if file
+     * writing is on.
+     */
+    void finishLoocv(Instances train, int bsfParamId, double[] bsfaccAndPreds) throws Exception {
 //        System.out.println(this.classifierIdentifier+", bsfParamId "+bsfParamId);
         this.buildClassifier(train);
         if (this.allowLoocv) {
             this.setParamsFromParamId(train, bsfParamId);
         }
         if (fileWriting) {
+            String parsedFileName = this.outputDir + this.classifierIdentifier + "/Predictions/" + datasetName + "/trainFold" + resampleId + ".csv";
             FileWriter out = new FileWriter(parsedFileName);
             out.append(this.classifierIdentifier + "," + datasetName + ",parsedTrain\n");
             out.append(bsfParamId + "\n");
-            out.append(bsfAcc + "\n");
+            out.append(bsfaccAndPreds[0] + "\n");
             for (int i = 1; i < bsfaccAndPreds.length; i++) {
                 out.append(train.instance(i - 1).classValue() + "," + bsfaccAndPreds[i] + "\n");
             }
             out.close();
         }
-
-        return bsfaccAndPreds;
     }
 
     DecimalFormat df = new DecimalFormat("##.###");
@@ -0,0 +1,379 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tsml.classifiers.legacy.elastic_ensemble;
+
+import tsml.classifiers.legacy.elastic_ensemble.fast_elastic_ensemble.lowerBounds.LbKeogh;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SerializedObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Leave-one-out cross validation of the 100 parameter options of Efficient1NN measures, spread over a thread pool.
+ *
+ * Work is split into tasks of (measure, paramId, block of instances), so one pool can serve all the measures of an
+ * ensemble while a single measure still uses every thread. Each thread evaluates its own copy of a measure, set to the
+ * parameters of the task. The predictions are the same as Efficient1NN.loocvAccAndPreds: the neighbours of each
+ * instance are searched in order over the rest of the train data with the same early abandoning, and ties are split
+ * by class counts.
+ *
+ * Measures with an LB_Keogh window (Efficient1NN.getLowerBoundWindow) skip candidates whose lower bound is above the
+ * best distance so far. Their distances depend on the parameters only through the window, so parameters giving the
+ * same window are evaluated once and share their envelopes and predictions.
+ *
+ * Tasks are queued in parameter order, interleaved between measures, so under a train time limit each measure has
+ * evaluated a similar prefix of its parameters when time runs out. The best of the parameters fully evaluated is then
+ * used. The first parameter of each measure is always evaluated.
+ */
+public class ParallelLoocv {
+
+    // blocks of instances per parameter per thread, so threads finishing early can take work from the others
+    private static final int BLOCKS_PER_THREAD = 4;
+
+    private final int numThreads;
+    private final ExecutorService executor;
+    private long deadline = Long.MAX_VALUE;
+    private boolean contracted = false;
+
+    // searches submitted but not yet queued, queued together so their tasks are interleaved
+    private final ArrayList<Search> pending = new ArrayList<>();
+
+    public ParallelLoocv(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+        this.executor = Executors.newFixedThreadPool(this.numThreads);
+    }
+
+    /**
+     * Limits the time for the searches queued from now, after which parameters not yet started are skipped.
+     *
+     * @param nanos the time limit in nanoseconds, <= 0 for no limit
+     */
+    public void setTrainTimeLimit(long nanos) {
+        contracted = nanos > 0;
+        deadline = contracted ? System.nanoTime() + nanos : Long.MAX_VALUE;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Adds a search of the parameters of measure on train. The search starts when the result of any search is first
+     * requested, so submit the searches of all measures first.
+     *
+     * @param measure the measure, which is set to the best parameters on the full train data once the result is got
+     * @param train the train data
+     * @return the search, to get the result from
+     */
+    public Search submit(Efficient1NN measure, Instances train) throws Exception {
+        Search search = new Search(measure, train);
+        pending.add(search);
+        return search;
+    }
+
+    /**
+     * @param accAndPreds a result found without searching, e.g. loaded from file
+     * @return a search which is already complete with the result
+     */
+    public Search completed(double[] accAndPreds) {
+        return new Search(accAndPreds);
+    }
+
+    private synchronized void start() {
+        if (pending.isEmpty())
+            return;
+
+        int maxParams = 0;
+        for (Search search : pending) {
+            maxParams = Math.max(maxParams, search.numParams);
+        }
+        for (int p = 0; p < maxParams; p++) {
+            for (Search search : pending) {
+                if (p < search.numParams && search.owner[p] == p)
+                    search.queue(p);
+            }
+        }
+        pending.clear();
+    }
+
+    /**
+     * The search of one measure.
+     */
+    public class Search {
+
+        private final Efficient1NN measure;
+        private final Instances train;
+        private final double[] classValues;
+        private final int numParams;
+
+        // params with the same window share the evaluation of the first param with that window, the owner
+        private final int[] owner;
+        private final int[] windows;
+        private final double[][] series;
+
+        private final int blockSize;
+        private final int numBlocks;
+        private int[][] preds;
+        private AtomicInteger[] blocksDone;
+
+        private final SerializedObject template;
+        private final ThreadLocal<Efficient1NN> workers;
+        private final ThreadLocal<double[][]> envelopes;
+        private final ArrayList<Future<?>> futures = new ArrayList<>();
+
+        private double[] result;
+
+        private Search(double[] accAndPreds) {
+            measure = null;
+            train = null;
+            classValues = null;
+            numParams = 0;
+            owner = null;
+            windows = null;
+            series = null;
+            blockSize = 0;
+            numBlocks = 0;
+            template = null;
+            workers = null;
+            envelopes = null;
+            result = accAndPreds;
+        }
+
+        private Search(Efficient1NN measure, Instances train) throws Exception {
+            this.measure = measure;
+            this.train = train;
+            int n = train.numInstances();
+            classValues = train.attributeToDoubleArray(train.classIndex());
+            numParams = measure.allowLoocv ? 100 : 1;
+
+            // the measure is copied for each thread without any data it holds
+            Instances measureTrain = measure.train;
+            Instances[] measureTrainGroup = measure.trainGroup;
+            measure.train = null;
+            measure.trainGroup = null;
+            try {
+                template = new SerializedObject(measure);
+            } finally {
+                measure.train = measureTrain;
+                measure.trainGroup = measureTrainGroup;
+            }
+            workers = ThreadLocal.withInitial(this::newWorker);
+
+            // the lower bound needs the class value last, as assumed by the distances
+            int length = train.numAttributes() - 1;
+            boolean lowerBounds = train.classIndex() == length;
+            owner = new int[numParams];
+            windows = new int[numParams];
+            HashMap<Integer, Integer> windowOwners = new HashMap<>();
+            Efficient1NN planner = lowerBounds ? newWorker() : null;
+            for (int p = 0; p < numParams; p++) {
+                owner[p] = p;
+                windows[p] = -1;
+                if (planner != null) {
+                    if (measure.allowLoocv)
+                        planner.setParamsFromParamId(train, p);
+                    windows[p] = planner.getLowerBoundWindow(length);
+                    if (windows[p] >= 0) {
+                        Integer first = windowOwners.putIfAbsent(windows[p], p);
+                        if (first != null)
+                            owner[p] = first;
+                    }
+                }
+            }
+
+            if (windowOwners.isEmpty()) {
+                series = null;
+                envelopes = null;
+            } else {
+                series = new double[n][];
+                for (int i = 0; i < n; i++) {
+                    series[i] = Arrays.copyOf(train.instance(i).toDoubleArray(), length);
+                }
+                envelopes = ThreadLocal.withInitial(() -> new double[2][length]);
+            }
+
+            blockSize = Math.max(1, (n + numThreads * BLOCKS_PER_THREAD - 1) / (numThreads * BLOCKS_PER_THREAD));
+            numBlocks = (n + blockSize - 1) / blockSize;
+            preds = new int[numParams][];
+            blocksDone = new AtomicInteger[numParams];
+        }
+
+        /**
+         * Waits for the search to finish, and sets the measure to the best parameters found on the full train data.
+         *
+         * @return the accuracy of the best parameters followed by their prediction for each train instance
+         */
+        public double[] get() throws Exception {
+            if (result != null)
+                return result;
+
+            start();
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception)
+                        throw (Exception) e.getCause();
+                    throw e;
+                }
+            }
+            futures.clear();
+
+            int n = train.numInstances();
+            double bsfAcc = -1;
+            int bsfParamId = -1;
+            int[] bsfPreds = null;
+            for (int p = 0; p < numParams; p++) {
+                int o = owner[p];
+                if (blocksDone[o] == null || blocksDone[o].get() < numBlocks)
+                    continue;
+
+                int correct = 0;
+                for (int i = 0; i < n; i++) {
+                    if (preds[o][i] == classValues[i])
+                        correct++;
+                }
+                double acc = (double) correct / n;
+                if (acc > bsfAcc) {
+                    bsfAcc = acc;
+                    bsfParamId = p;
+                    bsfPreds = preds[o];
+                }
+            }
+
+            result = new double[n + 1];
+            result[0] = bsfAcc;
+            for (int i = 0; i < n; i++) {
+                result[i + 1] = bsfPreds[i];
+            }
+            preds = null;
+
+            measure.finishLoocv(train, bsfParamId, result);
+            return result;
+        }
+
+        private void queue(int paramId) {
+            preds[paramId] = new int[train.numInstances()];
+            blocksDone[paramId] = new AtomicInteger();
+            // the first parameter is always evaluated, so there is a result
+            boolean required = paramId == 0;
+            for (int b = 0; b < numBlocks; b++) {
+                int from = b * blockSize;
+                int to = Math.min(from + blockSize, train.numInstances());
+                futures.add(executor.submit(() -> {
+                    if (!required && contracted && System.nanoTime() > deadline)
+                        return null;
+                    evaluate(paramId, from, to);
+                    blocksDone[paramId].incrementAndGet();
+                    return null;
+                }));
+            }
+        }
+
+        private void evaluate(int paramId, int from, int to) {
+            Efficient1NN worker = workers.get();
+            if (measure.allowLoocv)
+                worker.setParamsFromParamId(train, paramId);
+
+            int window = windows[paramId];
+            for (int i = from; i < to; i++) {
+                preds[paramId][i] = nearestNeighbourClass(worker, i, window);
+            }
+        }
+
+        /**
+         * 1NN class of instance i over the rest of the train data, as Efficient1NN.classifyInstance.
+         */
+        private int nearestNeighbourClass(Efficient1NN worker, int i, int window) {
+            Instance query = train.instance(i);
+            double[] upper = null;
+            double[] lower = null;
+            if (window >= 0) {
+                double[][] envelope = envelopes.get();
+                upper = envelope[0];
+                lower = envelope[1];
+                LbKeogh.fillUL(series[i], window, upper, lower);
+            }
+
+            double bsfDistance = Double.MAX_VALUE;
+            int[] classCounts = new int[train.numClasses()];
+            for (int j = 0; j < train.numInstances(); j++) {
+                if (j == i)
+                    continue;
+                // skipped only if strictly worse, as ties count towards the prediction
+                if (window >= 0 && lbKeogh(series[j], upper, lower, bsfDistance) > bsfDistance)
+                    continue;
+
+                double dist = worker.distance(query, train.instance(j), bsfDistance);
+                if (dist < bsfDistance) {
+                    bsfDistance = dist;
+                    Arrays.fill(classCounts, 0);
+                    classCounts[(int) classValues[j]]++;
+                } else if (dist == bsfDistance) {
+                    classCounts[(int) classValues[j]]++;
+                }
+            }
+
+            int bsfClass = -1;
+            int bsfCount = -1;
+            for (int c = 0; c < classCounts.length; c++) {
+                if (classCounts[c] > bsfCount) {
+                    bsfCount = classCounts[c];
+                    bsfClass = c;
+                }
+            }
+            return bsfClass;
+        }
+
+        private Efficient1NN newWorker() {
+            try {
+                return (Efficient1NN) template.getObject();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * LB_Keogh of candidate against the envelope of a query, abandoned once it is above cutoff.
+     */
+    private static double lbKeogh(double[] candidate, double[] upper, double[] lower, double cutoff) {
+        double res = 0;
+        for (int i = 0; i < candidate.length; i++) {
+            double c = candidate[i];
+            if (c < lower[i]) {
+                res += (lower[i] - c) * (lower[i] - c);
+            } else if (c > upper[i]) {
+                res += (upper[i] - c) * (upper[i] - c);
+            } else {
+                continue;
+            }
+            if (res > cutoff)
+                return res;
+        }
+        return res;
+    }
+}
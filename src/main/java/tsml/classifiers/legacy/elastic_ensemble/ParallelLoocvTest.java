@@ -0,0 +1,140 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.classifiers.legacy.elastic_ensemble;
+
+import experiments.data.DatasetLoading;
+import java.util.EnumMap;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import tsml.classifiers.distance_based.ElasticEnsemble;
+import tsml.classifiers.distance_based.ElasticEnsemble.ConstituentClassifiers;
+import tsml.transformers.Derivative;
+import weka.core.Instances;
+
+/**
+ * Purpose: test the LOOCV of the ElasticEnsemble constituents by ParallelLoocv gives the same accuracy, predictions
+ * and params as the sequential search over loocvAccAndPreds, on 1 and several threads, with and without a contract.
+ */
+public class ParallelLoocvTest {
+
+    private static final EnumMap<ConstituentClassifiers, Efficient1NN> SEQUENTIAL =
+            new EnumMap<>(ConstituentClassifiers.class);
+    private static final EnumMap<ConstituentClassifiers, double[]> SEQUENTIAL_ACC_AND_PREDS =
+            new EnumMap<>(ConstituentClassifiers.class);
+
+    private static Instances train(ConstituentClassifiers constituent) throws Exception {
+        Instances train = DatasetLoading.sampleItalyPowerDemand(0)[0];
+        return ElasticEnsemble.isDerivative(constituent) ? new Derivative().transform(train) : train;
+    }
+
+    /**
+     * The search as it was before ParallelLoocv, leaving the measure set to the best params.
+     */
+    private static double[] sequentialLoocv(Efficient1NN measure, Instances train) throws Exception {
+        double bsfAcc = -1;
+        int bsfParamId = -1;
+        double[] bsfAccAndPreds = null;
+        for (int paramId = 0; paramId < (measure.allowLoocv ? 100 : 1); paramId++) {
+            double[] accAndPreds = measure.loocvAccAndPreds(train, paramId);
+            if (accAndPreds[0] > bsfAcc) {
+                bsfAcc = accAndPreds[0];
+                bsfParamId = paramId;
+                bsfAccAndPreds = accAndPreds;
+            }
+        }
+        if (measure.allowLoocv)
+            measure.setParamsFromParamId(train, bsfParamId);
+        return bsfAccAndPreds;
+    }
+
+    private static Efficient1NN parallel(ConstituentClassifiers constituent, int numThreads, long contract)
+            throws Exception {
+        Efficient1NN measure = ElasticEnsemble.getClassifier(constituent);
+        measure.enableMultiThreading(numThreads);
+        measure.setTrainTimeLimit(contract);
+        return measure;
+    }
+
+    /**
+     * The sequential search of each constituent, done once as it is by far the slowest.
+     */
+    private static synchronized Efficient1NN sequential(ConstituentClassifiers constituent) throws Exception {
+        Efficient1NN expected = SEQUENTIAL.get(constituent);
+        if (expected == null) {
+            expected = ElasticEnsemble.getClassifier(constituent);
+            SEQUENTIAL_ACC_AND_PREDS.put(constituent, sequentialLoocv(expected, train(constituent)));
+            SEQUENTIAL.put(constituent, expected);
+        }
+        return expected;
+    }
+
+    private static void assertSameAsSequential(int numThreads, long contract) throws Exception {
+        for (ConstituentClassifiers constituent : ConstituentClassifiers.values()) {
+            Efficient1NN expected = sequential(constituent);
+
+            Efficient1NN actual = parallel(constituent, numThreads, contract);
+            String msg = constituent + " threads " + numThreads + " contract " + contract;
+            Assert.assertArrayEquals(msg, SEQUENTIAL_ACC_AND_PREDS.get(constituent), actual.loocv(train(constituent)),
+                    0);
+            Assert.assertEquals(msg, expected.getParamInformationString(), actual.getParamInformationString());
+        }
+    }
+
+    @Test
+    public void testSameAsSequential() throws Exception {
+        assertSameAsSequential(1, 0);
+        assertSameAsSequential(4, 0);
+    }
+
+    @Test
+    public void testSameAsSequentialContracted() throws Exception {
+        assertSameAsSequential(1, TimeUnit.HOURS.toNanos(1));
+        assertSameAsSequential(4, TimeUnit.HOURS.toNanos(1));
+    }
+
+    @Test
+    public void testContractRunOut() throws Exception {
+        // only the first params, which are always evaluated, are in time
+        for (ConstituentClassifiers constituent : ConstituentClassifiers.values()) {
+            Instances train = train(constituent);
+            Efficient1NN expected = ElasticEnsemble.getClassifier(constituent);
+            double[] expectedAccAndPreds = expected.loocvAccAndPreds(train, 0);
+
+            Efficient1NN actual = parallel(constituent, 4, 1);
+            Assert.assertArrayEquals(constituent.toString(), expectedAccAndPreds, actual.loocv(train), 0);
+            Assert.assertEquals(constituent.toString(), expected.getParamInformationString(),
+                    actual.getParamInformationString());
+        }
+    }
+
+    @Test
+    public void testEnsembleSameForThreads() throws Exception {
+        Instances[] data = DatasetLoading.sampleItalyPowerDemand(0);
+        ElasticEnsemble single = new ElasticEnsemble();
+        single.buildClassifier(data[0]);
+        ElasticEnsemble multi = new ElasticEnsemble();
+        multi.enableMultiThreading(4);
+        multi.setTrainTimeLimit(TimeUnit.HOURS.toNanos(1));
+        multi.buildClassifier(data[0]);
+
+        for (int i = 0; i < data[1].numInstances(); i++) {
+            Assert.assertArrayEquals("inst " + i, single.distributionForInstance(data[1].get(i)),
+                    multi.distributionForInstance(data[1].get(i)), 0);
+        }
+    }
+}
@@ -247,7 +247,7 @@ public abstract class MultivariateAbstractEnsemble extends AbstractEnsemble {
 
             if (!trainResultsLoaded)
                 errors.log("\nTRAIN results files for '" + modules[m].getModuleName() + "' on '" + datasetName + "' fold '" + seed + "' not found. ");
-            else if (needIndividualTrainPreds() && modules[m].trainResults.getProbabilityDistributions().isEmpty())
+            else if (needIndividualTrainPreds() && modules[m].trainResults.numInstances()==0)
                 errors.log("\nNo pred/distribution for instance data found in TRAIN results file for '" + modules[m].getModuleName() + "' on '" + datasetName + "' fold '" + seed + "'. ");
 
             if (!testResultsLoaded)
@@ -31,10 +31,15 @@ import evaluation.evaluators.CrossValidationEvaluator;
 import evaluation.tuning.ParameterSpace;
 import experiments.data.DatasetLoading;
 import machine_learning.classifiers.ensembles.EnhancedRotationForest;
+import tsml.classifiers.Checkpointable;
 import tsml.classifiers.Tuneable;
 import tsml.transformers.shapelet_tools.DefaultShapeletOptions;
 import tsml.transformers.shapelet_tools.ShapeletTransformFactoryOptions;
 import utilities.InstanceTools;
+import utilities.ObjectSizes;
+import utilities.serialisation.CheckpointCompression;
+import utilities.serialisation.CheckpointFiles;
+import utilities.serialisation.CheckpointSerializer;
 import weka.core.*;
 import weka.classifiers.Classifier;
 import tsml.transformers.PCA;
@@ -48,6 +53,8 @@ import tsml.transformers.shapelet_tools.search_functions.ShapeletSearch;
 import tsml.transformers.shapelet_tools.search_functions.ShapeletSearch.SearchType;
 import tsml.transformers.shapelet_tools.search_functions.ShapeletSearchOptions;
 import tsml.classifiers.EnhancedAbstractClassifier;
+import tsml.classifiers.MemoryContractable;
+import tsml.classifiers.MultiThreadable;
 import tsml.classifiers.TrainTimeContractable;
 import fileIO.FullAccessOutFile;
 import fileIO.OutFile;
@@ -65,14 +72,15 @@ import fileIO.OutFile;
  * or through full enumeration if this is possible in the contractHours. The best numShapeletsInTransform (default 1000)
  * shapelets are kept. It then classifies with a rotation forest of 200 trees.
 
- * STC is Contractable and Tuneable, but not Checkpointable yet.
+ * STC is Contractable, Tuneable and Checkpointable. The transform is checkpointed once the search is done, and the
+ * classifier is left to checkpoint itself if it is Checkpointable, the default rotation forest saving each tree.
  *
  * The transform can be configured with a rannge of ShapeletTransformOptions and the search can be performed with a number
  * search types. Only FULL and RANDOM are currently supported, but ShapeletSearch.SearchType contains a range of alternatives
  *
  */
 public class ShapeletTransformClassifier  extends EnhancedAbstractClassifier
-        implements TrainTimeContractable, Tuneable {
+        implements TrainTimeContractable, MemoryContractable, Tuneable, MultiThreadable, Checkpointable {
     private ShapeletTransform transform;    //Configurable ST
     private Instances shapeletData;         //Transformed shapelets header info stored here
     private Classifier classifier;          //Final classifier built on transformed shapelet data
@@ -107,6 +115,11 @@ public class ShapeletTransformClassifier  extends EnhancedAbstractClassifier
     private long transformContractTime = TimeUnit.NANOSECONDS.convert(transformContractHours, TimeUnit.HOURS);
     private long classifierContractTime = 0;//Time limit assigned to classifier, based on contractTime, but fixed in buildClassifier in an adhoc way
 
+    /* Memory contract: the number of shapelets is capped so the shapelets and transformed data fit in half the limit,
+    the search data is released after the transform, and the classifier is given what is left if it is MemoryContractable.
+     */
+    private long memoryLimitBytes = 0; //If <=0, no contract
+
 /**** Shapelet Transform Information *************/
     private long numShapeletsInProblem = 0; //Number of shapelets in problem if we do a full enumeration
     private double singleShapeletTime=0;    //Estimate of the time to evaluate a single shapelet
@@ -118,6 +131,9 @@ public class ShapeletTransformClassifier  extends EnhancedAbstractClassifier
 
     private boolean multivariate=false;     //Quick hack to test if I can get it to work.
 
+    private boolean multithreading = false;
+    private int threads = 1;
+
     public void setTransformTime(long t){
         transformContractTime=t;
     }
@@ -130,9 +146,10 @@ public class ShapeletTransformClassifier  extends EnhancedAbstractClassifier
 
 
     /************* CHECKPOINTING and SAVING ************ Could all  move to transformOptions */
-//Check pointing is not fully debugged
     private String checkpointFullPath=""; //location to check point
     private boolean checkpoint=false;
+    private transient CheckpointSerializer checkpointSerializer;
+    private CheckpointCompression checkpointCompression;
 //If these are set, the shapelet meta information is saved to <path>/Workspace/ and the transforms saved to <path>/Transforms
     private String shapeletOutputPath;
     private boolean saveShapelets=false;
@@ -216,26 +233,50 @@ public class ShapeletTransformClassifier  extends EnhancedAbstractClassifier
  //           printLineDebug(" Contract time limit = "+ transformContractTime);
             configureTrainTimeContract(data, transformContractTime);
         }
-        transform= constructShapeletTransform(data);
-        transform.setSuppressOutput(true);
-        if(transformContractTime >0) {
-            printLineDebug(" Shapelet search contract = "+transformContractTime/1000000000.0);
-            printLineDebug(" Classifier contract = "+classifierContractTime/1000000000.0);
-            double timePerShapelet= transformContractTime /numShapeletsToEvaluate;
-            transform.setContractTime(transformContractTime);
-            transform.setAdaptiveTiming(true);
-            transform.setTimePerShapelet(timePerShapelet);
-            printLineDebug(" time per shapelet =   contract = "+timePerShapelet);
+        File checkpointFile = new File(checkpointFullPath + "STC" + seed + ".ser");
+        if(checkpoint && checkpointFile.exists()){
+            //the search is done, only the train data needs transforming again
+            printLineDebug(" Loading shapelet transform from checkpoint file");
+            loadFromFile(checkpointFile.getPath());
+            shapeletData = transform.transform(data);
+            for(int del:redundantFeatures)
+                shapeletData.deleteAttributeAt(del);
         }
+        else {
+            transform= constructShapeletTransform(data);
+            transform.setSuppressOutput(true);
+            if(transformContractTime >0) {
+                printLineDebug(" Shapelet search contract = "+transformContractTime/1000000000.0);
+                printLineDebug(" Classifier contract = "+classifierContractTime/1000000000.0);
+//Time per shapelet for a single thread, the transform adjusts for the number of threads it uses
+                double timePerShapelet= transformContractTime*(multithreading ? threads : 1) /numShapeletsToEvaluate;
+                transform.setContractTime(transformContractTime);
+                transform.setAdaptiveTiming(true);
+                transform.setTimePerShapelet(timePerShapelet);
+                printLineDebug(" time per shapelet =   contract = "+timePerShapelet);
+            }
+            if(multithreading)
+                transform.enableMultiThreading(threads);
 //Put this in the options rather than here
-        transform.setPruneMatchingShapelets(pruneMatchingShapelets);
-        printLineDebug(" Begin Transform  with "+transform.getClass().getSimpleName()+" Use balanced classes = "+transform.getUseBalancedClass());
-        shapeletData = transform.fitTransform(data);
-        transformBuildTime=System.nanoTime()-startTime; //Need to store this
-        printLineDebug(" Transform build time = "+transformBuildTime/1000000000.0);
-        redundantFeatures=InstanceTools.removeRedundantTrainAttributes(shapeletData);
+            transform.setPruneMatchingShapelets(pruneMatchingShapelets);
+            printLineDebug(" Begin Transform  with "+transform.getClass().getSimpleName()+" Use balanced classes = "+transform.getUseBalancedClass());
+            shapeletData = transform.fitTransform(data);
+            if(memoryLimitBytes>0)
+                transform.releaseSearchData();
+            transformBuildTime=System.nanoTime()-startTime; //Need to store this
+            printLineDebug(" Transform build time = "+transformBuildTime/1000000000.0);
+            redundantFeatures=InstanceTools.removeRedundantTrainAttributes(shapeletData);
+            if(checkpoint)
+                saveCheckpoint(checkpointFile);
+        }
         if(saveShapelets)
             saveShapeletData(data);
+        if(checkpoint && classifier instanceof Checkpointable){
+            Checkpointable c=(Checkpointable)classifier;
+            c.setCheckpointPath(checkpointFullPath);
+            c.setCheckpointSerializer(getCheckpointSerializer());
+            c.setCheckpointCompression(getCheckpointCompression());
+        }
 
 
 
@@ -251,6 +292,12 @@ public class ShapeletTransformClassifier  extends EnhancedAbstractClassifier
             //HERE CHANGE TO ACTUAL TIME LEFT
             ((TrainTimeContractable) classifier).setTrainTimeLimit(classifierContractTime);
         }
+        if(memoryLimitBytes>0 && classifier instanceof MemoryContractable){
+            long transformBytes=ObjectSizes.deepSizeOf(transform)+ObjectSizes.deepSizeOf(shapeletData);
+            long classifierBytes=Math.max(memoryLimitBytes-transformBytes, memoryLimitBytes/10);
+            printLineDebug(" Transform memory = "+transformBytes+" classifier memory limit = "+classifierBytes);
+            ((MemoryContractable) classifier).setMemoryLimit(classifierBytes);
+        }
 
 
         classifier.buildClassifier(shapeletData);
@@ -275,6 +322,12 @@ public class ShapeletTransformClassifier  extends EnhancedAbstractClassifier
 
     }
 
+    @Override
+    public void enableMultiThreading(int numThreads) {
+        multithreading = true;
+        threads = numThreads;
+    }
+
     @Override
     public double classifyInstance(Instance ins) throws Exception{
         shapeletData.add(ins);
@@ -395,6 +448,13 @@ public class ShapeletTransformClassifier  extends EnhancedAbstractClassifier
         searchBuilder.setSearchType(searchType);
         if(numShapeletsInProblem==0)
             numShapeletsInProblem=ShapeletTransformTimingUtilities.calculateNumberOfShapelets(data.numInstances(), data.numAttributes()-1, transformOptions.getMinLength(), transformOptions.getMaxLength());
+        if(memoryLimitBytes>0){
+            long maxShapelets=maxShapeletsInMemory(data.numInstances(), transformOptions.getMaxLength());
+            if(numShapeletsInTransform>maxShapelets) {
+                printLineDebug(" Memory contract reduces shapelets in transform from "+numShapeletsInTransform+" to "+maxShapelets);
+                numShapeletsInTransform = (int) maxShapelets;
+            }
+        }
         transformOptions.setKShapelets(numShapeletsInTransform);
         searchBuilder.setNumShapeletsToEvaluate(numShapeletsToEvaluate/data.numInstances());//This is ignored if full search is performed
         transformOptions.setSearchOptions(searchBuilder.build());
@@ -414,6 +474,15 @@ public class ShapeletTransformClassifier  extends EnhancedAbstractClassifier
     }
 
 
+    /**
+     * Estimates the number of shapelets that fit in half the memory limit. Each shapelet retained costs a transformed
+     * attribute value for every case plus its content and normalised content, up to the max shapelet length
+     */
+    private long maxShapeletsInMemory(int n, int maxLength){
+        long bytesPerShapelet=8L*(n+2L*maxLength)+64;
+        return Math.max(1, memoryLimitBytes/2/bytesPerShapelet);
+    }
+
     /*********** METHODS TO CONFIGURE TRANSFORM
      * Note there are two types of parameters: data independent and data dependent. They are now all set here, but
      * former are set in the constructor, the latter in buildClassifier. We could tidy this up with lambdas
@@ -526,7 +595,8 @@ public class ShapeletTransformClassifier  extends EnhancedAbstractClassifier
             searchType = SearchType.RANDOM;
             numShapeletsInProblem = ShapeletTransformTimingUtilities.calculateNumberOfShapelets(n, m, 3, m);
 //This is aarons way of doing it based on hard coded estimate of the time for a single operation
-            proportionToEvaluate= estimatePropOfFullSearchAaron(n,m,time);
+//Each thread evaluates shapelets for the whole contract
+            proportionToEvaluate= estimatePropOfFullSearchAaron(n,m,multithreading ? time*threads : time);
 
 
             if(proportionToEvaluate==1.0) {
@@ -602,6 +672,8 @@ public class ShapeletTransformClassifier  extends EnhancedAbstractClassifier
             result+= ",TimeContract(ns), " +trainContractTimeNanos;
         else
             result+=",NoContract";
+        if(memoryLimitBytes>0)
+            result+=",MemoryContract(bytes),"+memoryLimitBytes;
         result+= ",TransformActualBuildTime,"+transformBuildTime+",trainContractTimeNanos,"+ trainContractTimeNanos +",transformContractTime,"+ transformContractTime;
 
 
@@ -644,6 +716,11 @@ public class ShapeletTransformClassifier  extends EnhancedAbstractClassifier
         return start<trainContractTimeNanos;
     }
 
+    @Override
+    public void setMemoryLimit(DataUnit unit, long amount) {
+        memoryLimitBytes = MemoryContractable.toBytes(unit, amount);
+    }
+
 
     public void setNumberOfShapeletsToEvaluate(long numS){
         numShapeletsToEvaluate = numS;
@@ -658,17 +735,75 @@ public class ShapeletTransformClassifier  extends EnhancedAbstractClassifier
     public void setSavePath(String path){
         checkpointFullPath=path;
     }
+
+    @Override //Checkpointable
+    public boolean setCheckpointPath(String path) {
+        boolean validPath=Checkpointable.super.createDirectories(path);
+        if(validPath){
+            checkpointFullPath = path;
+            checkpoint = true;
+        }
+        return validPath;
+    }
+
+    /**
+     * @param s checkpoint serialiser, used for the transform and passed on to the classifier
+     */
+    @Override //Checkpointable
+    public boolean setCheckpointSerializer(CheckpointSerializer s) {
+        checkpointSerializer = s;
+        return true;
+    }
+
+    /**
+     * @param c checkpoint compression, used for the transform and passed on to the classifier
+     */
+    @Override //Checkpointable
+    public boolean setCheckpointCompression(CheckpointCompression c) {
+        checkpointCompression = c;
+        return true;
+    }
+
+    @Override //Checkpointable
+    public CheckpointSerializer getCheckpointSerializer() {
+        //the serialiser is transient, so is also null after this has been deserialised
+        return checkpointSerializer != null ? checkpointSerializer : Checkpointable.super.getCheckpointSerializer();
+    }
+
+    @Override //Checkpointable
+    public CheckpointCompression getCheckpointCompression() {
+        return checkpointCompression != null ? checkpointCompression : Checkpointable.super.getCheckpointCompression();
+    }
+
+    /**
+     * Saves this once the shapelet search is done, without the classifier, which checkpoints itself, or the
+     * transformed train data, which is transformed again from the shapelets on loading.
+     */
+    private void saveCheckpoint(File file) throws Exception {
+        Classifier c=classifier;
+        Instances transformed=shapeletData;
+        classifier=null;
+        shapeletData=null;
+        try {
+            File tmp=new File(file.getPath() + ".tmp");
+            CheckpointFiles.save(this, tmp, getCheckpointSerializer(), getCheckpointCompression());
+            CheckpointFiles.replace(tmp, file);
+        } finally {
+            classifier=c;
+            shapeletData=transformed;
+        }
+    }
+
+    @Override //Checkpointable
     public void copyFromSerObject(Object obj) throws Exception{
         if(!(obj instanceof ShapeletTransformClassifier))
             throw new Exception("Not a ShapeletTransformClassifier object");
 //Copy meta data
         ShapeletTransformClassifier st=(ShapeletTransformClassifier)obj;
-//We assume the classifiers have not been built, so are basically copying over the set up
-        classifier=st.classifier;
+//The classifier is not saved with the transform, it is checkpointed on its own
         shapeletOutputPath=st.shapeletOutputPath;
         transform=st.transform;
-        shapeletData=st.shapeletData;
-        int[] redundantFeatures=st.redundantFeatures;
+        redundantFeatures=st.redundantFeatures;
         transformBuildTime=st.transformBuildTime;
         trainResults =st.trainResults;
         numShapeletsInTransform =st.numShapeletsInTransform;
@@ -17,6 +17,8 @@
 
 package tsml.data_containers;
 
+import com.google.common.primitives.Doubles;
+
 import java.io.Serializable;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -29,6 +31,9 @@ import java.util.stream.Stream;
  * The model for the indexes is the first is always zero the other indexes are in units of md.increment
  * Hopefully most of this can be encapsulated, so if the data has equal increments then indices is null and the user
  *
+ * Values are held in a primitive double[] rather than a boxed list. A series may be a window (offset + length) onto a
+ * larger backing array, which lets slices share storage with the series they were cut from rather than copying.
+ *
  * @author Aaron Bostrom, 2020
  */
 public class TimeSeries implements Iterable<Double>, Serializable {
@@ -36,11 +41,27 @@ public class TimeSeries implements Iterable<Double>, Serializable {
     public final static double DEFAULT_VALUE = Double.NaN;
     private final static List<Double> EMPTY_INDICES = Collections.emptyList();
 
-    private List<Double> series;
+    private double[] values;
+    private int offset;
+    private int length;
     private List<Double> indices = EMPTY_INDICES;
 
-    // just for internal use
-    private TimeSeries() {}
+    /**
+     * Create a TimeSeries object as a view onto a region of a backing array. The array is not copied, so the caller
+     * must not modify the region afterwards.
+     *
+     * @param values backing array
+     * @param offset index of the first value in the backing array
+     * @param length number of values in the series
+     */
+    TimeSeries(double[] values, int offset, int length) {
+        if(offset < 0 || length < 0 || offset + length > values.length) {
+            throw new IndexOutOfBoundsException("offset " + offset + " and length " + length + " out of range for " + values.length + " values");
+        }
+        this.values = values;
+        this.offset = offset;
+        this.length = length;
+    }
 
     /**
      * Create a TimeSeries object from an array of time series data.
@@ -48,9 +69,7 @@ public class TimeSeries implements Iterable<Double>, Serializable {
      * @param data time series raw data
      */
     public TimeSeries(double[] data){
-        series = new ArrayList<Double>();
-        for(double value : data)
-            series.add(value);
+        this(data.clone(), 0, data.length);
     }
 
     /**
@@ -59,7 +78,7 @@ public class TimeSeries implements Iterable<Double>, Serializable {
      * @param data time series raw data
      */
     public TimeSeries(List<Double> data) {
-        series = new ArrayList<>(data);
+        this(Doubles.toArray(data), 0, data.size());
     }
 
     /**
@@ -68,7 +87,7 @@ public class TimeSeries implements Iterable<Double>, Serializable {
      * @param other TimeSeries object
      */
     public TimeSeries(TimeSeries other) {
-        this(other.series);
+        this(other.toValueArray(), 0, other.length);
     }
 
     /**
@@ -77,7 +96,7 @@ public class TimeSeries implements Iterable<Double>, Serializable {
      * @return int length of series
      */
     public int getSeriesLength() {
-        return series.size();
+        return length;
     }
 
     /**
@@ -89,7 +108,7 @@ public class TimeSeries implements Iterable<Double>, Serializable {
      */
     public boolean hasValidValueAt(int index) {
         // test whether its out of range, or NaN
-        return index < series.size() && Double.isFinite(series.get(index));
+        return index < length && Double.isFinite(getValue(index));
     }
 
     /**
@@ -99,17 +118,20 @@ public class TimeSeries implements Iterable<Double>, Serializable {
      * @return value at index
      */
     public double getValue(int index){
-        return series.get(index);
+        if(index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + length);
+        }
+        return values[offset + index];
     }
 
     /**
-     * Returns a value at a specific index in the time series. This method conducts unboxing so use getValue if you care about performance.
+     * Returns a value at a specific index in the time series. This method conducts boxing so use getValue if you care about performance.
      *
      * @param index to get value from
      * @return value at index
      */
     public Double get(int index) {
-        return series.get(index);
+        return getValue(index);
     }
 
     /**
@@ -128,7 +150,7 @@ public class TimeSeries implements Iterable<Double>, Serializable {
      * @return stream of values in series
      */
     public DoubleStream streamValues() {
-        return series.stream().mapToDouble(Double::doubleValue);
+        return Arrays.stream(values, offset, offset + length);
     }
 
     /**
@@ -137,16 +159,20 @@ public class TimeSeries implements Iterable<Double>, Serializable {
      * @return stream of doubles in series
      */
     public Stream<Double> stream() {
-        return series.stream();
+        return streamValues().boxed();
     }
 
     /**
-     * Returns all values in series.
+     * Returns all values in series. The list is a fixed size view backed by the series values rather than a copy.
      *
      * @return values in series
      */
     public List<Double> getSeries() {
-        return series;
+        final List<Double> list = Doubles.asList(values);
+        if(offset == 0 && length == values.length) {
+            return list;
+        }
+        return list.subList(offset, offset + length);
     }
 
     /**
@@ -165,20 +191,20 @@ public class TimeSeries implements Iterable<Double>, Serializable {
     public String toString(){
         StringBuilder sb = new StringBuilder();
 
-        for(double val : series) {
-            sb.append(val).append(',');
+        for(int i = 0; i < length; i++) {
+            sb.append(values[offset + i]).append(',');
         }
 
         return sb.substring(0, sb.length() - 1);
     }
 
     /**
-     * Returns all values in the series.
+     * Returns all values in the series. The array is a copy, so can be modified without affecting the series.
      *
      * @return values in series
      */
 	public double[] toValueArray() {
-		return getSeries().stream().mapToDouble(Double::doubleValue).toArray();
+		return Arrays.copyOfRange(values, offset, offset + length);
     }
 
     /**
@@ -188,7 +214,8 @@ public class TimeSeries implements Iterable<Double>, Serializable {
      * @return a new TimeSeries object
      */
     public TimeSeries getVSlice(int[] indexesToKeep) {
-        return new TimeSeries(getVSliceArray(indexesToKeep));
+        final double[] slice = getVSliceArray(indexesToKeep);
+        return new TimeSeries(slice, 0, slice.length);
     }
 
     /**
@@ -231,7 +258,8 @@ public class TimeSeries implements Iterable<Double>, Serializable {
      * @return a new TimeSeries object
      */
     public TimeSeries getVSliceComplement(int[] indexesToRemove) {
-        return new TimeSeries(getVSliceComplementArray(indexesToRemove));
+        final double[] slice = getVSliceComplementArray(indexesToRemove);
+        return new TimeSeries(slice, 0, slice.length);
     }
 
     /**
@@ -255,14 +283,7 @@ public class TimeSeries implements Iterable<Double>, Serializable {
      * @return a list of new series
      */
     public List<Double> getVSliceComplementList(List<Integer> indexesToRemove){
-        //if the current index isn't in the removal list, then copy across.
-        List<Double> out = new ArrayList<>(this.getSeriesLength() - indexesToRemove.size());
-        for(int i=0; i<this.getSeriesLength(); ++i){
-            if(!indexesToRemove.contains(i))
-                out.add(getOrDefault(i));
-        }
-
-        return out;
+        return Doubles.asList(getVSliceComplementArray(indexesToRemove));
     }
 
     /**
@@ -272,7 +293,7 @@ public class TimeSeries implements Iterable<Double>, Serializable {
      * @return a list of new series
      */
     public List<Double> getVSliceComplementList(int[] indexesToRemove) {
-        return getVSliceComplementList(Arrays.stream(indexesToRemove).boxed().collect(Collectors.toList()));
+        return Doubles.asList(getVSliceComplementArray(indexesToRemove));
     }
 
     /**
@@ -292,7 +313,7 @@ public class TimeSeries implements Iterable<Double>, Serializable {
      * @return an array of new series
      */
     public double[] getVSliceComplementArray(int[] indexesToRemove){
-        return getVSliceComplementArray(Arrays.stream(indexesToRemove).boxed().collect(Collectors.toList()));
+        return slice(indexesToRemove, false);
     }
 
     /**
@@ -302,7 +323,7 @@ public class TimeSeries implements Iterable<Double>, Serializable {
      * @return an array of new series
      */
     public double[] getVSliceComplementArray(List<Integer> indexesToRemove){
-        return getVSliceComplementList(indexesToRemove).stream().mapToDouble(Double::doubleValue).toArray();
+        return getVSliceComplementArray(indexesToRemove.stream().mapToInt(Integer::intValue).toArray());
     }
 
     /**
@@ -322,14 +343,7 @@ public class TimeSeries implements Iterable<Double>, Serializable {
      * @return a list of new series
      */
     public List<Double> getVSliceList(List<Integer> indexesToKeep){
-        //if the current index isn't in the removal list, then copy across.
-        List<Double> out = new ArrayList<>(indexesToKeep.size());
-        for(int i=0; i<this.getSeriesLength(); ++i){
-            if(indexesToKeep.contains(i))
-                out.add(getOrDefault(i));
-        }
-
-        return out;
+        return Doubles.asList(getVSliceArray(indexesToKeep));
     }
 
     /**
@@ -339,7 +353,7 @@ public class TimeSeries implements Iterable<Double>, Serializable {
      * @return a list of new series
      */
     public List<Double> getVSliceList(int[] indexesToKeep) {
-        return getVSliceList(Arrays.stream(indexesToKeep).boxed().collect(Collectors.toList()));
+        return Doubles.asList(getVSliceArray(indexesToKeep));
     }
 
     /**
@@ -369,7 +383,7 @@ public class TimeSeries implements Iterable<Double>, Serializable {
      * @return a list of new series
      */
     public double[] getVSliceArray(int[] indexesToKeep) {
-        return getVSliceArray(Arrays.stream(indexesToKeep).boxed().collect(Collectors.toList()));
+        return slice(indexesToKeep, true);
     }
 
     /**
@@ -379,7 +393,32 @@ public class TimeSeries implements Iterable<Double>, Serializable {
      * @return a list of new series
      */
     public double[] getVSliceArray(List<Integer> indexesToKeep) {
-        return getVSliceList(indexesToKeep).stream().mapToDouble(Double::doubleValue).toArray();
+        return getVSliceArray(indexesToKeep.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * Copies out the values either at or not at the indexes passed. Values are kept in series order, regardless of the
+     * order of the indexes.
+     *
+     * @param indexes from series
+     * @param keep true to keep the values at the indexes, false to keep all other values
+     * @return array of values
+     */
+    private double[] slice(int[] indexes, boolean keep) {
+        final boolean[] marked = new boolean[length];
+        for(int index : indexes) {
+            if(index >= 0 && index < length) {
+                marked[index] = true;
+            }
+        }
+        final double[] out = new double[length];
+        int size = 0;
+        for(int i = 0; i < length; i++) {
+            if(marked[i] == keep) {
+                out[size++] = getOrDefault(i);
+            }
+        }
+        return size == length ? out : Arrays.copyOf(out, size);
     }
 
     /**
@@ -388,7 +427,7 @@ public class TimeSeries implements Iterable<Double>, Serializable {
      * @return series iterator
      */
     @Override public Iterator<Double> iterator() {
-        return series.iterator();
+        return getSeries().iterator();
     }
 
     /**
@@ -400,7 +439,7 @@ public class TimeSeries implements Iterable<Double>, Serializable {
      * @return Sliding window of series
      */
     public List<Double> getVSliceList(int startInclusive, int endExclusive) {
-        return series.subList(startInclusive, endExclusive);
+        return getSeries().subList(startInclusive, endExclusive);
     }
 
     /**
@@ -412,21 +451,28 @@ public class TimeSeries implements Iterable<Double>, Serializable {
      * @return Sliding window of series
      */
     public double[] getVSliceArray(int startInclusive, int endExclusive) {
-        return getVSliceList(startInclusive, endExclusive).stream().mapToDouble(d -> d).toArray();
+        checkRange(startInclusive, endExclusive);
+        return Arrays.copyOfRange(values, offset + startInclusive, offset + endExclusive);
     }
 
     /**
      * Returns a new TimeSeries object containing a portion of the series between
-     * the specified start, inclusive, and end, exclusive.
+     * the specified start, inclusive, and end, exclusive. The new series shares
+     * storage with this series.
      *
      * @param startInclusive index to start from (inclusive)
      * @param endExclusive index to end from (exclusive)
      * @return Sliding window of series
      */
     public TimeSeries getVSlice(int startInclusive, int endExclusive) {
-        final TimeSeries ts = new TimeSeries();
-        ts.series = getVSliceList(startInclusive, endExclusive);
-        return ts;
+        checkRange(startInclusive, endExclusive);
+        return new TimeSeries(values, offset + startInclusive, endExclusive - startInclusive);
+    }
+
+    private void checkRange(int startInclusive, int endExclusive) {
+        if(startInclusive < 0 || endExclusive > length || startInclusive > endExclusive) {
+            throw new IndexOutOfBoundsException("start " + startInclusive + " and end " + endExclusive + " out of range for length " + length);
+        }
     }
 
     /**
@@ -442,7 +488,16 @@ public class TimeSeries implements Iterable<Double>, Serializable {
             return false;
         }
         final TimeSeries that = (TimeSeries) other;
-        return Objects.equals(series, that.series);
+        if(length != that.length) {
+            return false;
+        }
+        for(int i = 0; i < length; i++) {
+            // same semantics as Double.equals, i.e. NaN equals NaN
+            if(Double.doubleToLongBits(values[offset + i]) != Double.doubleToLongBits(that.values[that.offset + i])) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -451,7 +506,7 @@ public class TimeSeries implements Iterable<Double>, Serializable {
      * @return hash code
      */
     @Override public int hashCode() {
-        return Objects.hash(series);
+        return Objects.hash(getSeries());
     }
 
     /**
@@ -766,7 +766,7 @@ public class TimeSeriesInstance implements Iterable<TimeSeries>, Serializable {
      * @return 2d array
      */
     public double[][] getHSliceArray(int startInclusive, int endExclusive) {
-        return getHSliceList(startInclusive, endExclusive).stream().map(dim -> dim.stream().mapToDouble(d -> d).toArray()).toArray(double[][]::new);
+        return seriesDimensions.subList(startInclusive, endExclusive).stream().map(TimeSeries::toValueArray).toArray(double[][]::new);
     }
 
     /**
@@ -790,7 +790,7 @@ public class TimeSeriesInstance implements Iterable<TimeSeries>, Serializable {
      * @return 2d array
      */
     public double[][] getVSliceArray(int startInclusive, int endExclusive) {
-        return getVSliceList(startInclusive, endExclusive).stream().map(dim -> dim.stream().mapToDouble(d -> d).toArray()).toArray(double[][]::new);
+        return seriesDimensions.stream().map(dim -> dim.getVSliceArray(startInclusive, endExclusive)).toArray(double[][]::new);
     }
 
     /**
@@ -89,8 +89,46 @@ public class TimeSeriesTest {
         }
     }
     
+    @Test
+    public void testVSliceRange() {
+        final TimeSeries slice = ts.getVSlice(1, 3);
+        assertEquals(2, slice.getSeriesLength());
+        assertArrayEquals(new double[] {second, third}, slice.toValueArray(), 0d);
+        assertEquals(new TimeSeries(new double[] {third}), slice.getVSlice(1, 2));
+        assertArrayEquals(new double[] {second, third}, ts.getVSliceArray(1, 3), 0d);
+        assertEquals(Arrays.asList(second, third), ts.getVSliceList(1, 3));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testVSliceRangeBounds() {
+        ts.getVSlice(1, 3).getValue(2);
+    }
+
+    @Test
+    public void testVSliceIndices() {
+        // values are kept in series order
+        assertArrayEquals(new double[] {first, fourth}, ts.getVSliceArray(new int[] {3, 0}), 0d);
+        assertArrayEquals(new double[] {first, third, fourth}, ts.getVSliceComplementArray(1), 0d);
+        assertEquals(Arrays.asList(second, fourth), ts.getVSliceComplementList(new int[] {0, 2}));
+    }
+
+    @Test
+    public void testToValueArrayCopies() {
+        final double[] values = ts.toValueArray();
+        values[0] = 0;
+        assertEquals(first, ts.getValue(0), 0d);
+        array[0] = 0;
+        assertEquals(first, ts.getValue(0), 0d);
+    }
+
+    @Test
+    public void testEqualsAndHashCode() {
+        assertEquals(new TimeSeries(list), ts);
+        assertEquals(list.hashCode() + 31, ts.hashCode());
+        assertNotEquals(ts.getVSlice(0, 3), ts);
+    }
+
     // todo test hslice
-    // todo test vslice
     // todo test metadata / stats
     
 }
@@ -17,14 +17,18 @@
  
 package tsml.data_containers.ts_fileIO;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Scanner;
+import java.util.NoSuchElementException;
 
 import tsml.data_containers.TimeSeriesInstance;
 import tsml.data_containers.TimeSeriesInstances;
@@ -32,10 +36,18 @@ import tsml.data_containers.TimeSeriesInstances;
 /**
  * File for reading sktime format data into TimeSeriesInstances object
  * 
+ * The file is read through a char buffer and values are parsed straight into primitive arrays, without
+ * tokenising through regular expressions or boxing. By default the whole file is read on construction. In
+ * streaming mode only the header is read up front, and the instances can then be pulled one at a time with
+ * readNext() or iterator(), so files larger than memory can be processed.
+ *
+ * Data lines hold comma separated values, with dimensions separated by ':'. If @classLabel is true the last
+ * ':' separated field is the class label. Values that cannot be parsed (e.g. '?') are read as NaN.
+ *
  * @author Aaron Bostrom, pushed 22/4/2020
  */
 
-public class TSReader {
+public class TSReader implements Iterable<TimeSeriesInstance>, Closeable {
 
     // need to change this to a map function.
     public static final String PROBLEM_NAME = "@problemName";
@@ -45,12 +57,23 @@ public class TSReader {
     public static final String MISSING = "@missing";
     public static final String DATA = "@data";
 
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
     private HashMap<String, String> variables;
 
-    private final Scanner m_scanner;
-    private String currentToken;
+    private final Reader m_reader;
+    private final char[] m_buffer = new char[BUFFER_SIZE];
+    private int m_pos;
+    private int m_limit;
     private int m_Lines;
-
+    private String currentToken;
+    // whether only whitespace has been read since the start of the current header line, so a # or % starts a comment
+    private boolean atLineStart = true;
 
     private String description;
     private String problemName;
@@ -59,104 +82,187 @@ public class TSReader {
     private boolean timeStamps;
     private boolean classLabel;
     private List<String> classLabels;
+    private String[] classLabelArray;
+    private HashMap<String, Integer> classLabelIndices;
+
+    // reused between lines. token holds the characters of the current field, values the values of the current
+    // dimension and dimensions the completed dimensions of the current line
+    private char[] token = new char[64];
+    private double[] values = new double[256];
+    private final List<double[]> dimensions = new ArrayList<>();
 
     TimeSeriesInstances m_data;
-    private List<TimeSeriesInstance> raw_data;
+    private boolean iterated;
 
     public TSReader(Reader reader) throws IOException {
-        variables = new HashMap<>();
-        //m_Tokenizer = new StreamTokenizer(reader);
+        this(reader, false);
+    }
 
-        m_scanner = new Scanner(reader);
-        m_scanner.useDelimiter("[\\s,]+");
+    /**
+     * @param reader the ts file
+     * @param streaming if true only the header is read on construction, and the instances are left to be read
+     *                  with readNext() or iterator(). If false the whole file is read, and is available through
+     *                  GetInstances()
+     */
+    public TSReader(Reader reader, boolean streaming) throws IOException {
+        variables = new HashMap<>();
+        m_reader = reader;
 
         readHeader();
 
-        System.out.println(variables);
-        System.out.println(classLabels);
-
-        CreateTimeSeriesInstances();
+        if (!streaming)
+            CreateTimeSeriesInstances();
     }
 
     private void CreateTimeSeriesInstances() throws IOException {
         // read each line and extract a data Instance
-        raw_data = new ArrayList<>();
-        // extract the multivariate series, and the possible label.
-
-        while (m_scanner.hasNextLine()) {
-            String line = m_scanner.nextLine();
-            Scanner lineScanner = new Scanner(line);
-            lineScanner.useDelimiter("((?=[:,])|(?<=[:,]))");
+        List<TimeSeriesInstance> raw_data = new ArrayList<>();
 
-            raw_data.add(readMultivariateInstance(lineScanner));
-
-            lineScanner.close();
-        }
+        TimeSeriesInstance inst;
+        while ((inst = readNext()) != null)
+            raw_data.add(inst);
 
         // create timeseries instances object.
-        m_data = new TimeSeriesInstances(raw_data, classLabels.toArray(new String[classLabels.size()]));
+        m_data = new TimeSeriesInstances(raw_data, classLabelArray);
         m_data.setProblemName(problemName);
 //        m_data.setHasTimeStamps(timeStamps); // todo this has been temp removed, should be computed from the data
         m_data.setDescription(description);
     }
 
-    public TimeSeriesInstances GetInstances() {
+    /**
+     * Returns the data read from the file. In streaming mode this reads any instances not yet read with readNext()
+     * or iterator(), and only those.
+     */
+    public TimeSeriesInstances GetInstances() throws IOException {
+        if (m_data == null)
+            CreateTimeSeriesInstances();
         return m_data;
     }
 
-    private TimeSeriesInstance readMultivariateInstance(Scanner lineScanner) throws IOException {
-        List<List<Double>> multi_timeSeries = new ArrayList<>();
-        String classValue = "";
-
-        ArrayList<Double> timeSeries = new ArrayList<>();
-        while (lineScanner.hasNext()){
-            getNextToken(lineScanner);
-            // this means we're about to get the class value
-            if (currentToken.equalsIgnoreCase(":") && classLabel) {
-                
-                // add the current time series to the list.
-                multi_timeSeries.add(timeSeries);
-                timeSeries = new ArrayList<>();
-            } else {
+    public String getProblemName() {
+        return problemName;
+    }
 
-                double val;
+    public String[] getClassLabels() {
+        return classLabelArray;
+    }
 
-                try{
-                    val = Double.parseDouble(currentToken);
-                   
-                }catch(NumberFormatException ex){
-                    val = Double.NaN;
-                }
+    /**
+     * Reads the next data line of the file.
+     *
+     * @return the next instance, or null at the end of the file
+     */
+    public TimeSeriesInstance readNext() throws IOException {
+        int c;
+        do {
+            c = skipWhitespace();
+        } while (c == '\n');
+
+        if (c < 0)
+            return null;
+
+        m_Lines++;
+        dimensions.clear();
+        int numValues = 0;
+        int labelIndex = -1;
+
+        while (true) {
+            // read a field, up to the next separator
+            int length = 0;
+            while (c >= 0 && c != ',' && c != ':' && c != '\n') {
+                if (length == token.length)
+                    token = Arrays.copyOf(token, length * 2);
+                token[length++] = (char) c;
+                c = read();
+            }
+
+            if (classLabel && (c < 0 || c == '\n')) {
+                // the last field of a labelled line is the class label, not a value.
+                labelIndex = indexOfClassLabel(token, length);
+                break;
+            }
 
-                timeSeries.add(val);
-                classValue = currentToken;
+            // empty fields, as in "1,,2", are skipped rather than read as missing
+            if (length > 0) {
+                if (numValues == values.length)
+                    values = Arrays.copyOf(values, numValues * 2);
+                values[numValues++] = parseDouble(token, 0, length);
             }
-        } 
 
-        // don't add the last series to the list, instead extract the first element and
-        // figure out what the class value is.
-        int classVal = classLabel ?  classLabels.indexOf(classValue) : -1;
+            if (c == ',') {
+                c = read();
+            }
+            else {
+                dimensions.add(Arrays.copyOf(values, numValues));
+                numValues = 0;
+
+                if (c != ':')
+                    break;
+                c = read();
+            }
+        }
 
-        return new TimeSeriesInstance(multi_timeSeries, classVal);
+        return new TimeSeriesInstance(dimensions.toArray(new double[0][]), labelIndex, classLabelArray);
+    }
+
+    /**
+     * Iterates over the instances of the file not yet read, reading each one as it is requested. Can only be called
+     * once, and in streaming mode. IOExceptions are rethrown as UncheckedIOException.
+     */
+    @Override
+    public Iterator<TimeSeriesInstance> iterator() {
+        if (m_data != null || iterated)
+            throw new IllegalStateException("the instances of this reader have already been read");
+        iterated = true;
+
+        return new Iterator<TimeSeriesInstance>() {
+            private TimeSeriesInstance next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        next = readNext();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public TimeSeriesInstance next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                TimeSeriesInstance inst = next;
+                next = null;
+                return inst;
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        m_reader.close();
     }
 
     // this function reads upto the @data bit in the file.
     protected void readHeader() throws IOException {
-        // first token should be @problem name. as we skip whitespace and comments.
-
-        skipComments();
+        // header keywords and values are separated by whitespace or commas. comment lines start with # or %
         getNextToken();
 
-        do {           
-            if (currentToken.equalsIgnoreCase(CLASS_LABEL)) {
+        do {
+            if (currentToken == null) {
+                errorMessage("keyword " + DATA + " expected");
+            } else if (currentToken.equalsIgnoreCase(CLASS_LABEL)) {
                 ExtractClassLabels();
             } else {
-                variables.put(currentToken, getNextToken());    
-                getNextToken(); 
+                variables.put(currentToken, getNextToken());
+                getNextToken();
             }
 
-        } while (!currentToken.equalsIgnoreCase(DATA));
-        
+        } while (!DATA.equalsIgnoreCase(currentToken));
+
         // these are required.
         problemName = variables.get(PROBLEM_NAME);
         if (problemName == null) {
@@ -175,45 +281,71 @@ public class TSReader {
         if (variables.get(TIME_STAMPS) != null)
             timeStamps = Boolean.parseBoolean(variables.get(TIME_STAMPS));
 
-
-        m_scanner.nextLine(); //clear our this bit.
+        if (classLabels == null)
+            classLabels = new ArrayList<>();
+        classLabelArray = classLabels.toArray(new String[0]);
+        classLabelIndices = new HashMap<>();
+        for (int i = 0; i < classLabelArray.length; i++)
+            classLabelIndices.putIfAbsent(classLabelArray[i], i);
+
+        //clear our this bit.
+        int c = read();
+        while (c >= 0 && c != '\n')
+            c = read();
     }
 
     private void ExtractClassLabels() throws IOException {
         classLabels = new ArrayList<>();
 
-        if(m_scanner.hasNextBoolean())
-            classLabel = m_scanner.nextBoolean();
-
-        if (!classLabel)
-            return;
+        getNextToken();
+        if (currentToken == null || !(currentToken.equalsIgnoreCase("true") || currentToken.equalsIgnoreCase("false")))
+            errorMessage("true or false expected after " + CLASS_LABEL);
+        classLabel = Boolean.parseBoolean(currentToken);
 
-        while (!getNextToken().contains("@")){
-            classLabels.add(currentToken);
+        while (getNextToken() != null && !currentToken.contains("@")) {
+            if (classLabel)
+                classLabels.add(currentToken);
         }
-        
-    }
-
-    protected void skipComments(){
-        while (m_scanner.findInLine("\\s*\\#.*") != null) {m_scanner.nextLine();}
     }
 
     /**
-     * Gets next token, checking for a premature and of line.
-     *
-     * @throws IOException if it finds a premature end of line
+     * Gets the next header token, skipping comment lines, or null at the end of the file. Any line starting with
+     * # or %, after optional whitespace, is a comment, including the first line of the file.
      */
     protected String getNextToken() throws IOException {
-        return getNextToken(m_scanner);
-    }
+        int c;
+        while (true) {
+            c = skipWhitespace();
+            if (c == ',') {
+                atLineStart = false;
+                continue;
+            }
+            if (c == '\n') {
+                atLineStart = true;
+                continue;
+            }
+            if (atLineStart && (c == '#' || c == '%')) {
+                skipLine();
+                continue;
+            }
+            break;
+        }
+        atLineStart = false;
 
-    protected String getNextToken(Scanner scanner) throws IOException {
-        currentToken = scanner.next();
-        //recurse until we find a valid token. 
-        if (currentToken.equalsIgnoreCase(","))
-            getNextToken(scanner);
+        if (c < 0) {
+            currentToken = null;
+            return null;
+        }
 
-        //System.out.println("t: "+currentToken);
+        StringBuilder sb = new StringBuilder();
+        while (c >= 0 && c != ',' && c != '\n' && !isWhitespace(c)) {
+            sb.append((char) c);
+            c = read();
+        }
+        if (c >= 0)
+            unread();
+
+        currentToken = sb.toString();
         return currentToken;
     }
 
@@ -224,12 +356,134 @@ public class TSReader {
      * @throws IOException containing the error message
      */
     protected void errorMessage(String msg) throws IOException {
-        String str = msg + ", read " + currentToken;
-        if (m_Lines > 0) {
-            int line = Integer.parseInt(str.replaceAll(".* line ", ""));
-            str = str.replaceAll(" line .*", " line " + (m_Lines + line - 1));
+        throw new IOException(msg + ", read " + currentToken + ", line " + (m_Lines + 1));
+    }
+
+    private int indexOfClassLabel(char[] chars, int length) {
+        int start = 0;
+        while (start < length && chars[start] <= ' ')
+            start++;
+        while (length > start && chars[length - 1] <= ' ')
+            length--;
+
+        Integer index = classLabelIndices.get(new String(chars, start, length - start));
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Parses a decimal value. Values with at most 15 significant digits and a small enough exponent, which covers
+     * the values written to ts files, are converted with a single exact multiplication or division, which is
+     * correctly rounded and so gives the same value as Double.parseDouble. Anything else falls back to
+     * Double.parseDouble, and anything Double.parseDouble cannot read is NaN.
+     */
+    static double parseDouble(char[] chars, int start, int end) {
+        while (start < end && chars[start] <= ' ')
+            start++;
+        while (end > start && chars[end - 1] <= ' ')
+            end--;
+
+        int i = start;
+        final boolean negative = i < end && chars[i] == '-';
+        if (negative || (i < end && chars[i] == '+'))
+            i++;
+
+        long mantissa = 0;
+        int numSignificantDigits = 0;
+        int exponent = 0;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+        for (; i < end; i++) {
+            final char c = chars[i];
+            if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa > 0 && ++numSignificantDigits > 15)
+                    return parseDoubleSlow(chars, start, end);
+                if (seenPoint)
+                    exponent--;
+            }
+            else if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            }
+            else if ((c == 'e' || c == 'E') && seenDigit) {
+                int j = i + 1;
+                final boolean negativeExponent = j < end && chars[j] == '-';
+                if (negativeExponent || (j < end && chars[j] == '+'))
+                    j++;
+                if (j == end || end - j > 3)
+                    return parseDoubleSlow(chars, start, end);
+
+                int e = 0;
+                for (; j < end; j++) {
+                    if (chars[j] < '0' || chars[j] > '9')
+                        return parseDoubleSlow(chars, start, end);
+                    e = e * 10 + (chars[j] - '0');
+                }
+                exponent += negativeExponent ? -e : e;
+                break;
+            }
+            else {
+                return parseDoubleSlow(chars, start, end);
+            }
+        }
+
+        if (!seenDigit || exponent <= -POWERS_OF_TEN.length || exponent >= POWERS_OF_TEN.length)
+            return parseDoubleSlow(chars, start, end);
+
+        //both operands are exactly representable, so the result is correctly rounded
+        final double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+        return negative ? -value : value;
+    }
+
+    private static double parseDoubleSlow(char[] chars, int start, int end) {
+        try {
+            return Double.parseDouble(new String(chars, start, end - start));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
         }
-        throw new IOException(str);
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\f';
+    }
+
+    /**
+     * Skips spaces and tabs, returning the first other character, which may be a newline, or -1 at the end of
+     * the file
+     */
+    private int skipWhitespace() throws IOException {
+        int c = read();
+        while (isWhitespace(c))
+            c = read();
+        return c;
+    }
+
+    private void skipLine() throws IOException {
+        int c = read();
+        while (c >= 0 && c != '\n')
+            c = read();
+        unread();
+    }
+
+    private int read() throws IOException {
+        if (m_pos == m_limit) {
+            m_limit = m_reader.read(m_buffer, 0, m_buffer.length);
+            m_pos = 0;
+            if (m_limit <= 0) {
+                m_limit = 0;
+                return -1;
+            }
+        }
+        return m_buffer[m_pos++];
+    }
+
+    /**
+     * Steps back over the last character returned by read(). The character is always still in the buffer,
+     * as read() only refills the buffer once it is exhausted. Does nothing at the end of the file.
+     */
+    private void unread() {
+        if (m_pos > 0)
+            m_pos--;
     }
 
     public static void main(String[] args) throws IOException {
@@ -0,0 +1,177 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tsml.data_containers.ts_fileIO;
+
+import experiments.data.DatasetLoading;
+import org.junit.Test;
+import tsml.data_containers.TimeSeriesInstance;
+import tsml.data_containers.TimeSeriesInstances;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TSReaderTest {
+
+    private static final String HEADER = "@problemName test\n@timeStamps false\n@univariate false\n"
+            + "@classLabel true a b c\n@data\n";
+
+    private static final String DATA = "1,2,3:4,5,6:b\n-1.5,?,2e-3:7,8,9:a\n";
+
+    private static void assertTestData(TSReader reader) throws IOException {
+        TimeSeriesInstances data = reader.GetInstances();
+        assertEquals("test", data.getProblemName());
+        assertArrayEquals(new String[] {"a", "b", "c"}, reader.getClassLabels());
+        assertEquals(2, data.numInstances());
+        assertArrayEquals(new double[][] {{1, 2, 3}, {4, 5, 6}}, data.get(0).toValueArray());
+        assertEquals(1, data.get(0).getLabelIndex());
+        assertArrayEquals(new double[][] {{-1.5, Double.NaN, 2e-3}, {7, 8, 9}}, data.get(1).toValueArray());
+        assertEquals(0, data.get(1).getLabelIndex());
+    }
+
+    @Test
+    public void testLeadingComment() throws IOException {
+        // odd numbers of tokens, so a comment read as header tokens would misalign the keywords and their values
+        String file = "#a comment on the first line\n#and another, with % and @data in it\n" + HEADER + DATA;
+        assertTestData(new TSReader(new StringReader(file)));
+
+        assertTestData(new TSReader(new StringReader("% a comment\n\n   # indented comment\n" + HEADER + DATA)));
+    }
+
+    @Test
+    public void testCommentsBetweenHeaderLines() throws IOException {
+        String file = "@problemName test\n# a comment\n@timeStamps false\n%another one\n\n@univariate false\n"
+                + "  #indented @classLabel false\n@classLabel true a b c\n# last one\n@data\n" + DATA;
+        assertTestData(new TSReader(new StringReader(file)));
+    }
+
+    @Test
+    public void testSameAsReference() throws IOException {
+        for (String problem : new String[] {"ArrowHead", "Beef", "Chinatown", "GunPoint", "ItalyPowerDemand"}) {
+            for (String split : new String[] {"_TRAIN", "_TEST"}) {
+                String path = DatasetLoading.BAKED_IN_TSC_DATA_PATH + problem + "/" + problem + split + ".ts";
+
+                TSReader reader = new TSReader(new FileReader(path));
+                TimeSeriesInstances data = reader.GetInstances();
+                assertEquals(problem, data.getProblemName());
+
+                List<String> lines = referenceDataLines(path);
+                assertEquals(path, lines.size(), data.numInstances());
+                for (int i = 0; i < lines.size(); i++) {
+                    TimeSeriesInstance inst = data.get(i);
+                    String[] fields = lines.get(i).split(":");
+                    assertEquals(path + " " + i, fields[fields.length - 1].trim(),
+                            reader.getClassLabels()[inst.getLabelIndex()]);
+                    assertEquals(path + " " + i, fields.length - 1, inst.getNumDimensions());
+                    for (int d = 0; d < fields.length - 1; d++)
+                        assertArrayEquals(path + " " + i, referenceValues(fields[d]), inst.toValueArray()[d], 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testStreamingSameAsEager() throws IOException {
+        String[] paths = {DatasetLoading.BAKED_IN_TSC_DATA_PATH + "ItalyPowerDemand/ItalyPowerDemand_TRAIN.ts",
+                DatasetLoading.BAKED_IN_TSC_DATA_PATH + "Chinatown/Chinatown_TEST.ts",
+                DatasetLoading.BAKED_IN_TSC_DATA_PATH + "GunPoint/GunPoint_TEST.ts"};
+        for (String path : paths) {
+            TimeSeriesInstances expected = new TSReader(new FileReader(path)).GetInstances();
+
+            // iterator
+            TSReader iterated = new TSReader(new FileReader(path), true);
+            assertArrayEquals(path, expected.getClassLabels(), iterated.getClassLabels());
+            List<TimeSeriesInstance> insts = new ArrayList<>();
+            for (TimeSeriesInstance inst : iterated)
+                insts.add(inst);
+            assertEquals(path, expected.numInstances(), insts.size());
+            assertSameInstances(path, expected, insts, 0);
+
+            // readNext for the first few, then GetInstances for the rest
+            TSReader streamed = new TSReader(new FileReader(path), true);
+            insts.clear();
+            for (int i = 0; i < 5; i++)
+                insts.add(streamed.readNext());
+            assertSameInstances(path, expected, insts, 0);
+            TimeSeriesInstances rest = streamed.GetInstances();
+            assertEquals(path, expected.numInstances() - 5, rest.numInstances());
+            List<TimeSeriesInstance> restInsts = new ArrayList<>();
+            for (TimeSeriesInstance inst : rest)
+                restInsts.add(inst);
+            assertSameInstances(path, expected, restInsts, 5);
+            assertEquals(path, null, streamed.readNext());
+        }
+    }
+
+    /**
+     * Checks the instances are the same as those of expected from the offset on.
+     */
+    private static void assertSameInstances(String path, TimeSeriesInstances expected, List<TimeSeriesInstance> actual,
+            int offset) {
+        for (int i = 0; i < actual.size(); i++) {
+            TimeSeriesInstance inst = expected.get(offset + i);
+            assertEquals(path + " " + (offset + i), inst.getLabelIndex(), actual.get(i).getLabelIndex());
+            assertArrayEquals(path + " " + (offset + i), inst.toValueArray(), actual.get(i).toValueArray());
+        }
+    }
+
+    /**
+     * The data lines of a labelled ts file, read as the original Scanner based reader did: everything after the
+     * @data line, skipping blank lines.
+     */
+    private static List<String> referenceDataLines(String path) throws IOException {
+        List<String> lines = new ArrayList<>();
+        boolean inData = false;
+        for (String line : Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8)) {
+            if (inData) {
+                if (!line.trim().isEmpty())
+                    lines.add(line);
+            } else if (line.trim().equalsIgnoreCase(TSReader.DATA)) {
+                inData = true;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * A dimension of a data line, parsed with Double.parseDouble and anything unparseable as NaN, as the original
+     * reader did.
+     */
+    private static double[] referenceValues(String dimension) {
+        List<Double> values = new ArrayList<>();
+        for (String token : dimension.split(",")) {
+            token = token.trim();
+            if (token.isEmpty())
+                continue;
+            try {
+                values.add(Double.parseDouble(token));
+            } catch (NumberFormatException e) {
+                values.add(Double.NaN);
+            }
+        }
+        return values.stream().mapToDouble(Double::doubleValue).toArray();
+    }
+}
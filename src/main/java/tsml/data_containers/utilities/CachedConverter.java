@@ -0,0 +1,133 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tsml.data_containers.utilities;
+
+import com.google.common.collect.MapMaker;
+import tsml.data_containers.TimeSeriesInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches the conversion of weka Instance objects to TimeSeriesInstance objects, for a caller which converts the same
+ * instances over and over, e.g. a nearest neighbour search computing distances to every train instance for each
+ * query. Each caller keeps its own cache for as long as its instances are unchanged, e.g. from building a model until
+ * it is rebuilt, and drops or clear()s it after that. There is no shared cache, so instances modified in place
+ * elsewhere are never served a stale conversion.
+ *
+ * The cache is keyed on the identity of the instance and holds the keys weakly. It can be limited to the instances of
+ * a dataset, in which case any other instance (e.g. a query, which may be reused and modified by the caller) is
+ * converted afresh each time.
+ *
+ * Hit / miss counters are kept to show how effective the cache is.
+ */
+public class CachedConverter {
+
+    // weak keys are compared by identity, not equals()
+    private final ConcurrentMap<Instance, TimeSeriesInstance> cache = new MapMaker().weakKeys().makeMap();
+    // the instances which may be cached, or null for any instance
+    private final Set<Instance> members;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Cache the conversion of any instance.
+     */
+    public CachedConverter() {
+        members = null;
+    }
+
+    /**
+     * Only cache the conversions of the instances of data, as they are when this is constructed.
+     */
+    public CachedConverter(Instances data) {
+        members = Collections.newSetFromMap(new IdentityHashMap<>(data.numInstances()));
+        members.addAll(data);
+    }
+
+    /**
+     * Convert an instance, reusing the previous conversion of the same instance if there is one.
+     *
+     * @param instance to convert
+     * @return the equivalent TimeSeriesInstance
+     */
+    public TimeSeriesInstance fromArff(Instance instance) {
+        if(members != null && !members.contains(instance)) {
+            return Converter.fromArff(instance);
+        }
+        TimeSeriesInstance inst = cache.get(instance);
+        if(inst != null) {
+            hits.increment();
+            return inst;
+        }
+        misses.increment();
+        inst = Converter.fromArff(instance);
+        // another thread may have converted the same instance in the meantime, in which case either is fine to use
+        cache.put(instance, inst);
+        return inst;
+    }
+
+    /**
+     * Remove all cached conversions, to be called after modifying cached instances in place.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Reset the hit and miss counters.
+     */
+    public void resetStats() {
+        hits.reset();
+        misses.reset();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the proportion of lookups which were served from the cache, or NaN if there have been no lookups
+     */
+    public double getHitRate() {
+        final long hits = getHits();
+        final long total = hits + getMisses();
+        return total == 0 ? Double.NaN : (double) hits / total;
+    }
+
+    /**
+     * @return the number of cached conversions. Entries for instances which have been garbage collected may be included
+     * until the cache next cleans itself up.
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    public String statsString() {
+        return "hits: " + getHits() + ", misses: " + getMisses() + ", hit rate: " + getHitRate() + ", size: " + size();
+    }
+}
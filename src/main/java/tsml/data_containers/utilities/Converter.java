@@ -105,11 +105,52 @@ public class Converter {
         return output;
     }
     
+    /**
+     * Convert a single instance. This reads the values straight out of the instance rather than building a
+     * TimeSeriesInstances around a copy of its header, so is cheap enough to call per distance computation. The result
+     * matches converting the instance's dataset and taking the corresponding TimeSeriesInstance.
+     * @param instance the instance to convert
+     * @return the equivalent TimeSeriesInstance
+     */
     public static TimeSeriesInstance fromArff(Instance instance) {
-        final Instances data = new Instances(instance.dataset(), 1);
-        data.add(instance);
-        final TimeSeriesInstances tsInsts = fromArff(data);
-        return tsInsts.get(0);
+        final Instances header = instance.dataset();
+        // if no class attribute set, use the last one.
+        int classIndex = header == null ? -1 : header.classIndex();
+        if(classIndex == -1)
+            classIndex = instance.numAttributes() - 1;
+
+        final double[][] values;
+        final double label;
+        if(instance.attribute(0).isRelationValued()) {
+            final Instances timeseries = instance.relationalValue(0);
+            //number of channels is numInstances
+            values = new double[timeseries.numInstances()][];
+            for(int j = 0; j < values.length; j++) {
+                values[j] = timeseries.get(j).toDoubleArray();
+            }
+            label = instance.value(1);
+        } else {
+            final double[] raw = instance.toDoubleArray();
+            //remove class attribute.
+            values = new double[][] {new double[raw.length - 1]};
+            System.arraycopy(raw, 0, values[0], 0, classIndex);
+            System.arraycopy(raw, classIndex + 1, values[0], classIndex, raw.length - classIndex - 1);
+            label = raw[classIndex];
+        }
+
+        final Attribute classAttribute = instance.attribute(classIndex);
+        if(classAttribute.isNumeric()) {
+            // regression problem. Assume label index is the regression target value
+            return new TimeSeriesInstance(values, label);
+        } else if(classAttribute.isNominal()) {
+            // classification problem. Assume label index points to a corresponding class
+            String[] labels = new String[classAttribute.numValues()];
+            for(int i=0; i< labels.length; i++)
+                labels[i] = classAttribute.value(i);
+            return new TimeSeriesInstance(values, TimeSeriesInstance.discretiseLabelIndex(label), labels);
+        } else {
+            throw new IllegalArgumentException("cannot handle non-numeric and non-nominal labels");
+        }
     }
 
     public static Instances toArff(TimeSeriesInstances  data){
@@ -0,0 +1,99 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tsml.data_containers.utilities;
+
+import tsml.data_containers.TimeSeries;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Rough memory and throughput comparison between the primitive storage used by TimeSeries and the boxed
+ * List<Double> storage it replaced. Run the main method with a large heap, e.g. -Xmx8g, to use the default sizes.
+ *
+ * Usage: TimeSeriesStorageBenchmark [numSeries] [seriesLength] [repeats]
+ */
+public class TimeSeriesStorageBenchmark {
+
+    public static void main(String[] args) {
+        final int numSeries = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        final int seriesLength = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        final int repeats = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        final Random random = new Random(0);
+
+        System.out.println("Series: " + numSeries + ", length: " + seriesLength);
+
+        // boxed storage, as used previously by TimeSeries
+        long before = usedMemory();
+        final List<List<Double>> boxed = new ArrayList<>(numSeries);
+        for(int i = 0; i < numSeries; i++) {
+            final List<Double> series = new ArrayList<>(seriesLength);
+            for(int j = 0; j < seriesLength; j++) {
+                series.add(random.nextGaussian());
+            }
+            boxed.add(series);
+        }
+        final long boxedBytes = usedMemory() - before;
+        long start = System.nanoTime();
+        double boxedSum = 0;
+        for(int r = 0; r < repeats; r++) {
+            for(List<Double> series : boxed) {
+                for(int j = 0; j < seriesLength; j++) {
+                    boxedSum += series.get(j);
+                }
+            }
+        }
+        final long boxedTime = System.nanoTime() - start;
+        boxed.clear();
+
+        // primitive storage
+        before = usedMemory();
+        final List<TimeSeries> primitive = new ArrayList<>(numSeries);
+        final double[] buffer = new double[seriesLength];
+        for(int i = 0; i < numSeries; i++) {
+            for(int j = 0; j < seriesLength; j++) {
+                buffer[j] = random.nextGaussian();
+            }
+            primitive.add(new TimeSeries(buffer));
+        }
+        final long primitiveBytes = usedMemory() - before;
+        start = System.nanoTime();
+        double primitiveSum = 0;
+        for(int r = 0; r < repeats; r++) {
+            for(TimeSeries series : primitive) {
+                for(int j = 0; j < seriesLength; j++) {
+                    primitiveSum += series.getValue(j);
+                }
+            }
+        }
+        final long primitiveTime = System.nanoTime() - start;
+
+        final double values = (double) numSeries * seriesLength * repeats;
+        System.out.println("List<Double>: " + boxedBytes / 1024 / 1024 + "MB, " + values / boxedTime * 1e3 + "M values/s (" + boxedSum + ")");
+        System.out.println("TimeSeries:   " + primitiveBytes / 1024 / 1024 + "MB, " + values / primitiveTime * 1e3 + "M values/s (" + primitiveSum + ")");
+    }
+
+    private static long usedMemory() {
+        for(int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
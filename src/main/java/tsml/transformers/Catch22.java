@@ -17,10 +17,6 @@
 
 package tsml.transformers;
 
-import org.apache.commons.math3.complex.Complex;
-import org.apache.commons.math3.transform.DftNormalization;
-import org.apache.commons.math3.transform.FastFourierTransformer;
-import org.apache.commons.math3.transform.TransformType;
 import utilities.GenericTools;
 import weka.core.Attribute;
 import weka.core.DenseInstance;
@@ -34,7 +30,6 @@ import tsml.data_containers.TimeSeries;
 import tsml.data_containers.TimeSeriesInstance;
 
 import static utilities.ArrayUtilities.mean;
-import static utilities.ClusteringUtilities.zNormalise;
 import static utilities.GenericTools.*;
 import static utilities.StatisticalUtilities.median;
 import static utilities.StatisticalUtilities.standardDeviation;
@@ -62,23 +57,34 @@ public class Catch22 implements Transformer {
 
     // for summary stat by index
     private int currentSeriesID = Integer.MIN_VALUE;
-    private double idxMin;
-    private double idxMax;
-    private double idxMean;
-    private Complex[] idxFFT;
-    private double[] idxAC;
-    private int idxACFZ;
-    private double[] idxOutlierSeries;
-    private double[] idxSeries;
+    private transient double[] currentSeries;
+    private transient Catch22IntervalEngine engine;
+
+    // for the static summary stat by index methods, one engine per thread
+    private static final ThreadLocal<Catch22IntervalEngine> threadEngine =
+            ThreadLocal.withInitial(() -> new Catch22IntervalEngine(false, false));
+    private static final ThreadLocal<Catch22IntervalEngine> threadOutlierNormEngine =
+            ThreadLocal.withInitial(() -> new Catch22IntervalEngine(false, true));
 
     public Catch22() { }
 
     public void setNormalise(boolean b) {
         this.norm = b;
+        engine = null;
     }
 
     public void setOutlierNormalise(boolean b) {
         this.outlierNorm = b;
+        engine = null;
+    }
+
+    private Catch22IntervalEngine getEngine() {
+        if (engine == null) {
+            engine = new Catch22IntervalEngine(norm, outlierNorm);
+            currentSeriesID = Integer.MIN_VALUE;
+            currentSeries = null;
+        }
+        return engine;
     }
 
     @Override
@@ -123,76 +129,13 @@ public class Catch22 implements Transformer {
         int atts = classValue == Double.MIN_VALUE ? 22 : 23;
         double[] featureSet = new double[atts];
 
-        double[] arr;
-        double[] outlierArr;
-        if (norm) {
-            arr = new double[series.length];
-            System.arraycopy(series, 0, arr, 0, series.length);
-            zNormalise(arr);
-            outlierArr = arr;
-        } else if (outlierNorm) {
-            arr = series;
-            outlierArr = new double[series.length];
-            System.arraycopy(series, 0, outlierArr, 0, series.length);
-            zNormalise(outlierArr);
-        } else {
-            arr = series;
-            outlierArr = series;
+        Catch22IntervalEngine engine = getEngine();
+        engine.setSeries(series);
+        for (int i = 0; i < 22; i++) {
+            featureSet[i] = engine.getFeature(i);
         }
-
-        // can reduce amount of computation by pre-computing stats and transforms
-        double min = Double.MAX_VALUE;
-        double max = -99999999;
-        double mean = 0;
-        for (double v : arr) {
-            if (v < min) {
-                min = v;
-            }
-            if (v > max) {
-                max = v;
-            }
-            mean += v;
-        }
-        mean /= arr.length;
-
-        int nfft = (int) Math.pow(2.0, (int) Math.ceil(Math.log(series.length) / Math.log(2)));
-        Complex[] fft = new Complex[nfft];
-        for (int j = 0; j < nfft; j++) {
-            if (j < series.length)
-                fft[j] = new Complex(series[j] - mean, 0);
-            else
-                fft[j] = new Complex(0, 0);
-        }
-
-        FastFourierTransformer f = new FastFourierTransformer(DftNormalization.STANDARD);
-        fft = f.transform(fft, TransformType.FORWARD);
-
-        double[] ac = autoCorr(arr, fft);
-
-        int acfz = acFirstZero(ac);
-
-        featureSet[0] = histMode5DN(arr, min, max);
-        featureSet[1] = histMode10DN(arr, min, max);
-        featureSet[2] = binaryStatsMeanLongstretch1SB(arr, mean);
-        featureSet[3] = outlierIncludeP001mdrmdDN(outlierArr);
-        featureSet[4] = outlierIncludeN001mdrmdDN(outlierArr);
-        featureSet[5] = f1ecacCO(ac);
-        featureSet[6] = firstMinacCO(ac);
-        featureSet[7] = summariesWelchRectArea51SP(arr, fft);
-        featureSet[8] = summariesWelchRectCentroidSP(arr, fft);
-        featureSet[9] = localSimpleMean3StderrFC(arr);
-        featureSet[10] = trev1NumCO(arr);
-        featureSet[11] = histogramAMIeven25CO(arr, min, max);
-        featureSet[12] = autoMutualInfoStats40GaussianFmmiIN(ac);
-        featureSet[13] = hrvClassicPnn40MD(arr);
-        featureSet[14] = binaryStatsDiffLongstretch0SB(arr);
-        featureSet[15] = motifThreeQuantileHhSB(arr);
-        featureSet[16] = localSimpleMean1TauresratFC(arr, acfz);
-        featureSet[17] = embed2DistTauDExpfitMeandiffCO(arr, acfz);
-        featureSet[18] = fluctAnal2Dfa5012LogiPropR1SC(arr);
-        featureSet[19] = fluctAnal2Rsrangefit501LogiPropR1SC(arr);
-        featureSet[20] = transitionMatrix3acSumdiagcovSB(arr, acfz);
-        featureSet[21] = periodicityWangTh001PD(arr);
+        currentSeriesID = Integer.MIN_VALUE;
+        currentSeries = null;
 
         if (classValue > Double.MIN_VALUE) featureSet[22] = classValue;
 
@@ -206,385 +149,42 @@ public class Catch22 implements Transformer {
     }
 
     public double getSummaryStatByIndex(int summaryStatIndex, int seriesID, double[] series) throws Exception {
-        if (seriesID != currentSeriesID) {
+        Catch22IntervalEngine engine = getEngine();
+        if (seriesID != currentSeriesID || series != currentSeries) {
             currentSeriesID = seriesID;
-            idxMin = Double.MAX_VALUE;
-            idxMax = -99999999;
-            idxMean = Double.MIN_VALUE;
-            idxFFT = null;
-            idxAC = null;
-            idxACFZ = -1;
-            idxOutlierSeries = null;
-
-            if (norm) {
-                idxSeries = new double[series.length];
-                System.arraycopy(series, 0, idxSeries, 0, series.length);
-                zNormalise(idxSeries);
-            } else {
-                idxSeries = series;
-            }
+            currentSeries = series;
+            engine.setSeries(series);
         }
 
-        switch (summaryStatIndex) {
-            case 0:
-            case 1:
-            case 11:
-                if (idxMin == Double.MAX_VALUE) {
-                    for (double v : idxSeries) {
-                        if (v < idxMin) {
-                            idxMin = v;
-                        }
-                        if (v > idxMax) {
-                            idxMax = v;
-                        }
-                    }
-                }
-                break;
-            case 2:
-                if (idxMean == Double.MIN_VALUE) {
-                    idxMean = mean(idxSeries);
-                }
-                break;
-            case 3:
-            case 4:
-                if (idxOutlierSeries == null) {
-                    if (outlierNorm && !norm) {
-                        idxOutlierSeries = new double[idxSeries.length];
-                        System.arraycopy(idxSeries, 0, idxOutlierSeries, 0, idxSeries.length);
-                        zNormalise(idxOutlierSeries);
-                    } else {
-                        idxOutlierSeries = idxSeries;
-                    }
-                }
-                break;
-            case 7:
-            case 8:
-                if (idxFFT == null) {
-                    if (idxMean == Double.MIN_VALUE) {
-                        idxMean = mean(idxSeries);
-                    }
-
-                    int nfft = (int) Math.pow(2.0, (int) Math.ceil(Math.log(idxSeries.length) / Math.log(2)));
-                    idxFFT = new Complex[nfft];
-                    for (int j = 0; j < nfft; j++) {
-                        if (j < idxSeries.length)
-                            idxFFT[j] = new Complex(idxSeries[j] - idxMean, 0);
-                        else
-                            idxFFT[j] = new Complex(0, 0);
-                    }
-
-                    FastFourierTransformer f = new FastFourierTransformer(DftNormalization.STANDARD);
-                    idxFFT = f.transform(idxFFT, TransformType.FORWARD);
-                }
-                break;
-            case 5:
-            case 6:
-            case 12:
-                if (idxAC == null) {
-                    if (idxFFT == null) {
-                        if (idxMean == Double.MIN_VALUE) {
-                            idxMean = mean(idxSeries);
-                        }
-
-                        int nfft = (int) Math.pow(2.0, (int) Math.ceil(Math.log(idxSeries.length) / Math.log(2)));
-                        idxFFT = new Complex[nfft];
-                        for (int j = 0; j < nfft; j++) {
-                            if (j < idxSeries.length)
-                                idxFFT[j] = new Complex(idxSeries[j] - idxMean, 0);
-                            else
-                                idxFFT[j] = new Complex(0, 0);
-                        }
-
-                        FastFourierTransformer f = new FastFourierTransformer(DftNormalization.STANDARD);
-                        idxFFT = f.transform(idxFFT, TransformType.FORWARD);
-                    }
-
-                    idxAC = autoCorr(idxSeries, idxFFT);
-                }
-                break;
-            case 16:
-            case 17:
-            case 20:
-                if (idxACFZ == -1){
-                    if (idxAC == null) {
-                        if (idxFFT == null) {
-                            if (idxMean == Double.MIN_VALUE) {
-                                idxMean = mean(idxSeries);
-                            }
-
-                            int nfft = (int) Math.pow(2.0, (int) Math.ceil(Math.log(idxSeries.length) / Math.log(2)));
-                            idxFFT = new Complex[nfft];
-                            for (int j = 0; j < nfft; j++) {
-                                if (j < idxSeries.length)
-                                    idxFFT[j] = new Complex(idxSeries[j] - idxMean, 0);
-                                else
-                                    idxFFT[j] = new Complex(0, 0);
-                            }
-
-                            FastFourierTransformer f = new FastFourierTransformer(DftNormalization.STANDARD);
-                            idxFFT = f.transform(idxFFT, TransformType.FORWARD);
-                        }
-
-                        idxAC = autoCorr(idxSeries, idxFFT);
-                    }
-                    idxACFZ = acFirstZero(idxAC);
-                }
-                break;
-        }
-
-        double feature;
-        switch (summaryStatIndex) {
-            case 0:
-                feature = histMode5DN(idxSeries, idxMin, idxMax);
-                break;
-            case 1:
-                feature = histMode10DN(idxSeries, idxMin, idxMax);
-                break;
-            case 2:
-                feature = binaryStatsMeanLongstretch1SB(idxSeries, idxMean);
-                break;
-            case 3:
-                feature = outlierIncludeP001mdrmdDN(idxOutlierSeries);
-                break;
-            case 4:
-                feature = outlierIncludeN001mdrmdDN(idxOutlierSeries);
-                break;
-            case 5:
-                feature = f1ecacCO(idxAC);
-                break;
-            case 6:
-                feature = firstMinacCO(idxAC);
-                break;
-            case 7:
-                feature = summariesWelchRectArea51SP(idxSeries, idxFFT);
-                break;
-            case 8:
-                feature = summariesWelchRectCentroidSP(idxSeries, idxFFT);
-                break;
-            case 9:
-                feature = localSimpleMean3StderrFC(idxSeries);
-                break;
-            case 10:
-                feature = trev1NumCO(idxSeries);
-                break;
-            case 11:
-                feature = histogramAMIeven25CO(idxSeries, idxMin, idxMax);
-                break;
-            case 12:
-                feature = autoMutualInfoStats40GaussianFmmiIN(idxAC);
-                break;
-            case 13:
-                feature = hrvClassicPnn40MD(idxSeries);
-                break;
-            case 14:
-                feature = binaryStatsDiffLongstretch0SB(idxSeries);
-                break;
-            case 15:
-                feature = motifThreeQuantileHhSB(idxSeries);
-                break;
-            case 16:
-                feature = localSimpleMean1TauresratFC(idxSeries, idxACFZ);
-                break;
-            case 17:
-                feature = embed2DistTauDExpfitMeandiffCO(idxSeries, idxACFZ);
-                break;
-            case 18:
-                feature = fluctAnal2Dfa5012LogiPropR1SC(idxSeries);
-                break;
-            case 19:
-                feature = fluctAnal2Rsrangefit501LogiPropR1SC(idxSeries);
-                break;
-            case 20:
-                feature = transitionMatrix3acSumdiagcovSB(idxSeries, idxACFZ);
-                break;
-            case 21:
-                feature = periodicityWangTh001PD(idxSeries);
-                break;
-            default:
-                throw new Exception("Invalid Catch22 summary stat index.");
-        }
-
-        if (Double.isNaN(feature) || Double.isInfinite(feature)){
-            feature = 0;
-        }
-
-        return feature;
+        return engine.getFeature(summaryStatIndex);
     }
 
     public static double getSummaryStatByIndex(int summaryStatIndex, double[] series, boolean outlierNorm) {
-        double min = Double.MAX_VALUE;
-        double max = -99999999;
-        double mean = Double.MIN_VALUE;
-        Complex[] fft = null;
-        double[] ac = null;
-        int acfz = -1;
-        double[] newSeries = series;
-
         if (summaryStatIndex < 0 || summaryStatIndex > 21){
             System.err.println("Invalid Catch22 summary stat index.");
             return Double.MAX_VALUE;
         }
 
-        switch (summaryStatIndex) {
-            case 0:
-            case 1:
-            case 11:
-                for (double v : newSeries) {
-                    if (v < min) {
-                        min = v;
-                    }
-                    if (v > max) {
-                        max = v;
-                    }
-                }
-                break;
-            case 2:
-                mean = mean(newSeries);
-                break;
-            case 3:
-            case 4:
-                if (outlierNorm) {
-                    newSeries = new double[newSeries.length];
-                    System.arraycopy(series, 0, newSeries, 0, series.length);
-                    zNormalise(newSeries);
-                }
-                break;
-            case 7:
-            case 8:
-                mean = mean(newSeries);
-
-                int nfft = (int) Math.pow(2.0, (int) Math.ceil(Math.log(newSeries.length) / Math.log(2)));
-                fft = new Complex[nfft];
-                for (int j = 0; j < nfft; j++) {
-                    if (j < newSeries.length)
-                        fft[j] = new Complex(newSeries[j] - mean, 0);
-                    else
-                        fft[j] = new Complex(0, 0);
-                }
-
-                FastFourierTransformer f = new FastFourierTransformer(DftNormalization.STANDARD);
-                fft = f.transform(fft, TransformType.FORWARD);
-                break;
-            case 5:
-            case 6:
-            case 12:
-                mean = mean(newSeries);
-
-                int nfft2 = (int) Math.pow(2.0, (int) Math.ceil(Math.log(newSeries.length) / Math.log(2)));
-                fft = new Complex[nfft2];
-                for (int j = 0; j < nfft2; j++) {
-                    if (j < newSeries.length)
-                        fft[j] = new Complex(newSeries[j] - mean, 0);
-                    else
-                        fft[j] = new Complex(0, 0);
-                }
+        Catch22IntervalEngine engine = outlierNorm ? threadOutlierNormEngine.get() : threadEngine.get();
+        engine.setSeries(series);
+        return engine.getFeature(summaryStatIndex);
+    }
 
-                FastFourierTransformer f2 = new FastFourierTransformer(DftNormalization.STANDARD);
-                fft = f2.transform(fft, TransformType.FORWARD);
-
-                ac = autoCorr(newSeries, fft);
-                break;
-            case 16:
-            case 17:
-            case 20:
-                mean = mean(newSeries);
-
-                int nfft3 = (int) Math.pow(2.0, (int) Math.ceil(Math.log(newSeries.length) / Math.log(2)));
-                fft = new Complex[nfft3];
-                for (int j = 0; j < nfft3; j++) {
-                    if (j < newSeries.length)
-                        fft[j] = new Complex(newSeries[j] - mean, 0);
-                    else
-                        fft[j] = new Complex(0, 0);
-                }
+    /**
+     * Finds a summary stat for the interval [start, end] of a series without copying it. Consecutive calls on the
+     * same interval of the same array from a thread share the intermediate results used by the features, so the
+     * array must not be modified between calls.
+     */
+    public static double getSummaryStatByIndex(int summaryStatIndex, double[] series, int start, int end,
+                                               boolean outlierNorm) {
+        if (summaryStatIndex < 0 || summaryStatIndex > 21){
+            System.err.println("Invalid Catch22 summary stat index.");
+            return Double.MAX_VALUE;
+        }
 
-                FastFourierTransformer f3 = new FastFourierTransformer(DftNormalization.STANDARD);
-                fft = f3.transform(fft, TransformType.FORWARD);
-
-                ac = autoCorr(newSeries, fft);
-
-                acfz = acFirstZero(ac);
-                break;
-        }
-
-
-        double feature;
-        switch (summaryStatIndex) {
-            case 0:
-                feature = histMode5DN(newSeries, min, max);
-                break;
-            case 1:
-                feature = histMode10DN(newSeries, min, max);
-                break;
-            case 2:
-                feature = binaryStatsMeanLongstretch1SB(newSeries, mean);
-                break;
-            case 3:
-                feature = outlierIncludeP001mdrmdDN(newSeries);
-                break;
-            case 4:
-                feature = outlierIncludeN001mdrmdDN(newSeries);
-                break;
-            case 5:
-                feature = f1ecacCO(ac);
-                break;
-            case 6:
-                feature = firstMinacCO(ac);
-                break;
-            case 7:
-                feature = summariesWelchRectArea51SP(newSeries, fft);
-                break;
-            case 8:
-                feature = summariesWelchRectCentroidSP(newSeries, fft);
-                break;
-            case 9:
-                feature = localSimpleMean3StderrFC(newSeries);
-                break;
-            case 10:
-                feature = trev1NumCO(newSeries);
-                break;
-            case 11:
-                feature = histogramAMIeven25CO(newSeries, min, max);
-                break;
-            case 12:
-                feature = autoMutualInfoStats40GaussianFmmiIN(ac);
-                break;
-            case 13:
-                feature = hrvClassicPnn40MD(newSeries);
-                break;
-            case 14:
-                feature = binaryStatsDiffLongstretch0SB(newSeries);
-                break;
-            case 15:
-                feature = motifThreeQuantileHhSB(newSeries);
-                break;
-            case 16:
-                feature = localSimpleMean1TauresratFC(newSeries, acfz);
-                break;
-            case 17:
-                feature = embed2DistTauDExpfitMeandiffCO(newSeries, acfz);
-                break;
-            case 18:
-                feature = fluctAnal2Dfa5012LogiPropR1SC(newSeries);
-                break;
-            case 19:
-                feature = fluctAnal2Rsrangefit501LogiPropR1SC(newSeries);
-                break;
-            case 20:
-                feature = transitionMatrix3acSumdiagcovSB(newSeries, acfz);
-                break;
-            case 21:
-                feature = periodicityWangTh001PD(newSeries);
-                break;
-            default:
-                feature = Double.MAX_VALUE;
-        }
-
-        if (Double.isNaN(feature) || Double.isInfinite(feature)){
-            feature = 0;
-        }
-
-        return feature;
+        Catch22IntervalEngine engine = outlierNorm ? threadOutlierNormEngine.get() : threadEngine.get();
+        engine.setInterval(series, start, end);
+        return engine.getFeature(summaryStatIndex);
     }
 
     public static String getSummaryStatNameByIndex(int summaryStatIndex) throws Exception {
@@ -616,17 +216,17 @@ public class Catch22 implements Transformer {
     }
 
     // Mode of z-scored distribution (5-bin histogram)
-    private static double histMode5DN(double[] arr, double min, double max) {
+    static double histMode5DN(double[] arr, double min, double max) {
         return histogramMode(arr, 5, min, max);
     }
 
     // Mode of z-scored distribution (10-bin histogram)
-    private static double histMode10DN(double[] arr, double min, double max) {
+    static double histMode10DN(double[] arr, double min, double max) {
         return histogramMode(arr, 10, min, max);
     }
 
     // Longest period of consecutive values above the mean
-    private static double binaryStatsMeanLongstretch1SB(double[] arr, double mean) {
+    static double binaryStatsMeanLongstretch1SB(double[] arr, double mean) {
         int[] meanBinary = new int[arr.length];
         for (int i = 0; i < arr.length; i++) {
             if (arr[i] - mean > 0) {
@@ -638,12 +238,12 @@ public class Catch22 implements Transformer {
     }
 
     // Time intervals between successive extreme events above the mean
-    private static double outlierIncludeP001mdrmdDN(double[] arr) {
+    static double outlierIncludeP001mdrmdDN(double[] arr) {
         return outlierInclude(arr);
     }
 
     // Time intervals between successive extreme events below the mean
-    private static double outlierIncludeN001mdrmdDN(double[] arr) {
+    static double outlierIncludeN001mdrmdDN(double[] arr) {
         double[] newArr = new double[arr.length];
         for (int i = 0; i < arr.length; i++) {
             newArr[i] = -arr[i];
@@ -653,7 +253,7 @@ public class Catch22 implements Transformer {
     }
 
     // First 1/e crossing of autocorrelation function
-    private static double f1ecacCO(double[] ac) {
+    static double f1ecacCO(double[] ac) {
         double threshold = 0.36787944117144233; // 1/Math.exp(1);
 
         for (int i = 1; i < ac.length; i++) {
@@ -666,7 +266,7 @@ public class Catch22 implements Transformer {
     }
 
     // First minimum of autocorrelation function
-    private static double firstMinacCO(double[] ac) {
+    static double firstMinacCO(double[] ac) {
         for (int i = 1; i < ac.length - 1; i++) {
             if (ac[i] < ac[i - 1] && ac[i] < ac[i + 1]) {
                 return i;
@@ -677,17 +277,17 @@ public class Catch22 implements Transformer {
     }
 
     // Total power in lowest fifth of frequencies in the Fourier power spectrum
-    private static double summariesWelchRectArea51SP(double[] arr, Complex[] fft) {
-        return summariesWelchRect(arr, false, fft);
+    static double summariesWelchRectArea51SP(int length, double[] power, int nfft) {
+        return summariesWelchRect(length, false, power, nfft);
     }
 
     // Centroid of the Fourier power spectrum
-    private static double summariesWelchRectCentroidSP(double[] arr, Complex[] fft) {
-        return summariesWelchRect(arr, true, fft);
+    static double summariesWelchRectCentroidSP(int length, double[] power, int nfft) {
+        return summariesWelchRect(length, true, power, nfft);
     }
 
     // Mean error from a rolling 3-sample mean forecasting
-    private static double localSimpleMean3StderrFC(double[] arr) {
+    static double localSimpleMean3StderrFC(double[] arr) {
         if (arr.length - 3 < 3)
             return 0;
         double[] res = localSimpleMean(arr, 3);
@@ -696,7 +296,7 @@ public class Catch22 implements Transformer {
     }
 
     // Time-reversibility statistic, ((x_t+1 − x_t)^3)_t
-    private static double trev1NumCO(double[] arr) {
+    static double trev1NumCO(double[] arr) {
         double[] y = new double[arr.length - 1];
 
         for (int i = 0; i < y.length; i++) {
@@ -707,7 +307,7 @@ public class Catch22 implements Transformer {
     }
 
     // Automutual information, m = 2, τ = 5
-    private static double histogramAMIeven25CO(double[] arr, double min, double max) {
+    static double histogramAMIeven25CO(double[] arr, double min, double max) {
         double newMin = min - 0.1;
         double newMax = max + 0.1;
         double binWidth = (newMax - newMin) / 5;
@@ -738,7 +338,7 @@ public class Catch22 implements Transformer {
     }
 
     // First minimum of the automutual information function
-    private static double autoMutualInfoStats40GaussianFmmiIN(double[] ac) {
+    static double autoMutualInfoStats40GaussianFmmiIN(double[] ac) {
         int tau = Math.min(40, (int) Math.ceil(ac.length / 2));
 
         double[] diffs = new double[tau - 1];
@@ -759,7 +359,7 @@ public class Catch22 implements Transformer {
     }
 
     // Proportion of successive differences exceeding 0.04σ (Mietus 2002)
-    private static double hrvClassicPnn40MD(double[] arr) {
+    static double hrvClassicPnn40MD(double[] arr) {
         double[] diffs = new double[arr.length - 1];
         for (int i = 0; i < diffs.length; i++) {
             diffs[i] = Math.abs(arr[i + 1] - arr[i]) * 1000;
@@ -776,7 +376,7 @@ public class Catch22 implements Transformer {
     }
 
     // Longest period of successive incremental decreases
-    private static double binaryStatsDiffLongstretch0SB(double[] arr) {
+    static double binaryStatsDiffLongstretch0SB(double[] arr) {
         int[] diffBinary = new int[arr.length - 1];
         for (int i = 0; i < diffBinary.length; i++) {
             if (arr[i + 1] - arr[i] >= 0) {
@@ -789,7 +389,7 @@ public class Catch22 implements Transformer {
 
     // Shannon entropy of two successive letters in equiprobable 3-letter
     // symbolization
-    private static double motifThreeQuantileHhSB(double[] arr) {
+    static double motifThreeQuantileHhSB(double[] arr) {
         GenericTools.SortIndexAscending sort = new GenericTools.SortIndexAscending(arr);
         Integer[] indicies = sort.getIndicies();
         Arrays.sort(indicies, sort);
@@ -837,32 +437,8 @@ public class Catch22 implements Transformer {
         return -sum;
     }
 
-    // Change in correlation length after iterative differencing
-    private static double localSimpleMean1TauresratFC(double[] arr, int acfz) {
-        if (arr.length - 1 < 1)
-            return 0;
-        double[] res = localSimpleMean(arr, 1);
-        double mean = mean(res);
-
-        int nfft = (int) Math.pow(2.0, (int) Math.ceil(Math.log(res.length) / Math.log(2)));
-        Complex[] fft = new Complex[nfft];
-        for (int j = 0; j < nfft; j++) {
-            if (j < res.length)
-                fft[j] = new Complex(res[j] - mean, 0);
-            else
-                fft[j] = new Complex(0, 0);
-        }
-
-        FastFourierTransformer f = new FastFourierTransformer(DftNormalization.STANDARD);
-        fft = f.transform(fft, TransformType.FORWARD);
-
-        double[] resAc = autoCorr(res, fft);
-
-        return (double) acFirstZero(resAc) / acfz;
-    }
-
     // Exponential fit to successive distances in 2-d embedding space
-    private static double embed2DistTauDExpfitMeandiffCO(double[] arr, int acfz) {
+    static double embed2DistTauDExpfitMeandiffCO(double[] arr, int acfz) {
         int tau = acfz;
         if (tau > arr.length / 10) {
             tau = arr.length / 10;
@@ -916,7 +492,7 @@ public class Catch22 implements Transformer {
 
     // Proportion of slower timescale fluctuations that scale with DFA (50%
     // sampling)
-    private static double fluctAnal2Dfa5012LogiPropR1SC(double[] arr) {
+    static double fluctAnal2Dfa5012LogiPropR1SC(double[] arr) {
         double[] cs = new double[arr.length / 2];
         cs[0] = arr[0];
         for (int i = 1; i < cs.length; i++) {
@@ -928,7 +504,7 @@ public class Catch22 implements Transformer {
 
     // Proportion of slower timescale fluctuations that scale with linearly rescaled
     // range fits
-    private static double fluctAnal2Rsrangefit501LogiPropR1SC(double[] arr) {
+    static double fluctAnal2Rsrangefit501LogiPropR1SC(double[] arr) {
         double[] cs = new double[arr.length];
         cs[0] = arr[0];
         for (int i = 1; i < arr.length; i++) {
@@ -939,7 +515,7 @@ public class Catch22 implements Transformer {
     }
 
     // Trace of covariance of transition matrix between symbols in 3-letter alphabet
-    private static double transitionMatrix3acSumdiagcovSB(double[] arr, int acfz) {
+    static double transitionMatrix3acSumdiagcovSB(double[] arr, int acfz) {
         // int numGroups = 3;
         double[] ds = new double[(arr.length - 1) / acfz + 1];
         for (int i = 0; i < ds.length; i++) {
@@ -999,7 +575,7 @@ public class Catch22 implements Transformer {
     }
 
     // Periodicity measure of (Wang et al. 2007)
-    private static double periodicityWangTh001PD(double[] arr) {
+    static double periodicityWangTh001PD(double[] arr) {
         double[] ySpline = splineFit(arr);
 
         double[] ySub = new double[arr.length];
@@ -1164,38 +740,19 @@ public class Catch22 implements Transformer {
         return median(Arrays.copyOf(medians, trimLimit + 1), false);
     }
 
-    private static double[] autoCorr(double[] arr, Complex[] fft) {
-        Complex[] c = new Complex[fft.length];
-        for (int i = 0; i < fft.length; i++) {
-            c[i] = fft[i].multiply(new Complex(fft[i].getReal(), -fft[i].getImaginary()));
-        }
-
-        FastFourierTransformer f = new FastFourierTransformer(DftNormalization.STANDARD);
-        c = f.transform(c, TransformType.INVERSE);
-
-        double[] acf = new double[arr.length];
-        double d = c[0].getReal();
-        if (d != 0) {
-            for (int i = 0; i < arr.length; i++) {
-                acf[i] = c[i].getReal() / d;
-            }
-        }
-
-        return acf;
-    }
-
-    private static double summariesWelchRect(double[] arr, boolean centroid, Complex[] fft) {
-        int newLength = fft.length / 2 + 1;
+    // power holds the squared magnitudes of the first nfft/2+1 Fourier coefficients
+    private static double summariesWelchRect(int length, boolean centroid, double[] power, int nfft) {
+        int newLength = nfft / 2 + 1;
         double[] p = new double[newLength];
         double pi2 = 2 * Math.PI;
-        p[0] = (Math.pow(complexMagnitude(fft[0]), 2) / arr.length) / pi2;
+        p[0] = (power[0] / length) / pi2;
         for (int i = 1; i < newLength - 1; i++) {
-            p[i] = ((Math.pow(complexMagnitude(fft[i]), 2) / arr.length) * 2) / pi2;
+            p[i] = ((power[i] / length) * 2) / pi2;
         }
-        p[newLength - 1] = (Math.pow(complexMagnitude(fft[newLength - 1]), 2) / arr.length) / pi2;
+        p[newLength - 1] = (power[newLength - 1] / length) / pi2;
 
         double[] w = new double[newLength];
-        double a = 1.0 / fft.length;
+        double a = 1.0 / nfft;
         for (int i = 0; i < newLength; i++) {
             w[i] = i * a * Math.PI * 2;
         }
@@ -1225,11 +782,7 @@ public class Catch22 implements Transformer {
         }
     }
 
-    private static double complexMagnitude(Complex c){
-        return Math.sqrt(c.getReal() * c.getReal() + c.getImaginary() * c.getImaginary());
-    }
-
-    private static double[] localSimpleMean(double[] arr, int trainLength) {
+    static double[] localSimpleMean(double[] arr, int trainLength) {
         double[] res = new double[arr.length - trainLength];
         for (int i = 0; i < res.length; i++) {
             double sum = 0;
@@ -1241,7 +794,7 @@ public class Catch22 implements Transformer {
         return res;
     }
 
-    private static int acFirstZero(double[] ac) {
+    static int acFirstZero(double[] ac) {
         for (int i = 1; i < ac.length; i++) {
             if (ac[i] <= 0) {
                 return i;
@@ -0,0 +1,398 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tsml.transformers;
+
+import edu.emory.mathcs.jtransforms.fft.DoubleFFT_1D;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static utilities.ArrayUtilities.mean;
+import static utilities.ClusteringUtilities.zNormalise;
+
+/**
+ * Finds catch22 features for a series or an interval of a series, sharing the intermediate results between
+ * features.
+ *
+ * The min and max, mean, Fourier power spectrum, autocorrelation function and its first zero crossing are each
+ * found at most once per series, when the first feature which uses them is requested, so any subset of the 22
+ * features can be read for the cost of the intermediates it needs. The spectrum is found using a real FFT over
+ * primitive arrays, and the FFT plans and work arrays are kept between series.
+ *
+ * Not thread safe, each thread should use its own engine.
+ */
+public class Catch22IntervalEngine {
+
+    public static final int NUM_FEATURES = 22;
+
+    private final boolean norm;
+    private final boolean outlierNorm;
+
+    // the current series, and the source array and interval it was copied from if set using setInterval
+    private double[] series;
+    private double[] source;
+    private int start;
+    private int end;
+
+    // intermediates for the current series
+    private boolean hasMinMax;
+    private double min;
+    private double max;
+    private boolean hasMean;
+    private double mean;
+    private double[] outlierSeries;
+    private int nfft;
+    private boolean hasSpectrum;
+    private double[] ac;
+    private int acfz;
+
+    // reused between series
+    private double[] fftBuffer = new double[0];
+    private double[] power = new double[0];
+    private double[] residualPower = new double[0];
+    private final HashMap<Integer, DoubleFFT_1D> ffts = new HashMap<>();
+
+    public Catch22IntervalEngine() {
+        this(false, false);
+    }
+
+    /**
+     * @param norm z-normalise each series before finding features
+     * @param outlierNorm z-normalise each series for the outlier features only
+     */
+    public Catch22IntervalEngine(boolean norm, boolean outlierNorm) {
+        this.norm = norm;
+        this.outlierNorm = outlierNorm;
+    }
+
+    /**
+     * Sets the series to find features for, discarding any intermediates of the previous series. Unless
+     * normalising the array is used as it is, so must not be modified while features are read.
+     *
+     * @param series the series
+     */
+    public void setSeries(double[] series) {
+        if (norm) {
+            this.series = Arrays.copyOf(series, series.length);
+            zNormalise(this.series);
+        } else {
+            this.series = series;
+        }
+
+        source = null;
+        reset();
+    }
+
+    /**
+     * Sets the series to find features for to an interval of source. If this is the same interval of the same
+     * array as the last call the intermediates found so far are kept, so the source must not be modified between
+     * calls.
+     *
+     * @param source the full series
+     * @param start the first index of the interval
+     * @param end the last index of the interval, inclusive
+     */
+    public void setInterval(double[] source, int start, int end) {
+        if (source == this.source && start == this.start && end == this.end)
+            return;
+
+        series = Arrays.copyOfRange(source, start, end + 1);
+        if (norm)
+            zNormalise(series);
+
+        this.source = source;
+        this.start = start;
+        this.end = end;
+        reset();
+    }
+
+    /**
+     * @param featureIndex the index of the feature, from 0 to 21
+     * @return the feature for the current series, with NaN and infinite values replaced by 0
+     */
+    public double getFeature(int featureIndex) {
+        double feature;
+        switch (featureIndex) {
+            case 0:
+                findMinMax();
+                feature = Catch22.histMode5DN(series, min, max);
+                break;
+            case 1:
+                findMinMax();
+                feature = Catch22.histMode10DN(series, min, max);
+                break;
+            case 2:
+                feature = Catch22.binaryStatsMeanLongstretch1SB(series, seriesMean());
+                break;
+            case 3:
+                feature = Catch22.outlierIncludeP001mdrmdDN(outlierSeries());
+                break;
+            case 4:
+                feature = Catch22.outlierIncludeN001mdrmdDN(outlierSeries());
+                break;
+            case 5:
+                feature = Catch22.f1ecacCO(autoCorrelation());
+                break;
+            case 6:
+                feature = Catch22.firstMinacCO(autoCorrelation());
+                break;
+            case 7:
+                findSpectrum();
+                feature = Catch22.summariesWelchRectArea51SP(series.length, power, nfft);
+                break;
+            case 8:
+                findSpectrum();
+                feature = Catch22.summariesWelchRectCentroidSP(series.length, power, nfft);
+                break;
+            case 9:
+                feature = Catch22.localSimpleMean3StderrFC(series);
+                break;
+            case 10:
+                feature = Catch22.trev1NumCO(series);
+                break;
+            case 11:
+                findMinMax();
+                feature = Catch22.histogramAMIeven25CO(series, min, max);
+                break;
+            case 12:
+                feature = Catch22.autoMutualInfoStats40GaussianFmmiIN(autoCorrelation());
+                break;
+            case 13:
+                feature = Catch22.hrvClassicPnn40MD(series);
+                break;
+            case 14:
+                feature = Catch22.binaryStatsDiffLongstretch0SB(series);
+                break;
+            case 15:
+                feature = Catch22.motifThreeQuantileHhSB(series);
+                break;
+            case 16:
+                feature = localSimpleMean1TauresratFC();
+                break;
+            case 17:
+                feature = Catch22.embed2DistTauDExpfitMeandiffCO(series, acFirstZero());
+                break;
+            case 18:
+                feature = Catch22.fluctAnal2Dfa5012LogiPropR1SC(series);
+                break;
+            case 19:
+                feature = Catch22.fluctAnal2Rsrangefit501LogiPropR1SC(series);
+                break;
+            case 20:
+                feature = Catch22.transitionMatrix3acSumdiagcovSB(series, acFirstZero());
+                break;
+            case 21:
+                feature = Catch22.periodicityWangTh001PD(series);
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid Catch22 summary stat index.");
+        }
+
+        if (Double.isNaN(feature) || Double.isInfinite(feature)) {
+            feature = 0;
+        }
+
+        return feature;
+    }
+
+    /**
+     * @param featureIndices the indices of the features to find, from 0 to 21
+     * @param out array to write the features to, in the order of featureIndices
+     */
+    public void getFeatures(int[] featureIndices, double[] out) {
+        for (int i = 0; i < featureIndices.length; i++) {
+            out[i] = getFeature(featureIndices[i]);
+        }
+    }
+
+    /**
+     * @return all 22 features for the current series
+     */
+    public double[] getFeatures() {
+        double[] features = new double[NUM_FEATURES];
+        for (int i = 0; i < NUM_FEATURES; i++) {
+            features[i] = getFeature(i);
+        }
+        return features;
+    }
+
+    private void reset() {
+        hasMinMax = false;
+        hasMean = false;
+        outlierSeries = null;
+        hasSpectrum = false;
+        ac = null;
+        acfz = -1;
+    }
+
+    private void findMinMax() {
+        if (hasMinMax)
+            return;
+
+        min = Double.MAX_VALUE;
+        max = -99999999;
+        for (double v : series) {
+            if (v < min) {
+                min = v;
+            }
+            if (v > max) {
+                max = v;
+            }
+        }
+        hasMinMax = true;
+    }
+
+    private double seriesMean() {
+        if (!hasMean) {
+            mean = mean(series);
+            hasMean = true;
+        }
+        return mean;
+    }
+
+    private double[] outlierSeries() {
+        if (outlierSeries == null) {
+            if (outlierNorm && !norm) {
+                outlierSeries = Arrays.copyOf(series, series.length);
+                zNormalise(outlierSeries);
+            } else {
+                outlierSeries = series;
+            }
+        }
+        return outlierSeries;
+    }
+
+    private void findSpectrum() {
+        if (hasSpectrum)
+            return;
+
+        nfft = fftLength(series.length);
+        forwardFFT(series, seriesMean(), nfft);
+        power = powerSpectrum(nfft, power);
+        hasSpectrum = true;
+    }
+
+    private double[] autoCorrelation() {
+        if (ac == null) {
+            findSpectrum();
+            ac = autoCorrelation(power, nfft, series.length);
+        }
+        return ac;
+    }
+
+    private int acFirstZero() {
+        if (acfz == -1) {
+            acfz = Catch22.acFirstZero(autoCorrelation());
+        }
+        return acfz;
+    }
+
+    // Change in correlation length after iterative differencing
+    private double localSimpleMean1TauresratFC() {
+        if (series.length - 1 < 1)
+            return 0;
+
+        int acfz = acFirstZero();
+
+        double[] res = Catch22.localSimpleMean(series, 1);
+        int resNfft = fftLength(res.length);
+        forwardFFT(res, mean(res), resNfft);
+        residualPower = powerSpectrum(resNfft, residualPower);
+        double[] resAc = autoCorrelation(residualPower, resNfft, res.length);
+
+        return (double) Catch22.acFirstZero(resAc) / acfz;
+    }
+
+    private static int fftLength(int length) {
+        return (int) Math.pow(2.0, (int) Math.ceil(Math.log(length) / Math.log(2)));
+    }
+
+    private DoubleFFT_1D fft(int n) {
+        DoubleFFT_1D fft = ffts.get(n);
+        if (fft == null) {
+            fft = new DoubleFFT_1D(n);
+            ffts.put(n, fft);
+        }
+        return fft;
+    }
+
+    /**
+     * Real FFT of arr minus mean, zero padded to length n. The result is left in fftBuffer in the packed format of
+     * DoubleFFT_1D.realForward: [Re[0], Re[n/2], Re[1], Im[1], ... Re[n/2-1], Im[n/2-1]].
+     */
+    private void forwardFFT(double[] arr, double mean, int n) {
+        if (fftBuffer.length < n)
+            fftBuffer = new double[n];
+
+        for (int i = 0; i < arr.length; i++) {
+            fftBuffer[i] = arr[i] - mean;
+        }
+        Arrays.fill(fftBuffer, arr.length, n, 0);
+
+        if (n > 1)
+            fft(n).realForward(fftBuffer);
+    }
+
+    /**
+     * Squared magnitudes of the first n/2+1 coefficients of the transform in fftBuffer.
+     */
+    private double[] powerSpectrum(int n, double[] out) {
+        int half = n / 2;
+        if (out.length < half + 1)
+            out = new double[half + 1];
+
+        out[0] = fftBuffer[0] * fftBuffer[0];
+        if (n > 1) {
+            for (int i = 1; i < half; i++) {
+                out[i] = fftBuffer[2 * i] * fftBuffer[2 * i] + fftBuffer[2 * i + 1] * fftBuffer[2 * i + 1];
+            }
+            out[half] = fftBuffer[1] * fftBuffer[1];
+        }
+
+        return out;
+    }
+
+    /**
+     * Autocorrelation function from the power spectrum, as the inverse transform of the spectrum normalised by its
+     * value at lag 0. Uses fftBuffer as working space.
+     */
+    private double[] autoCorrelation(double[] power, int n, int length) {
+        int half = n / 2;
+        fftBuffer[0] = power[0];
+        if (n > 1) {
+            fftBuffer[1] = power[half];
+            for (int i = 1; i < half; i++) {
+                fftBuffer[2 * i] = power[i];
+                fftBuffer[2 * i + 1] = 0;
+            }
+
+            // the scaling is removed by the normalisation below
+            fft(n).realInverse(fftBuffer, false);
+        }
+
+        double[] acf = new double[length];
+        double d = fftBuffer[0];
+        if (d != 0) {
+            for (int i = 0; i < length; i++) {
+                acf[i] = fftBuffer[i] / d;
+            }
+        }
+
+        return acf;
+    }
+}
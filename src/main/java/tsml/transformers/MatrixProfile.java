@@ -17,16 +17,27 @@
  
 package tsml.transformers;
 
+import edu.emory.mathcs.jtransforms.fft.DoubleFFT_1D;
 import experiments.data.DatasetLoading;
+import tsml.classifiers.MultiThreadable;
 import tsml.data_containers.TimeSeries;
 import tsml.data_containers.TimeSeriesInstance;
+import tsml.data_containers.TimeSeriesInstances;
+import utilities.ThreadingUtilities;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+
 import static utilities.rescalers.ZNormalisation.ROUNDING_ERROR_CORRECTION;
 import weka.core.Attribute;
 import weka.core.DenseInstance;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.Randomizable;
 
 /**
  *
@@ -44,15 +55,49 @@ import weka.core.Instances;
  *         change the step between comparison subseries that are evaluated when
  *         calculating the profile (e.g. not every 1 index, every 2, 3, ...
  *         etc.)
+ *
+ *         The profile is computed with STOMP by default, which is O(n^2) per
+ *         series rather than the O(n^2 m) of comparing every pair of windows
+ *         directly. SCRIMP++ gives an anytime approximation of the profile
+ *         within a time limit per series, converging to the exact profile if
+ *         given enough time.
+ *
+ * Zhu et al., "Matrix Profile II: Exploiting a Novel Algorithm and GPUs to
+ * break the one Hundred Million Barrier for Time Series Motifs and Joins",
+ * ICDM 2016 (STOMP)
+ * Zhu et al., "Matrix Profile XI: SCRIMP++: Time Series Motif Discovery at
+ * Interactive Speeds", ICDM 2018 (SCRIMP++)
  * 
  */
-public class MatrixProfile implements Transformer {
+public class MatrixProfile implements Transformer, MultiThreadable, Randomizable {
+
+    /**
+     * Algorithm used to find the matrix profile of each series.
+     */
+    public enum Engine {
+        // z-normalise and compare every pair of windows, O(n^2 m)
+        NAIVE,
+        // sliding dot products along each row of the distance matrix, O(n^2)
+        STOMP,
+        // PreSCRIMP then SCRIMP over the diagonals of the distance matrix in random order until complete or out of time
+        SCRIMP_PLUS_PLUS
+    }
+
+    // distances within TIE_TOLERANCE * windowSize of each other are treated as ties, which go to the earliest window.
+    // Exact ties, e.g. between repeats of a pattern or flat windows, pick up different rounding errors in each engine
+    private static final double TIE_TOLERANCE = 1e-10;
 
     private int windowSize = 10;
     private final int stride = 1; // to-do later (maybe!)
     private double[][] distances;
     private int[][] indices;
     private boolean m_Debug = false;
+    private Engine engine = Engine.STOMP;
+    // time limit per series for SCRIMP++ in nanoseconds, <= 0 for no limit
+    private long timeLimit = -1;
+    private int seed = 0;
+    private boolean multithreading = false;
+    private int numThreads = 1;
 
     public MatrixProfile() {
         this(10);
@@ -62,10 +107,83 @@ public class MatrixProfile implements Transformer {
         this.windowSize = windowSize;
     }
 
+    public Engine getEngine() {
+        return engine;
+    }
+
+    public void setEngine(Engine engine) {
+        this.engine = engine;
+    }
+
+    public long getTimeLimit() {
+        return timeLimit;
+    }
+
+    /**
+     * @param timeLimit time limit per series in nanoseconds when using SCRIMP++, <= 0 for no limit
+     */
+    public void setTimeLimit(long timeLimit) {
+        this.timeLimit = timeLimit;
+    }
+
+    @Override
+    public int getSeed() {
+        return seed;
+    }
+
+    @Override
+    public void setSeed(int seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public void enableMultiThreading(int numThreads) {
+        multithreading = numThreads > 1;
+        this.numThreads = numThreads;
+    }
+
+    private SingleInstanceMatrixProfile matrixProfile(Instance inst) {
+        int seriesLength = inst.classIndex() > 0 ? inst.numAttributes() - 1 : inst.numAttributes();
+        return matrixProfile(inst.toDoubleArray(), seriesLength);
+    }
+
+    private SingleInstanceMatrixProfile matrixProfile(double[] series, int seriesLength) {
+        return new SingleInstanceMatrixProfile(series, seriesLength, this.windowSize, this.stride, engine, timeLimit,
+                seed);
+    }
+
+    /**
+     * Run a job per instance, in parallel if multithreading is enabled.
+     */
+    private <T> List<T> computeAll(List<Callable<T>> jobs) {
+        try {
+            if (multithreading) {
+                ExecutorService executor = ThreadingUtilities.buildExecutorService(numThreads);
+                try {
+                    return ThreadingUtilities.computeAll(executor, jobs, false);
+                } finally {
+                    // also when a job fails, so the pool's threads are not left running
+                    executor.shutdownNow();
+                }
+            }
+            List<T> results = new ArrayList<>(jobs.size());
+            for (Callable<T> job : jobs) {
+                results.add(job.call());
+            }
+            return results;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public Instance transform(Instance inst) {
 
-        SingleInstanceMatrixProfile mpIns = new SingleInstanceMatrixProfile(inst, this.windowSize, this.stride);
+        SingleInstanceMatrixProfile mpIns = matrixProfile(inst);
+        return toInstance(inst, mpIns);
+    }
+
+    private Instance toInstance(Instance inst, SingleInstanceMatrixProfile mpIns) {
         Instance out = new DenseInstance(inst.numAttributes() + 1 - windowSize);
 
         for (int i = 0; i < mpIns.distances.length; i++) {
@@ -85,11 +203,25 @@ public class MatrixProfile implements Transformer {
         double[][] out = new double[inst.getNumDimensions()][];
         int i = 0;
         for (TimeSeries ts : inst) {
-            out[i++] = new SingleInstanceMatrixProfile(ts.toValueArray(), this.windowSize, this.stride).series;
+            double[] series = ts.toValueArray();
+            out[i++] = matrixProfile(series, series.length).distances;
         }
         return new TimeSeriesInstance(out, inst.getLabelIndex()); 
     }
 
+    @Override
+    public TimeSeriesInstances transform(TimeSeriesInstances data) {
+        List<Callable<TimeSeriesInstance>> jobs = new ArrayList<>(data.numInstances());
+        for (TimeSeriesInstance inst : data) {
+            jobs.add(() -> transform(inst));
+        }
+        TimeSeriesInstances output = new TimeSeriesInstances(data.getClassLabels());
+        for (TimeSeriesInstance inst : computeAll(jobs)) {
+            output.add(inst);
+        }
+        return output;
+    }
+
 
     @Override
     public Instances transform(Instances instances) {
@@ -112,7 +244,17 @@ public class MatrixProfile implements Transformer {
             windowSize = seriesLength / 4;
         }
 
-        return Transformer.super.transform(instances);
+        List<Callable<SingleInstanceMatrixProfile>> jobs = new ArrayList<>(instances.numInstances());
+        for (Instance inst : instances) {
+            jobs.add(() -> matrixProfile(inst));
+        }
+        List<SingleInstanceMatrixProfile> profiles = computeAll(jobs);
+
+        Instances output = determineOutputFormat(instances);
+        for (int i = 0; i < instances.numInstances(); i++) {
+            output.add(toInstance(instances.get(i), profiles.get(i)));
+        }
+        return output;
     }
 
     /**
@@ -156,8 +298,14 @@ public class MatrixProfile implements Transformer {
         }
         outputIndices.setRelationName(outputIndices.relationName() + "_indices");
 
+        List<Callable<SingleInstanceMatrixProfile>> jobs = new ArrayList<>(instances.numInstances());
+        for (Instance inst : instances) {
+            jobs.add(() -> matrixProfile(inst));
+        }
+        List<SingleInstanceMatrixProfile> profiles = computeAll(jobs);
+
         for (int ins = 0; ins < instances.numInstances(); ins++) {
-            mpIns = new SingleInstanceMatrixProfile(instances.get(ins), this.windowSize, this.stride);
+            mpIns = profiles.get(ins);
             outDist = new DenseInstance(outputDistances.numAttributes());
             outIdx = new DenseInstance(outputIndices.numAttributes());
 
@@ -202,29 +350,34 @@ public class MatrixProfile implements Transformer {
         private final int[] indices;
         private final int seriesLength;
 
-        public SingleInstanceMatrixProfile(Instance series, int windowSize, int stride) {
-            this.series = series.toDoubleArray();
-            this.seriesLength = series.classIndex() > 0 ? series.numAttributes() - 1 : series.numAttributes();
-            this.windowSize = windowSize;
-            this.stride = stride;
-            this.distances = new double[seriesLength + 1 - windowSize];
-            this.indices = new int[seriesLength + 1 - windowSize];
-
-            for (int a = 0; a <= seriesLength - windowSize; a++) {
-                this.locateBestMatch(a);
-            }
+        public SingleInstanceMatrixProfile(double[] series, int windowSize, int stride) {
+            this(series, series.length, windowSize, stride, Engine.NAIVE, -1, 0);
         }
 
-        public SingleInstanceMatrixProfile(double[] series, int windowSize, int stride) {
+        public SingleInstanceMatrixProfile(double[] series, int seriesLength, int windowSize, int stride,
+                                           Engine engine, long timeLimit, int seed) {
             this.series = series;
-            this.seriesLength = series.length;
+            this.seriesLength = seriesLength;
             this.windowSize = windowSize;
             this.stride = stride;
             this.distances = new double[seriesLength + 1 - windowSize];
             this.indices = new int[seriesLength + 1 - windowSize];
 
-            for (int a = 0; a <= seriesLength - windowSize; a++) {
-                this.locateBestMatch(a);
+            switch (engine) {
+                case NAIVE:
+                    for (int a = 0; a <= seriesLength - windowSize; a++) {
+                        this.locateBestMatch(a);
+                    }
+                    break;
+                case STOMP:
+                    new SlidingDotProducts(series, seriesLength, windowSize, distances, indices).stomp();
+                    break;
+                case SCRIMP_PLUS_PLUS:
+                    new SlidingDotProducts(series, seriesLength, windowSize, distances, indices)
+                            .scrimpPlusPlus(timeLimit, new Random(seed));
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown engine: " + engine);
             }
         }
 
@@ -260,7 +413,7 @@ public class MatrixProfile implements Transformer {
                     }
                 }
 
-                if (dist < bsfDist) {
+                if (dist < bsfDist - TIE_TOLERANCE * windowSize) {
                     bsfDist = dist;
                     bsfIdx = comparisonStartIdx;
                 }
@@ -272,6 +425,239 @@ public class MatrixProfile implements Transformer {
         }
     }
 
+    /**
+     * Matrix profile of a single series computed from the dot products of its windows. The dot product of the
+     * windows at (i + 1, j + 1) is found from the dot product at (i, j) in constant time, so each entry of the distance
+     * matrix costs O(1) rather than O(m). Distances are the squared euclidean distance between z-normalised windows,
+     * as in the naive version, using the same exclusion zone.
+     */
+    private static class SlidingDotProducts {
+        private final double[] series;
+        private final int windowSize;
+        private final int profileLength;
+        private final double[] means;
+        private final double[] stds;
+        private final double exclusionZone;
+        private final double tieTolerance;
+        private final double[] distances;
+        private final int[] indices;
+
+        private SlidingDotProducts(double[] input, int seriesLength, int windowSize, double[] distances,
+                                   int[] indices) {
+            this.windowSize = windowSize;
+            this.profileLength = seriesLength - windowSize + 1;
+            this.exclusionZone = windowSize * 1.5;
+            this.tieTolerance = TIE_TOLERANCE * windowSize;
+            this.distances = distances;
+            this.indices = indices;
+            java.util.Arrays.fill(distances, Double.MAX_VALUE);
+            java.util.Arrays.fill(indices, -1);
+
+            // centre the series, which leaves the z-normalised distances unchanged but keeps the dot products small
+            double mean = 0;
+            for (int i = 0; i < seriesLength; i++) {
+                mean += input[i];
+            }
+            mean /= seriesLength;
+            series = new double[seriesLength];
+            for (int i = 0; i < seriesLength; i++) {
+                series[i] = input[i] - mean;
+            }
+
+            // mean and std of each window. These are computed per window in two passes, same as zNormalise, rather
+            // than from running sums: the running sums accumulate enough rounding error to turn the std of a flat
+            // window from zero into noise. This is O(nm), which is small next to the O(n^2) profile.
+            means = new double[profileLength];
+            stds = new double[profileLength];
+            for (int i = 0; i < profileLength; i++) {
+                double sum = 0;
+                for (int j = i; j < i + windowSize; j++) {
+                    sum += series[j];
+                }
+                means[i] = sum / windowSize;
+                double var = 0;
+                for (int j = i; j < i + windowSize; j++) {
+                    double temp = series[j] - means[i];
+                    var += temp * temp;
+                }
+                var /= windowSize;
+                stds[i] = var < ROUNDING_ERROR_CORRECTION ? 0.0 : Math.sqrt(var);
+            }
+        }
+
+        private boolean excluded(int i, int j) {
+            return j >= i - exclusionZone && j <= i + exclusionZone;
+        }
+
+        // squared euclidean distance between the z-normalised windows at i and j given their dot product
+        private double distance(double dotProduct, int i, int j) {
+            if (stds[i] == 0 || stds[j] == 0) {
+                // a flat window z-normalises to all zeros, and any other window z-normalises to a sum of squares of m
+                return stds[i] == stds[j] ? 0 : windowSize;
+            }
+            double correlation = (dotProduct - windowSize * means[i] * means[j]) / (windowSize * stds[i] * stds[j]);
+            return Math.max(0, 2 * windowSize * (1 - correlation));
+        }
+
+        private double dotProduct(int i, int j) {
+            double sum = 0;
+            for (int k = 0; k < windowSize; k++) {
+                sum += series[i + k] * series[j + k];
+            }
+            return sum;
+        }
+
+        // ties go to the earliest window whatever order the windows are visited in
+        private void update(int i, int j, double distance) {
+            if (distance < distances[i] - tieTolerance || distance <= distances[i] + tieTolerance && j < indices[i]) {
+                distances[i] = distance;
+                indices[i] = j;
+            }
+        }
+
+        /**
+         * STOMP. Work down the rows of the distance matrix, updating the dot products of the previous row for the
+         * next. Only the upper triangle is computed, each distance updating the profile at both windows.
+         */
+        private void stomp() {
+            // dot products of the current row, only those above the diagonal are used
+            double[] row = new double[profileLength];
+            for (int j = 0; j < profileLength; j++) {
+                row[j] = dotProduct(0, j);
+            }
+
+            for (int i = 0; i < profileLength; i++) {
+                if (i > 0) {
+                    for (int j = profileLength - 1; j > i; j--) {
+                        row[j] = row[j - 1] - series[i - 1] * series[j - 1]
+                                + series[i + windowSize - 1] * series[j + windowSize - 1];
+                    }
+                }
+                for (int j = i + 1; j < profileLength; j++) {
+                    if (!excluded(i, j)) {
+                        double distance = distance(row[j], i, j);
+                        update(i, j, distance);
+                        update(j, i, distance);
+                    }
+                }
+            }
+        }
+
+        /**
+         * SCRIMP++. PreSCRIMP finds the exact distance profile of every quarter-window-th window using FFT based
+         * sliding dot products, extending along the diagonal around each nearest neighbour found. This quickly gives a
+         * close approximation of the profile. SCRIMP then computes whole diagonals of the distance matrix in random
+         * order, which gives the exact profile once every diagonal is done. The time limit is checked between
+         * windows / diagonals.
+         */
+        private void scrimpPlusPlus(long timeLimit, Random random) {
+            long deadline = timeLimit > 0 ? System.nanoTime() + timeLimit : Long.MAX_VALUE;
+
+            // PreSCRIMP
+            int step = Math.max(1, windowSize / 4);
+            int[] samples = new int[(profileLength + step - 1) / step];
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = i * step;
+            }
+            shuffle(samples, random);
+
+            int fftLength = Integer.highestOneBit(Math.max(1, 2 * series.length - 1)) * 2;
+            DoubleFFT_1D fft = new DoubleFFT_1D(fftLength);
+            double[] seriesFft = new double[2 * fftLength];
+            System.arraycopy(series, 0, seriesFft, 0, series.length);
+            fft.realForwardFull(seriesFft);
+            double[] query = new double[2 * fftLength];
+
+            for (int i : samples) {
+                if (System.nanoTime() > deadline) return;
+
+                // the dot products of window i with every window, i.e. a row of the distance matrix
+                java.util.Arrays.fill(query, 0);
+                for (int k = 0; k < windowSize; k++) {
+                    query[k] = series[i + windowSize - 1 - k];
+                }
+                fft.realForwardFull(query);
+                for (int k = 0; k < fftLength; k++) {
+                    double re = seriesFft[2 * k] * query[2 * k] - seriesFft[2 * k + 1] * query[2 * k + 1];
+                    double im = seriesFft[2 * k] * query[2 * k + 1] + seriesFft[2 * k + 1] * query[2 * k];
+                    query[2 * k] = re;
+                    query[2 * k + 1] = im;
+                }
+                fft.complexInverse(query, true);
+
+                int nearest = -1;
+                double nearestDistance = Double.MAX_VALUE;
+                for (int j = 0; j < profileLength; j++) {
+                    if (!excluded(i, j)) {
+                        double distance = distance(query[2 * (j + windowSize - 1)], i, j);
+                        update(i, j, distance);
+                        update(j, i, distance);
+                        if (distance < nearestDistance) {
+                            nearestDistance = distance;
+                            nearest = j;
+                        }
+                    }
+                }
+
+                if (nearest >= 0) {
+                    // neighbours of similar windows are likely similar, so follow the diagonal either side
+                    double dotProduct = dotProduct(i, nearest);
+                    double forward = dotProduct;
+                    for (int k = 1; k < step && i + k < profileLength && nearest + k < profileLength; k++) {
+                        forward = forward - series[i + k - 1] * series[nearest + k - 1]
+                                + series[i + k + windowSize - 1] * series[nearest + k + windowSize - 1];
+                        updateBoth(i + k, nearest + k, forward);
+                    }
+                    double backward = dotProduct;
+                    for (int k = 1; k < step && i - k >= 0 && nearest - k >= 0; k++) {
+                        backward = backward - series[i - k + windowSize] * series[nearest - k + windowSize]
+                                + series[i - k] * series[nearest - k];
+                        updateBoth(i - k, nearest - k, backward);
+                    }
+                }
+            }
+
+            // SCRIMP
+            int firstDiagonal = (int) Math.floor(exclusionZone) + 1;
+            if (firstDiagonal >= profileLength) return;
+            int[] diagonals = new int[profileLength - firstDiagonal];
+            for (int i = 0; i < diagonals.length; i++) {
+                diagonals[i] = firstDiagonal + i;
+            }
+            shuffle(diagonals, random);
+
+            for (int diagonal : diagonals) {
+                if (System.nanoTime() > deadline) return;
+
+                double dotProduct = dotProduct(0, diagonal);
+                updateBoth(0, diagonal, dotProduct);
+                for (int i = 1; i + diagonal < profileLength; i++) {
+                    int j = i + diagonal;
+                    dotProduct = dotProduct - series[i - 1] * series[j - 1]
+                            + series[i + windowSize - 1] * series[j + windowSize - 1];
+                    updateBoth(i, j, dotProduct);
+                }
+            }
+        }
+
+        private void updateBoth(int i, int j, double dotProduct) {
+            if (!excluded(i, j)) {
+                double distance = distance(dotProduct, i, j);
+                update(i, j, distance);
+                update(j, i, distance);
+            }
+        }
+
+        private static void shuffle(int[] values, Random random) {
+            for (int i = values.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int tmp = values[i];
+                values[i] = values[j];
+                values[j] = tmp;
+            }
+        }
+    }
+
     // adapted from shapelet code to avoid copying subsequences - logic is
     // equivilent. In the shapelet version the input is the subsequence as double[]
     // (i.e. the shapelet).
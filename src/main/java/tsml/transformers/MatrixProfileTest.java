@@ -0,0 +1,91 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.transformers;
+
+import java.util.ArrayList;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+/**
+ * Purpose: test STOMP and SCRIMP++ give the same matrix profile and indices as the naive computation.
+ */
+public class MatrixProfileTest {
+
+    private static Instances randomData(int seed, int seriesLength) {
+        ArrayList<Attribute> atts = new ArrayList<>();
+        for (int i = 0; i < seriesLength; i++)
+            atts.add(new Attribute("att" + i));
+        Instances data = new Instances("MatrixProfileTest", atts, 30);
+
+        Random rand = new Random(seed);
+        for (int s = 0; s < 30; s++) {
+            double[] series = new double[seriesLength];
+            for (int i = 0; i < seriesLength; i++) {
+                switch (s % 3) {
+                    case 0:
+                        series[i] = rand.nextGaussian();
+                        break;
+                    case 1:
+                        //exact repeats of a pattern, so many windows tie at distance 0
+                        series[i] = i % 7 + i % 3;
+                        break;
+                    default:
+                        //flat runs between quantised noise, ties between flat windows and between repeated values
+                        series[i] = (i / 15) % 2 == 0 ? 3 : rand.nextInt(4);
+                }
+            }
+            data.add(new DenseInstance(1.0, series));
+        }
+        return data;
+    }
+
+    private static MatrixProfile profile(MatrixProfile.Engine engine, int seed, Instances data) throws Exception {
+        MatrixProfile mp = new MatrixProfile(10);
+        mp.setEngine(engine);
+        mp.setSeed(seed);
+        mp.processDistancesAndIndices(data);
+        return mp;
+    }
+
+    private static void assertSameAsNaive(MatrixProfile.Engine engine) throws Exception {
+        for (int seed = 0; seed < 3; seed++) {
+            Instances data = randomData(seed, 100 + seed * 10);
+            MatrixProfile naive = profile(MatrixProfile.Engine.NAIVE, seed, data);
+            MatrixProfile actual = profile(engine, seed, data);
+
+            for (int s = 0; s < data.numInstances(); s++) {
+                String msg = engine + " seed " + seed + " series " + s;
+                Assert.assertArrayEquals(msg, naive.getIndices()[s], actual.getIndices()[s]);
+                Assert.assertArrayEquals(msg, naive.getDistances()[s], actual.getDistances()[s], 1e-8);
+            }
+        }
+    }
+
+    @Test
+    public void testStompSameAsNaive() throws Exception {
+        assertSameAsNaive(MatrixProfile.Engine.STOMP);
+    }
+
+    @Test
+    public void testScrimpPlusPlusSameAsNaive() throws Exception {
+        assertSameAsNaive(MatrixProfile.Engine.SCRIMP_PLUS_PLUS);
+    }
+}
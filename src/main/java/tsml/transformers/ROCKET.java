@@ -19,6 +19,8 @@ package tsml.transformers;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.*;
 
@@ -28,7 +30,6 @@ import tsml.classifiers.MultiThreadable;
 import tsml.data_containers.TimeSeriesInstance;
 import tsml.data_containers.TimeSeriesInstances;
 import tsml.data_containers.utilities.TimeSeriesSummaryStatistics;
-import utilities.generic_storage.Pair;
 import weka.core.*;
 
 import static utilities.ClusteringUtilities.zNormalise;
@@ -64,13 +65,20 @@ public class ROCKET implements TrainableTransformer, Randomizable, MultiThreadab
     private int seed;
 
     private boolean multithreading = false;
-    private ExecutorService ex;
+    private int numThreads = 1;
+    private transient ExecutorService ex;
+
+    // thread pools shared between all ROCKET transforms by number of threads, so ensembles of ROCKET transforms
+    // (e.g. Arsenal) reuse the same threads rather than each starting their own
+    private static final Map<Integer, ExecutorService> THREAD_POOLS = new ConcurrentHashMap<>();
 
     private boolean fit = false;
     private int[] candidateLengths = { 7, 9, 11 };
     private int[] numSampledDimensions, dimensions;
     private int[] lengths, dilations, paddings;
     private double[] weights, biases;
+    // the offset of each kernel's weights and sampled dimensions in the weights and dimensions arrays
+    private int[] weightOffsets, dimensionOffsets;
 
     public ROCKET(){ }
 
@@ -104,7 +112,19 @@ public class ROCKET implements TrainableTransformer, Randomizable, MultiThreadab
     @Override
     public void enableMultiThreading(int numThreads){
         multithreading = true;
-        ex = Executors.newFixedThreadPool(numThreads);
+        this.numThreads = numThreads;
+        ex = null;
+    }
+
+    private ExecutorService getExecutor() {
+        if (ex == null) {
+            ex = THREAD_POOLS.computeIfAbsent(numThreads, n -> Executors.newFixedThreadPool(n, r -> {
+                Thread thread = new Thread(r);
+                thread.setDaemon(true);
+                return thread;
+            }));
+        }
+        return ex;
     }
 
     @Override
@@ -121,15 +141,25 @@ public class ROCKET implements TrainableTransformer, Randomizable, MultiThreadab
 
     @Override
     public TimeSeriesInstance transform(TimeSeriesInstance inst) {
-        double[][] output = new double[1][];
-        if (multithreading){
-            output[0] = transformRocketMultithread(inst.toValueArray());
-        }
-        else {
-            output[0] = transformRocket(inst.toValueArray());
+        double[][] output = transform(new double[][][] { inst.toValueArray() });
+        return new TimeSeriesInstance(output, inst.getLabelIndex());
+    }
+
+    @Override
+    public TimeSeriesInstances transform(TimeSeriesInstances data) {
+        if (!fit) fit(data);
+
+        double[][][] series = new double[data.numInstances()][][];
+        for (int i = 0; i < series.length; i++) {
+            series[i] = data.get(i).toValueArray();
         }
+        double[][] transform = transform(series);
 
-        return new TimeSeriesInstance(output, inst.getLabelIndex());
+        TimeSeriesInstances output = new TimeSeriesInstances(data.getClassLabels());
+        for (int i = 0; i < series.length; i++) {
+            output.add(new TimeSeriesInstance(new double[][] { transform[i] }, data.get(i).getLabelIndex()));
+        }
+        return output;
     }
 
     @Override
@@ -139,22 +169,7 @@ public class ROCKET implements TrainableTransformer, Randomizable, MultiThreadab
             return null;
         }
 
-        double[][] data;
-        if (inst.dataset().checkForAttributeType(Attribute.RELATIONAL)) {
-            data = convertMultiInstanceToArrays(splitMultivariateInstance(inst));
-        }
-        else{
-            data = new double[1][];
-            data[0] = extractTimeSeries(inst);
-        }
-
-        double[] transform;
-        if (multithreading){
-            transform = transformRocketMultithread(data);
-        }
-        else{
-            transform = transformRocket(data);
-        }
+        double[] transform = transform(new double[][][] { extractSeries(inst) })[0];
 
         double[] output = new double[numKernels * 2 + 1];
         System.arraycopy(transform, 0, output, 0, numKernels * 2);
@@ -163,72 +178,95 @@ public class ROCKET implements TrainableTransformer, Randomizable, MultiThreadab
         return new DenseInstance(1, output);
     }
 
-    private double[] transformRocket(double[][] inst) {
-        if (normalise){
-            for (double[] dim : inst) {
-                zNormalise(dim);
-            }
-        }
-
-        // apply kernels to the dataset.
-        double[] output = new double[numKernels * 2]; // 2 features per kernel
-
-        int a1 = 0, a2 = 0, a3 = 0, b1, b2; // for weights, channel indices and features
-        for (int i = 0; i < numKernels; i++) {
-            b1 = a1 + numSampledDimensions[i] * lengths[i];
-            b2 = a2 + numSampledDimensions[i];
-
-            Pair<Double, Double> out = applyKernel(inst, ArrayUtils.subarray(weights, a1, b1), lengths[i],
-                    biases[i], dilations[i], paddings[i], numSampledDimensions[i],
-                    ArrayUtils.subarray(dimensions, a2, b2));
-            output[a3] = out.var1;
-            output[a3 + 1] = out.var2;
+    @Override
+    public Instances transform(Instances data) {
+        if (!fit) fit(data);
 
-            a1 = b1;
-            a2 = b2;
-            a3 += 2;
+        double[][][] series = new double[data.numInstances()][][];
+        for (int i = 0; i < series.length; i++) {
+            series[i] = extractSeries(data.get(i));
         }
+        double[][] transform = transform(series);
 
+        Instances output = determineOutputFormat(data);
+        for (int i = 0; i < series.length; i++) {
+            double[] values = transform[i];
+            if (data.classIndex() >= 0) {
+                values = Arrays.copyOf(values, numKernels * 2 + 1);
+                values[values.length - 1] = data.get(i).classValue();
+            }
+            output.add(new DenseInstance(1, values));
+        }
         return output;
     }
 
-    private double[] transformRocketMultithread(double[][] inst){
+    private static double[][] extractSeries(Instance inst) {
+        if (inst.dataset().checkForAttributeType(Attribute.RELATIONAL)) {
+            return convertMultiInstanceToArrays(splitMultivariateInstance(inst));
+        }
+        else{
+            return new double[][] { extractTimeSeries(inst) };
+        }
+    }
+
+    /**
+     * Transform a batch of series, each given as [dimension][time point]. The series are z-normalised in place if
+     * normalise is set. When multithreading the instances and kernels are split into blocks which are spread over the
+     * thread pool, each writing straight into the output.
+     *
+     * @param data the series to transform
+     * @return the PPV and max of each kernel for each series, [series][2 * kernel]
+     */
+    public double[][] transform(double[][][] data) {
         if (normalise){
-            for (double[] dim : inst) {
-                zNormalise(dim);
+            for (double[][] inst : data) {
+                for (double[] dim : inst) {
+                    zNormalise(dim);
+                }
             }
         }
 
-        ArrayList<Future<Pair<Double, Double>>> futures = new ArrayList<>(numKernels);
+        double[][] output = new double[data.length][numKernels * 2];
 
-        int a1 = 0, a2 = 0, b1, b2;
-        for (int i = 0; i < numKernels; ++i) {
-            b1 = a1 + numSampledDimensions[i] * lengths[i];
-            b2 = a2 + numSampledDimensions[i];
-
-            Kernel k = new Kernel(ArrayUtils.subarray(weights, a1, b1), lengths[i], biases[i], dilations[i],
-                    paddings[i], numSampledDimensions[i], ArrayUtils.subarray(dimensions, a2, b2));
-
-            futures.add(ex.submit(new TransformThread(i, inst, k)));
-
-            a1 = b1;
-            a2 = b2;
+        if (!multithreading) {
+            for (int i = 0; i < data.length; i++) {
+                for (int k = 0; k < numKernels; k++) {
+                    applyKernel(data[i], k, output[i]);
+                }
+            }
+            return output;
+        }
+
+        // aim for a few blocks per thread to balance the load. Split the instances first, then split the kernels too
+        // if there are not enough instances, e.g. when transforming a single test instance
+        int numBlocks = numThreads * 4;
+        int numInstanceBlocks = Math.min(data.length, numBlocks);
+        int numKernelBlocks = Math.max(1, Math.min(numKernels, numBlocks / Math.max(1, numInstanceBlocks)));
+
+        List<Callable<Void>> blocks = new ArrayList<>(numInstanceBlocks * numKernelBlocks);
+        for (int i = 0; i < numInstanceBlocks; i++) {
+            int instStart = (int) ((long) i * data.length / numInstanceBlocks);
+            int instEnd = (int) ((long) (i + 1) * data.length / numInstanceBlocks);
+            for (int j = 0; j < numKernelBlocks; j++) {
+                int kernelStart = (int) ((long) j * numKernels / numKernelBlocks);
+                int kernelEnd = (int) ((long) (j + 1) * numKernels / numKernelBlocks);
+                blocks.add(() -> {
+                    for (int n = instStart; n < instEnd; n++) {
+                        for (int k = kernelStart; k < kernelEnd; k++) {
+                            applyKernel(data[n], k, output[n]);
+                        }
+                    }
+                    return null;
+                });
+            }
         }
 
-        double[] output = new double[numKernels * 2];
-        int a3 = 0;
-        for (Future<Pair<Double, Double>> f : futures) {
-            Pair<Double, Double> out;
-            try {
-                out = f.get();
-            } catch (Exception e) {
-                e.printStackTrace();
-                return null;
+        try {
+            for (Future<Void> f : getExecutor().invokeAll(blocks)) {
+                f.get();
             }
-
-            output[a3] = out.var1;
-            output[a3 + 1] = out.var2;
-            a3 += 2;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
         }
 
         return output;
@@ -242,6 +280,8 @@ public class ROCKET implements TrainableTransformer, Randomizable, MultiThreadab
         else {
             fitRocket(data.getMaxLength(), data.getMaxNumDimensions());
         }
+
+        fit = true;
     }
 
     @Override
@@ -335,6 +375,8 @@ public class ROCKET implements TrainableTransformer, Randomizable, MultiThreadab
 
             paddings[i] = random.nextInt(2) == 1 ? Math.floorDiv((lengths[i] - 1) * dilations[i], 2) : 0;
         }
+
+        findOffsets();
     }
 
     private void fitRocketMultithread(int inputLength, int numDimensions) {
@@ -349,7 +391,7 @@ public class ROCKET implements TrainableTransformer, Randomizable, MultiThreadab
         paddings = new int[numKernels];
 
         for (int i = 0; i < numKernels; ++i) {
-            futures.add(ex.submit(new FitThread(i, inputLength, numDimensions)));
+            futures.add(getExecutor().submit(new FitThread(i, inputLength, numDimensions)));
         }
 
         int idx = 0;
@@ -384,10 +426,31 @@ public class ROCKET implements TrainableTransformer, Randomizable, MultiThreadab
             System.arraycopy(tempDimensions[i], 0, dimensions, a2, numSampledDimensions[i]);
             a2 += numSampledDimensions[i];
         }
+
+        findOffsets();
+    }
+
+    private void findOffsets() {
+        weightOffsets = new int[numKernels];
+        dimensionOffsets = new int[numKernels];
+        int a1 = 0, a2 = 0;
+        for (int i = 0; i < numKernels; i++) {
+            weightOffsets[i] = a1;
+            dimensionOffsets[i] = a2;
+            a1 += numSampledDimensions[i] * lengths[i];
+            a2 += numSampledDimensions[i];
+        }
     }
 
-    private static Pair<Double, Double> applyKernel(double[][] inst, double[] weights, int length, double bias,
-                                            int dilation, int padding, int numSampledDimensions, int[] dimensions) {
+    private void applyKernel(double[][] inst, int kernel, double[] output) {
+        int length = lengths[kernel];
+        int dilation = dilations[kernel];
+        int padding = paddings[kernel];
+        int numSampled = numSampledDimensions[kernel];
+        int weightOffset = weightOffsets[kernel];
+        int dimensionOffset = dimensionOffsets[kernel];
+        double bias = biases[kernel];
+
         int inputLength = inst[0].length;
         int outputLength = (inputLength + (2 * padding)) - ((length - 1) * dilation);
 
@@ -397,15 +460,26 @@ public class ROCKET implements TrainableTransformer, Randomizable, MultiThreadab
 
         for (int i = -padding; i < end; i++) {
             double _sum = bias;
-            int index = i;
 
-            for (int j = 0; j < length; j++) {
-                if (index > -1 && index < inputLength) {
-                    for (int n = 0; n < numSampledDimensions; n++) {
-                        _sum = _sum + weights[j + n * numSampledDimensions] * inst[dimensions[n]][index];
+            // only the kernel positions which land inside the series contribute
+            int jStart = i < 0 ? (dilation - 1 - i) / dilation : 0;
+            int jEnd = i < inputLength ? Math.min(length, (inputLength - 1 - i) / dilation + 1) : 0;
+            int index = i + jStart * dilation;
+
+            if (numSampled == 1) {
+                double[] series = inst[dimensions[dimensionOffset]];
+                for (int j = jStart; j < jEnd; j++) {
+                    _sum = _sum + weights[weightOffset + j] * series[index];
+                    index = index + dilation;
+                }
+            }
+            else {
+                for (int j = jStart; j < jEnd; j++) {
+                    for (int n = 0; n < numSampled; n++) {
+                        _sum = _sum + weights[weightOffset + j + n * numSampled] * inst[dimensions[dimensionOffset + n]][index];
                     }
+                    index = index + dilation;
                 }
-                index = index + dilation;
             }
 
             if (_sum > _max)
@@ -415,7 +489,8 @@ public class ROCKET implements TrainableTransformer, Randomizable, MultiThreadab
                 _ppv += 1;
         }
 
-        return new Pair<>(_ppv / outputLength, _max);
+        output[kernel * 2] = _ppv / outputLength;
+        output[kernel * 2 + 1] = _max;
     }
 
     private static double uniform(Random rand, double a, double b) {
@@ -457,6 +532,7 @@ public class ROCKET implements TrainableTransformer, Randomizable, MultiThreadab
         paddings = ArrayUtils.addAll(paddings, rocket.paddings);
 
         numKernels += rocket.numKernels;
+        findOffsets();
     }
 
     private static class Kernel {
@@ -480,50 +556,6 @@ public class ROCKET implements TrainableTransformer, Randomizable, MultiThreadab
         }
     }
 
-    private class TransformThread implements Callable<Pair<Double, Double>> {
-        int i;
-        double[][] inst;
-        Kernel k;
-
-        public TransformThread(int i, double[][] inst, Kernel k){
-            this.i = i;
-            this.inst = inst;
-            this.k = k;
-        }
-
-        @Override
-        public Pair<Double, Double> call() {
-            int inputLength = inst[0].length;
-            int outputLength = (inputLength + (2 * k.padding)) - ((k.length - 1) * k.dilation);
-
-            double _ppv = 0;
-            double _max = -99999999;
-            int end = (inputLength + k.padding) - ((k.length - 1) * k.dilation);
-
-            for (int i = -k.padding; i < end; i++) {
-                double _sum = k.bias;
-                int index = i;
-
-                for (int j = 0; j < k.length; j++) {
-                    if (index > -1 && index < inputLength) {
-                        for (int n = 0; n < k.numSampledDimensions; n++) {
-                            _sum = _sum + k.weights[j + n * k.numSampledDimensions] * inst[k.dimensions[n]][index];
-                        }
-                    }
-                    index = index + k.dilation;
-                }
-
-                if (_sum > _max)
-                    _max = _sum;
-
-                if (_sum > 0)
-                    _ppv += 1;
-            }
-
-            return new Pair<>(_ppv / outputLength, _max);
-        }
-    }
-
     private class FitThread implements Callable<Kernel>{
         int i;
         int inputLength;
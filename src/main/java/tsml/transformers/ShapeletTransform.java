@@ -17,7 +17,9 @@
  
 package tsml.transformers;
 
+import tsml.classifiers.MultiThreadable;
 import tsml.classifiers.TrainTimeContractable;
+import tsml.classifiers.distance_based.utils.system.copy.CopierUtils;
 import tsml.data_containers.TimeSeriesInstance;
 import tsml.data_containers.TimeSeriesInstances;
 import tsml.transformers.shapelet_tools.OrderLineObj;
@@ -28,16 +30,21 @@ import tsml.transformers.shapelet_tools.class_value.NormalClassValue;
 import tsml.transformers.shapelet_tools.distance_functions.ShapeletDistance;
 import tsml.transformers.shapelet_tools.quality_measures.ShapeletQuality;
 import tsml.transformers.shapelet_tools.quality_measures.ShapeletQuality.ShapeletQualityChoice;
+import tsml.transformers.shapelet_tools.search_functions.RandomSearch;
 import tsml.transformers.shapelet_tools.search_functions.ShapeletSearch;
 import tsml.transformers.shapelet_tools.search_functions.ShapeletSearchFactory;
 import tsml.transformers.shapelet_tools.search_functions.ShapeletSearchOptions;
 import utilities.NumUtils;
+import utilities.ThreadingUtilities;
 import utilities.class_counts.ClassCounts;
 import utilities.rescalers.SeriesRescaler;
 import weka.core.*;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -69,7 +76,7 @@ import java.util.logging.Logger;
  *
  *         Refactored version for
  */
-public class ShapeletTransform implements Serializable, TechnicalInformationHandler, TrainableTransformer {
+public class ShapeletTransform implements Serializable, TechnicalInformationHandler, TrainableTransformer, MultiThreadable {
     // Global defaults. Max should be a lambda set to series length
     public final static int MAXTRANSFORMSIZE = 1000;
     public final static int DEFAULT_MINSHAPELETLENGTH = 3;
@@ -137,6 +144,17 @@ public class ShapeletTransform implements Serializable, TechnicalInformationHand
                                    // BalancedClassShapeletTransform
     private double beta = 0.2;
 
+    // Multi-threaded search evaluates the candidates of each series in parallel. Each thread has its own copy of the
+    // stateful shapelet distance and quality, the shapelets found are identical to the single threaded search.
+    private int numThreads = 1;
+    private transient ExecutorService executor;
+    private transient ShapeletDistance[] threadDistances;
+    private transient ShapeletQuality[] threadQualities;
+    // count of the shapelet distance when it was copied for the threads, and the counts of the copies since then,
+    // added to the count of the shapelet distance for the total
+    private transient long threadDistancesBaseCount;
+    private long threadDistancesCount;
+
     /**
      * Default constructor; Quality measure defaults to information gain.
      */
@@ -261,12 +279,13 @@ public class ShapeletTransform implements Serializable, TechnicalInformationHand
 
         // check the input data is correct and assess whether the filter has been setup
         // correctly.
+        threadDistancesCount = 0;
         trainShapelets(data);
         searchComplete = true;
         // we log the count from the subsequence distance before we reset it in the
         // transform.
         // we only care about the count from the train. What is it counting?
-        count = shapeletDistance.getCount();
+        count = shapeletDistance.getCount() + threadDistancesCount;
     }
 
     @Override
@@ -318,12 +337,13 @@ public class ShapeletTransform implements Serializable, TechnicalInformationHand
 
         // check the input data is correct and assess whether the filter has been setup
         // correctly.
+        threadDistancesCount = 0;
         trainShapelets(data);
         searchComplete = true;
         // we log the count from the subsequence distance before we reset it in the
         // transform.
         // we only care about the count from the train. What is it counting?
-        count = shapeletDistance.getCount();
+        count = shapeletDistance.getCount() + threadDistancesCount;
     }
 
     protected void trainShapelets(Instances data) {
@@ -564,66 +584,70 @@ public class ShapeletTransform implements Serializable, TechnicalInformationHand
         int passes = 0;
 
         // continue processing series until we run out of time (if contracted)
-        while (casesSoFar < numSeriesToUse && keepGoing) {
-            // outputPrint("BALANCED: "+casesSoFar +" Cumulative time (secs) =
-            // "+usedTime/1000000000.0+" Contract time (secs) ="+contractTime/1000000000.0+"
-            // contracted = "+contracted+" search type = "+searchFunction.getSearchType());
-            // get the Shapelets list based on the classValue of our current time series.
-            kShapelets = kShapeletsMap.get((double) data.get(casesSoFar).getLabelIndex());
-            // we only want to pass in the worstKShapelet if we've found K shapelets. but we
-            // only care about
-            // this class values worst one. This is due to the way we represent each classes
-            // shapelets in the map.
-            worstShapelet = kShapelets.size() == proportion ? kShapelets.get(kShapelets.size() - 1) : null;
-
-            // set the series we're working with.
-            shapeletDistance.setSeries(casesSoFar);
-            // set the class value of the series we're working with.
-            classValue.setShapeletValue(data.get(casesSoFar));
-            long t1 = System.nanoTime();
-            seriesShapelets = current.searchForShapeletsInSeries(data.get(casesSoFar), this::checkCandidate);
-            long t2 = System.nanoTime();
-            numShapeletsEvaluated += seriesShapelets.size();
-
-            if (adaptiveTiming && contracted && passes == 0) {
-                long tempEA = numEarlyAbandons - prevEarlyAbandons;
-                prevEarlyAbandons = numEarlyAbandons;
-                double newTimePerShapelet = (double) (t2 - t1) / (seriesShapelets.size() + tempEA);
-                if (totalShapeletsPerSeries < (seriesShapelets.size() + tempEA))// Switch to full enum for next
-                                                                                // iteration
-                    current = full;
-                else
-                    current = searchFunction;
-
-              shapeletsSearchedPerSeries = adjustNumberPerSeries(contractTime - usedTime, numSeriesToUse - casesSoFar,
-                        newTimePerShapelet);
-                searchFunction.setNumShapeletsPerSeries(shapeletsSearchedPerSeries);
-            }
-            if (seriesShapelets != null) {
-                Collections.sort(seriesShapelets, shapeletComparator);
-                if (isRemoveSelfSimilar())
-                    seriesShapelets = removeSelfSimilar(seriesShapelets);
+        try {
+            while (casesSoFar < numSeriesToUse && keepGoing) {
+                // outputPrint("BALANCED: "+casesSoFar +" Cumulative time (secs) =
+                // "+usedTime/1000000000.0+" Contract time (secs) ="+contractTime/1000000000.0+"
+                // contracted = "+contracted+" search type = "+searchFunction.getSearchType());
+                // get the Shapelets list based on the classValue of our current time series.
+                kShapelets = kShapeletsMap.get((double) data.get(casesSoFar).getLabelIndex());
+                // we only want to pass in the worstKShapelet if we've found K shapelets. but we
+                // only care about
+                // this class values worst one. This is due to the way we represent each classes
+                // shapelets in the map.
+                worstShapelet = kShapelets.size() == proportion ? kShapelets.get(kShapelets.size() - 1) : null;
+
+                // set the series we're working with.
+                shapeletDistance.setSeries(casesSoFar);
+                // set the class value of the series we're working with.
+                classValue.setShapeletValue(data.get(casesSoFar));
+                int threads = searchThreads(current);
+                long t1 = System.nanoTime();
+                seriesShapelets = searchSeries(current, data.get(casesSoFar));
+                long t2 = System.nanoTime();
+                numShapeletsEvaluated += seriesShapelets.size();
+
+                if (adaptiveTiming && contracted && passes == 0) {
+                    long tempEA = numEarlyAbandons - prevEarlyAbandons;
+                    prevEarlyAbandons = numEarlyAbandons;
+                    double newTimePerShapelet = (double) (t2 - t1) / (seriesShapelets.size() + tempEA);
+                    if (totalShapeletsPerSeries < (seriesShapelets.size() + tempEA))// Switch to full enum for next
+                                                                                    // iteration
+                        current = full;
+                    else
+                        current = searchFunction;
+
+                  shapeletsSearchedPerSeries = adjustNumberPerSeries(contractTime - usedTime, numSeriesToUse - casesSoFar,
+                            newTimePerShapelet, threads);
+                    searchFunction.setNumShapeletsPerSeries(shapeletsSearchedPerSeries);
+                }
+                if (seriesShapelets != null) {
+                    Collections.sort(seriesShapelets, shapeletComparator);
+                    if (isRemoveSelfSimilar())
+                        seriesShapelets = removeSelfSimilar(seriesShapelets);
 
-                kShapelets = combine(proportion, kShapelets, seriesShapelets);
-            }
+                    kShapelets = combine(proportion, kShapelets, seriesShapelets);
+                }
 
-            // re-update the list because it's changed now.
-            kShapeletsMap.put((double)data.get(casesSoFar).getLabelIndex(), kShapelets);
-            casesSoFar++;
-            createSerialFile();
-            usedTime = System.nanoTime() - startTime;
-            // Logic is we have underestimated the contract so can run back through. If we
-            // over estimate it we will just stop.
-            if (contracted) {
-                if (casesSoFar == numSeriesToUse - 1 && !searchFunction.getSearchType().equals("FULL")) { /// HORRIBLE!
-                    casesSoFar = 0;
-                    passes++;
+                // re-update the list because it's changed now.
+                kShapeletsMap.put((double)data.get(casesSoFar).getLabelIndex(), kShapelets);
+                casesSoFar++;
+                createSerialFile();
+                usedTime = System.nanoTime() - startTime;
+                // Logic is we have underestimated the contract so can run back through. If we
+                // over estimate it we will just stop.
+                if (contracted) {
+                    if (casesSoFar == numSeriesToUse - 1 && !searchFunction.getSearchType().equals("FULL")) { /// HORRIBLE!
+                        casesSoFar = 0;
+                        passes++;
+                    }
+                    if (usedTime > contractTime)
+                        keepGoing = false;
                 }
-                if (usedTime > contractTime)
-                    keepGoing = false;
             }
+        } finally {
+            releaseSearchThreads();
         }
-
         kShapelets = buildKShapeletsFromMap(kShapeletsMap);
 
         this.numShapelets = kShapelets.size();
@@ -670,72 +694,76 @@ public class ShapeletTransform implements Serializable, TechnicalInformationHand
         int passes = 0;
 
         // continue processing series until we run out of time (if contracted)
-        while (casesSoFar < numSeriesToUse && keepGoing) {
-            if(casesSoFar%100==0)
-                 outputPrint("BALANCED: "+casesSoFar +" series used so far, num series to use ="+numSeriesToUse+" Cumulative time (secs) ="+usedTime/1000000000.0+" Contract time (secs) ="+contractTime/1000000000.0+" contracted = "+contracted+" search type = "+searchFunction.getSearchType());
-            // get the Shapelets list based on the classValue of our current time series.
-            kShapelets = kShapeletsMap.get(data.get(casesSoFar).classValue());
-            // we only want to pass in the worstKShapelet if we've found K shapelets. but we
-            // only care about
-            // this class values worst one. This is due to the way we represent each classes
-            // shapelets in the map.
-            worstShapelet = kShapelets.size() == proportion ? kShapelets.get(kShapelets.size() - 1) : null;
-
-            // set the series we're working with.
-            shapeletDistance.setSeries(casesSoFar);
-            // set the class value of the series we're working with.
-            classValue.setShapeletValue(data.get(casesSoFar));
-            long t1 = System.nanoTime();
-            seriesShapelets = current.searchForShapeletsInSeries(data.get(casesSoFar), this::checkCandidate);
-            long t2 = System.nanoTime();
-            numShapeletsEvaluated += seriesShapelets.size();
-            if (adaptiveTiming && contracted && passes == 0) {
-                long tempEarlyAbandons = numEarlyAbandons - prevEarlyAbandons;
-                prevEarlyAbandons = numEarlyAbandons;
-                double newTimePerShapelet = (double) (t2 - t1) / (seriesShapelets.size() + tempEarlyAbandons);
-                if (totalShapeletsPerSeries < (seriesShapelets.size() + tempEarlyAbandons))// Switch to full enum for next
-                                                                                // iteration
-                {
-                    current = full;
+        try {
+            while (casesSoFar < numSeriesToUse && keepGoing) {
+                if(casesSoFar%100==0)
+                     outputPrint("BALANCED: "+casesSoFar +" series used so far, num series to use ="+numSeriesToUse+" Cumulative time (secs) ="+usedTime/1000000000.0+" Contract time (secs) ="+contractTime/1000000000.0+" contracted = "+contracted+" search type = "+searchFunction.getSearchType());
+                // get the Shapelets list based on the classValue of our current time series.
+                kShapelets = kShapeletsMap.get(data.get(casesSoFar).classValue());
+                // we only want to pass in the worstKShapelet if we've found K shapelets. but we
+                // only care about
+                // this class values worst one. This is due to the way we represent each classes
+                // shapelets in the map.
+                worstShapelet = kShapelets.size() == proportion ? kShapelets.get(kShapelets.size() - 1) : null;
+
+                // set the series we're working with.
+                shapeletDistance.setSeries(casesSoFar);
+                // set the class value of the series we're working with.
+                classValue.setShapeletValue(data.get(casesSoFar));
+                int threads = searchThreads(current);
+                long t1 = System.nanoTime();
+                seriesShapelets = searchSeries(current, data.get(casesSoFar));
+                long t2 = System.nanoTime();
+                numShapeletsEvaluated += seriesShapelets.size();
+                if (adaptiveTiming && contracted && passes == 0) {
+                    long tempEarlyAbandons = numEarlyAbandons - prevEarlyAbandons;
+                    prevEarlyAbandons = numEarlyAbandons;
+                    double newTimePerShapelet = (double) (t2 - t1) / (seriesShapelets.size() + tempEarlyAbandons);
+                    if (totalShapeletsPerSeries < (seriesShapelets.size() + tempEarlyAbandons))// Switch to full enum for next
+                                                                                    // iteration
+                    {
+                        current = full;
+                    }
+                    else
+                        current = searchFunction;
+
+    //                System.out.println(" time for case " + casesSoFar + " evaluate  " + seriesShapelets.size() + " but what about early ones?");
+    //                System.out.println(" Est time per shapelet  " + timePerShapelet / 1000000000 + " actual "+ newTimePerShapelet / 1000000000);
+                    shapeletsSearchedPerSeries = adjustNumberPerSeries(contractTime - usedTime, numSeriesToUse - casesSoFar,
+                            newTimePerShapelet, threads);
+    //                System.out.println("Changing number of shapelets sampled from " + searchFunction.getNumShapeletsPerSeries() + " to " + shapeletsSearchedPerSeries);
+                    searchFunction.setNumShapeletsPerSeries(shapeletsSearchedPerSeries);
+    //                System.out.println("data : " + casesSoFar + " has " + seriesShapelets.size() + " candidates"
+    //                        + " cumulative early abandons " + numEarlyAbandons + " worst so far =" + worstShapelet
+    //                        + " evaluated this series = " + (seriesShapelets.size() + tempEarlyAbandons));
                 }
-                else
-                    current = searchFunction;
-
-//                System.out.println(" time for case " + casesSoFar + " evaluate  " + seriesShapelets.size() + " but what about early ones?");
-//                System.out.println(" Est time per shapelet  " + timePerShapelet / 1000000000 + " actual "+ newTimePerShapelet / 1000000000);
-                shapeletsSearchedPerSeries = adjustNumberPerSeries(contractTime - usedTime, numSeriesToUse - casesSoFar,
-                        newTimePerShapelet);
-//                System.out.println("Changing number of shapelets sampled from " + searchFunction.getNumShapeletsPerSeries() + " to " + shapeletsSearchedPerSeries);
-                searchFunction.setNumShapeletsPerSeries(shapeletsSearchedPerSeries);
-//                System.out.println("data : " + casesSoFar + " has " + seriesShapelets.size() + " candidates"
-//                        + " cumulative early abandons " + numEarlyAbandons + " worst so far =" + worstShapelet
-//                        + " evaluated this series = " + (seriesShapelets.size() + tempEarlyAbandons));
-            }
-            if (seriesShapelets != null) {
-                Collections.sort(seriesShapelets, shapeletComparator);
-                if (isRemoveSelfSimilar())
-                    seriesShapelets = removeSelfSimilar(seriesShapelets);
+                if (seriesShapelets != null) {
+                    Collections.sort(seriesShapelets, shapeletComparator);
+                    if (isRemoveSelfSimilar())
+                        seriesShapelets = removeSelfSimilar(seriesShapelets);
 
-                kShapelets = combine(proportion, kShapelets, seriesShapelets);
-            }
+                    kShapelets = combine(proportion, kShapelets, seriesShapelets);
+                }
 
-            // re-update the list because it's changed now.
-            kShapeletsMap.put(data.get(casesSoFar).classValue(), kShapelets);
-            casesSoFar++;
-            createSerialFile();
-            usedTime = System.nanoTime() - startTime;
-            // Logic is we have underestimated the contract so can run back through. If we
-            // over estimate it we will just stop.
-            if (contracted) {
-                if (casesSoFar == numSeriesToUse - 1 && !searchFunction.getSearchType().equals("FULL")) { /// HORRIBLE!
-                    casesSoFar = 0;
-                    passes++;
+                // re-update the list because it's changed now.
+                kShapeletsMap.put(data.get(casesSoFar).classValue(), kShapelets);
+                casesSoFar++;
+                createSerialFile();
+                usedTime = System.nanoTime() - startTime;
+                // Logic is we have underestimated the contract so can run back through. If we
+                // over estimate it we will just stop.
+                if (contracted) {
+                    if (casesSoFar == numSeriesToUse - 1 && !searchFunction.getSearchType().equals("FULL")) { /// HORRIBLE!
+                        casesSoFar = 0;
+                        passes++;
+                    }
+                    if (usedTime > contractTime)
+                        keepGoing = false;
                 }
-                if (usedTime > contractTime)
-                    keepGoing = false;
             }
+        } finally {
+            releaseSearchThreads();
         }
-
         kShapelets = buildKShapeletsFromMap(kShapeletsMap);
 
         this.numShapelets = kShapelets.size();
@@ -788,50 +816,54 @@ public class ShapeletTransform implements Serializable, TechnicalInformationHand
         // for all possible time series.
         long prevEarlyAbandons = 0;
         int passes = 0;
-        while (casesSoFar < numSeriesToUse && keepGoing) {
-            outputPrint("ORIGINAL: "+casesSoFar +" Cumulative time (secs) ="+usedTime/1000000000.0+" Contract time (secs) ="+contractTime/1000000000.0+" search type = "+searchFunction.getSearchType());
-            // set the worst Shapelet so far, as long as the shapelet set is full.
-            worstShapelet = kShapelets.size() == numShapelets ? kShapelets.get(numShapelets - 1) : null;
-
-            // set the series we're working with.
-            shapeletDistance.setSeries(casesSoFar);
-            // set the class value of the series we're working with.
-            classValue.setShapeletValue(data.get(casesSoFar));
-
-            long t1 = System.nanoTime();
-            seriesShapelets = searchFunction.searchForShapeletsInSeries(data.get(casesSoFar), this::checkCandidate);
-            long t2 = System.nanoTime();
-            numShapeletsEvaluated += seriesShapelets.size();
-
-            if (adaptiveTiming && contracted && passes == 0) {
-                long tempEA = numEarlyAbandons - prevEarlyAbandons;
-                prevEarlyAbandons = numEarlyAbandons;
-                double newTimePerShapelet = (double) (t2 - t1) / (seriesShapelets.size() + tempEA);
-                shapeletsSearchedPerSeries = adjustNumberPerSeries(contractTime - usedTime, numSeriesToUse - casesSoFar,
-                        newTimePerShapelet);
-                searchFunction.setNumShapeletsPerSeries(shapeletsSearchedPerSeries);
-            }
-            if (seriesShapelets != null) {
-                Collections.sort(seriesShapelets, shapeletComparator);
+        try {
+            while (casesSoFar < numSeriesToUse && keepGoing) {
+                outputPrint("ORIGINAL: "+casesSoFar +" Cumulative time (secs) ="+usedTime/1000000000.0+" Contract time (secs) ="+contractTime/1000000000.0+" search type = "+searchFunction.getSearchType());
+                // set the worst Shapelet so far, as long as the shapelet set is full.
+                worstShapelet = kShapelets.size() == numShapelets ? kShapelets.get(numShapelets - 1) : null;
+
+                // set the series we're working with.
+                shapeletDistance.setSeries(casesSoFar);
+                // set the class value of the series we're working with.
+                classValue.setShapeletValue(data.get(casesSoFar));
+
+                long t1 = System.nanoTime();
+                seriesShapelets = searchSeries(searchFunction, data.get(casesSoFar));
+                long t2 = System.nanoTime();
+                numShapeletsEvaluated += seriesShapelets.size();
+
+                if (adaptiveTiming && contracted && passes == 0) {
+                    long tempEA = numEarlyAbandons - prevEarlyAbandons;
+                    prevEarlyAbandons = numEarlyAbandons;
+                    double newTimePerShapelet = (double) (t2 - t1) / (seriesShapelets.size() + tempEA);
+                    shapeletsSearchedPerSeries = adjustNumberPerSeries(contractTime - usedTime, numSeriesToUse - casesSoFar,
+                            newTimePerShapelet, searchThreads(searchFunction));
+                    searchFunction.setNumShapeletsPerSeries(shapeletsSearchedPerSeries);
+                }
+                if (seriesShapelets != null) {
+                    Collections.sort(seriesShapelets, shapeletComparator);
 
-                if (isRemoveSelfSimilar())
-                    seriesShapelets = removeSelfSimilar(seriesShapelets);
-                kShapelets = combine(numShapelets, kShapelets, seriesShapelets);
-            }
-            casesSoFar++;
-            createSerialFile();
-            usedTime = System.nanoTime() - startTime;
-            // Logic is we have underestimated the contract so can run back through. If we
-            // over estimate it we will just stop.
-            if (casesSoFar == numSeriesToUse - 1 && !searchFunction.getSearchType().equals("FULL")) { /// HORRIBLE!
-                casesSoFar = 0;
-                passes++;
-            }
-            if (contracted) {
-                if (usedTime > contractTime)
-                    keepGoing = false;
-            }
+                    if (isRemoveSelfSimilar())
+                        seriesShapelets = removeSelfSimilar(seriesShapelets);
+                    kShapelets = combine(numShapelets, kShapelets, seriesShapelets);
+                }
+                casesSoFar++;
+                createSerialFile();
+                usedTime = System.nanoTime() - startTime;
+                // Logic is we have underestimated the contract so can run back through. If we
+                // over estimate it we will just stop.
+                if (casesSoFar == numSeriesToUse - 1 && !searchFunction.getSearchType().equals("FULL")) { /// HORRIBLE!
+                    casesSoFar = 0;
+                    passes++;
+                }
+                if (contracted) {
+                    if (usedTime > contractTime)
+                        keepGoing = false;
+                }
 
+            }
+        } finally {
+            releaseSearchThreads();
         }
         this.numShapelets = kShapelets.size();
 
@@ -865,52 +897,56 @@ public class ShapeletTransform implements Serializable, TechnicalInformationHand
         // for all possible time series.
         long prevEarlyAbandons = 0;
         int passes = 0;
-        while (casesSoFar < numSeriesToUse && keepGoing) {
-            // outputPrint("ORIGINAL: "+casesSoFar +" Cumulative time (secs) =
-            // "+usedTime/1000000000.0+" Contract time (secs) ="+contractTime/1000000000.0+"
-            // search type = "+searchFunction.getSearchType());
-            // set the worst Shapelet so far, as long as the shapelet set is full.
-            worstShapelet = kShapelets.size() == numShapelets ? kShapelets.get(numShapelets - 1) : null;
-
-            // set the series we're working with.
-            shapeletDistance.setSeries(casesSoFar);
-            // set the class value of the series we're working with.
-            classValue.setShapeletValue(data.get(casesSoFar));
-
-            long t1 = System.nanoTime();
-            seriesShapelets = searchFunction.searchForShapeletsInSeries(data.get(casesSoFar), this::checkCandidate);
-            long t2 = System.nanoTime();
-            numShapeletsEvaluated += seriesShapelets.size();
-
-            if (adaptiveTiming && contracted && passes == 0) {
-                long tempEA = numEarlyAbandons - prevEarlyAbandons;
-                prevEarlyAbandons = numEarlyAbandons;
-                double newTimePerShapelet = (double) (t2 - t1) / (seriesShapelets.size() + tempEA);
-                shapeletsSearchedPerSeries = adjustNumberPerSeries(contractTime - usedTime, numSeriesToUse - casesSoFar,
-                        newTimePerShapelet);
-                searchFunction.setNumShapeletsPerSeries(shapeletsSearchedPerSeries);
-            }
-            if (seriesShapelets != null) {
-                Collections.sort(seriesShapelets, shapeletComparator);
+        try {
+            while (casesSoFar < numSeriesToUse && keepGoing) {
+                // outputPrint("ORIGINAL: "+casesSoFar +" Cumulative time (secs) =
+                // "+usedTime/1000000000.0+" Contract time (secs) ="+contractTime/1000000000.0+"
+                // search type = "+searchFunction.getSearchType());
+                // set the worst Shapelet so far, as long as the shapelet set is full.
+                worstShapelet = kShapelets.size() == numShapelets ? kShapelets.get(numShapelets - 1) : null;
+
+                // set the series we're working with.
+                shapeletDistance.setSeries(casesSoFar);
+                // set the class value of the series we're working with.
+                classValue.setShapeletValue(data.get(casesSoFar));
+
+                long t1 = System.nanoTime();
+                seriesShapelets = searchSeries(searchFunction, data.get(casesSoFar));
+                long t2 = System.nanoTime();
+                numShapeletsEvaluated += seriesShapelets.size();
+
+                if (adaptiveTiming && contracted && passes == 0) {
+                    long tempEA = numEarlyAbandons - prevEarlyAbandons;
+                    prevEarlyAbandons = numEarlyAbandons;
+                    double newTimePerShapelet = (double) (t2 - t1) / (seriesShapelets.size() + tempEA);
+                    shapeletsSearchedPerSeries = adjustNumberPerSeries(contractTime - usedTime, numSeriesToUse - casesSoFar,
+                            newTimePerShapelet, searchThreads(searchFunction));
+                    searchFunction.setNumShapeletsPerSeries(shapeletsSearchedPerSeries);
+                }
+                if (seriesShapelets != null) {
+                    Collections.sort(seriesShapelets, shapeletComparator);
 
-                if (isRemoveSelfSimilar())
-                    seriesShapelets = removeSelfSimilar(seriesShapelets);
-                kShapelets = combine(numShapelets, kShapelets, seriesShapelets);
-            }
-            casesSoFar++;
-            createSerialFile();
-            usedTime = System.nanoTime() - startTime;
-            // Logic is we have underestimated the contract so can run back through. If we
-            // over estimate it we will just stop.
-            if (casesSoFar == numSeriesToUse - 1 && !searchFunction.getSearchType().equals("FULL")) { /// HORRIBLE!
-                casesSoFar = 0;
-                passes++;
-            }
-            if (contracted) {
-                if (usedTime > contractTime)
-                    keepGoing = false;
-            }
+                    if (isRemoveSelfSimilar())
+                        seriesShapelets = removeSelfSimilar(seriesShapelets);
+                    kShapelets = combine(numShapelets, kShapelets, seriesShapelets);
+                }
+                casesSoFar++;
+                createSerialFile();
+                usedTime = System.nanoTime() - startTime;
+                // Logic is we have underestimated the contract so can run back through. If we
+                // over estimate it we will just stop.
+                if (casesSoFar == numSeriesToUse - 1 && !searchFunction.getSearchType().equals("FULL")) { /// HORRIBLE!
+                    casesSoFar = 0;
+                    passes++;
+                }
+                if (contracted) {
+                    if (usedTime > contractTime)
+                        keepGoing = false;
+                }
 
+            }
+        } finally {
+            releaseSearchThreads();
         }
         this.numShapelets = kShapelets.size();
 
@@ -922,13 +958,19 @@ public class ShapeletTransform implements Serializable, TechnicalInformationHand
         return kShapelets;
     }
 
-    private long adjustNumberPerSeries(long timeRemaining, int seriesRemaining, double lastTimePerShapelet) {
+    /**
+     * Estimate how many shapelets can be evaluated per series in the remaining time. The time per shapelet is kept as
+     * the time for a single thread, which is what the initial estimate is, so the measured (wall clock) time is scaled
+     * up by the number of threads used for the series and the remaining time is scaled up likewise.
+     */
+    private long adjustNumberPerSeries(long timeRemaining, int seriesRemaining, double lastTimePerShapelet,
+            int threads) {
         // reinforce time per shapelet
-        timePerShapelet = (1 - beta) * timePerShapelet + beta * lastTimePerShapelet;
+        timePerShapelet = (1 - beta) * timePerShapelet + beta * lastTimePerShapelet * threads;
         // Find time left per series
         long timePerSeries = timeRemaining / seriesRemaining;
         // Find how many we think we can do in that time
-        long shapeletsPerSeries = (long) (timePerSeries / timePerShapelet);
+        long shapeletsPerSeries = (long) (timePerSeries * threads / timePerShapelet);
         if (shapeletsPerSeries < 1)
             return 1;
         return shapeletsPerSeries;
@@ -977,6 +1019,132 @@ public class ShapeletTransform implements Serializable, TechnicalInformationHand
         return findBestKShapelets(newData);
     }
 
+    /**
+     * Search a series for shapelets, evaluating the candidates in parallel when multi-threading. Only searches which
+     * pick their candidates independently of the quality of the candidates already evaluated are run in parallel:
+     * the candidates are collected from the search first, then evaluated, then returned in the order the search
+     * visited them so the result is the same as the single threaded search.
+     */
+    private ArrayList<Shapelet> searchSeries(ShapeletSearch search, TimeSeriesInstance series) {
+        if (searchThreads(search) == 1) {
+            return search.searchForShapeletsInSeries(series, this::checkCandidate);
+        }
+        List<TimeSeriesInstance> candidateSeries = new ArrayList<>();
+        List<int[]> candidates = new ArrayList<>();
+        search.searchForShapeletsInSeries(series, (candidate, start, length, dimension) -> {
+            candidateSeries.add(candidate);
+            candidates.add(new int[] { start, length, dimension });
+            return null;
+        });
+        return evaluateCandidates(candidates.size(), (i, distance, quality) -> checkCandidate(candidateSeries.get(i),
+                candidates.get(i)[0], candidates.get(i)[1], candidates.get(i)[2], distance, quality));
+    }
+
+    private ArrayList<Shapelet> searchSeries(ShapeletSearch search, Instance series) {
+        if (searchThreads(search) == 1) {
+            return search.searchForShapeletsInSeries(series, this::checkCandidate);
+        }
+        List<Instance> candidateSeries = new ArrayList<>();
+        List<int[]> candidates = new ArrayList<>();
+        search.searchForShapeletsInSeries(series, (candidate, start, length, dimension) -> {
+            candidateSeries.add(candidate);
+            candidates.add(new int[] { start, length, dimension });
+            return null;
+        });
+        return evaluateCandidates(candidates.size(), (i, distance, quality) -> checkCandidate(candidateSeries.get(i),
+                candidates.get(i)[0], candidates.get(i)[1], candidates.get(i)[2], distance, quality));
+    }
+
+    private interface CandidateEvaluator {
+        Shapelet evaluate(int candidateIndex, ShapeletDistance distance, ShapeletQuality quality);
+    }
+
+    /**
+     * Evaluate candidates on all threads. Each thread takes the next unevaluated candidate until none are left.
+     */
+    private ArrayList<Shapelet> evaluateCandidates(int numCandidates, CandidateEvaluator evaluator) {
+        if (executor == null) {
+            executor = ThreadingUtilities.buildExecutorService(numThreads);
+            threadDistances = new ShapeletDistance[numThreads];
+            threadQualities = new ShapeletQuality[numThreads];
+            threadDistancesBaseCount = shapeletDistance.getCount();
+            for (int i = 0; i < numThreads; i++) {
+                threadDistances[i] = CopierUtils.deepCopy(shapeletDistance);
+                threadQualities[i] = new ShapeletQuality(quality.getChoice());
+            }
+        }
+        Shapelet[] results = new Shapelet[numCandidates];
+        AtomicInteger next = new AtomicInteger();
+        List<Callable<Void>> jobs = new ArrayList<>(numThreads);
+        for (int t = 0; t < numThreads; t++) {
+            ShapeletDistance distance = threadDistances[t];
+            ShapeletQuality threadQuality = threadQualities[t];
+            distance.setSeries(casesSoFar);
+            jobs.add(() -> {
+                for (int i = next.getAndIncrement(); i < numCandidates; i = next.getAndIncrement()) {
+                    results[i] = evaluator.evaluate(i, distance, threadQuality);
+                }
+                return null;
+            });
+        }
+        try {
+            ThreadingUtilities.computeAll(executor, jobs, false);
+        } catch (Exception e) {
+            throw new IllegalStateException("shapelet search failed", e);
+        }
+        ArrayList<Shapelet> seriesShapelets = new ArrayList<>();
+        for (Shapelet shapelet : results) {
+            if (shapelet == null) {
+                numEarlyAbandons++;
+            } else {
+                seriesShapelets.add(shapelet);
+            }
+        }
+        return seriesShapelets;
+    }
+
+    /**
+     * @return the number of threads used to search a series with the given search
+     */
+    private int searchThreads(ShapeletSearch search) {
+        // the full and random searches pick candidates without looking at the quality of earlier ones
+        boolean independent = search.getClass() == ShapeletSearch.class || search.getClass() == RandomSearch.class;
+        return independent && numThreads > 1 ? numThreads : 1;
+    }
+
+    /**
+     * Shuts down the search threads. Called in a finally block after each search, so the pool's non-daemon threads
+     * never outlive a failed search.
+     */
+    private void releaseSearchThreads() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+        if (threadDistances != null) {
+            for (ShapeletDistance distance : threadDistances)
+                threadDistancesCount += distance.getCount() - threadDistancesBaseCount;
+        }
+        threadDistances = null;
+        threadQualities = null;
+    }
+
+    @Override
+    public void enableMultiThreading(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * Releases the references to the train data and per class candidate lists kept for the search, once it is
+     * complete. Instances are transformed using the data passed to transform, so the Instances transform is unaffected.
+     * The TimeSeriesInstances train data is kept, as single TimeSeriesInstance transforms initialise from it.
+     */
+    public void releaseSearchData() {
+        inputData = null;
+        kShapeletsMap = null;
+        searchFunction.releaseData();
+    }
+
     /**
      * Private method to combine two ArrayList collections of FullShapeletTransform
      * objects.
@@ -1124,8 +1292,22 @@ public class ShapeletTransform implements Serializable, TechnicalInformationHand
     }
 
     protected Shapelet checkCandidate(TimeSeriesInstance series, int start, int length, int dimension) {
+        Shapelet shapelet = checkCandidate(series, start, length, dimension, shapeletDistance, quality);
+        if (shapelet == null) {
+            numEarlyAbandons++;
+        }
+        return shapelet;
+    }
+
+    /**
+     * Evaluate a candidate using the given distance and quality, returning null if the candidate is pruned.
+     */
+    private Shapelet checkCandidate(TimeSeriesInstance series, int start, int length, int dimension,
+            ShapeletDistance shapeletDistance, ShapeletQuality quality) {
         // init qualityBound.
-        initQualityBound(classValue.getClassDistributions());
+        if (useCandidatePruning) {
+            quality.initQualityBound(classValue.getClassDistributions(), candidatePruningStartPercentage);
+        }
 
         // Set bound of the bounding algorithm
         if (worstShapelet != null) {
@@ -1145,7 +1327,6 @@ public class ShapeletTransform implements Serializable, TechnicalInformationHand
 
             // Check if it is possible to prune the candidate
             if (quality.pruneCandidate()) {
-                numEarlyAbandons++;
                 return null;
             }
 
@@ -1178,8 +1359,22 @@ public class ShapeletTransform implements Serializable, TechnicalInformationHand
     }
 
     protected Shapelet checkCandidate(Instance series, int start, int length, int dimension) {
+        Shapelet shapelet = checkCandidate(series, start, length, dimension, shapeletDistance, quality);
+        if (shapelet == null) {
+            numEarlyAbandons++;
+        }
+        return shapelet;
+    }
+
+    /**
+     * Evaluate a candidate using the given distance and quality, returning null if the candidate is pruned.
+     */
+    private Shapelet checkCandidate(Instance series, int start, int length, int dimension,
+            ShapeletDistance shapeletDistance, ShapeletQuality quality) {
         // init qualityBound.
-        initQualityBound(classValue.getClassDistributions());
+        if (useCandidatePruning) {
+            quality.initQualityBound(classValue.getClassDistributions(), candidatePruningStartPercentage);
+        }
 
         // Set bound of the bounding algorithm
         if (worstShapelet != null) {
@@ -1199,7 +1394,6 @@ public class ShapeletTransform implements Serializable, TechnicalInformationHand
 
             // Check if it is possible to prune the candidate
             if (quality.pruneCandidate()) {
-                numEarlyAbandons++;
                 return null;
             }
 
@@ -0,0 +1,275 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.transformers.shapelet_tools.distance_functions;
+
+import com.google.common.collect.MapMaker;
+import edu.emory.mathcs.jtransforms.fft.DoubleFFT_1D;
+import tsml.data_containers.TimeSeriesInstance;
+import tsml.transformers.shapelet_tools.Shapelet;
+import utilities.rescalers.ZNormalisation;
+import weka.core.Instance;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static utilities.rescalers.ZNormalisation.ROUNDING_ERROR_CORRECTION;
+
+/**
+ * Shapelet distance from the dot products of the shapelet with every window of the series, in the style of Mueen's
+ * MASS. The mean and std of every window come from cumulative sums and sums of squares, which are computed once per
+ * series and cached, so no window is re-normalised. The dot products are found directly for short shapelets and by
+ * FFT for long ones, where each series is transformed once and each shapelet once per FFT size, making each
+ * shapelet-series distance O(n log n).
+ *
+ * Gives the same distance as ShapeletDistance, up to floating point error, when the series are z-normalised. Any other
+ * rescaling falls back to ShapeletDistance.
+ *
+ * The cache is keyed on the identity of the Instance / TimeSeriesInstance and holds the keys weakly, so series
+ * statistics live as long as the data does. Series must not be modified once their distance has been calculated.
+ */
+public class MassShapeletDistance extends ShapeletDistance {
+
+    // FFTs by size, which precompute their twiddle factors so are worth sharing
+    private static final ConcurrentMap<Integer, DoubleFFT_1D> FFTS = new ConcurrentHashMap<>();
+
+    private transient ConcurrentMap<Object, SeriesStats[]> seriesStats;
+
+    // sums over the candidate, and the FFT of the reversed candidate for the FFT size last used
+    private double candidateSum;
+    private double candidateSumSq;
+    private transient double[] candidateFft;
+
+    @Override
+    public void setShapelet(Shapelet shp) {
+        super.setShapelet(shp);
+        candidateChanged();
+    }
+
+    @Override
+    public void setCandidate(Instance inst, int start, int len, int dim) {
+        super.setCandidate(inst, start, len, dim);
+        candidateChanged();
+    }
+
+    @Override
+    public void setCandidate(TimeSeriesInstance inst, int start, int len, int dim) {
+        super.setCandidate(inst, start, len, dim);
+        candidateChanged();
+    }
+
+    private void candidateChanged() {
+        candidateSum = 0;
+        candidateSumSq = 0;
+        for (double value : cand.getShapeletContent()) {
+            candidateSum += value;
+            candidateSumSq += value * value;
+        }
+        candidateFft = null;
+    }
+
+    @Override
+    public double calculate(Instance timeSeries, int timeSeriesId) {
+        if (!(seriesRescaler instanceof ZNormalisation)) {
+            return super.calculate(timeSeries, timeSeriesId);
+        }
+        return calculate(getSeriesStats(timeSeries, 0, 1, () -> timeSeries.toDoubleArray()));
+    }
+
+    @Override
+    public double calculate(TimeSeriesInstance timeSeriesInstance, int timeSeriesId) {
+        if (!(seriesRescaler instanceof ZNormalisation)) {
+            return super.calculate(timeSeriesInstance, timeSeriesId);
+        }
+        return calculate(getSeriesStats(timeSeriesInstance, dimension, timeSeriesInstance.getNumDimensions(),
+                () -> timeSeriesInstance.get(dimension).toValueArray()));
+    }
+
+    @Override
+    public double calculate(double[] timeSeries, int timeSeriesId) {
+        if (!(seriesRescaler instanceof ZNormalisation)) {
+            return super.calculate(timeSeries, timeSeriesId);
+        }
+        return calculate(new SeriesStats(timeSeries));
+    }
+
+    private interface SeriesSupplier {
+        double[] get();
+    }
+
+    private SeriesStats getSeriesStats(Object series, int dimension, int numDimensions, SeriesSupplier values) {
+        if (seriesStats == null) {
+            seriesStats = new MapMaker().weakKeys().makeMap();
+        }
+        SeriesStats[] stats = seriesStats.computeIfAbsent(series, key -> new SeriesStats[numDimensions]);
+        if (stats[dimension] == null) {
+            stats[dimension] = new SeriesStats(values.get());
+        }
+        return stats[dimension];
+    }
+
+    private double calculate(SeriesStats series) {
+        // windows are scanned the same as in ShapeletDistance, i.e. excluding the final window
+        int numWindows = series.values.length - length;
+        if (numWindows <= 0) {
+            return super.calculate(series.values, 0);
+        }
+        // direct dot products cost O(nm), the FFT O(N log N) with a larger constant
+        int fftSize = SeriesStats.fftSize(series.values.length);
+        double[] dotProducts = length > 4 * (31 - Integer.numberOfLeadingZeros(fftSize))
+                ? fftDotProducts(series, numWindows) : directDotProducts(series, numWindows);
+
+        double bestSum = Double.MAX_VALUE;
+        for (int i = 0; i < numWindows; i++) {
+            double sum = series.windowSum(i, length);
+            double mean = sum / length;
+            double var = series.windowSumSq(i, length) / length - mean * mean;
+            // cumulative sums lose precision when a window's variance is tiny next to its values, in which case find
+            // the variance directly so flat windows are treated the same as when normalising the window
+            if (var < 1e-8 * (series.windowSumSq(i, length) / length)) {
+                var = series.windowVariance(i, length);
+            }
+            double dist;
+            if (var < ROUNDING_ERROR_CORRECTION) {
+                // the window normalises to all zeros
+                dist = candidateSumSq;
+            } else {
+                double std = Math.sqrt(var);
+                dist = candidateSumSq + length - 2 * (dotProducts[i] - mean * candidateSum) / std;
+            }
+            if (dist < bestSum) {
+                bestSum = Math.max(0, dist);
+            }
+        }
+        return (bestSum == 0.0) ? 0.0 : (1.0 / length * bestSum);
+    }
+
+    private double[] directDotProducts(SeriesStats series, int numWindows) {
+        double[] content = cand.getShapeletContent();
+        double[] values = series.values;
+        double[] dotProducts = new double[numWindows];
+        for (int i = 0; i < numWindows; i++) {
+            double sum = 0;
+            for (int j = 0; j < length; j++) {
+                sum += content[j] * values[i + j];
+            }
+            dotProducts[i] = sum;
+        }
+        count += (long) numWindows * length;
+        return dotProducts;
+    }
+
+    private double[] fftDotProducts(SeriesStats series, int numWindows) {
+        double[] seriesFft = series.getFft();
+        int fftSize = seriesFft.length / 2;
+        if (candidateFft == null || candidateFft.length != seriesFft.length) {
+            // reverse the candidate so the convolution gives the sliding dot products
+            double[] content = cand.getShapeletContent();
+            candidateFft = new double[seriesFft.length];
+            for (int j = 0; j < length; j++) {
+                candidateFft[j] = content[length - 1 - j];
+            }
+            fftOfSize(fftSize).realForwardFull(candidateFft);
+        }
+        double[] product = new double[seriesFft.length];
+        for (int k = 0; k < fftSize; k++) {
+            double re1 = seriesFft[2 * k], im1 = seriesFft[2 * k + 1];
+            double re2 = candidateFft[2 * k], im2 = candidateFft[2 * k + 1];
+            product[2 * k] = re1 * re2 - im1 * im2;
+            product[2 * k + 1] = re1 * im2 + im1 * re2;
+        }
+        fftOfSize(fftSize).complexInverse(product, true);
+        double[] dotProducts = new double[numWindows];
+        for (int i = 0; i < numWindows; i++) {
+            dotProducts[i] = product[2 * (i + length - 1)];
+        }
+        count += (long) fftSize * (31 - Integer.numberOfLeadingZeros(fftSize));
+        return dotProducts;
+    }
+
+    private static DoubleFFT_1D fftOfSize(int size) {
+        return FFTS.computeIfAbsent(size, DoubleFFT_1D::new);
+    }
+
+    /**
+     * The values of a series, centred on their mean to keep the cumulative sums small, with their cumulative sums
+     * and sums of squares. Centring leaves the z-normalised distances unchanged.
+     */
+    private static class SeriesStats {
+        private final double[] values;
+        private final double[] cumSum;
+        private final double[] cumSumSq;
+        private volatile double[] fft;
+
+        private SeriesStats(double[] series) {
+            double mean = 0;
+            for (double value : series) {
+                mean += value;
+            }
+            mean /= series.length;
+            values = new double[series.length];
+            cumSum = new double[series.length + 1];
+            cumSumSq = new double[series.length + 1];
+            for (int i = 0; i < series.length; i++) {
+                values[i] = series[i] - mean;
+                cumSum[i + 1] = cumSum[i] + values[i];
+                cumSumSq[i + 1] = cumSumSq[i] + values[i] * values[i];
+            }
+        }
+
+        private double windowSum(int start, int length) {
+            return cumSum[start + length] - cumSum[start];
+        }
+
+        private double windowSumSq(int start, int length) {
+            return cumSumSq[start + length] - cumSumSq[start];
+        }
+
+        private double windowVariance(int start, int length) {
+            double mean = 0;
+            for (int i = start; i < start + length; i++) {
+                mean += values[i];
+            }
+            mean /= length;
+            double var = 0;
+            for (int i = start; i < start + length; i++) {
+                double temp = values[i] - mean;
+                var += temp * temp;
+            }
+            return var / length;
+        }
+
+        private static int fftSize(int seriesLength) {
+            return Integer.highestOneBit(Math.max(1, 2 * seriesLength - 1)) * 2;
+        }
+
+        /**
+         * @return the FFT of the series zero padded to at least twice its length, which is long enough for the
+         * sliding dot products with any shapelet
+         */
+        private double[] getFft() {
+            double[] result = fft;
+            if (result == null) {
+                int fftSize = fftSize(values.length);
+                result = new double[2 * fftSize];
+                System.arraycopy(values, 0, result, 0, values.length);
+                fftOfSize(fftSize).realForwardFull(result);
+                fft = result;
+            }
+            return result;
+        }
+    }
+}
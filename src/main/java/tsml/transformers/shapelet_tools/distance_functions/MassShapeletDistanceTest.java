@@ -0,0 +1,119 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.transformers.shapelet_tools.distance_functions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import tsml.data_containers.TimeSeriesInstance;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+
+/**
+ * Purpose: test MassShapeletDistance gives the same distances as ShapeletDistance and OnlineShapeletDistance, using
+ * both the direct and FFT dot products, and with constant (zero std) subsequences in the series and the candidates.
+ */
+public class MassShapeletDistanceTest {
+
+    private static final double TOLERANCE = 1e-8;
+
+    private static double[] randomSeries(Random rand, int length, boolean flatRuns) {
+        double[] series = new double[length];
+        for (int i = 0; i < length; i++)
+            series[i] = rand.nextGaussian() * 3 + 10;
+
+        if (flatRuns) {
+            //constant runs longer than most of the candidates, at a few different levels
+            for (int run = 0; run < 3; run++) {
+                int runLength = 10 + rand.nextInt(25);
+                int start = rand.nextInt(length - runLength);
+                double level = rand.nextInt(3) * 5;
+                for (int i = start; i < start + runLength; i++)
+                    series[i] = level;
+            }
+        }
+        return series;
+    }
+
+    private static List<double[]> randomData(int seed) {
+        Random rand = new Random(seed);
+        List<double[]> data = new ArrayList<>();
+        for (int i = 0; i < 8; i++)
+            data.add(randomSeries(rand, 60 + rand.nextInt(100), i % 2 == 1));
+        return data;
+    }
+
+    private static void assertSameDistances(ShapeletDistance expected, ShapeletDistance actual, List<double[]> data,
+            Random rand) {
+        for (double[] candidateSeries : data) {
+            Instance candidateInst = new DenseInstance(1.0, candidateSeries);
+            for (int c = 0; c < 20; c++) {
+                //lengths up to just under the shortest series, which covers both the direct and the FFT dot
+                //products, the FFT being used for lengths over 28 to 36 depending on the series length
+                int length = 3 + rand.nextInt(53);
+                int start = rand.nextInt(candidateSeries.length - length + 1);
+                expected.setCandidate(candidateInst, start, length, 0);
+                actual.setCandidate(candidateInst, start, length, 0);
+
+                for (int s = 0; s < data.size(); s++) {
+                    double[] series = data.get(s);
+                    String msg = "candidate " + start + "," + length + " series " + s;
+                    double distance = expected.calculate(series, s);
+
+                    Assert.assertEquals(msg, distance, actual.calculate(series, s), TOLERANCE);
+                    Assert.assertEquals(msg, distance, actual.calculate(new DenseInstance(1.0, series), s), TOLERANCE);
+                    Assert.assertEquals(msg, distance,
+                            actual.calculate(new TimeSeriesInstance(new double[][] { series }), s), TOLERANCE);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSameAsShapeletDistance() {
+        for (int seed = 0; seed < 3; seed++)
+            assertSameDistances(new ShapeletDistance(), new MassShapeletDistance(), randomData(seed), new Random(seed));
+    }
+
+    @Test
+    public void testSameAsOnlineShapeletDistance() {
+        for (int seed = 0; seed < 3; seed++)
+            assertSameDistances(new OnlineShapeletDistance(), new MassShapeletDistance(), randomData(seed),
+                    new Random(seed));
+    }
+
+    @Test
+    public void testConstantCandidate() {
+        List<double[]> data = randomData(0);
+        double[] candidateSeries = data.get(1).clone();
+        for (int i = 0; i < 40; i++)
+            candidateSeries[i] = 2;
+        Instance candidateInst = new DenseInstance(1.0, candidateSeries);
+
+        for (int length : new int[] { 5, 20, 40 }) {
+            ShapeletDistance expected = new ShapeletDistance();
+            ShapeletDistance actual = new MassShapeletDistance();
+            expected.setCandidate(candidateInst, 0, length, 0);
+            actual.setCandidate(candidateInst, 0, length, 0);
+            for (int s = 0; s < data.size(); s++)
+                Assert.assertEquals("length " + length + " series " + s, expected.calculate(data.get(s), s),
+                        actual.calculate(data.get(s), s), TOLERANCE);
+        }
+    }
+}
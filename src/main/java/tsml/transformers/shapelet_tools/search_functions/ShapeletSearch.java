@@ -170,6 +170,11 @@ public class ShapeletSearch implements Serializable{
         seriesLength = inputDataTS.getMaxLength();
     }
 
+    //Once the search is complete, the data is not needed
+    public void releaseData(){
+        inputData = null;
+    }
+
     public int getSeriesLength(){
         return seriesLength; //we add one here, because lots of code assumes it has a class value on the end/ TO DO: CLARIFY THIS
     }
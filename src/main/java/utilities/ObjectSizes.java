@@ -0,0 +1,235 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Estimates of the memory used by objects, for classifiers keeping to a memory contract.
+ *
+ * deepSizeOf walks the object graph reachable from an object by reflection and sums the shallow sizes of the objects
+ * found, assuming a 64 bit JVM with compressed references (heaps under 32GB). Objects of the given shared types, which
+ * are owned elsewhere (e.g. the train data), are not counted or walked through, nor are classes, threads, executors,
+ * loggers, enum constants and soft/weak references. JDK internals which can't be read by reflection (Java 9+) are
+ * sized through their public API where they are collections, maps or strings, and by their declared fields otherwise.
+ *
+ * threadAllocatedBytes gives the bytes allocated so far by the current thread, where the JVM supports it. The bytes
+ * allocated while building a model are an upper bound on what it retains, and are far cheaper to find than walking it.
+ */
+public final class ObjectSizes {
+
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+    private static final int ALIGNMENT = 8;
+    // per element estimates for collections and maps whose internals can't be read
+    private static final int COLLECTION_ELEMENT = 8;
+    private static final int MAP_ENTRY = 40;
+
+    private static final Class<?>[] NEVER_COUNTED = {
+            Class.class, ClassLoader.class, Thread.class, ThreadGroup.class, Executor.class,
+            java.util.logging.Logger.class, java.lang.ref.Reference.class, Enum.class
+    };
+
+    private static final ConcurrentHashMap<Class<?>, Layout> LAYOUTS = new ConcurrentHashMap<>();
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private ObjectSizes() {}
+
+    /**
+     * @param root the object to size
+     * @param shared types whose instances are owned elsewhere, not counted
+     * @return estimated bytes retained by root and everything reachable from it, excluding the shared types
+     */
+    public static long deepSizeOf(Object root, Class<?>... shared) {
+        if (root == null || isExcluded(root.getClass(), shared))
+            return 0;
+
+        IdentityHashMap<Object, Boolean> visited = new IdentityHashMap<>();
+        ArrayDeque<Object> stack = new ArrayDeque<>();
+        visited.put(root, Boolean.TRUE);
+        stack.push(root);
+
+        long size = 0;
+        while (!stack.isEmpty()) {
+            Object obj = stack.pop();
+            Class<?> c = obj.getClass();
+
+            if (c.isArray()) {
+                int length = Array.getLength(obj);
+                Class<?> component = c.getComponentType();
+                size += align(ARRAY_HEADER + (long) length * fieldSize(component));
+                if (!component.isPrimitive()) {
+                    for (Object element : (Object[]) obj) {
+                        visit(element, visited, stack, shared);
+                    }
+                }
+                continue;
+            }
+
+            Layout layout = layoutOf(c);
+            size += layout.shallowSize;
+            if (!layout.opaque) {
+                for (Field f : layout.references) {
+                    try {
+                        visit(f.get(obj), visited, stack, shared);
+                    } catch (IllegalAccessException ignored) {
+                    }
+                }
+            } else if (obj instanceof String) {
+                size += align(ARRAY_HEADER + ((String) obj).length() * 2L);
+            } else {
+                // a copy of the contents so a collection being modified elsewhere can't break the walk
+                try {
+                    if (obj instanceof Collection) {
+                        Object[] elements = ((Collection<?>) obj).toArray();
+                        size += align(ARRAY_HEADER + (long) elements.length * COLLECTION_ELEMENT);
+                        for (Object element : elements) {
+                            visit(element, visited, stack, shared);
+                        }
+                    } else if (obj instanceof Map) {
+                        ArrayList<Map.Entry<?, ?>> entries = new ArrayList<>(((Map<?, ?>) obj).entrySet());
+                        size += (long) entries.size() * MAP_ENTRY;
+                        for (Map.Entry<?, ?> entry : entries) {
+                            visit(entry.getKey(), visited, stack, shared);
+                            visit(entry.getValue(), visited, stack, shared);
+                        }
+                    }
+                } catch (RuntimeException ignored) {
+                    // e.g. a concurrent modification, counted as far as it got
+                }
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * @return bytes allocated by the current thread since it started, or -1 if the JVM can't tell
+     */
+    public static long threadAllocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled())
+                return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * @param start threadAllocatedBytes() at the start of the work, on the same thread
+     * @return bytes allocated by the current thread since start, or -1 if the JVM can't tell
+     */
+    public static long threadAllocatedBytesSince(long start) {
+        if (start < 0)
+            return -1;
+        long now = threadAllocatedBytes();
+        return now < 0 ? -1 : now - start;
+    }
+
+    private static void visit(Object obj, IdentityHashMap<Object, Boolean> visited, ArrayDeque<Object> stack,
+                              Class<?>[] shared) {
+        if (obj == null || visited.containsKey(obj) || isExcluded(obj.getClass(), shared))
+            return;
+        visited.put(obj, Boolean.TRUE);
+        stack.push(obj);
+    }
+
+    private static boolean isExcluded(Class<?> c, Class<?>[] shared) {
+        for (Class<?> e : NEVER_COUNTED) {
+            if (e.isAssignableFrom(c))
+                return true;
+        }
+        for (Class<?> e : shared) {
+            if (e.isAssignableFrom(c))
+                return true;
+        }
+        return false;
+    }
+
+    private static Layout layoutOf(Class<?> c) {
+        Layout layout = LAYOUTS.get(c);
+        if (layout == null) {
+            layout = new Layout(c);
+            LAYOUTS.putIfAbsent(c, layout);
+        }
+        return layout;
+    }
+
+    private static long fieldSize(Class<?> type) {
+        if (type == long.class || type == double.class)
+            return 8;
+        if (type == int.class || type == float.class)
+            return 4;
+        if (type == short.class || type == char.class)
+            return 2;
+        if (type == byte.class || type == boolean.class)
+            return 1;
+        return REFERENCE;
+    }
+
+    private static long align(long size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    private static class Layout {
+        final long shallowSize;
+        final Field[] references;
+        // some reference fields can't be read, so the object's contents are estimated through its API
+        final boolean opaque;
+
+        Layout(Class<?> c) {
+            long size = OBJECT_HEADER;
+            ArrayList<Field> refs = new ArrayList<>();
+            boolean opaque = false;
+
+            for (Class<?> k = c; k != null; k = k.getSuperclass()) {
+                for (Field f : k.getDeclaredFields()) {
+                    if (Modifier.isStatic(f.getModifiers()))
+                        continue;
+
+                    size += fieldSize(f.getType());
+                    if (!f.getType().isPrimitive()) {
+                        try {
+                            f.setAccessible(true);
+                            refs.add(f);
+                        } catch (RuntimeException e) {
+                            opaque = true;
+                        }
+                    }
+                }
+            }
+
+            shallowSize = align(size);
+            references = refs.toArray(new Field[0]);
+            this.opaque = opaque;
+        }
+    }
+}
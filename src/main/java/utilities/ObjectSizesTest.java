@@ -0,0 +1,139 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package utilities;
+
+import experiments.data.DatasetLoading;
+import java.util.ArrayList;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import weka.core.Instances;
+
+/**
+ * Purpose: test the sizes of ObjectSizes.deepSizeOf for arrays and objects, counting shared references once,
+ * terminating on cycles and skipping shared types, and that threadAllocatedBytes sees allocations.
+ */
+public class ObjectSizesTest {
+
+    // 12 byte header, two 4 byte references and an int, aligned to 8
+    private static class Node {
+        Node next;
+        double[] values;
+        int id;
+
+        Node(int id, double[] values) {
+            this.id = id;
+            this.values = values;
+        }
+    }
+
+    private static class Holder {
+        Instances data;
+        double[] values = new double[4];
+    }
+
+    @Test
+    public void testArrays() {
+        Assert.assertEquals(0, ObjectSizes.deepSizeOf(null));
+        // 16 byte header plus the elements, aligned to 8
+        Assert.assertEquals(16, ObjectSizes.deepSizeOf(new double[0]));
+        Assert.assertEquals(816, ObjectSizes.deepSizeOf(new double[100]));
+        Assert.assertEquals(32, ObjectSizes.deepSizeOf(new int[3]));
+        Assert.assertEquals(24, ObjectSizes.deepSizeOf(new byte[7]));
+        Assert.assertEquals(32, ObjectSizes.deepSizeOf(new Object[4]));
+
+        // the outer array of references then each row
+        Assert.assertEquals(32 + 3 * 96, ObjectSizes.deepSizeOf(new double[3][10]));
+    }
+
+    @Test
+    public void testObjects() {
+        Assert.assertEquals(24, ObjectSizes.deepSizeOf(new Node(0, null)));
+        Assert.assertEquals(24 + 96, ObjectSizes.deepSizeOf(new Node(0, new double[10])));
+        Assert.assertEquals(24 + 2 * 24 + 96 + 48,
+                ObjectSizes.deepSizeOf(new Node[] { new Node(0, new double[10]), new Node(1, new double[4]) }));
+    }
+
+    @Test
+    public void testSharedReferencesCountedOnce() {
+        double[] values = new double[10];
+        Node a = new Node(0, values);
+        Node b = new Node(1, values);
+        Assert.assertEquals(24 + 2 * 24 + 96, ObjectSizes.deepSizeOf(new Node[] { a, b }));
+
+        Object[] same = { values, values, values };
+        Assert.assertEquals(32 + 96, ObjectSizes.deepSizeOf(same));
+    }
+
+    @Test
+    public void testCycles() {
+        Node a = new Node(0, new double[2]);
+        Node b = new Node(1, new double[2]);
+        a.next = b;
+        b.next = a;
+        Assert.assertEquals(2 * (24 + 32), ObjectSizes.deepSizeOf(a));
+        Assert.assertEquals(ObjectSizes.deepSizeOf(a), ObjectSizes.deepSizeOf(b));
+
+        Node self = new Node(2, null);
+        self.next = self;
+        Assert.assertEquals(24, ObjectSizes.deepSizeOf(self));
+
+        Object[] array = new Object[2];
+        array[0] = array;
+        array[1] = new Node(3, null);
+        Assert.assertEquals(24 + 24, ObjectSizes.deepSizeOf(array));
+    }
+
+    @Test
+    public void testSharedTypes() throws Exception {
+        Holder holder = new Holder();
+        long withoutData = ObjectSizes.deepSizeOf(holder);
+        Assert.assertEquals(24 + 48, withoutData);
+
+        holder.data = DatasetLoading.sampleItalyPowerDemand(0)[0];
+        long withData = ObjectSizes.deepSizeOf(holder);
+        Assert.assertTrue(withData > withoutData + holder.data.numInstances() * holder.data.numAttributes() * 8L);
+        Assert.assertEquals(withoutData, ObjectSizes.deepSizeOf(holder, Instances.class));
+        Assert.assertEquals(0, ObjectSizes.deepSizeOf(holder.data, Instances.class));
+    }
+
+    @Test
+    public void testCollections() {
+        ArrayList<double[]> list = new ArrayList<>();
+        Random rand = new Random(0);
+        long arrays = 0;
+        for (int i = 0; i < 50; i++) {
+            double[] values = new double[rand.nextInt(20)];
+            arrays += ObjectSizes.deepSizeOf(values);
+            list.add(values);
+        }
+        // at least the contents, whether the list is walked or estimated through its API
+        Assert.assertTrue(ObjectSizes.deepSizeOf(list) >= arrays + 50 * 4);
+    }
+
+    @Test
+    public void testThreadAllocatedBytes() {
+        long start = ObjectSizes.threadAllocatedBytes();
+        Assume.assumeTrue(start >= 0);
+
+        byte[] allocated = new byte[1 << 20];
+        long since = ObjectSizes.threadAllocatedBytesSince(start);
+        Assert.assertTrue(since >= allocated.length);
+        Assert.assertEquals(-1, ObjectSizes.threadAllocatedBytesSince(-1));
+    }
+}
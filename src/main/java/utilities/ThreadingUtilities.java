@@ -23,6 +23,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
@@ -34,6 +35,56 @@ import java.util.concurrent.TimeUnit;
  */
 public class ThreadingUtilities {
 
+    /**
+     * The pool used to predict batches with classifiers that can predict concurrently, see 
+     * TSClassifier.canPredictConcurrently()
+     */
+    private static volatile ForkJoinPool predictionPool = ForkJoinPool.commonPool();
+    
+    public static ForkJoinPool getPredictionPool() {
+        return predictionPool;
+    }
+    
+    public static void setPredictionPool(ForkJoinPool pool) {
+        predictionPool = pool;
+    }
+    
+    /**
+     * A job over an index, e.g. predicting the i'th instance of a batch
+     */
+    public interface IndexedJob {
+        void run(int index) throws Exception;
+    }
+    
+    /**
+     * Runs job.run(i) for every i in [0, n) over the pool, and waits for them all to finish. The indices are split 
+     * into contiguous blocks, a few per thread of the pool. Jobs should write any output into index i of an array, 
+     * so the output is in the same order as a sequential loop. The first exception thrown by a job is rethrown.
+     */
+    public static void parallelFor(ForkJoinPool pool, int n, IndexedJob job) throws Exception {
+        int numBlocks = Math.min(n, pool.getParallelism() * 4);
+        List<Callable<Void>> blocks = new ArrayList<>(numBlocks);
+        for (int b = 0; b < numBlocks; b++) {
+            final int start = (int) ((long) n * b / numBlocks);
+            final int end = (int) ((long) n * (b + 1) / numBlocks);
+            blocks.add(() -> {
+                for (int i = start; i < end; i++)
+                    job.run(i);
+                return null;
+            });
+        }
+        
+        for (Future<Void> future : pool.invokeAll(blocks)) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception)
+                    throw (Exception) e.getCause();
+                throw e;
+            }
+        }
+    }
+
     public static ExecutorService buildExecutorService(int numThreads) { 
         //todo look into queues etc
         return Executors.newFixedThreadPool(numThreads);
@@ -17,11 +17,13 @@
  
 package utilities.rescalers;
 
+import java.io.Serializable;
+
 /**
  *
  * @author a.bostrom1
  */
-public interface SeriesRescaler {
+public interface SeriesRescaler extends Serializable {
    
     
     public double[] rescaleSeries(double[] series);
@@ -0,0 +1,212 @@
+/* 
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as published 
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities.serialisation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Writes checkpoint files on a background thread so that checkpoint I/O overlaps with model building.
+ *
+ * Objects which are still being modified are snapshotted by streaming them straight to a temporary file on the
+ * calling thread, so a snapshot never needs a second copy of the object in memory. Only moving the file into place
+ * is left to the background. Objects which will not change again, such as a finished ensemble member, can be
+ * handed over as they are and are serialised in the background. Objects which are large and still changing, such
+ * as a forest, are best checkpointed as a small snapshot plus their finished members written with write.
+ *
+ * At most one write is in flight at a time. Writes waiting behind it are kept per slot (by default the target
+ * file), and a newer write to a slot replaces the waiting one, so a classifier checkpointing faster than the
+ * disk can keep up only ever writes its latest state. Writes are done in the order they were last submitted.
+ * Each file is written to a temporary file first and atomically renamed over the target, so a previous complete
+ * checkpoint is never replaced by a partial one.
+ *
+ * A failed write is reported by the next call to any of the write methods or to flush.
+ */
+public class AsyncCheckpointWriter {
+
+    private final LinkedHashMap<String, PendingWrite> pending = new LinkedHashMap<>();
+    private boolean writing = false;
+    private IOException failure;
+    private final AtomicLong numSnapshots = new AtomicLong();
+
+    private final ThreadPoolExecutor executor;
+
+    public AsyncCheckpointWriter() {
+        executor = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "checkpoint-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Snapshots the current state of obj and moves it to file in the background.
+     */
+    public void writeSnapshot(File file, Object obj, CheckpointSerializer serializer,
+                              CheckpointCompression compression) throws IOException {
+        writeSnapshot(file.getPath(), file, obj, serializer, compression, null);
+    }
+
+    /**
+     * Snapshots the current state of obj to a temporary file and moves it to file in the background, once the
+     * writes submitted before it are done. Replaces any write waiting in the same slot.
+     *
+     * @param onWritten called on the writer thread once the file is in place, may be null
+     */
+    public void writeSnapshot(String slot, File file, Object obj, CheckpointSerializer serializer,
+                              CheckpointCompression compression, Consumer<File> onWritten) throws IOException {
+        checkFailure();
+        //named uniquely, as an earlier snapshot of the same file may still be waiting to be moved into place
+        File tmp = new File(file.getPath() + "." + numSnapshots.incrementAndGet() + ".tmp");
+        try {
+            CheckpointFiles.save(obj, tmp, serializer, compression);
+        } catch (IOException | RuntimeException e) {
+            tmp.delete();
+            throw e;
+        }
+        submit(slot, new PendingWrite(file, tmp, onWritten) {
+            @Override
+            void write() {
+                //already written
+            }
+        });
+    }
+
+    /**
+     * Writes obj to file in the background without taking a snapshot, obj must not be modified afterwards.
+     */
+    public void write(File file, Object obj, CheckpointSerializer serializer, CheckpointCompression compression)
+            throws IOException {
+        checkFailure();
+        submit(file.getPath(), new PendingWrite(file, new File(file.getPath() + ".tmp"), null) {
+            @Override
+            void write() throws IOException {
+                CheckpointFiles.save(obj, tmp, serializer, compression);
+            }
+        });
+    }
+
+    /**
+     * Waits for all submitted writes to finish.
+     *
+     * @throws IOException if any write failed
+     */
+    public void flush() throws IOException {
+        synchronized (this) {
+            while (writing) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for checkpoint writes");
+                }
+            }
+        }
+        checkFailure();
+    }
+
+    private synchronized void submit(String slot, PendingWrite write) {
+        //remove first so a replacement moves to the back of the queue, after anything it may depend on
+        PendingWrite replaced = pending.remove(slot);
+        if (replaced != null)
+            replaced.discard();
+        pending.put(slot, write);
+
+        if (!writing) {
+            writing = true;
+            executor.execute(this::writePending);
+        }
+    }
+
+    private synchronized void checkFailure() throws IOException {
+        if (failure != null) {
+            IOException e = failure;
+            failure = null;
+            throw e;
+        }
+    }
+
+    private void writePending() {
+        while (true) {
+            PendingWrite next;
+            synchronized (this) {
+                Iterator<PendingWrite> it = pending.values().iterator();
+                if (!it.hasNext()) {
+                    writing = false;
+                    notifyAll();
+                    return;
+                }
+                next = it.next();
+                it.remove();
+            }
+
+            try {
+                next.run();
+            } catch (Throwable e) {
+                //caught broadly so that a failed write can never leave flush waiting forever
+                next.discard();
+                synchronized (this) {
+                    if (failure == null)
+                        failure = e instanceof IOException ? (IOException) e
+                                : new IOException("Checkpoint write to " + next.file + " failed", e);
+                }
+            }
+        }
+    }
+
+    private static abstract class PendingWrite {
+
+        final File file;
+        final File tmp;
+        final Consumer<File> onWritten;
+
+        PendingWrite(File file, File tmp, Consumer<File> onWritten) {
+            this.file = file;
+            this.tmp = tmp;
+            this.onWritten = onWritten;
+        }
+
+        /**
+         * Writes the checkpoint to tmp, if it is not there already.
+         */
+        abstract void write() throws IOException;
+
+        /**
+         * Removes anything written for a write which will not be moved into place.
+         */
+        void discard() {
+            tmp.delete();
+        }
+
+        void run() throws IOException {
+            write();
+            CheckpointFiles.replace(tmp, file);
+            if (onWritten != null)
+                onWritten.accept(file);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package utilities.serialisation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Assert;
+import org.junit.Test;
+import utilities.FileUtils;
+
+/**
+ * Purpose: test AsyncCheckpointWriter snapshots objects as they were when submitted, writes in the order submitted,
+ * only moves the latest snapshot of a file into place and leaves no temporary files behind.
+ */
+public class AsyncCheckpointWriterTest {
+
+    /**
+     * Holds the writer thread until released, so that writes submitted meanwhile wait behind it.
+     */
+    private static class Blocker implements Serializable {
+        transient CountDownLatch started = new CountDownLatch(1);
+        transient CountDownLatch release = new CountDownLatch(1);
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            out.defaultWriteObject();
+        }
+    }
+
+    private static void assertNoTemporaryFiles(File dir) {
+        String[] names = dir.list();
+        for (String name : names)
+            Assert.assertFalse(Arrays.toString(names), name.endsWith(".tmp"));
+    }
+
+    @Test
+    public void testSnapshotIsCopy() throws Exception {
+        File dir = Files.createTempDirectory("AsyncCheckpointWriterTest").toFile();
+        try {
+            AsyncCheckpointWriter writer = new AsyncCheckpointWriter();
+            ArrayList<Integer> state = new ArrayList<>(Arrays.asList(1, 2, 3));
+            File file = new File(dir, "state.ser");
+            writer.writeSnapshot(file, state, JavaCheckpointSerializer.INSTANCE, CheckpointCompression.GZIP);
+            state.add(4);
+            writer.flush();
+
+            Assert.assertEquals(Arrays.asList(1, 2, 3), CheckpointFiles.load(file, JavaCheckpointSerializer.INSTANCE));
+            assertNoTemporaryFiles(dir);
+        } finally {
+            FileUtils.delete(dir.toPath());
+        }
+    }
+
+    @Test
+    public void testLatestSnapshotWrittenAfterEarlierWrites() throws Exception {
+        File dir = Files.createTempDirectory("AsyncCheckpointWriterTest").toFile();
+        try {
+            AsyncCheckpointWriter writer = new AsyncCheckpointWriter();
+            Blocker blocker = new Blocker();
+            writer.write(new File(dir, "blocker.ser"), blocker, JavaCheckpointSerializer.INSTANCE,
+                    CheckpointCompression.NONE);
+            blocker.started.await();
+
+            File member = new File(dir, "member.ser");
+            File header = new File(dir, "header.ser");
+            ArrayList<String> moved = new ArrayList<>();
+            writer.write(member, "member", JavaCheckpointSerializer.INSTANCE, CheckpointCompression.NONE);
+            writer.writeSnapshot("header", header, "first", JavaCheckpointSerializer.INSTANCE,
+                    CheckpointCompression.GZIP, f -> moved.add("first"));
+            writer.writeSnapshot("header", header, "second", JavaCheckpointSerializer.INSTANCE,
+                    CheckpointCompression.GZIP, f -> {
+                        //the member submitted before it is already in place
+                        Assert.assertTrue(member.exists());
+                        moved.add("second");
+                    });
+            //the snapshots were written before being queued, the replaced one has been removed, leaving it and the
+            //blocker still being written
+            Assert.assertFalse(header.exists());
+            Assert.assertEquals(2, dir.list().length);
+
+            blocker.release.countDown();
+            writer.flush();
+
+            Assert.assertEquals(Arrays.asList("second"), moved);
+            Assert.assertEquals("second", CheckpointFiles.load(header, JavaCheckpointSerializer.INSTANCE));
+            Assert.assertEquals("member", CheckpointFiles.load(member, JavaCheckpointSerializer.INSTANCE));
+            assertNoTemporaryFiles(dir);
+        } finally {
+            FileUtils.delete(dir.toPath());
+        }
+    }
+
+    @Test
+    public void testFailedWriteReported() throws Exception {
+        File dir = Files.createTempDirectory("AsyncCheckpointWriterTest").toFile();
+        try {
+            AsyncCheckpointWriter writer = new AsyncCheckpointWriter();
+            writer.write(new File(dir, "object.ser"), new Object(), JavaCheckpointSerializer.INSTANCE,
+                    CheckpointCompression.NONE);
+            try {
+                writer.flush();
+                Assert.fail("writing an object which is not Serializable should fail");
+            } catch (IOException e) {
+                //expected
+            }
+            assertNoTemporaryFiles(dir);
+
+            try {
+                writer.writeSnapshot(new File(dir, "snapshot.ser"), new Object(), JavaCheckpointSerializer.INSTANCE,
+                        CheckpointCompression.GZIP);
+                Assert.fail("snapshotting an object which is not Serializable should fail");
+            } catch (IOException e) {
+                //expected
+            }
+            assertNoTemporaryFiles(dir);
+            Assert.assertEquals(0, dir.list().length);
+        } finally {
+            FileUtils.delete(dir.toPath());
+        }
+    }
+}
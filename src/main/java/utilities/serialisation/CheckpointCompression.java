@@ -0,0 +1,97 @@
+/* 
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as published 
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities.serialisation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.*;
+
+/**
+ * Compression applied to the serialised bytes of a checkpoint.
+ *
+ * FAST uses deflate at its fastest level, which spends a fraction of the time GZIP does at the default level
+ * for somewhat larger files. NONE is best when checkpoints are written to fast local disk.
+ */
+public enum CheckpointCompression {
+    NONE(0),
+    FAST(1),
+    GZIP(2);
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final byte id;
+
+    CheckpointCompression(int id) {
+        this.id = (byte) id;
+    }
+
+    public byte getId() {
+        return id;
+    }
+
+    public static CheckpointCompression fromId(byte id) {
+        for (CheckpointCompression c : values()) {
+            if (c.id == id) return c;
+        }
+        throw new IllegalArgumentException("Unknown checkpoint compression id " + id);
+    }
+
+    /**
+     * Wraps the stream to compress written bytes, the returned stream must be closed to complete the output.
+     */
+    public OutputStream wrap(OutputStream out) throws IOException {
+        switch (this) {
+            case FAST:
+                return new DeflaterOutputStream(out, new Deflater(Deflater.BEST_SPEED), BUFFER_SIZE) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            def.end();
+                        }
+                    }
+                };
+            case GZIP:
+                return new GZIPOutputStream(out, BUFFER_SIZE);
+            default:
+                return out;
+        }
+    }
+
+    public InputStream wrap(InputStream in) throws IOException {
+        switch (this) {
+            case FAST:
+                return new InflaterInputStream(in, new Inflater(), BUFFER_SIZE) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            inf.end();
+                        }
+                    }
+                };
+            case GZIP:
+                return new GZIPInputStream(in, BUFFER_SIZE);
+            default:
+                return in;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/* 
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as published 
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities.serialisation;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Reads and writes checkpoint files using a CheckpointSerializer and CheckpointCompression.
+ *
+ * Files are written with a short header recording the serialisation format and compression used, so they can
+ * be loaded without knowing how they were saved. The exception is Java serialisation with GZIP compression,
+ * the original Checkpointable format, which is written without a header so the files remain readable by older
+ * versions. Files with no header, either GZIP compressed or plain Java serialisation streams, are read as Java
+ * serialisation.
+ */
+public class CheckpointFiles {
+
+    private static final int MAGIC = 0x54534350; //TSCP
+    private static final int GZIP_MAGIC = 0x1f8b;
+    private static final int JAVA_MAGIC = 0xaced;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private CheckpointFiles() {}
+
+    public static void save(Object obj, File file, CheckpointSerializer serializer, CheckpointCompression compression)
+            throws IOException {
+        //closing the compressing stream finishes it and releases its native resources
+        try (OutputStream out = openForWriting(file, serializer.getFormatId(), compression)) {
+            serializer.serialise(obj, out);
+        }
+    }
+
+    /**
+     * Moves a fully written file over the target, atomically if the file system allows it, so that a reader
+     * never sees a partially written checkpoint.
+     */
+    public static void replace(File written, File target) throws IOException {
+        try {
+            Files.move(written.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(written.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static OutputStream openForWriting(File file, byte formatId, CheckpointCompression compression)
+            throws IOException {
+        OutputStream fos = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+        try {
+            if (formatId != JavaCheckpointSerializer.FORMAT_ID || compression != CheckpointCompression.GZIP) {
+                DataOutputStream header = new DataOutputStream(fos);
+                header.writeInt(MAGIC);
+                header.writeByte(formatId);
+                header.writeByte(compression.getId());
+                header.flush();
+            }
+            return compression.wrap(fos);
+        } catch (IOException e) {
+            fos.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Loads a checkpoint file. The given serializer is used if it matches the format in the file header, otherwise
+     * the built in serializer for that format is used.
+     */
+    public static Object load(File file, CheckpointSerializer serializer) throws IOException, ClassNotFoundException {
+        try (InputStream fis = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)) {
+            fis.mark(6);
+            DataInputStream header = new DataInputStream(fis);
+            int first = header.readUnsignedShort();
+
+            if (first == GZIP_MAGIC || first == JAVA_MAGIC) {
+                fis.reset();
+                try (InputStream in = first == GZIP_MAGIC ? CheckpointCompression.GZIP.wrap(fis) : fis) {
+                    return JavaCheckpointSerializer.INSTANCE.deserialise(in);
+                }
+            }
+
+            int magic = (first << 16) | header.readUnsignedShort();
+            if (magic != MAGIC)
+                throw new IOException("File " + file + " is not a recognised checkpoint file");
+
+            byte formatId = header.readByte();
+            CheckpointCompression compression = CheckpointCompression.fromId(header.readByte());
+            if (serializer == null || serializer.getFormatId() != formatId)
+                serializer = builtInSerializer(formatId);
+
+            try (InputStream in = compression.wrap(fis)) {
+                return serializer.deserialise(in);
+            }
+        }
+    }
+
+    private static CheckpointSerializer builtInSerializer(byte formatId) throws IOException {
+        switch (formatId) {
+            case JavaCheckpointSerializer.FORMAT_ID:
+                return JavaCheckpointSerializer.INSTANCE;
+            case KryoCheckpointSerializer.FORMAT_ID:
+                return new KryoCheckpointSerializer(false);
+            case KryoCheckpointSerializer.UNSAFE_FORMAT_ID:
+                KryoCheckpointSerializer kryo = new KryoCheckpointSerializer(true);
+                if (!kryo.isUsingUnsafe())
+                    throw new IOException("Checkpoint was written with unsafe Kryo buffers, which are not " +
+                            "available on this JVM");
+                return kryo;
+            default:
+                throw new IOException("No serializer available for checkpoint format " + formatId);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/* 
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as published 
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities.serialisation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Converts a checkpointed object to and from bytes. Compression and the file layout are handled separately by
+ * CheckpointFiles, so implementations only need to deal with the object graph itself.
+ *
+ * Each implementation has a format id that is written into the checkpoint file header, so a checkpoint can
+ * be loaded regardless of which serializer the loading classifier is configured with, provided the format is
+ * one of the built in ones.
+ */
+public interface CheckpointSerializer {
+
+    /**
+     * @return id stored in the checkpoint file header, ids 0-15 are reserved for the built in formats
+     */
+    byte getFormatId();
+
+    void serialise(Object obj, OutputStream out) throws IOException;
+
+    Object deserialise(InputStream in) throws IOException, ClassNotFoundException;
+}
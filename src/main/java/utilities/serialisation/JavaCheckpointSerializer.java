@@ -0,0 +1,47 @@
+/* 
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as published 
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities.serialisation;
+
+import java.io.*;
+
+/**
+ * Standard Java serialisation, the original format used by Checkpointable.
+ */
+public class JavaCheckpointSerializer implements CheckpointSerializer {
+
+    public static final byte FORMAT_ID = 1;
+
+    public static final JavaCheckpointSerializer INSTANCE = new JavaCheckpointSerializer();
+
+    @Override
+    public byte getFormatId() {
+        return FORMAT_ID;
+    }
+
+    @Override
+    public void serialise(Object obj, OutputStream out) throws IOException {
+        ObjectOutputStream oos = new ObjectOutputStream(out);
+        oos.writeObject(obj);
+        oos.flush();
+    }
+
+    @Override
+    public Object deserialise(InputStream in) throws IOException, ClassNotFoundException {
+        return new ObjectInputStream(in).readObject();
+    }
+}
@@ -0,0 +1,199 @@
+/* 
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as published 
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities.serialisation;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.FieldSerializer;
+import com.esotericsoftware.kryo.serializers.JavaSerializer;
+import com.esotericsoftware.kryo.unsafe.UnsafeInput;
+import com.esotericsoftware.kryo.unsafe.UnsafeOutput;
+import com.esotericsoftware.kryo.unsafe.UnsafeUtil;
+import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+
+import java.io.*;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Kryo based serialisation. Object fields are written directly from a reflection (or unsafe memory access) based
+ * field serializer rather than through ObjectOutputStream, which avoids the per class descriptors and block data
+ * framing of Java serialisation and is considerably faster for the large primitive arrays that make up most
+ * classifier state.
+ *
+ * The same rules as Java serialisation are followed for which objects can be stored: transient fields are
+ * skipped, only Serializable objects can be written, and classes defining their own writeObject/readObject or
+ * writeReplace/readResolve methods are delegated to Java serialisation so their custom behaviour is kept.
+ *
+ * The unsafe variant reads and writes primitives in native byte order, and so should only be used for
+ * checkpoints that are resumed on the same kind of machine. Kryo is not thread safe, so one instance is kept per
+ * thread.
+ */
+public class KryoCheckpointSerializer implements CheckpointSerializer {
+
+    public static final byte FORMAT_ID = 2;
+    public static final byte UNSAFE_FORMAT_ID = 3;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final ThreadLocal<Kryo> KRYO = ThreadLocal.withInitial(CheckpointKryo::new);
+
+    private final boolean useUnsafe;
+
+    /**
+     * Uses unsafe buffers if they are available on this JVM.
+     */
+    public KryoCheckpointSerializer() {
+        this(true);
+    }
+
+    public KryoCheckpointSerializer(boolean useUnsafe) {
+        this.useUnsafe = useUnsafe && UnsafeUtil.unsafe != null;
+    }
+
+    public boolean isUsingUnsafe() {
+        return useUnsafe;
+    }
+
+    @Override
+    public byte getFormatId() {
+        return useUnsafe ? UNSAFE_FORMAT_ID : FORMAT_ID;
+    }
+
+    @Override
+    public void serialise(Object obj, OutputStream out) throws IOException {
+        Output output = useUnsafe ? new UnsafeOutput(out, BUFFER_SIZE) : new Output(out, BUFFER_SIZE);
+        try {
+            KRYO.get().writeClassAndObject(output, obj);
+            output.flush();
+        } catch (KryoException e) {
+            throw new IOException("Kryo serialisation failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Object deserialise(InputStream in) throws IOException {
+        Input input = useUnsafe ? new UnsafeInput(in, BUFFER_SIZE) : new Input(in, BUFFER_SIZE);
+        try {
+            return KRYO.get().readClassAndObject(input);
+        } catch (KryoException e) {
+            throw new IOException("Kryo deserialisation failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Kryo configured to handle arbitrary unregistered classes, including ones without a no-arg constructor, with
+     * shared and cyclic references preserved as they are in Java serialisation.
+     */
+    private static class CheckpointKryo extends Kryo {
+
+        CheckpointKryo() {
+            setRegistrationRequired(false);
+            setReferences(true);
+            setInstantiatorStrategy(new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+        }
+
+        //Kryo declares the parameter of these two as a raw Class, so they have to match it
+        @Override
+        @SuppressWarnings("rawtypes")
+        public Serializer<?> getDefaultSerializer(Class type) {
+            //Kryo stores any collection or map as just its elements, but ones from outside the JDK such as weka
+            //Instances may have other state, so are stored field by field instead
+            if ((Collection.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type))
+                    && !type.getName().startsWith("java."))
+                return newDefaultSerializer(type);
+            return super.getDefaultSerializer(type);
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        protected Serializer<?> newDefaultSerializer(Class type) {
+            if (!type.isArray() && !type.isPrimitive() && !Serializable.class.isAssignableFrom(type))
+                return new NotSerializableSerializer();
+            if (hasCustomSerialisation(type))
+                return new JavaSerializer();
+            try {
+                return new CheckpointFieldSerializer<>(this, type);
+            } catch (RuntimeException e) {
+                //fields the JVM will not open to reflection, such as those a class like weka Instances inherits
+                //from java.util on Java 17, are left to Java serialisation
+                return new JavaSerializer();
+            }
+        }
+
+        private static boolean hasCustomSerialisation(Class<?> type) {
+            if (Externalizable.class.isAssignableFrom(type))
+                return true;
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                if (declaresMethod(c, "writeObject", ObjectOutputStream.class)
+                        || declaresMethod(c, "readObject", ObjectInputStream.class)
+                        || declaresMethod(c, "writeReplace")
+                        || declaresMethod(c, "readResolve"))
+                    return true;
+            }
+            return false;
+        }
+
+        private static boolean declaresMethod(Class<?> c, String name, Class<?>... params) {
+            try {
+                return !Modifier.isStatic(c.getDeclaredMethod(name, params).getModifiers());
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * The default field serializer without the tracking of generic type arguments, which in this version of Kryo
+     * fails on fields such as a Comparator<Shapelet> implemented by a class with no type parameters. Fields typed
+     * by a type variable have their class written, as they would be without the generic type information.
+     */
+    private static class CheckpointFieldSerializer<T> extends FieldSerializer<T> {
+
+        CheckpointFieldSerializer(Kryo kryo, Class<T> type) {
+            super(kryo, type);
+        }
+
+        @Override
+        protected int pushTypeVariables() {
+            return 0;
+        }
+    }
+
+    /**
+     * Fails in the same situations as ObjectOutputStream would, rather than attempting to store objects such as
+     * executors or streams field by field.
+     */
+    private static class NotSerializableSerializer extends Serializer<Object> {
+
+        @Override
+        public void write(Kryo kryo, Output output, Object object) {
+            throw new KryoException(new NotSerializableException(object.getClass().getName()));
+        }
+
+        @Override
+        public Object read(Kryo kryo, Input input, Class<?> type) {
+            throw new KryoException(new NotSerializableException(type.getName()));
+        }
+    }
+}